@@ -14,7 +14,8 @@ import org.apache.thrift.TEnum;
 public enum BuckCacheRequestType implements org.apache.thrift.TEnum {
   UNKNOWN(0),
   FETCH(100),
-  STORE(101);
+  STORE(101),
+  MULTI_FETCH(102);
 
   private final int value;
 
@@ -41,6 +42,8 @@ public enum BuckCacheRequestType implements org.apache.thrift.TEnum {
         return FETCH;
       case 101:
         return STORE;
+      case 102:
+        return MULTI_FETCH;
       default:
         return null;
     }
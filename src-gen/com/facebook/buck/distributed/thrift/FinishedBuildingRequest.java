@@ -34,13 +34,14 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 @SuppressWarnings({"cast", "rawtypes", "serial", "unchecked"})
-@Generated(value = "Autogenerated by Thrift Compiler (0.9.3)", date = "2017-02-19")
+@Generated(value = "Autogenerated by Thrift Compiler (0.9.3)", date = "2026-10-18")
 public class FinishedBuildingRequest implements org.apache.thrift.TBase<FinishedBuildingRequest, FinishedBuildingRequest._Fields>, java.io.Serializable, Cloneable, Comparable<FinishedBuildingRequest> {
   private static final org.apache.thrift.protocol.TStruct STRUCT_DESC = new org.apache.thrift.protocol.TStruct("FinishedBuildingRequest");
 
   private static final org.apache.thrift.protocol.TField MINION_ID_FIELD_DESC = new org.apache.thrift.protocol.TField("minionId", org.apache.thrift.protocol.TType.STRING, (short)1);
   private static final org.apache.thrift.protocol.TField BUILD_EXIT_CODE_FIELD_DESC = new org.apache.thrift.protocol.TField("buildExitCode", org.apache.thrift.protocol.TType.I32, (short)2);
   private static final org.apache.thrift.protocol.TField STAMPEDE_ID_FIELD_DESC = new org.apache.thrift.protocol.TField("stampedeId", org.apache.thrift.protocol.TType.STRUCT, (short)3);
+  private static final org.apache.thrift.protocol.TField BUILD_TARGET_FIELD_DESC = new org.apache.thrift.protocol.TField("buildTarget", org.apache.thrift.protocol.TType.STRING, (short)4);
 
   private static final Map<Class<? extends IScheme>, SchemeFactory> schemes = new HashMap<Class<? extends IScheme>, SchemeFactory>();
   static {
@@ -51,12 +52,14 @@ public class FinishedBuildingRequest implements org.apache.thrift.TBase<Finished
   public String minionId; // optional
   public int buildExitCode; // optional
   public com.facebook.buck.distributed.thrift.StampedeId stampedeId; // optional
+  public String buildTarget; // optional
 
   /** The set of fields this struct contains, along with convenience methods for finding and manipulating them. */
   public enum _Fields implements org.apache.thrift.TFieldIdEnum {
     MINION_ID((short)1, "minionId"),
     BUILD_EXIT_CODE((short)2, "buildExitCode"),
-    STAMPEDE_ID((short)3, "stampedeId");
+    STAMPEDE_ID((short)3, "stampedeId"),
+    BUILD_TARGET((short)4, "buildTarget");
 
     private static final Map<String, _Fields> byName = new HashMap<String, _Fields>();
 
@@ -77,6 +80,8 @@ public class FinishedBuildingRequest implements org.apache.thrift.TBase<Finished
           return BUILD_EXIT_CODE;
         case 3: // STAMPEDE_ID
           return STAMPEDE_ID;
+        case 4: // BUILD_TARGET
+          return BUILD_TARGET;
         default:
           return null;
       }
@@ -119,7 +124,7 @@ public class FinishedBuildingRequest implements org.apache.thrift.TBase<Finished
   // isset id assignments
   private static final int __BUILDEXITCODE_ISSET_ID = 0;
   private byte __isset_bitfield = 0;
-  private static final _Fields optionals[] = {_Fields.MINION_ID,_Fields.BUILD_EXIT_CODE,_Fields.STAMPEDE_ID};
+  private static final _Fields optionals[] = {_Fields.MINION_ID,_Fields.BUILD_EXIT_CODE,_Fields.STAMPEDE_ID,_Fields.BUILD_TARGET};
   public static final Map<_Fields, org.apache.thrift.meta_data.FieldMetaData> metaDataMap;
   static {
     Map<_Fields, org.apache.thrift.meta_data.FieldMetaData> tmpMap = new EnumMap<_Fields, org.apache.thrift.meta_data.FieldMetaData>(_Fields.class);
@@ -129,6 +134,8 @@ public class FinishedBuildingRequest implements org.apache.thrift.TBase<Finished
         new org.apache.thrift.meta_data.FieldValueMetaData(org.apache.thrift.protocol.TType.I32)));
     tmpMap.put(_Fields.STAMPEDE_ID, new org.apache.thrift.meta_data.FieldMetaData("stampedeId", org.apache.thrift.TFieldRequirementType.OPTIONAL, 
         new org.apache.thrift.meta_data.StructMetaData(org.apache.thrift.protocol.TType.STRUCT, com.facebook.buck.distributed.thrift.StampedeId.class)));
+    tmpMap.put(_Fields.BUILD_TARGET, new org.apache.thrift.meta_data.FieldMetaData("buildTarget", org.apache.thrift.TFieldRequirementType.OPTIONAL, 
+        new org.apache.thrift.meta_data.FieldValueMetaData(org.apache.thrift.protocol.TType.STRING)));
     metaDataMap = Collections.unmodifiableMap(tmpMap);
     org.apache.thrift.meta_data.FieldMetaData.addStructMetaDataMap(FinishedBuildingRequest.class, metaDataMap);
   }
@@ -148,6 +155,9 @@ public class FinishedBuildingRequest implements org.apache.thrift.TBase<Finished
     if (other.isSetStampedeId()) {
       this.stampedeId = new com.facebook.buck.distributed.thrift.StampedeId(other.stampedeId);
     }
+    if (other.isSetBuildTarget()) {
+      this.buildTarget = other.buildTarget;
+    }
   }
 
   public FinishedBuildingRequest deepCopy() {
@@ -160,6 +170,7 @@ public class FinishedBuildingRequest implements org.apache.thrift.TBase<Finished
     setBuildExitCodeIsSet(false);
     this.buildExitCode = 0;
     this.stampedeId = null;
+    this.buildTarget = null;
   }
 
   public String getMinionId() {
@@ -233,6 +244,30 @@ public class FinishedBuildingRequest implements org.apache.thrift.TBase<Finished
     }
   }
 
+  public String getBuildTarget() {
+    return this.buildTarget;
+  }
+
+  public FinishedBuildingRequest setBuildTarget(String buildTarget) {
+    this.buildTarget = buildTarget;
+    return this;
+  }
+
+  public void unsetBuildTarget() {
+    this.buildTarget = null;
+  }
+
+  /** Returns true if field buildTarget is set (has been assigned a value) and false otherwise */
+  public boolean isSetBuildTarget() {
+    return this.buildTarget != null;
+  }
+
+  public void setBuildTargetIsSet(boolean value) {
+    if (!value) {
+      this.buildTarget = null;
+    }
+  }
+
   public void setFieldValue(_Fields field, Object value) {
     switch (field) {
     case MINION_ID:
@@ -259,6 +294,14 @@ public class FinishedBuildingRequest implements org.apache.thrift.TBase<Finished
       }
       break;
 
+    case BUILD_TARGET:
+      if (value == null) {
+        unsetBuildTarget();
+      } else {
+        setBuildTarget((String)value);
+      }
+      break;
+
     }
   }
 
@@ -273,6 +316,9 @@ public class FinishedBuildingRequest implements org.apache.thrift.TBase<Finished
     case STAMPEDE_ID:
       return getStampedeId();
 
+    case BUILD_TARGET:
+      return getBuildTarget();
+
     }
     throw new IllegalStateException();
   }
@@ -290,6 +336,8 @@ public class FinishedBuildingRequest implements org.apache.thrift.TBase<Finished
       return isSetBuildExitCode();
     case STAMPEDE_ID:
       return isSetStampedeId();
+    case BUILD_TARGET:
+      return isSetBuildTarget();
     }
     throw new IllegalStateException();
   }
@@ -334,6 +382,15 @@ public class FinishedBuildingRequest implements org.apache.thrift.TBase<Finished
         return false;
     }
 
+    boolean this_present_buildTarget = true && this.isSetBuildTarget();
+    boolean that_present_buildTarget = true && that.isSetBuildTarget();
+    if (this_present_buildTarget || that_present_buildTarget) {
+      if (!(this_present_buildTarget && that_present_buildTarget))
+        return false;
+      if (!this.buildTarget.equals(that.buildTarget))
+        return false;
+    }
+
     return true;
   }
 
@@ -356,6 +413,11 @@ public class FinishedBuildingRequest implements org.apache.thrift.TBase<Finished
     if (present_stampedeId)
       list.add(stampedeId);
 
+    boolean present_buildTarget = true && (isSetBuildTarget());
+    list.add(present_buildTarget);
+    if (present_buildTarget)
+      list.add(buildTarget);
+
     return list.hashCode();
   }
 
@@ -397,6 +459,16 @@ public class FinishedBuildingRequest implements org.apache.thrift.TBase<Finished
         return lastComparison;
       }
     }
+    lastComparison = Boolean.valueOf(isSetBuildTarget()).compareTo(other.isSetBuildTarget());
+    if (lastComparison != 0) {
+      return lastComparison;
+    }
+    if (isSetBuildTarget()) {
+      lastComparison = org.apache.thrift.TBaseHelper.compareTo(this.buildTarget, other.buildTarget);
+      if (lastComparison != 0) {
+        return lastComparison;
+      }
+    }
     return 0;
   }
 
@@ -442,6 +514,16 @@ public class FinishedBuildingRequest implements org.apache.thrift.TBase<Finished
       }
       first = false;
     }
+    if (isSetBuildTarget()) {
+      if (!first) sb.append(", ");
+      sb.append("buildTarget:");
+      if (this.buildTarget == null) {
+        sb.append("null");
+      } else {
+        sb.append(this.buildTarget);
+      }
+      first = false;
+    }
     sb.append(")");
     return sb.toString();
   }
@@ -515,6 +597,14 @@ public class FinishedBuildingRequest implements org.apache.thrift.TBase<Finished
               org.apache.thrift.protocol.TProtocolUtil.skip(iprot, schemeField.type);
             }
             break;
+          case 4: // BUILD_TARGET
+            if (schemeField.type == org.apache.thrift.protocol.TType.STRING) {
+              struct.buildTarget = iprot.readString();
+              struct.setBuildTargetIsSet(true);
+            } else { 
+              org.apache.thrift.protocol.TProtocolUtil.skip(iprot, schemeField.type);
+            }
+            break;
           default:
             org.apache.thrift.protocol.TProtocolUtil.skip(iprot, schemeField.type);
         }
@@ -549,6 +639,13 @@ public class FinishedBuildingRequest implements org.apache.thrift.TBase<Finished
           oprot.writeFieldEnd();
         }
       }
+      if (struct.buildTarget != null) {
+        if (struct.isSetBuildTarget()) {
+          oprot.writeFieldBegin(BUILD_TARGET_FIELD_DESC);
+          oprot.writeString(struct.buildTarget);
+          oprot.writeFieldEnd();
+        }
+      }
       oprot.writeFieldStop();
       oprot.writeStructEnd();
     }
@@ -576,7 +673,10 @@ public class FinishedBuildingRequest implements org.apache.thrift.TBase<Finished
       if (struct.isSetStampedeId()) {
         optionals.set(2);
       }
-      oprot.writeBitSet(optionals, 3);
+      if (struct.isSetBuildTarget()) {
+        optionals.set(3);
+      }
+      oprot.writeBitSet(optionals, 4);
       if (struct.isSetMinionId()) {
         oprot.writeString(struct.minionId);
       }
@@ -586,12 +686,15 @@ public class FinishedBuildingRequest implements org.apache.thrift.TBase<Finished
       if (struct.isSetStampedeId()) {
         struct.stampedeId.write(oprot);
       }
+      if (struct.isSetBuildTarget()) {
+        oprot.writeString(struct.buildTarget);
+      }
     }
 
     @Override
     public void read(org.apache.thrift.protocol.TProtocol prot, FinishedBuildingRequest struct) throws org.apache.thrift.TException {
       TTupleProtocol iprot = (TTupleProtocol) prot;
-      BitSet incoming = iprot.readBitSet(3);
+      BitSet incoming = iprot.readBitSet(4);
       if (incoming.get(0)) {
         struct.minionId = iprot.readString();
         struct.setMinionIdIsSet(true);
@@ -605,6 +708,10 @@ public class FinishedBuildingRequest implements org.apache.thrift.TBase<Finished
         struct.stampedeId.read(iprot);
         struct.setStampedeIdIsSet(true);
       }
+      if (incoming.get(3)) {
+        struct.buildTarget = iprot.readString();
+        struct.setBuildTargetIsSet(true);
+      }
     }
   }
 
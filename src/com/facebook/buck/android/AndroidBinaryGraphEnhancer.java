@@ -545,7 +545,8 @@ public class AndroidBinaryGraphEnhancer {
             dexForUberRDotJava,
             dxExecutorService,
             xzCompressionLevel,
-            dxConfig.getDxMaxHeapSize());
+            dxConfig.getDxMaxHeapSize(),
+            dxConfig.shouldReusePreviousSecondaryDexLayout());
     ruleResolver.addToIndex(preDexMerge);
 
     return preDexMerge;
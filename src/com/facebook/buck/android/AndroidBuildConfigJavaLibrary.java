@@ -67,6 +67,7 @@ class AndroidBuildConfigJavaLibrary extends DefaultJavaLibrary implements Androi
             androidBuildConfig.getSourcePathToOutput()),
         abiInputs,
         HasJavaAbi.getClassAbiJar(params.getBuildTarget()),
+        /* sourceAbiVerifications */ ImmutableSortedSet.of(),
         /* trackClassUsage */ javacOptions.trackClassUsage(),
         new JavacToJarStepFactory(javac, javacOptions, JavacOptionsAmender.IDENTITY),
         /* resourcesRoot */ Optional.empty(),
@@ -81,6 +81,7 @@ public class AndroidLibrary extends DefaultJavaLibrary implements AndroidPackage
       ImmutableSortedSet<SourcePath> compileTimeClasspathSourcePaths,
       ImmutableSortedSet<SourcePath> abiInputs,
       BuildTarget abiJar,
+      ImmutableSortedSet<BuildTarget> sourceAbiVerifications,
       JavacOptions javacOptions,
       boolean trackClassUsage,
       CompileToJarStepFactory compileStepFactory,
@@ -103,6 +104,7 @@ public class AndroidLibrary extends DefaultJavaLibrary implements AndroidPackage
         compileTimeClasspathSourcePaths,
         abiInputs,
         abiJar,
+        sourceAbiVerifications,
         trackClassUsage,
         compileStepFactory,
         resourcesRoot,
@@ -186,6 +188,7 @@ public class AndroidLibrary extends DefaultJavaLibrary implements AndroidPackage
             getFinalCompileTimeClasspathSourcePaths(),
             getAbiInputs(),
             getAbiJar(),
+            getSourceAbiVerifications(),
             Preconditions.checkNotNull(javacOptions),
             getAndroidCompiler().trackClassUsage(Preconditions.checkNotNull(javacOptions)),
             getCompileStepFactory(),
@@ -69,6 +69,7 @@ public class AndroidPrebuiltAar extends AndroidLibrary
         /* compileTimeClasspathDeps */ ImmutableSortedSet.of(prebuiltJar.getSourcePathToOutput()),
         abiInputs,
         HasJavaAbi.getClassAbiJar(androidLibraryParams.getBuildTarget()),
+        /* sourceAbiVerifications */ ImmutableSortedSet.of(),
         javacOptions,
         /* trackClassUsage */ false,
         compileStepFactory,
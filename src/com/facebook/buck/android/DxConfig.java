@@ -36,4 +36,13 @@ public class DxConfig {
   public Optional<Integer> getDxMaxThreadCount() {
     return delegate.getInteger("dx", "max_threads");
   }
+
+  /**
+   * @return whether pre-dex merging should pack secondary dexes the way the previous build in
+   *     buck-out did. This isn't hermetic: the layout of the secondary dexes then depends on the
+   *     build history, which is not part of the rule key.
+   */
+  public boolean shouldReusePreviousSecondaryDexLayout() {
+    return delegate.getBooleanValue("dx", "reuse_previous_secondary_dex_layout", false);
+  }
 }
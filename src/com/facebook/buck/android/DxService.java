@@ -0,0 +1,171 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.android;
+
+import com.facebook.buck.event.BuckEventBus;
+import com.facebook.buck.event.PerfEventId;
+import com.facebook.buck.event.SimplePerfEvent;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Runs dx inside the daemon for the {@link DxStep}s which dex in-process, which is how pre-dexing
+ * and pre-dexed merging dex. All of a build's requests, and those of the builds after it, share
+ * the dexer's loaded and JIT-compiled classes instead of each warming up a new dx process.
+ *
+ * <p>Dexing takes memory in proportion to the size of its inputs, so rather than letting every
+ * build thread dex at once, requests are admitted in order while the memory they're estimated to
+ * take fits in a share of the daemon's heap. A request is always admitted when nothing else is
+ * dexing, so that requests which are larger than the budget still run. The time each request
+ * waited and dexed for is reported on the event bus.
+ */
+@ThreadSafe
+public class DxService {
+
+  /** Roughly how many bytes of heap dx takes for every byte of the (compressed) files it dexes. */
+  private static final long HEAP_BYTES_PER_INPUT_BYTE = 10;
+
+  private static final PerfEventId DX_EVENT_ID = PerfEventId.of("dx_in_process");
+
+  private static final DxService INSTANCE =
+      new DxService(Runtime.getRuntime().maxMemory() / 4, DxService::runDexer);
+
+  /** Runs a single dx invocation. */
+  interface Dexer {
+    Result run(ImmutableList<String> args, PrintStream stdout, PrintStream stderr)
+        throws IOException;
+  }
+
+  private final long heapBudgetBytes;
+  private final Dexer dexer;
+
+  @GuardedBy("this")
+  private final Deque<Object> waitingRequests = new ArrayDeque<>();
+
+  @GuardedBy("this")
+  private long admittedHeapBytes = 0;
+
+  @GuardedBy("this")
+  private int runningRequests = 0;
+
+  @VisibleForTesting
+  DxService(long heapBudgetBytes, Dexer dexer) {
+    this.heapBudgetBytes = heapBudgetBytes;
+    this.dexer = dexer;
+  }
+
+  public static DxService getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Dexes with the given arguments once there's enough memory to, waiting for other requests to
+   * finish if need be.
+   *
+   * @param args the arguments of {@code dx --dex}, without these two.
+   * @param inputSizeBytes the total size of the files being dexed.
+   */
+  public Result dex(
+      BuckEventBus eventBus,
+      ImmutableList<String> args,
+      long inputSizeBytes,
+      PrintStream stdout,
+      PrintStream stderr)
+      throws InterruptedException, IOException {
+    long heapBytes = inputSizeBytes * HEAP_BYTES_PER_INPUT_BYTE;
+    try (SimplePerfEvent.Scope scope =
+        SimplePerfEvent.scope(eventBus, DX_EVENT_ID, "input_size_bytes", inputSizeBytes)) {
+      long waitStartNanos = System.nanoTime();
+      admit(heapBytes);
+      scope.appendFinishedInfo(
+          "wait_millis", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - waitStartNanos));
+      try {
+        Result result = dexer.run(args, stdout, stderr);
+        scope.appendFinishedInfo("exit_code", result.getExitCode());
+        return result;
+      } finally {
+        release(heapBytes);
+      }
+    }
+  }
+
+  private synchronized void admit(long heapBytes) throws InterruptedException {
+    Object request = new Object();
+    waitingRequests.add(request);
+    try {
+      while (waitingRequests.peek() != request
+          || (runningRequests > 0 && admittedHeapBytes + heapBytes > heapBudgetBytes)) {
+        wait();
+      }
+    } finally {
+      waitingRequests.remove(request);
+      // Whichever request is next in line may now be admitted, or may have to stop waiting.
+      notifyAll();
+    }
+    runningRequests++;
+    admittedHeapBytes += heapBytes;
+  }
+
+  private synchronized void release(long heapBytes) {
+    runningRequests--;
+    admittedHeapBytes -= heapBytes;
+    notifyAll();
+  }
+
+  private static Result runDexer(
+      ImmutableList<String> args, PrintStream stdout, PrintStream stderr) throws IOException {
+    com.android.dx.command.dexer.DxContext dxContext =
+        new com.android.dx.command.dexer.DxContext(stdout, stderr);
+    com.android.dx.command.dexer.Main.Arguments arguments =
+        new com.android.dx.command.dexer.Main.Arguments();
+    com.android.dx.command.dexer.Main dexer = new com.android.dx.command.dexer.Main(dxContext);
+    arguments.parseCommandLine(args.toArray(new String[args.size()]), dxContext);
+    int exitCode = dexer.run(arguments);
+    return new Result(
+        exitCode,
+        exitCode == 0 ? Optional.ofNullable(dexer.getReferencedResourceNames()) : Optional.empty());
+  }
+
+  /** The outcome of a dx invocation. */
+  public static class Result {
+    private final int exitCode;
+    private final Optional<Collection<String>> referencedResourceNames;
+
+    Result(int exitCode, Optional<Collection<String>> referencedResourceNames) {
+      this.exitCode = exitCode;
+      this.referencedResourceNames = referencedResourceNames;
+    }
+
+    public int getExitCode() {
+      return exitCode;
+    }
+
+    /** @return the names of the resources the dexed classes reference, if dexing succeeded. */
+    public Optional<Collection<String>> getReferencedResourceNames() {
+      return referencedResourceNames;
+    }
+  }
+}
@@ -31,11 +31,13 @@ import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Collection;
 import java.util.EnumSet;
 import java.util.Optional;
 import java.util.Set;
+import java.util.stream.Stream;
 import javax.annotation.Nullable;
 
 public class DxStep extends ShellStep {
@@ -182,7 +184,7 @@ public class DxStep extends ShellStep {
     }
   }
 
-  private int executeInProcess(ExecutionContext context) {
+  private int executeInProcess(ExecutionContext context) throws InterruptedException {
     ImmutableList<String> argv = getShellCommandInternal(context);
 
     // The first arguments should be ".../dx --dex" ("...\dx.bat --dex on Windows).  Strip them off
@@ -195,27 +197,51 @@ public class DxStep extends ShellStep {
     ByteArrayOutputStream stderr = new ByteArrayOutputStream();
     PrintStream stderrStream = new PrintStream(stderr);
     try {
-      com.android.dx.command.dexer.DxContext dxContext =
-          new com.android.dx.command.dexer.DxContext(context.getStdOut(), stderrStream);
-      com.android.dx.command.dexer.Main.Arguments arguments =
-          new com.android.dx.command.dexer.Main.Arguments();
-      com.android.dx.command.dexer.Main dexer = new com.android.dx.command.dexer.Main(dxContext);
-      arguments.parseCommandLine(args.toArray(new String[args.size()]), dxContext);
-      int returncode = dexer.run(arguments);
+      DxService.Result result =
+          DxService.getInstance()
+              .dex(
+                  context.getBuckEventBus(),
+                  args,
+                  getInputSizeBytes(),
+                  context.getStdOut(),
+                  stderrStream);
       String stdErrOutput = stderr.toString();
       if (!stdErrOutput.isEmpty()) {
         context.postEvent(ConsoleEvent.warning("%s", stdErrOutput));
       }
-      if (returncode == 0) {
-        resourcesReferencedInCode = dexer.getReferencedResourceNames();
-      }
-      return returncode;
+      resourcesReferencedInCode = result.getReferencedResourceNames().orElse(null);
+      return result.getExitCode();
     } catch (IOException e) {
       e.printStackTrace(context.getStdErr());
       return 1;
     }
   }
 
+  /** @return the total size of the files to dex, which tells how much memory dexing takes. */
+  private long getInputSizeBytes() throws IOException {
+    long size = 0;
+    for (Path fileToDex : filesToDex) {
+      Path path = filesystem.resolve(fileToDex);
+      if (Files.isDirectory(path)) {
+        try (Stream<Path> files = Files.walk(path)) {
+          size += files.filter(Files::isRegularFile).mapToLong(DxStep::getFileSize).sum();
+        }
+      } else {
+        size += getFileSize(path);
+      }
+    }
+    return size;
+  }
+
+  private static long getFileSize(Path path) {
+    try {
+      return Files.size(path);
+    } catch (IOException e) {
+      // Let dx report missing inputs.
+      return 0;
+    }
+  }
+
   @Override
   protected boolean shouldPrintStderr(Verbosity verbosity) {
     return verbosity.shouldPrintSelectCommandOutput();
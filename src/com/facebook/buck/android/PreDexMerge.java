@@ -17,6 +17,7 @@
 package com.facebook.buck.android;
 
 import com.facebook.buck.android.PreDexMerge.BuildOutput;
+import com.facebook.buck.log.Logger;
 import com.facebook.buck.model.BuildTargets;
 import com.facebook.buck.rules.AbstractBuildRule;
 import com.facebook.buck.rules.AddToRuleKey;
@@ -39,6 +40,7 @@ import com.facebook.buck.util.MoreCollectors;
 import com.facebook.buck.util.sha1.Sha1HashCode;
 import com.google.common.base.Function;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Splitter;
 import com.google.common.base.Suppliers;
 import com.google.common.collect.FluentIterable;
 import com.google.common.collect.HashMultimap;
@@ -54,8 +56,10 @@ import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.AbstractMap;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -82,6 +86,8 @@ import javax.annotation.Nullable;
  */
 public class PreDexMerge extends AbstractBuildRule implements InitializableFromDisk<BuildOutput> {
 
+  private static final Logger LOG = Logger.get(PreDexMerge.class);
+
   /** Options to use with {@link DxStep} when merging pre-dexed files. */
   private static final EnumSet<DxStep.Option> DX_MERGE_OPTIONS =
       EnumSet.of(
@@ -101,6 +107,7 @@ public class PreDexMerge extends AbstractBuildRule implements InitializableFromD
   private final BuildOutputInitializer<BuildOutput> buildOutputInitializer;
   private final Optional<Integer> xzCompressionLevel;
   private final Optional<String> dxMaxHeapSize;
+  @AddToRuleKey private final boolean reusePreviousSecondaryDexLayout;
 
   public PreDexMerge(
       BuildRuleParams params,
@@ -111,7 +118,8 @@ public class PreDexMerge extends AbstractBuildRule implements InitializableFromD
       DexProducedFromJavaLibrary dexForUberRDotJava,
       ListeningExecutorService dxExecutorService,
       Optional<Integer> xzCompressionLevel,
-      Optional<String> dxMaxHeapSize) {
+      Optional<String> dxMaxHeapSize,
+      boolean reusePreviousSecondaryDexLayout) {
     super(params);
     this.primaryDexPath = primaryDexPath;
     this.dexSplitMode = dexSplitMode;
@@ -122,6 +130,7 @@ public class PreDexMerge extends AbstractBuildRule implements InitializableFromD
     this.buildOutputInitializer = new BuildOutputInitializer<>(params.getBuildTarget(), this);
     this.xzCompressionLevel = xzCompressionLevel;
     this.dxMaxHeapSize = dxMaxHeapSize;
+    this.reusePreviousSecondaryDexLayout = reusePreviousSecondaryDexLayout;
   }
 
   @Override
@@ -150,6 +159,7 @@ public class PreDexMerge extends AbstractBuildRule implements InitializableFromD
     private final Path additionalJarfilesDir;
     private final Path additionalJarfilesSubdir;
     private final Path metadataFile;
+    private final Path secondaryDexGroupsFile;
 
     private SplitDexPaths() {
       Path workDir =
@@ -166,6 +176,7 @@ public class PreDexMerge extends AbstractBuildRule implements InitializableFromD
       additionalJarfilesDir = workDir.resolve("additional_dexes");
       additionalJarfilesSubdir = additionalJarfilesDir.resolve("assets");
       metadataFile = metadataSubdir.resolve("metadata.txt");
+      secondaryDexGroupsFile = workDir.resolve("secondary_dex_groups.txt");
     }
   }
 
@@ -220,6 +231,7 @@ public class PreDexMerge extends AbstractBuildRule implements InitializableFromD
     buildableContext.recordArtifact(paths.metadataSubdir);
     buildableContext.recordArtifact(paths.successDir);
     buildableContext.recordArtifact(paths.additionalJarfilesSubdir);
+    buildableContext.recordArtifact(paths.secondaryDexGroupsFile);
 
     PreDexedFilesSorter preDexedFilesSorter =
         new PreDexedFilesSorter(
@@ -233,7 +245,10 @@ public class PreDexMerge extends AbstractBuildRule implements InitializableFromD
             dexSplitMode.getLinearAllocHardLimit(),
             dexSplitMode.getDexStore(),
             paths.jarfilesSubdir,
-            paths.additionalJarfilesSubdir);
+            paths.additionalJarfilesSubdir,
+            reusePreviousSecondaryDexLayout
+                ? readSecondaryDexGroups(paths.secondaryDexGroupsFile)
+                : ImmutableMap.of());
     final ImmutableMap<String, PreDexedFilesSorter.Result> sortResults =
         preDexedFilesSorter.sortIntoPrimaryAndSecondaryDexes(getProjectFilesystem(), steps);
 
@@ -288,6 +303,69 @@ public class PreDexMerge extends AbstractBuildRule implements InitializableFromD
     }
 
     addMetadataWriteStep(rootApkModuleResult, steps, paths.metadataFile);
+    addSecondaryDexGroupsWriteStep(sortResults.values(), steps, paths.secondaryDexGroupsFile);
+  }
+
+  /**
+   * Reads the secondary dex each pre-dexed library was packed into by the previous build, so that
+   * they can be packed the same way and only the secondary dexes whose libraries changed have to
+   * be merged again. This is only done when {@code [dx] reuse_previous_secondary_dex_layout} is
+   * set, as the layout then depends on what was built before rather than on the rule key alone.
+   *
+   * @return the secondary dex of each library, by store, or nothing if there was no previous build.
+   */
+  private ImmutableMap<String, ImmutableMap<Path, Integer>> readSecondaryDexGroups(
+      Path secondaryDexGroupsFile) {
+    Map<String, ImmutableMap.Builder<Path, Integer>> groups = new HashMap<>();
+    try {
+      if (!getProjectFilesystem().isFile(secondaryDexGroupsFile)) {
+        return ImmutableMap.of();
+      }
+      for (String line : getProjectFilesystem().readLines(secondaryDexGroupsFile)) {
+        List<String> parts = Splitter.on(' ').limit(3).splitToList(line);
+        if (parts.size() != 3) {
+          throw new IOException(String.format("Malformed line: %s", line));
+        }
+        groups
+            .computeIfAbsent(parts.get(0), store -> ImmutableMap.builder())
+            .put(Paths.get(parts.get(2)), Integer.parseUnsignedInt(parts.get(1)));
+      }
+      return groups
+          .entrySet()
+          .stream()
+          .collect(MoreCollectors.toImmutableMap(Map.Entry::getKey, e -> e.getValue().build()));
+    } catch (IOException | IllegalArgumentException e) {
+      // The previous packing is only a hint, so just pack from scratch.
+      LOG.warn(e, "Could not read the secondary dexes of the previous build of %s.", this);
+      return ImmutableMap.of();
+    }
+  }
+
+  private void addSecondaryDexGroupsWriteStep(
+      final Iterable<PreDexedFilesSorter.Result> results,
+      final ImmutableList.Builder<Step> steps,
+      final Path secondaryDexGroupsFile) {
+    steps.add(
+        new AbstractExecutionStep("write_secondary_dex_groups") {
+          @Override
+          public StepExecutionResult execute(ExecutionContext executionContext) {
+            List<String> lines = new ArrayList<>();
+            for (PreDexedFilesSorter.Result result : results) {
+              for (Map.Entry<Path, Integer> entry : result.secondaryDexGroups.entrySet()) {
+                lines.add(
+                    String.format(
+                        "%s %d %s", result.apkModule.getName(), entry.getValue(), entry.getKey()));
+              }
+            }
+            try {
+              getProjectFilesystem().writeLinesToPath(lines, secondaryDexGroupsFile);
+            } catch (IOException e) {
+              executionContext.logError(e, "Failed when writing the secondary dex groups.");
+              return StepExecutionResult.ERROR;
+            }
+            return StepExecutionResult.SUCCESS;
+          }
+        });
   }
 
   private void addMetadataWriteStep(
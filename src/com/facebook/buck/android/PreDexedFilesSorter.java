@@ -28,7 +28,6 @@ import com.facebook.buck.util.MoreCollectors;
 import com.facebook.buck.util.sha1.Sha1HashCode;
 import com.google.common.base.Charsets;
 import com.google.common.base.Preconditions;
-import com.google.common.collect.Collections2;
 import com.google.common.collect.FluentIterable;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
@@ -41,7 +40,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
@@ -60,6 +59,8 @@ public class PreDexedFilesSorter {
   private final DexStore dexStore;
   private final Path secondaryDexJarFilesDir;
   private final Path additionalDexJarFilesDir;
+  /** The secondary dex each secondary dex input was packed into by the previous build, by store. */
+  private final ImmutableMap<String, ImmutableMap<Path, Integer>> previousSecondaryDexGroups;
 
   /**
    * Directory under the project filesystem where this step may write temporary data. This directory
@@ -76,7 +77,8 @@ public class PreDexedFilesSorter {
       long dexWeightLimit,
       DexStore dexStore,
       Path secondaryDexJarFilesDir,
-      Path additionalDexJarFilesDir) {
+      Path additionalDexJarFilesDir,
+      ImmutableMap<String, ImmutableMap<Path, Integer>> previousSecondaryDexGroups) {
     this.rDotJavaDex = rDotJavaDex;
     this.dexFilesToMerge = dexFilesToMerge;
     this.primaryDexFilter = ClassNameFilter.fromConfiguration(primaryDexPatterns);
@@ -87,6 +89,7 @@ public class PreDexedFilesSorter {
     this.dexStore = dexStore;
     this.secondaryDexJarFilesDir = secondaryDexJarFilesDir;
     this.additionalDexJarFilesDir = additionalDexJarFilesDir;
+    this.previousSecondaryDexGroups = previousSecondaryDexGroups;
   }
 
   public ImmutableMap<String, Result> sortIntoPrimaryAndSecondaryDexes(
@@ -144,11 +147,9 @@ public class PreDexedFilesSorter {
   }
 
   public class DexStoreContents {
-    private List<List<DexWithClasses>> dexesContents = new ArrayList<>();
     private int primaryDexSize;
     private List<DexWithClasses> primaryDexContents;
-    private int currentDexSize;
-    private List<DexWithClasses> currentDexContents;
+    private List<DexWithClasses> secondaryDexContents;
 
     private final APKModule apkModule;
     private final ProjectFilesystem filesystem;
@@ -160,10 +161,9 @@ public class PreDexedFilesSorter {
       this.filesystem = filesystem;
       this.steps = steps;
       this.apkModule = apkModule;
-      currentDexSize = 0;
-      currentDexContents = new ArrayList<>();
       primaryDexSize = 0;
       primaryDexContents = new ArrayList<>();
+      secondaryDexContents = new ArrayList<>();
     }
 
     public void addPrimaryDex(DexWithClasses dexWithClasses) {
@@ -173,29 +173,90 @@ public class PreDexedFilesSorter {
     }
 
     public void addDex(DexWithClasses dexWithClasses) {
-      // If we're over the size threshold, start writing to a new dex
-      if (dexWithClasses.getWeightEstimate() + currentDexSize > dexWeightLimit) {
-        currentDexSize = 0;
-        currentDexContents = new ArrayList<>();
+      secondaryDexContents.add(dexWithClasses);
+      dexInputsHashes.put(dexWithClasses.getPathToDexFile(), dexWithClasses.getClassesHash());
+    }
+
+    /**
+     * Packs the secondary dexes into groups the way they were packed by the previous build, so
+     * that only the groups whose members changed have to be merged again. Dexes which were not part
+     * of the previous build go into the first group with room for them, or into new groups.
+     *
+     * @return the groups, or empty if the previous packing no longer fits within the weight limit
+     *     or left a group empty, in which case the dexes have to be packed from scratch.
+     */
+    private Optional<List<List<DexWithClasses>>> packLikePreviousBuild(
+        ImmutableMap<Path, Integer> previousGroups) {
+      if (previousGroups.isEmpty()) {
+        return Optional.empty();
+      }
+      int groupCount = Collections.max(previousGroups.values()) + 1;
+      if (groupCount > previousGroups.size()) {
+        return Optional.empty();
+      }
+      List<List<DexWithClasses>> groups = new ArrayList<>();
+      List<Long> groupWeights = new ArrayList<>();
+      for (int i = 0; i < groupCount; i++) {
+        groups.add(new ArrayList<>());
+        groupWeights.add(0L);
       }
 
-      // If this is the first class in the dex, initialize it with a canary and add it to the set of
-      // dexes.
-      if (currentDexContents.size() == 0) {
-        DexWithClasses canary =
-            createCanary(
-                filesystem, apkModule.getCanaryClassName(), dexesContents.size() + 1, steps);
-        currentDexSize += canary.getWeightEstimate();
-        currentDexContents.add(canary);
+      List<DexWithClasses> newDexes = new ArrayList<>();
+      for (DexWithClasses dexWithClasses : secondaryDexContents) {
+        Integer group = previousGroups.get(dexWithClasses.getPathToDexFile());
+        if (group == null) {
+          newDexes.add(dexWithClasses);
+          continue;
+        }
+        long weight = groupWeights.get(group) + dexWithClasses.getWeightEstimate();
+        if (weight > dexWeightLimit) {
+          return Optional.empty();
+        }
+        groups.get(group).add(dexWithClasses);
+        groupWeights.set(group, weight);
+      }
+      for (List<DexWithClasses> group : groups) {
+        if (group.isEmpty()) {
+          return Optional.empty();
+        }
+      }
 
-        dexesContents.add(currentDexContents);
-        dexInputsHashes.put(canary.getPathToDexFile(), canary.getClassesHash());
+      for (DexWithClasses dexWithClasses : newDexes) {
+        int group = 0;
+        while (group < groups.size()
+            && groupWeights.get(group) + dexWithClasses.getWeightEstimate() > dexWeightLimit) {
+          group++;
+        }
+        if (group == groups.size()) {
+          groups.add(new ArrayList<>());
+          groupWeights.add(0L);
+        }
+        groups.get(group).add(dexWithClasses);
+        groupWeights.set(group, groupWeights.get(group) + dexWithClasses.getWeightEstimate());
       }
+      return Optional.of(groups);
+    }
 
-      // Now add the contributions from the dexWithClasses entry.
-      currentDexContents.add(dexWithClasses);
-      dexInputsHashes.put(dexWithClasses.getPathToDexFile(), dexWithClasses.getClassesHash());
-      currentDexSize += dexWithClasses.getWeightEstimate();
+    /** Packs the secondary dexes, in order, into as few groups as the weight limit allows. */
+    private List<List<DexWithClasses>> packFromScratch() {
+      List<List<DexWithClasses>> groups = new ArrayList<>();
+      List<DexWithClasses> currentGroup = new ArrayList<>();
+      long currentGroupWeight = 0;
+      for (DexWithClasses dexWithClasses : secondaryDexContents) {
+        // If we're over the size threshold, start writing to a new dex
+        if (dexWithClasses.getWeightEstimate() + currentGroupWeight > dexWeightLimit
+            && !currentGroup.isEmpty()) {
+          groups.add(currentGroup);
+          currentGroup = new ArrayList<>();
+          currentGroupWeight = 0;
+        }
+        currentGroup.add(dexWithClasses);
+        currentGroupWeight += dexWithClasses.getWeightEstimate();
+      }
+      if (!currentGroup.isEmpty()) {
+        groups.add(currentGroup);
+      }
+      return groups;
     }
 
     Result getResult() {
@@ -203,11 +264,17 @@ public class PreDexedFilesSorter {
         throwErrorForPrimaryDexExceedsWeightLimit();
       }
 
+      List<List<DexWithClasses>> groups =
+          packLikePreviousBuild(
+                  previousSecondaryDexGroups.getOrDefault(apkModule.getName(), ImmutableMap.of()))
+              .orElseGet(this::packFromScratch);
+
       Map<Path, DexWithClasses> metadataTxtEntries = new HashMap<>();
       ImmutableMultimap.Builder<Path, Path> secondaryOutputToInputs = ImmutableMultimap.builder();
+      ImmutableMap.Builder<Path, Integer> secondaryDexGroups = ImmutableMap.builder();
       boolean isRootModule = apkModule.equals(apkModuleGraph.getRootAPKModule());
 
-      for (int index = 0; index < dexesContents.size(); index++) {
+      for (int index = 0; index < groups.size(); index++) {
         Path pathToSecondaryDex;
         if (isRootModule) {
           pathToSecondaryDex =
@@ -218,10 +285,18 @@ public class PreDexedFilesSorter {
                   .resolve(apkModule.getName())
                   .resolve(dexStore.fileNameForSecondary(apkModule.getName(), index));
         }
-        metadataTxtEntries.put(pathToSecondaryDex, dexesContents.get(index).get(0));
-        Collection<Path> dexContentPaths =
-            Collections2.transform(dexesContents.get(index), DexWithClasses::getPathToDexFile);
-        secondaryOutputToInputs.putAll(pathToSecondaryDex, dexContentPaths);
+
+        // Each secondary dex starts with a canary class.
+        DexWithClasses canary =
+            createCanary(filesystem, apkModule.getCanaryClassName(), index + 1, steps);
+        dexInputsHashes.put(canary.getPathToDexFile(), canary.getClassesHash());
+        metadataTxtEntries.put(pathToSecondaryDex, canary);
+        secondaryOutputToInputs.put(pathToSecondaryDex, canary.getPathToDexFile());
+
+        for (DexWithClasses dexWithClasses : groups.get(index)) {
+          secondaryOutputToInputs.put(pathToSecondaryDex, dexWithClasses.getPathToDexFile());
+          secondaryDexGroups.put(dexWithClasses.getPathToDexFile(), index);
+        }
       }
 
       ImmutableSet<Path> primaryDexInputs =
@@ -235,7 +310,8 @@ public class PreDexedFilesSorter {
           primaryDexInputs,
           secondaryOutputToInputs.build(),
           metadataTxtEntries,
-          dexInputsHashes.build());
+          dexInputsHashes.build(),
+          secondaryDexGroups.build());
     }
 
     private void throwErrorForPrimaryDexExceedsWeightLimit() {
@@ -324,18 +400,22 @@ public class PreDexedFilesSorter {
     public final Multimap<Path, Path> secondaryOutputToInputs;
     public final Map<Path, DexWithClasses> metadataTxtDexEntries;
     public final ImmutableMap<Path, Sha1HashCode> dexInputHashes;
+    /** The index of the secondary dex each secondary dex input was packed into. */
+    public final ImmutableMap<Path, Integer> secondaryDexGroups;
 
     public Result(
         APKModule apkModule,
         Set<Path> primaryDexInputs,
         Multimap<Path, Path> secondaryOutputToInputs,
         Map<Path, DexWithClasses> metadataTxtDexEntries,
-        final ImmutableMap<Path, Sha1HashCode> dexInputHashes) {
+        final ImmutableMap<Path, Sha1HashCode> dexInputHashes,
+        ImmutableMap<Path, Integer> secondaryDexGroups) {
       this.apkModule = apkModule;
       this.primaryDexInputs = primaryDexInputs;
       this.secondaryOutputToInputs = secondaryOutputToInputs;
       this.metadataTxtDexEntries = metadataTxtDexEntries;
       this.dexInputHashes = dexInputHashes;
+      this.secondaryDexGroups = secondaryDexGroups;
     }
   }
 }
@@ -20,6 +20,7 @@ import com.android.ddmlib.InstallException;
 import java.io.File;
 import java.nio.file.Path;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 public interface ExopackageDevice {
@@ -41,9 +42,28 @@ public interface ExopackageDevice {
 
   void installFile(Path targetDevicePath, Path source) throws Exception;
 
+  /**
+   * Installs several files at once, which lets implementations share the work that doesn't depend
+   * on the file.
+   *
+   * @param filesToInstall the absolute paths on the device to install to, mapped to the absolute
+   *     paths of the files to install.
+   */
+  default void installFiles(Map<Path, Path> filesToInstall) throws Exception {
+    for (Map.Entry<Path, Path> entry : filesToInstall.entrySet()) {
+      installFile(entry.getKey(), entry.getValue());
+    }
+  }
+
+  /** @return the contents of the file, or empty if it doesn't exist. */
+  Optional<String> readFile(String path) throws Exception;
+
   void mkDirP(String dirpath) throws Exception;
 
   String getProperty(String name) throws Exception;
 
   List<String> getDeviceAbis() throws Exception;
+
+  /** @return the serial number of the device, which identifies it across installs. */
+  String getSerialNumber();
 }
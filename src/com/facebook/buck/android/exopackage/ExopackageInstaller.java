@@ -54,7 +54,6 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -91,6 +90,7 @@ public class ExopackageInstaller {
   private final Path dataRoot;
 
   private final ExopackageInfo exopackageInfo;
+  private final ExopackageManifestCache manifestCache = ExopackageManifestCache.getInstance();
 
   /**
    * AdbInterface provides a way to interact with multiple devices as ExopackageDevices (rather than
@@ -265,12 +265,6 @@ public class ExopackageInstaller {
 
     private void installSecondaryDexFiles() throws Exception {
       final ImmutableMap<String, Path> hashToSources = getRequiredDexFiles();
-      final ImmutableSet<String> requiredHashes = hashToSources.keySet();
-      final ImmutableSet<String> presentHashes = prepareSecondaryDexDir(requiredHashes);
-      final Set<String> hashesToInstall = Sets.difference(requiredHashes, presentHashes);
-
-      Map<String, Path> filesToInstallByHash =
-          Maps.filterKeys(hashToSources, hashesToInstall::contains);
 
       // This is a bit gross.  It was a late addition.  Ideally, we could eliminate this, but
       // it wouldn't be terrible if we don't.  We store the dexed jars on the device
@@ -289,10 +283,13 @@ public class ExopackageInstaller {
               .replaceAll(
                   "secondary-(\\d+)\\.dex\\.jar (\\p{XDigit}{40}) ", "secondary-$2.dex.jar $2 ");
 
-      ImmutableMap<Path, Path> filesToInstall =
-          applyFilenameFormat(filesToInstallByHash, SECONDARY_DEX_DIR, "secondary-%s.dex.jar");
-      installFiles("secondary_dex", filesToInstall);
-      installMetadata(ImmutableMap.of(SECONDARY_DEX_DIR.resolve("metadata.txt"), metadataContents));
+      syncDirectory(
+          "secondary_dex",
+          SECONDARY_DEX_DIR,
+          DEX_FILE_PATTERN,
+          "secondary-%s.dex.jar",
+          hashToSources,
+          metadataContents);
     }
 
     private void installResourcesFiles() throws Exception {
@@ -309,18 +306,13 @@ public class ExopackageInstaller {
         hashToSourcesBuilder.put(hash, path);
       }
 
-      final ImmutableMap<String, Path> hashToSources = hashToSourcesBuilder.build();
-      final ImmutableSet<String> requiredHashes = hashToSources.keySet();
-      final ImmutableSet<String> presentHashes = prepareResourcesDir(requiredHashes);
-      final Set<String> hashesToInstall = Sets.difference(requiredHashes, presentHashes);
-
-      Map<String, Path> filesToInstallByHash =
-          Maps.filterKeys(hashToSources, hashesToInstall::contains);
-
-      ImmutableMap<Path, Path> filesToInstall =
-          applyFilenameFormat(filesToInstallByHash, RESOURCES_DIR, "%s.apk");
-      installFiles("resources", filesToInstall);
-      installMetadata(ImmutableMap.of(RESOURCES_DIR.resolve("metadata.txt"), metadataContent));
+      syncDirectory(
+          "resources",
+          RESOURCES_DIR,
+          RESOURCES_FILE_PATTERN,
+          "%s.apk",
+          hashToSourcesBuilder.build(),
+          metadataContent);
     }
 
     private void installNativeLibraryFiles() throws Exception {
@@ -353,17 +345,13 @@ public class ExopackageInstaller {
                             return String.format("%s native-%s.so", libname, hash);
                           }));
 
-      ImmutableSet<String> requiredHashes = libraries.keySet();
-      ImmutableSet<String> presentHashes = prepareNativeLibsDir(abi, requiredHashes);
-
-      Map<String, Path> filesToInstallByHash =
-          Maps.filterKeys(libraries, Predicates.not(presentHashes::contains));
-
-      Path abiDir = NATIVE_LIBS_DIR.resolve(abi);
-      ImmutableMap<Path, Path> filesToInstall =
-          applyFilenameFormat(filesToInstallByHash, abiDir, "native-%s.so");
-      installFiles("native_library", filesToInstall);
-      installMetadata(ImmutableMap.of(abiDir.resolve("metadata.txt"), metadataContents));
+      syncDirectory(
+          "native_library",
+          NATIVE_LIBS_DIR.resolve(abi),
+          NATIVE_LIB_PATTERN,
+          "native-%s.so",
+          libraries,
+          metadataContents);
     }
 
     private Optional<PackageInfo> getPackageInfo(final String packageName) throws Exception {
@@ -424,19 +412,77 @@ public class ExopackageInstaller {
       return builder.build();
     }
 
-    private ImmutableSet<String> prepareSecondaryDexDir(ImmutableSet<String> requiredHashes)
+    /**
+     * Makes a directory under the install root hold the files with the given hashes, named with
+     * {@code filenameFormat}, and the given metadata, pushing only the files which are missing.
+     *
+     * <p>If the directory's metadata on the device is the one we last installed there, the
+     * directory is known to hold the files we left in it, so it doesn't need to be listed, and
+     * nothing at all needs to be done if the metadata didn't change.
+     */
+    private void syncDirectory(
+        String filesType,
+        Path dirname,
+        Pattern filePattern,
+        String filenameFormat,
+        ImmutableMap<String, Path> hashToSources,
+        String metadataContents)
         throws Exception {
-      return prepareDirectory(SECONDARY_DEX_DIR, DEX_FILE_PATTERN, requiredHashes);
-    }
+      String dirPath = dataRoot.resolve(dirname).toString();
+      Path metadataPath = dirname.resolve("metadata.txt");
+      ImmutableSet<String> requiredHashes = hashToSources.keySet();
+      Optional<ExopackageManifestCache.DirectoryState> knownState =
+          getVerifiedDirectoryState(dirname);
+      if (knownState.isPresent() && knownState.get().getMetadata().equals(metadataContents)) {
+        LOG.debug("%s is up to date.", dirPath);
+        return;
+      }
 
-    private ImmutableSet<String> prepareNativeLibsDir(
-        String abi, ImmutableSet<String> requiredHashes) throws Exception {
-      return prepareDirectory(NATIVE_LIBS_DIR.resolve(abi), NATIVE_LIB_PATTERN, requiredHashes);
+      manifestCache.invalidate(device.getSerialNumber(), dirPath);
+      ImmutableSet<String> presentHashes;
+      if (knownState.isPresent()) {
+        ImmutableSet<String> knownHashes = knownState.get().getHashes();
+        presentHashes = Sets.intersection(knownHashes, requiredHashes).immutableCopy();
+        ImmutableSet.Builder<String> filesToDelete = ImmutableSet.builder();
+        filesToDelete.add(metadataPath.getFileName().toString());
+        for (String hash : Sets.difference(knownHashes, requiredHashes)) {
+          filesToDelete.add(String.format(filenameFormat, hash));
+        }
+        device.rmFiles(dirPath, filesToDelete.build());
+      } else {
+        presentHashes = prepareDirectory(dirname, filePattern, requiredHashes);
+      }
+
+      Map<String, Path> filesToInstallByHash =
+          Maps.filterKeys(hashToSources, Predicates.not(presentHashes::contains));
+      installFiles(filesType, applyFilenameFormat(filesToInstallByHash, dirname, filenameFormat));
+      installMetadata(ImmutableMap.of(metadataPath, metadataContents));
+      manifestCache.put(device.getSerialNumber(), dirPath, metadataContents, requiredHashes);
     }
 
-    private ImmutableSet<String> prepareResourcesDir(ImmutableSet<String> requiredHashes)
-        throws Exception {
-      return prepareDirectory(RESOURCES_DIR, RESOURCES_FILE_PATTERN, requiredHashes);
+    /**
+     * @return what we last installed to the directory, if the metadata on the device shows that
+     *     it's still there.
+     */
+    private Optional<ExopackageManifestCache.DirectoryState> getVerifiedDirectoryState(
+        Path dirname) throws Exception {
+      String dirPath = dataRoot.resolve(dirname).toString();
+      Optional<ExopackageManifestCache.DirectoryState> knownState =
+          manifestCache.get(device.getSerialNumber(), dirPath);
+      if (!knownState.isPresent()) {
+        return Optional.empty();
+      }
+      try (SimplePerfEvent.Scope ignored = SimplePerfEvent.scope(eventBus, "verify_" + dirname)) {
+        Optional<String> deviceMetadata =
+            device.readFile(dataRoot.resolve(dirname).resolve("metadata.txt").toString());
+        if (deviceMetadata.isPresent()
+            && deviceMetadata.get().equals(knownState.get().getMetadata())) {
+          return knownState;
+        }
+      }
+      LOG.debug("%s was modified since the last install.", dirPath);
+      manifestCache.invalidate(device.getSerialNumber(), dirPath);
+      return Optional.empty();
     }
 
     private ImmutableSet<String> prepareDirectory(
@@ -469,20 +515,21 @@ public class ExopackageInstaller {
 
     private void installFiles(String filesType, ImmutableMap<Path, Path> filesToInstall)
         throws Exception {
+      if (filesToInstall.isEmpty()) {
+        return;
+      }
+      ImmutableMap.Builder<Path, Path> absolutePaths = ImmutableMap.builder();
+      filesToInstall.forEach(
+          (devicePath, hostPath) ->
+              absolutePaths.put(dataRoot.resolve(devicePath), projectFilesystem.resolve(hostPath)));
       try (SimplePerfEvent.Scope ignored =
-              SimplePerfEvent.scope(eventBus, "multi_install_" + filesType);
+              SimplePerfEvent.scope(
+                  eventBus,
+                  PerfEventId.of("multi_install_" + filesType),
+                  "files",
+                  filesToInstall.size());
           AutoCloseable ignored1 = device.createForward()) {
-        filesToInstall.forEach(
-            (devicePath, hostPath) -> {
-              Path destination = dataRoot.resolve(devicePath);
-              Path source = projectFilesystem.resolve(hostPath);
-              try (SimplePerfEvent.Scope ignored2 =
-                  SimplePerfEvent.scope(eventBus, "install_file")) {
-                device.installFile(destination, source);
-              } catch (Exception e) {
-                throw new RuntimeException(e);
-              }
-            });
+        device.installFiles(absolutePaths.build());
       }
     }
 
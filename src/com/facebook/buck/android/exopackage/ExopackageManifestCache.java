@@ -0,0 +1,85 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.android.exopackage;
+
+import com.google.common.collect.ImmutableSet;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Remembers, across the installs run by the daemon, which files the {@link ExopackageInstaller}
+ * left in each exopackage directory of each device, along with the metadata it wrote there.
+ *
+ * <p>Exopackage directories only hold files named by their hashes, plus the metadata listing them,
+ * which is written last. So as long as a directory's metadata on the device still is what we wrote,
+ * its files are the ones we recorded, and finding out what has to be pushed takes reading the
+ * metadata rather than creating and listing the directory.
+ */
+@ThreadSafe
+public class ExopackageManifestCache {
+
+  private static final ExopackageManifestCache INSTANCE = new ExopackageManifestCache();
+
+  private final ConcurrentMap<String, DirectoryState> directories = new ConcurrentHashMap<>();
+
+  private ExopackageManifestCache() {}
+
+  public static ExopackageManifestCache getInstance() {
+    return INSTANCE;
+  }
+
+  /** @return what was last installed to the given directory of the device, if it's known. */
+  public Optional<DirectoryState> get(String serialNumber, String dirPath) {
+    return Optional.ofNullable(directories.get(getKey(serialNumber, dirPath)));
+  }
+
+  /** Records that the directory now holds exactly the given files and metadata. */
+  public void put(
+      String serialNumber, String dirPath, String metadata, ImmutableSet<String> hashes) {
+    directories.put(getKey(serialNumber, dirPath), new DirectoryState(metadata, hashes));
+  }
+
+  /** Forgets about the directory, before it's modified in a way which might not complete. */
+  public void invalidate(String serialNumber, String dirPath) {
+    directories.remove(getKey(serialNumber, dirPath));
+  }
+
+  private static String getKey(String serialNumber, String dirPath) {
+    return serialNumber + ":" + dirPath;
+  }
+
+  /** The files and metadata Buck installed to an exopackage directory. */
+  public static class DirectoryState {
+    private final String metadata;
+    private final ImmutableSet<String> hashes;
+
+    private DirectoryState(String metadata, ImmutableSet<String> hashes) {
+      this.metadata = metadata;
+      this.hashes = hashes;
+    }
+
+    public String getMetadata() {
+      return metadata;
+    }
+
+    public ImmutableSet<String> getHashes() {
+      return hashes;
+    }
+  }
+}
@@ -32,6 +32,8 @@ import com.google.common.base.Splitter;
 import com.google.common.base.Supplier;
 import com.google.common.base.Suppliers;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
 import com.google.common.io.Closer;
 import java.io.File;
 import java.io.IOException;
@@ -40,6 +42,7 @@ import java.net.Socket;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import javax.annotation.Nullable;
 
@@ -185,6 +188,36 @@ public class RealExopackageDevice implements ExopackageDevice {
 
   @Override
   public void installFile(final Path targetDevicePath, final Path source) throws Exception {
+    installFiles(ImmutableMap.of(targetDevicePath, source));
+  }
+
+  /**
+   * Receives each file through the agent, then makes all of them readable at once, rather than
+   * running a command for every file.
+   */
+  @Override
+  public void installFiles(Map<Path, Path> filesToInstall) throws Exception {
+    for (Map.Entry<Path, Path> entry : filesToInstall.entrySet()) {
+      receiveFile(entry.getKey(), entry.getValue());
+    }
+
+    // The standard Java libraries on Android always create new files un-readable by other users.
+    // We use the shell user or root to create these files, so we need to explicitly set the mode
+    // to allow the app to read them.  Ideally, the agent would do this automatically, but
+    // there's no easy way to do this in Java.  We can drop this if we drop support for the
+    // Java agent.
+    String commandPrefix = "chmod 644 ";
+    // Add a fudge factor for separators and error checking.
+    final int overhead = commandPrefix.length() + 100;
+    Iterable<String> targetFileNames = Iterables.transform(filesToInstall.keySet(), Path::toString);
+    for (List<String> chmodArgs : chunkArgs(targetFileNames, MAX_ADB_COMMAND_SIZE - overhead)) {
+      String command = commandPrefix + Joiner.on(' ').join(chmodArgs);
+      LOG.debug("Executing %s", command);
+      AdbHelper.executeCommandWithErrorChecking(device, command);
+    }
+  }
+
+  private void receiveFile(final Path targetDevicePath, final Path source) throws Exception {
     Preconditions.checkArgument(source.isAbsolute());
     Preconditions.checkArgument(targetDevicePath.isAbsolute());
     Closer closer = Closer.create();
@@ -269,13 +302,18 @@ public class RealExopackageDevice implements ExopackageDevice {
     if (shellException != null) {
       throw shellException;
     }
+  }
 
-    // The standard Java libraries on Android always create new files un-readable by other users.
-    // We use the shell user or root to create these files, so we need to explicitly set the mode
-    // to allow the app to read them.  Ideally, the agent would do this automatically, but
-    // there's no easy way to do this in Java.  We can drop this if we drop support for the
-    // Java agent.
-    AdbHelper.executeCommandWithErrorChecking(device, "chmod 644 " + targetFileName);
+  @Override
+  public Optional<String> readFile(String path) throws Exception {
+    try {
+      String contents =
+          AdbHelper.executeCommandWithErrorChecking(device, "cat " + path + " 2>/dev/null");
+      // Older versions of adb turn newlines into CRLFs.
+      return Optional.of(contents.replace("\r\n", "\n"));
+    } catch (AdbHelper.CommandFailedException e) {
+      return Optional.empty();
+    }
   }
 
   @Override
@@ -316,4 +354,9 @@ public class RealExopackageDevice implements ExopackageDevice {
 
     return abis.build();
   }
+
+  @Override
+  public String getSerialNumber() {
+    return device.getSerialNumber();
+  }
 }
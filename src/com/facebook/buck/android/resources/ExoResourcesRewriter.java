@@ -28,8 +28,11 @@ import com.google.common.io.ByteStreams;
 import java.io.ByteArrayInputStream;
 import java.io.Closeable;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -132,12 +135,7 @@ public class ExoResourcesRewriter {
       // Write the full (rearranged) resources to the exo resources.
       try (ResourcesZipBuilder zipBuilder = new ResourcesZipBuilder(exoResources)) {
         for (ZipEntry entry : apkZip.getEntries()) {
-          addEntry(
-              zipBuilder,
-              entry.getName(),
-              apkZip.getContent(entry.getName()),
-              entry.getMethod() == ZipEntry.STORED ? 0 : Deflater.BEST_COMPRESSION,
-              false);
+          apkZip.copyEntry(zipBuilder, entry.getName());
         }
       }
       // Then, slice out the resources needed for the primary apk.
@@ -155,13 +153,7 @@ public class ExoResourcesRewriter {
                 : Deflater.BEST_COMPRESSION,
             false);
         for (String path : RichStream.from(closure.files).sorted().toOnceIterable()) {
-          ZipEntry entry = apkZip.getEntry(path);
-          addEntry(
-              zipBuilder,
-              entry.getName(),
-              apkZip.getContent(entry.getName()),
-              entry.getMethod() == ZipEntry.STORED ? 0 : Deflater.BEST_COMPRESSION,
-              false);
+          apkZip.copyEntry(zipBuilder, path);
         }
       }
       return resMapping;
@@ -199,8 +191,6 @@ public class ExoResourcesRewriter {
       int compressionLevel,
       boolean isDirectory)
       throws IOException {
-    // TODO(cjhopman): for files that we don't already have in memory, we should use the builder's
-    // stream api.
     CRC32 crc32 = new CRC32();
     crc32.update(content);
     zipBuilder.addEntry(
@@ -212,11 +202,33 @@ public class ExoResourcesRewriter {
         isDirectory);
   }
 
+  private static void addEntry(
+      ResourcesZipBuilder zipBuilder, String name, ByteBuffer content, int compressionLevel)
+      throws IOException {
+    CRC32 crc32 = new CRC32();
+    crc32.update(ResChunk.slice(content, 0));
+    zipBuilder.addEntry(
+        new ByteBufferInputStream(ResChunk.slice(content, 0)),
+        content.limit(),
+        crc32.getValue(),
+        name,
+        compressionLevel,
+        false);
+  }
+
+  /**
+   * Holds only the apk's entries which are rewritten in memory: the resource table, which is mapped
+   * rather than read onto the heap, and the compiled xml files. Every other entry is streamed from
+   * the apk when it's copied.
+   */
   private static class ApkZip implements Closeable, UsedResourcesFinder.ApkContentProvider {
+    private static final String RESOURCES_ARSC = "resources.arsc";
+
     private final ZipFile zipFile;
     private final SortedMap<String, ZipEntry> entries;
     private final Map<String, byte[]> entryContents;
     private final Map<String, ResourcesXml> xmlEntries;
+    private final Supplier<ByteBuffer> resourceTableData;
     private final Supplier<ResourceTable> resourceTable;
 
     public ApkZip(Path inputPath) throws IOException {
@@ -227,8 +239,9 @@ public class ExoResourcesRewriter {
               .collect(MoreCollectors.toImmutableSortedMap(ZipEntry::getName, e -> e));
       this.entryContents = new HashMap<>();
       this.xmlEntries = new HashMap<>();
+      this.resourceTableData = Suppliers.memoize(this::mapResourceTable);
       this.resourceTable =
-          Suppliers.memoize(() -> ResourceTable.get(ResChunk.wrap(getContent("resources.arsc"))));
+          Suppliers.memoize(() -> ResourceTable.get(ResChunk.slice(resourceTableData.get(), 0)));
     }
 
     @Override
@@ -273,7 +286,23 @@ public class ExoResourcesRewriter {
           .collect(MoreCollectors.toImmutableList());
     }
 
-    byte[] getContent(String path) {
+    /** Copies an entry, with whatever rewrites were made to it, to the given zip. */
+    void copyEntry(ResourcesZipBuilder zipBuilder, String path) throws IOException {
+      ZipEntry entry = entries.get(path);
+      int compressionLevel = entry.getMethod() == ZipEntry.STORED ? 0 : Deflater.BEST_COMPRESSION;
+      if (path.equals(RESOURCES_ARSC)) {
+        addEntry(zipBuilder, path, resourceTableData.get(), compressionLevel);
+      } else if (entryContents.containsKey(path)) {
+        addEntry(zipBuilder, path, entryContents.get(path), compressionLevel, false);
+      } else {
+        try (InputStream stream = zipFile.getInputStream(entry)) {
+          zipBuilder.addEntry(
+              stream, entry.getSize(), entry.getCrc(), path, compressionLevel, false);
+        }
+      }
+    }
+
+    private byte[] getContent(String path) {
       return entryContents.computeIfAbsent(path, this::extractContent);
     }
 
@@ -285,8 +314,54 @@ public class ExoResourcesRewriter {
       }
     }
 
+    private ByteBuffer mapResourceTable() {
+      try {
+        Path arscFile = Files.createTempFile("resources", ".arsc");
+        try {
+          try (InputStream stream = zipFile.getInputStream(entries.get(RESOURCES_ARSC))) {
+            Files.copy(stream, arscFile, StandardCopyOption.REPLACE_EXISTING);
+          }
+          return ResChunk.map(arscFile);
+        } finally {
+          // Where a mapped file can be deleted, the mapping stays valid once it's gone.
+          if (!arscFile.toFile().delete()) {
+            arscFile.toFile().deleteOnExit();
+          }
+        }
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+
     private ResourcesXml extractXml(String path) {
       return ResourcesXml.get(ResChunk.wrap(getContent(path)));
     }
   }
+
+  /** Reads a buffer from its position to its limit, without copying it. */
+  private static class ByteBufferInputStream extends InputStream {
+    private final ByteBuffer buffer;
+
+    ByteBufferInputStream(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    @Override
+    public int read() {
+      return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) {
+      if (length == 0) {
+        return 0;
+      }
+      if (!buffer.hasRemaining()) {
+        return -1;
+      }
+      int read = Math.min(length, buffer.remaining());
+      buffer.get(bytes, offset, read);
+      return read;
+    }
+  }
 }
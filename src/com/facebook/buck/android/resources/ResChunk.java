@@ -18,9 +18,12 @@ package com.facebook.buck.android.resources;
 
 import com.google.common.base.Preconditions;
 import com.google.common.primitives.Shorts;
+import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.util.Arrays;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 
 /**
  * ResChunk is the base of most structures in Android's .arsc and compiled .xml files. It consists
@@ -131,9 +134,16 @@ public abstract class ResChunk {
   }
 
   // These are some utilities used widely by subclasses for dealing with ByteBuffers.
+  // Chunks may be views of a memory-mapped file rather than of an array, so these never rely on
+  // the buffers having one.
   static ByteBuffer copy(ByteBuffer buf) {
-    return wrap(
-        Arrays.copyOfRange(buf.array(), buf.arrayOffset(), buf.arrayOffset() + buf.limit()));
+    return wrap(getBytes(buf, 0, buf.limit()));
+  }
+
+  static byte[] getBytes(ByteBuffer buf, int offset, int length) {
+    byte[] data = new byte[length];
+    slice(buf, offset, length).get(data);
+    return data;
   }
 
   public static ByteBuffer wrap(byte[] data) {
@@ -142,6 +152,20 @@ public abstract class ResChunk {
     return buf;
   }
 
+  /**
+   * Maps a file into memory, as {@link #wrap(byte[])} does for an array. The mapping is private,
+   * so chunks can be rewritten in place without modifying the file, and only the pages which are
+   * written to take up memory of their own.
+   */
+  public static ByteBuffer map(Path file) throws IOException {
+    try (FileChannel channel =
+        FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      ByteBuffer buf = channel.map(FileChannel.MapMode.PRIVATE, 0, channel.size());
+      buf.order(ByteOrder.LITTLE_ENDIAN);
+      return buf;
+    }
+  }
+
   public static ByteBuffer slice(ByteBuffer map, int offset) {
     ByteBuffer result = map.duplicate();
     result.position(offset);
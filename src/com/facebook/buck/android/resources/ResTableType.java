@@ -63,7 +63,7 @@ public class ResTableType extends ResChunk {
         entryOffsets.putInt(i * 4, currentOffset);
         int dataSize = type.getEntrySizeAtOffset(offset);
         currentOffset += dataSize;
-        output.write(type.entryData.array(), type.entryData.arrayOffset() + offset, dataSize);
+        output.write(getBytes(type.entryData, offset, dataSize), 0, dataSize);
       }
     }
 
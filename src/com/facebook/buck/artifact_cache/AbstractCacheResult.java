@@ -87,6 +87,12 @@ abstract class AbstractCacheResult {
     return cacheSource().get();
   }
 
+  public ArtifactCacheMode getCacheMode() {
+    Preconditions.checkState(
+        getType() == CacheResultType.HIT || getType() == CacheResultType.ERROR);
+    return cacheMode().get();
+  }
+
   public String getCacheError() {
     Preconditions.checkState(getType() == CacheResultType.ERROR);
     return cacheError().get();
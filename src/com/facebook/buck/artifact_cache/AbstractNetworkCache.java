@@ -24,12 +24,15 @@ import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.log.Logger;
 import com.facebook.buck.rules.RuleKey;
 import com.facebook.buck.slb.HttpService;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Sets;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Path;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.regex.Matcher;
@@ -72,6 +75,42 @@ public abstract class AbstractNetworkCache implements ArtifactCache {
       RuleKey ruleKey, LazyPath output, final HttpArtifactCacheEvent.Finished.Builder eventBuilder)
       throws IOException;
 
+  /**
+   * Fetches an artifact, handing its contents to {@code consumer}. Implementations which can should
+   * override this to consume the artifact as it is downloaded, by default it is fetched to {@code
+   * output} first.
+   */
+  protected CacheResult fetchImpl(
+      RuleKey ruleKey,
+      LazyPath output,
+      ArtifactPayloadConsumer consumer,
+      HttpArtifactCacheEvent.Finished.Builder eventBuilder)
+      throws IOException {
+    CacheResult result = fetchImpl(ruleKey, output, eventBuilder);
+    if (result.getType().isSuccess()) {
+      try (InputStream payload = projectFilesystem.newFileInputStream(output.get())) {
+        consumer.consume(result.getMetadata(), payload);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Fetches several artifacts, by default one request at a time. Implementations whose protocol
+   * supports it should override this to fetch them all in a single round trip.
+   */
+  protected ImmutableMap<RuleKey, CacheResult> multiFetchImpl(
+      ImmutableMap<RuleKey, LazyPath> requests,
+      ImmutableMap<RuleKey, HttpArtifactCacheEvent.Finished.Builder> eventBuilders)
+      throws IOException {
+    ImmutableMap.Builder<RuleKey, CacheResult> results = ImmutableMap.builder();
+    for (Map.Entry<RuleKey, LazyPath> request : requests.entrySet()) {
+      RuleKey ruleKey = request.getKey();
+      results.put(ruleKey, fetchImpl(ruleKey, request.getValue(), eventBuilders.get(ruleKey)));
+    }
+    return results.build();
+  }
+
   protected abstract void storeImpl(
       ArtifactInfo info,
       final Path file,
@@ -102,6 +141,90 @@ public abstract class AbstractNetworkCache implements ArtifactCache {
     }
   }
 
+  @Override
+  public CacheResult fetch(RuleKey ruleKey, LazyPath output, ArtifactPayloadConsumer consumer)
+      throws IOException {
+    HttpArtifactCacheEvent.Started startedEvent =
+        HttpArtifactCacheEvent.newFetchStartedEvent(ruleKey);
+    buckEventBus.post(startedEvent);
+    HttpArtifactCacheEvent.Finished.Builder eventBuilder =
+        HttpArtifactCacheEvent.newFinishedEventBuilder(startedEvent);
+    eventBuilder.getFetchBuilder().setRequestedRuleKey(ruleKey);
+
+    // Failures of the consumer are not cache failures, so they are told apart from those of the
+    // fetch and passed on to the caller.
+    ArtifactPayloadConsumer failureTrackingConsumer =
+        (metadata, payload) -> {
+          try {
+            consumer.consume(metadata, payload);
+          } catch (IOException e) {
+            throw new PayloadConsumerException(e);
+          }
+        };
+    try {
+      CacheResult result = fetchImpl(ruleKey, output, failureTrackingConsumer, eventBuilder);
+      eventBuilder.getFetchBuilder().setFetchResult(result);
+      buckEventBus.post(eventBuilder.build());
+      return result;
+    } catch (IOException e) {
+      String msg = String.format("%s: %s", e.getClass().getName(), e.getMessage());
+      reportFailure(e, "fetch(%s): %s", ruleKey, msg);
+      CacheResult cacheResult = CacheResult.error(name, mode, msg);
+      eventBuilder.getFetchBuilder().setFetchResult(cacheResult).setErrorMessage(msg);
+      buckEventBus.post(eventBuilder.build());
+      return cacheResult;
+    } catch (PayloadConsumerException e) {
+      String msg = String.format("%s: %s", e.getCause().getClass().getName(), e.getMessage());
+      eventBuilder
+          .getFetchBuilder()
+          .setFetchResult(CacheResult.error(name, mode, msg))
+          .setErrorMessage(msg);
+      buckEventBus.post(eventBuilder.build());
+      throw e.getCause();
+    }
+  }
+
+  @Override
+  public ImmutableMap<RuleKey, CacheResult> multiFetch(ImmutableMap<RuleKey, LazyPath> requests) {
+    ImmutableMap.Builder<RuleKey, HttpArtifactCacheEvent.Finished.Builder> eventBuilders =
+        ImmutableMap.builder();
+    for (RuleKey ruleKey : requests.keySet()) {
+      HttpArtifactCacheEvent.Started startedEvent =
+          HttpArtifactCacheEvent.newFetchStartedEvent(ruleKey);
+      buckEventBus.post(startedEvent);
+      HttpArtifactCacheEvent.Finished.Builder eventBuilder =
+          HttpArtifactCacheEvent.newFinishedEventBuilder(startedEvent);
+      eventBuilder.getFetchBuilder().setRequestedRuleKey(ruleKey);
+      eventBuilders.put(ruleKey, eventBuilder);
+    }
+    ImmutableMap<RuleKey, HttpArtifactCacheEvent.Finished.Builder> builders =
+        eventBuilders.build();
+
+    ImmutableMap<RuleKey, CacheResult> results;
+    try {
+      results = multiFetchImpl(requests, builders);
+    } catch (IOException e) {
+      String msg = String.format("%s: %s", e.getClass().getName(), e.getMessage());
+      reportFailure(e, "multiFetch(%s): %s", requests.keySet(), msg);
+      CacheResult cacheResult = CacheResult.error(name, mode, msg);
+      ImmutableMap.Builder<RuleKey, CacheResult> errors = ImmutableMap.builder();
+      for (Map.Entry<RuleKey, HttpArtifactCacheEvent.Finished.Builder> entry :
+          builders.entrySet()) {
+        entry.getValue().getFetchBuilder().setFetchResult(cacheResult).setErrorMessage(msg);
+        buckEventBus.post(entry.getValue().build());
+        errors.put(entry.getKey(), cacheResult);
+      }
+      return errors.build();
+    }
+
+    for (Map.Entry<RuleKey, HttpArtifactCacheEvent.Finished.Builder> entry :
+        builders.entrySet()) {
+      entry.getValue().getFetchBuilder().setFetchResult(results.get(entry.getKey()));
+      buckEventBus.post(entry.getValue().build());
+    }
+    return results;
+  }
+
   @Override
   public ListenableFuture<Void> store(final ArtifactInfo info, final BorrowablePath output) {
     if (!getCacheReadMode().isWritable()) {
@@ -217,4 +340,16 @@ public abstract class AbstractNetworkCache implements ArtifactCache {
       long artifactSizeBytes, Optional<Long> maxStoreSize) {
     return maxStoreSize.isPresent() && artifactSizeBytes > maxStoreSize.get();
   }
+
+  /** Wraps failures of the consumer of a fetch, so that they reach the caller of the fetch. */
+  private static class PayloadConsumerException extends RuntimeException {
+    private PayloadConsumerException(IOException cause) {
+      super(cause.getMessage(), cause);
+    }
+
+    @Override
+    public synchronized IOException getCause() {
+      return (IOException) super.getCause();
+    }
+  }
 }
@@ -19,7 +19,12 @@ package com.facebook.buck.artifact_cache;
 import com.facebook.buck.io.BorrowablePath;
 import com.facebook.buck.io.LazyPath;
 import com.facebook.buck.rules.RuleKey;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.util.concurrent.ListenableFuture;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Map;
 
 public interface ArtifactCache extends AutoCloseable {
   /**
@@ -34,6 +39,45 @@ public interface ArtifactCache extends AutoCloseable {
    */
   CacheResult fetch(RuleKey ruleKey, LazyPath output);
 
+  /**
+   * Fetch a cached artifact, keyed by ruleKey, handing its contents to {@code consumer}. Caches
+   * which download artifacts should override this to do so as the artifact is downloaded, instead
+   * of saving it to a file first. By default it is equivalent to calling {@link #fetch(RuleKey,
+   * LazyPath)} and consuming {@code output}.
+   *
+   * <p>Whatever {@code consumer} did must be discarded unless the fetch is some type of hit, as the
+   * checksum of an artifact may only be verified after it was consumed.
+   *
+   * @param output Path which caches that can't stream artifacts may store the artifact to.
+   * @throws IOException if {@code consumer} failed, cache failures are reported as results.
+   */
+  default CacheResult fetch(RuleKey ruleKey, LazyPath output, ArtifactPayloadConsumer consumer)
+      throws IOException {
+    CacheResult result = fetch(ruleKey, output);
+    if (result.getType().isSuccess()) {
+      try (InputStream payload = Files.newInputStream(output.get())) {
+        consumer.consume(result.getMetadata(), payload);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Fetch several cached artifacts at once, saving each of them to its corresponding output path.
+   * Caches which can batch lookups into fewer round trips should override this, by default it is
+   * equivalent to calling {@link #fetch(RuleKey, LazyPath)} for each request in turn.
+   *
+   * @param requests cache fetch keys, mapped to the path to store the corresponding artifact to.
+   * @return the result of the fetch of each rule key, in the iteration order of {@code requests}.
+   */
+  default ImmutableMap<RuleKey, CacheResult> multiFetch(ImmutableMap<RuleKey, LazyPath> requests) {
+    ImmutableMap.Builder<RuleKey, CacheResult> results = ImmutableMap.builder();
+    for (Map.Entry<RuleKey, LazyPath> request : requests.entrySet()) {
+      results.put(request.getKey(), fetch(request.getKey(), request.getValue()));
+    }
+    return results.build();
+  }
+
   /**
    * Store the artifact at path specified by output to cache, such that it can later be fetched
    * using ruleKey as the lookup key. If any internal errors occur, fail silently and continue
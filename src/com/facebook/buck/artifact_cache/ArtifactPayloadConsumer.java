@@ -0,0 +1,37 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.artifact_cache;
+
+import com.google.common.collect.ImmutableMap;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Consumes the contents of an artifact as it is fetched, see {@link ArtifactCache#fetch(
+ * com.facebook.buck.rules.RuleKey, com.facebook.buck.io.LazyPath, ArtifactPayloadConsumer)}.
+ */
+public interface ArtifactPayloadConsumer {
+  /**
+   * Exceptions thrown here are passed on to the caller of the fetch rather than reported as cache
+   * failures, so consumers should only throw for failures of their own, such as writing out the
+   * artifact, and leave it to the caller to tell whether the payload could be read.
+   *
+   * @param metadata the metadata the artifact was stored with.
+   * @param payload the contents of the artifact, which do not need to be read to their end.
+   */
+  void consume(ImmutableMap<String, String> metadata, InputStream payload) throws IOException;
+}
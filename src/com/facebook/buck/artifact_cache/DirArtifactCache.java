@@ -23,6 +23,7 @@ import com.facebook.buck.log.Logger;
 import com.facebook.buck.rules.RuleKey;
 import com.facebook.buck.util.DirectoryCleaner;
 import com.facebook.buck.util.DirectoryCleanerArgs;
+import com.facebook.buck.util.concurrent.MostExecutors;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Charsets;
 import com.google.common.collect.ComparisonChain;
@@ -32,6 +33,7 @@ import com.google.common.collect.ImmutableSet;
 import com.google.common.io.ByteStreams;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
@@ -43,9 +45,15 @@ import java.nio.file.SimpleFileVisitor;
 import java.nio.file.StandardCopyOption;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class DirArtifactCache implements ArtifactCache {
 
@@ -66,6 +74,13 @@ public class DirArtifactCache implements ArtifactCache {
   private final CacheReadMode cacheMode;
   private long bytesSinceLastDeleteOldFiles;
 
+  // Tracks the size and recency of stored artifacts, so that eviction doesn't have to walk the
+  // cache directory. Absent if the cache is unbounded, read-only, or if another process owns it.
+  private final Optional<DirArtifactCacheIndex> index;
+  private final Executor evictionExecutor;
+  private final Optional<ExecutorService> ownedEvictionExecutor;
+  private final AtomicBoolean isEvictionScheduled = new AtomicBoolean(false);
+
   public DirArtifactCache(
       String name,
       ProjectFilesystem filesystem,
@@ -73,6 +88,22 @@ public class DirArtifactCache implements ArtifactCache {
       CacheReadMode cacheMode,
       Optional<Long> maxCacheSizeBytes)
       throws IOException {
+    this(name, filesystem, cacheDir, cacheMode, maxCacheSizeBytes, Optional.empty());
+  }
+
+  /**
+   * @param evictionExecutor runs the eviction of old artifacts once the cache grows past its
+   *     maximum size. If absent, the cache uses a background thread of its own.
+   */
+  @VisibleForTesting
+  DirArtifactCache(
+      String name,
+      ProjectFilesystem filesystem,
+      Path cacheDir,
+      CacheReadMode cacheMode,
+      Optional<Long> maxCacheSizeBytes,
+      Optional<Executor> evictionExecutor)
+      throws IOException {
     this.name = name;
     this.filesystem = filesystem;
     this.cacheDir = cacheDir;
@@ -84,6 +115,24 @@ public class DirArtifactCache implements ArtifactCache {
     if (!filesystem.isDirectory(cacheDir)) {
       filesystem.mkdirs(cacheDir);
     }
+
+    if (maxCacheSizeBytes.isPresent() && cacheMode.isWritable()) {
+      this.index = DirArtifactCacheIndex.open(filesystem.resolve(cacheDir));
+    } else {
+      this.index = Optional.empty();
+    }
+    if (index.isPresent() && index.get().isIncomplete()) {
+      addUntrackedArtifactsToIndex(index.get());
+    }
+
+    if (evictionExecutor.isPresent() || !index.isPresent()) {
+      this.ownedEvictionExecutor = Optional.empty();
+      this.evictionExecutor = evictionExecutor.orElse(MoreExecutors.directExecutor());
+    } else {
+      ExecutorService executor = MostExecutors.newSingleThreadExecutor("DirArtifactCache eviction");
+      this.ownedEvictionExecutor = Optional.of(executor);
+      this.evictionExecutor = executor;
+    }
   }
 
   @Override
@@ -111,7 +160,14 @@ public class DirArtifactCache implements ArtifactCache {
 
       result =
           CacheResult.hit(name, CACHE_MODE, metadata.build(), filesystem.getFileSize(output.get()));
+      if (index.isPresent() && !index.get().touch(ruleKey, System.currentTimeMillis())) {
+        // Stored by a process which didn't own the index.
+        index.get().put(ruleKey, getStoredSizeBytes(ruleKey), System.currentTimeMillis());
+      }
     } catch (NoSuchFileException e) {
+      if (index.isPresent()) {
+        forgetArtifact(index.get(), ruleKey);
+      }
       result = CacheResult.miss();
     } catch (IOException e) {
       LOG.warn(e, "Artifact fetch(%s, %s) error", ruleKey, output);
@@ -177,13 +233,29 @@ public class DirArtifactCache implements ArtifactCache {
         } finally {
           filesystem.deleteFileAtPathIfExists(tmp);
         }
+
+        if (index.isPresent()) {
+          index.get().put(ruleKey, getStoredSizeBytes(ruleKey), System.currentTimeMillis());
+        }
       }
 
     } catch (IOException e) {
       LOG.warn(e, "Artifact store(%s, %s) error", info.getRuleKeys(), output);
     }
 
-    if (maxCacheSizeBytes.isPresent()
+    if (index.isPresent()) {
+      if (index.get().getTotalSizeBytes() > maxCacheSizeBytes.get()
+          && isEvictionScheduled.compareAndSet(false, true)) {
+        evictionExecutor.execute(
+            () -> {
+              try {
+                deleteOldFiles();
+              } finally {
+                isEvictionScheduled.set(false);
+              }
+            });
+      }
+    } else if (maxCacheSizeBytes.isPresent()
         && bytesSinceLastDeleteOldFiles
             > (maxCacheSizeBytes.get() * STORED_TO_MAX_BYTES_RATIO_TRIM_TRIGGER)) {
       bytesSinceLastDeleteOldFiles = 0L;
@@ -193,6 +265,19 @@ public class DirArtifactCache implements ArtifactCache {
     return Futures.immediateFuture(null);
   }
 
+  private long getStoredSizeBytes(RuleKey ruleKey) throws IOException {
+    return filesystem.getFileSize(getPathForRuleKey(ruleKey, Optional.empty()))
+        + filesystem.getFileSize(getPathForRuleKey(ruleKey, Optional.of(".metadata")));
+  }
+
+  private void forgetArtifact(DirArtifactCacheIndex index, RuleKey ruleKey) {
+    try {
+      index.remove(ruleKey);
+    } catch (IOException e) {
+      LOG.warn(e, "Failed to remove %s from the dir cache index", ruleKey);
+    }
+  }
+
   private Path getPathToTempFolder() {
     return cacheDir.resolve("tmp");
   }
@@ -250,19 +335,45 @@ public class DirArtifactCache implements ArtifactCache {
 
   @Override
   public void close() {
+    if (index.isPresent()) {
+      // Let a pending eviction finish, as it needs the index.
+      if (ownedEvictionExecutor.isPresent()) {
+        try {
+          MostExecutors.shutdown(ownedEvictionExecutor.get(), 10, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+      try {
+        index.get().close();
+      } catch (IOException e) {
+        LOG.warn(e, "Failed to close the dir cache index in %s", cacheDir);
+      }
+      return;
+    }
+
     // Do a cache clean up on exit only if cache was written to.
     if (bytesSinceLastDeleteOldFiles > 0) {
       deleteOldFiles();
     }
   }
 
-  /** Deletes files that haven't been accessed recently from the directory cache. */
+  /**
+   * Deletes the least recently used artifacts from the directory cache. With an index, only the
+   * evicted artifacts are touched. Otherwise the whole cache directory is walked, and files are
+   * ordered by their access times.
+   */
   @VisibleForTesting
   void deleteOldFiles() {
     if (!maxCacheSizeBytes.isPresent()) {
       return;
     }
 
+    if (index.isPresent()) {
+      evictLeastRecentlyUsed(index.get());
+      return;
+    }
+
     Path cacheDirInFs = filesystem.resolve(cacheDir);
     try {
       synchronized (this) {
@@ -273,10 +384,66 @@ public class DirArtifactCache implements ArtifactCache {
     }
   }
 
+  private void evictLeastRecentlyUsed(DirArtifactCacheIndex index) {
+    long targetSizeBytes = (long) (maxCacheSizeBytes.get() * MAX_BYTES_TRIM_RATIO);
+    int evicted = 0;
+    try {
+      Optional<RuleKey> ruleKey;
+      while ((ruleKey = index.removeLeastRecentlyUsed(targetSizeBytes)).isPresent()) {
+        filesystem.deleteFileAtPathIfExists(getPathForRuleKey(ruleKey.get(), Optional.empty()));
+        filesystem.deleteFileAtPathIfExists(
+            getPathForRuleKey(ruleKey.get(), Optional.of(".metadata")));
+        evicted++;
+      }
+      index.flush();
+    } catch (IOException e) {
+      LOG.error(e, "Failed to evict artifacts from [%s].", cacheDir);
+    }
+    LOG.debug("Evicted %d artifacts from [%s]", evicted, cacheDir);
+  }
+
+  /**
+   * Walks the cache directory for artifacts which the index doesn't know about, e.g. because it was
+   * just created, and adds them to it, ordered by the modification time of their files.
+   */
+  private void addUntrackedArtifactsToIndex(DirArtifactCacheIndex index) throws IOException {
+    Map<RuleKey, Long> sizes = new HashMap<>();
+    Map<RuleKey, Long> modificationTimes = new HashMap<>();
+    for (Path file : getAllFilesInCache()) {
+      String fileName = file.getFileName().toString();
+      RuleKey ruleKey;
+      try {
+        ruleKey = new RuleKey(fileName.replaceFirst("\\.metadata$", ""));
+      } catch (IllegalArgumentException e) {
+        continue;
+      }
+      BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+      sizes.merge(ruleKey, attributes.size(), Long::sum);
+      modificationTimes.merge(ruleKey, attributes.lastModifiedTime().toMillis(), Math::max);
+    }
+    Map<RuleKey, DirArtifactCacheIndex.Entry> untracked = new LinkedHashMap<>();
+    modificationTimes
+        .entrySet()
+        .stream()
+        .sorted(Map.Entry.comparingByValue())
+        .forEach(
+            entry ->
+                untracked.put(
+                    entry.getKey(),
+                    new DirArtifactCacheIndex.Entry(sizes.get(entry.getKey()), entry.getValue())));
+    index.addUntracked(untracked);
+    LOG.info("Indexed %d existing artifacts in [%s]", untracked.size(), cacheDir);
+  }
+
+  @VisibleForTesting
+  Optional<DirArtifactCacheIndex> getIndex() {
+    return index;
+  }
+
   @VisibleForTesting
   List<Path> getAllFilesInCache() {
     final List<Path> allFiles = new ArrayList<>();
-    final Path tempFolderPath = getPathToTempFolder();
+    final Path tempFolderPath = filesystem.resolve(getPathToTempFolder());
     try {
       Files.walkFileTree(
           filesystem.resolve(cacheDir),
@@ -297,7 +464,11 @@ public class DirArtifactCache implements ArtifactCache {
             @Override
             public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
                 throws IOException {
-              allFiles.add(file);
+              // The index is bookkeeping for the cache, not part of it.
+              String fileName = file.getFileName().toString();
+              if (!fileName.startsWith(DirArtifactCacheIndex.INDEX_FILE_PREFIX)) {
+                allFiles.add(file);
+              }
               return super.visitFile(file, attrs);
             }
           });
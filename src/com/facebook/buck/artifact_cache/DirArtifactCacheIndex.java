@@ -0,0 +1,351 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.artifact_cache;
+
+import com.facebook.buck.log.Logger;
+import com.facebook.buck.rules.RuleKey;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * A persistent record of the artifacts stored in a {@link DirArtifactCache}, with their size on
+ * disk and the time they were last stored or fetched, kept in least-recently-used order. It lets
+ * the cache evict artifacts without walking the cache directory or relying on file access times.
+ *
+ * <p>The index is a journal of {@code (byte op, UTF ruleKey, long sizeBytes, long accessMillis)}
+ * records, which is replayed when the index is opened and rewritten from the live entries once it
+ * has grown much larger than them. The journal is owned by a single process at a time, through an
+ * exclusive lock on a sibling lock file.
+ */
+@ThreadSafe
+class DirArtifactCacheIndex implements Closeable {
+
+  private static final Logger LOG = Logger.get(DirArtifactCacheIndex.class);
+
+  static final String INDEX_FILE_PREFIX = ".index";
+
+  private static final int MAGIC = 0xD1CAC4E1;
+  private static final int VERSION = 1;
+  private static final byte OP_PUT = 1;
+  private static final byte OP_REMOVE = 2;
+  // Number of records the journal may hold beyond twice the number of live entries before it is
+  // rewritten.
+  private static final int COMPACTION_SLACK_RECORDS = 1024;
+
+  /** The size and last access time of an artifact, including its metadata. */
+  static class Entry {
+    private final long sizeBytes;
+    private final long lastAccessMillis;
+
+    Entry(long sizeBytes, long lastAccessMillis) {
+      this.sizeBytes = sizeBytes;
+      this.lastAccessMillis = lastAccessMillis;
+    }
+
+    public long getSizeBytes() {
+      return sizeBytes;
+    }
+
+    public long getLastAccessMillis() {
+      return lastAccessMillis;
+    }
+  }
+
+  private final Path journalPath;
+  private final FileChannel lockChannel;
+  private final boolean isIncomplete;
+  // Iterates from the least to the most recently used entry.
+  private final LinkedHashMap<RuleKey, Entry> entries;
+  private DataOutputStream journal;
+  private long journalRecords;
+  private long totalSizeBytes;
+
+  private DirArtifactCacheIndex(
+      Path journalPath,
+      FileChannel lockChannel,
+      boolean isIncomplete,
+      LinkedHashMap<RuleKey, Entry> entries,
+      long journalRecords)
+      throws IOException {
+    this.journalPath = journalPath;
+    this.lockChannel = lockChannel;
+    this.isIncomplete = isIncomplete;
+    this.entries = entries;
+    this.journalRecords = journalRecords;
+    for (Entry entry : entries.values()) {
+      totalSizeBytes += entry.getSizeBytes();
+    }
+    this.journal = openJournalForAppend(journalPath);
+  }
+
+  /**
+   * Opens the index stored in {@code indexDir}, creating it if needed.
+   *
+   * @return the index, or an empty optional if it is already in use by another process.
+   */
+  public static Optional<DirArtifactCacheIndex> open(Path indexDir) throws IOException {
+    Files.createDirectories(indexDir);
+    Path journalPath = indexDir.resolve(INDEX_FILE_PREFIX);
+    FileChannel lockChannel =
+        FileChannel.open(
+            indexDir.resolve(INDEX_FILE_PREFIX + ".lock"),
+            StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE);
+    FileLock lock;
+    try {
+      lock = lockChannel.tryLock();
+    } catch (OverlappingFileLockException e) {
+      lock = null;
+    }
+    if (lock == null) {
+      LOG.info("Dir cache index %s is in use by another process", journalPath);
+      lockChannel.close();
+      return Optional.empty();
+    }
+
+    try {
+      LinkedHashMap<RuleKey, Entry> entries = newEntriesMap();
+      long journalRecords = Files.exists(journalPath) ? replayJournal(journalPath, entries) : -1;
+      boolean isIncomplete = journalRecords < 0;
+      if (isIncomplete) {
+        // Start over with a well-formed journal, keeping whatever could be recovered.
+        journalRecords = writeJournal(journalPath, entries);
+      }
+      return Optional.of(
+          new DirArtifactCacheIndex(
+              journalPath, lockChannel, isIncomplete, entries, journalRecords));
+    } catch (IOException | RuntimeException e) {
+      lockChannel.close();
+      throw e;
+    }
+  }
+
+  private static LinkedHashMap<RuleKey, Entry> newEntriesMap() {
+    return new LinkedHashMap<>(16, 0.75f, /* accessOrder */ true);
+  }
+
+  /**
+   * Reads the journal into {@code entries}.
+   *
+   * @return the number of records read, or -1 if the journal is truncated or in an unknown format
+   *     and needs to be rewritten.
+   */
+  private static long replayJournal(Path journalPath, Map<RuleKey, Entry> entries)
+      throws IOException {
+    long records = 0;
+    try (DataInputStream in =
+        new DataInputStream(new BufferedInputStream(Files.newInputStream(journalPath)))) {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+        LOG.warn("Ignoring dir cache index in unknown format: %s", journalPath);
+        entries.clear();
+        return -1;
+      }
+      while (true) {
+        int op = in.read();
+        if (op == -1) {
+          return records;
+        }
+        RuleKey ruleKey = new RuleKey(in.readUTF());
+        long sizeBytes = in.readLong();
+        long lastAccessMillis = in.readLong();
+        if (op == OP_PUT) {
+          entries.put(ruleKey, new Entry(sizeBytes, lastAccessMillis));
+        } else {
+          entries.remove(ruleKey);
+        }
+        records++;
+      }
+    } catch (EOFException | IllegalArgumentException e) {
+      // A truncated record, most likely left behind by a process killed mid-write.
+      LOG.warn("Dir cache index %s is damaged, recovered %d entries", journalPath, entries.size());
+      return -1;
+    }
+  }
+
+  /** Atomically replaces the journal with one holding only {@code entries}. */
+  private static long writeJournal(Path journalPath, Map<RuleKey, Entry> entries)
+      throws IOException {
+    Path tmp = Files.createTempFile(journalPath.getParent(), INDEX_FILE_PREFIX, ".tmp");
+    try {
+      try (DataOutputStream out =
+          new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        for (Map.Entry<RuleKey, Entry> entry : entries.entrySet()) {
+          writeRecord(out, OP_PUT, entry.getKey(), entry.getValue());
+        }
+      }
+      Files.move(tmp, journalPath, StandardCopyOption.REPLACE_EXISTING);
+    } finally {
+      Files.deleteIfExists(tmp);
+    }
+    return entries.size();
+  }
+
+  private static DataOutputStream openJournalForAppend(Path journalPath) throws IOException {
+    OutputStream out = Files.newOutputStream(journalPath, StandardOpenOption.APPEND);
+    return new DataOutputStream(new BufferedOutputStream(out));
+  }
+
+  private static void writeRecord(DataOutputStream out, byte op, RuleKey ruleKey, Entry entry)
+      throws IOException {
+    out.writeByte(op);
+    out.writeUTF(ruleKey.toString());
+    out.writeLong(entry.getSizeBytes());
+    out.writeLong(entry.getLastAccessMillis());
+  }
+
+  private void append(byte op, RuleKey ruleKey, Entry entry) throws IOException {
+    writeRecord(journal, op, ruleKey, entry);
+    journalRecords++;
+  }
+
+  /**
+   * @return whether the journal was missing or damaged when the index was opened, in which case the
+   *     index may not know about some of the artifacts in the cache.
+   */
+  public boolean isIncomplete() {
+    return isIncomplete;
+  }
+
+  /**
+   * Adds artifacts found in the cache directory which the index doesn't know about, as less
+   * recently used than all the known ones.
+   *
+   * @param untracked the artifacts to add, from the least to the most recently used one.
+   */
+  public synchronized void addUntracked(Map<RuleKey, Entry> untracked) throws IOException {
+    LinkedHashMap<RuleKey, Entry> merged = newEntriesMap();
+    for (Map.Entry<RuleKey, Entry> entry : untracked.entrySet()) {
+      if (!entries.containsKey(entry.getKey())) {
+        merged.put(entry.getKey(), entry.getValue());
+        totalSizeBytes += entry.getValue().getSizeBytes();
+      }
+    }
+    merged.putAll(entries);
+    entries.clear();
+    entries.putAll(merged);
+    journal.close();
+    journalRecords = writeJournal(journalPath, entries);
+    journal = openJournalForAppend(journalPath);
+  }
+
+  /** Records that the artifact for {@code ruleKey}, of {@code sizeBytes}, was just stored. */
+  public synchronized void put(RuleKey ruleKey, long sizeBytes, long accessMillis)
+      throws IOException {
+    Entry entry = new Entry(sizeBytes, accessMillis);
+    Entry previous = entries.put(ruleKey, entry);
+    totalSizeBytes += sizeBytes - (previous == null ? 0 : previous.getSizeBytes());
+    append(OP_PUT, ruleKey, entry);
+    // Stores are flushed right away, as an artifact missing from the index is never evicted.
+    journal.flush();
+  }
+
+  /**
+   * Marks the artifact for {@code ruleKey} as the most recently used one.
+   *
+   * @return false if the index doesn't know about the artifact.
+   */
+  public synchronized boolean touch(RuleKey ruleKey, long accessMillis) throws IOException {
+    Entry previous = entries.get(ruleKey);
+    if (previous == null) {
+      return false;
+    }
+    Entry entry = new Entry(previous.getSizeBytes(), accessMillis);
+    entries.put(ruleKey, entry);
+    append(OP_PUT, ruleKey, entry);
+    return true;
+  }
+
+  /** Forgets about the artifact for {@code ruleKey}. */
+  public synchronized void remove(RuleKey ruleKey) throws IOException {
+    Entry previous = entries.remove(ruleKey);
+    if (previous != null) {
+      totalSizeBytes -= previous.getSizeBytes();
+      append(OP_REMOVE, ruleKey, previous);
+    }
+  }
+
+  /**
+   * Removes the least recently used artifact from the index if the artifacts it knows about take
+   * more than {@code targetSizeBytes}.
+   *
+   * @return the rule key of the removed artifact, whose files the caller should delete.
+   */
+  public synchronized Optional<RuleKey> removeLeastRecentlyUsed(long targetSizeBytes)
+      throws IOException {
+    if (totalSizeBytes <= targetSizeBytes || entries.isEmpty()) {
+      return Optional.empty();
+    }
+    RuleKey ruleKey = entries.keySet().iterator().next();
+    remove(ruleKey);
+    return Optional.of(ruleKey);
+  }
+
+  public synchronized long getTotalSizeBytes() {
+    return totalSizeBytes;
+  }
+
+  public synchronized int getEntryCount() {
+    return entries.size();
+  }
+
+  @VisibleForTesting
+  synchronized ImmutableList<RuleKey> getRuleKeysInEvictionOrder() {
+    return ImmutableList.copyOf(entries.keySet());
+  }
+
+  /** Writes out pending records, rewriting the journal if it has grown too large. */
+  public synchronized void flush() throws IOException {
+    if (journalRecords > 2L * entries.size() + COMPACTION_SLACK_RECORDS) {
+      journal.close();
+      LOG.debug("Compacting dir cache index %s: %d records", journalPath, journalRecords);
+      journalRecords = writeJournal(journalPath, entries);
+      journal = openJournalForAppend(journalPath);
+    } else {
+      journal.flush();
+    }
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    // Closing the channel also releases the lock.
+    try (FileChannel channel = lockChannel) {
+      flush();
+      journal.close();
+    }
+  }
+}
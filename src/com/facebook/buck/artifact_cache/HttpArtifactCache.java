@@ -21,7 +21,9 @@ import com.facebook.buck.io.LazyPath;
 import com.facebook.buck.log.Logger;
 import com.facebook.buck.rules.RuleKey;
 import com.facebook.buck.slb.HttpResponse;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.io.ByteSource;
+import com.google.common.io.ByteStreams;
 import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -29,6 +31,8 @@ import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.OptionalLong;
 import okhttp3.MediaType;
 import okhttp3.Request;
 import okhttp3.RequestBody;
@@ -46,6 +50,9 @@ public final class HttpArtifactCache extends AbstractNetworkCache {
    */
   private static final Logger LOG = Logger.get(HttpArtifactCache.class);
 
+  /** Cleared once the server turns out not to implement the multi-fetch endpoint. */
+  private volatile boolean isMultiFetchSupported = true;
+
   public HttpArtifactCache(NetworkCacheArgs args) {
     super(args);
   }
@@ -53,7 +60,42 @@ public final class HttpArtifactCache extends AbstractNetworkCache {
   @Override
   protected CacheResult fetchImpl(
       RuleKey ruleKey, LazyPath output, final Finished.Builder eventBuilder) throws IOException {
+    return fetchArtifact(
+        ruleKey,
+        eventBuilder,
+        (requestUrl, input) ->
+            readFetchedArtifact(
+                ruleKey,
+                output,
+                requestUrl,
+                eventBuilder,
+                payloadReader ->
+                    HttpArtifactCacheBinaryProtocol.readFetchResponse(input, payloadReader)));
+  }
+
+  @Override
+  protected CacheResult fetchImpl(
+      RuleKey ruleKey,
+      LazyPath output,
+      ArtifactPayloadConsumer consumer,
+      final Finished.Builder eventBuilder)
+      throws IOException {
+    return fetchArtifact(
+        ruleKey,
+        eventBuilder,
+        (requestUrl, input) ->
+            consumeFetchedArtifact(
+                ruleKey,
+                consumer,
+                requestUrl,
+                eventBuilder,
+                payloadReader ->
+                    HttpArtifactCacheBinaryProtocol.readFetchResponse(input, payloadReader)));
+  }
 
+  private CacheResult fetchArtifact(
+      RuleKey ruleKey, Finished.Builder eventBuilder, FetchResponseHandler handler)
+      throws IOException {
     Request.Builder requestBuilder = new Request.Builder().get();
     try (HttpResponse response =
         fetchClient.makeRequest("/artifacts/key/" + ruleKey.toString(), requestBuilder)) {
@@ -77,52 +119,177 @@ public final class HttpArtifactCache extends AbstractNetworkCache {
           return CacheResult.error(name, mode, msg);
         }
 
-        // Setup a temporary file, which sits next to the destination, to write to and
-        // make sure all parent dirs exist.
-        Path file = output.get();
-        projectFilesystem.createParentDirs(file);
-        Path temp =
-            projectFilesystem.createTempFile(
-                file.getParent(), file.getFileName().toString(), ".tmp");
-
-        FetchResponseReadResult fetchedData;
-        try (OutputStream tempFileOutputStream = projectFilesystem.newFileOutputStream(temp)) {
-          fetchedData =
-              HttpArtifactCacheBinaryProtocol.readFetchResponse(input, tempFileOutputStream);
-        }
+        return handler.handle(response.requestUrl(), input);
+      }
+    }
+  }
 
-        eventBuilder
-            .setTarget(ArtifactCacheEvent.getTarget(fetchedData.getMetadata()))
-            .getFetchBuilder()
-            .setResponseSizeBytes(fetchedData.getResponseSizeBytes())
-            .setArtifactContentHash(fetchedData.getArtifactOnlyHashCode().toString());
+  @Override
+  protected ImmutableMap<RuleKey, CacheResult> multiFetchImpl(
+      ImmutableMap<RuleKey, LazyPath> requests,
+      ImmutableMap<RuleKey, Finished.Builder> eventBuilders)
+      throws IOException {
+    if (!isMultiFetchSupported) {
+      return super.multiFetchImpl(requests, eventBuilders);
+    }
 
-        // Verify that we were one of the rule keys that stored this artifact.
-        if (!fetchedData.getRuleKeys().contains(ruleKey)) {
-          String msg = "incorrect key name";
-          reportFailure("fetch(%s, %s): %s", response.requestUrl(), ruleKey, msg);
-          eventBuilder.getFetchBuilder().setErrorMessage(msg);
-          return CacheResult.error(name, mode, msg);
-        }
+    Request.Builder requestBuilder =
+        new Request.Builder()
+            .post(
+                RequestBody.create(
+                    OCTET_STREAM_CONTENT_TYPE,
+                    HttpArtifactCacheBinaryProtocol.createMultiFetchRequest(
+                        requests.keySet().asList())));
+    try (HttpResponse response = fetchClient.makeRequest("/artifacts/multikey", requestBuilder)) {
+      try (DataInputStream input =
+          new DataInputStream(new FullyReadOnCloseInputStream(response.getBody()))) {
 
-        // Now form the checksum on the file we got and compare it to the checksum form the
-        // the HTTP header.  If it's incorrect, log this and return a miss.
-        if (!fetchedData.getExpectedHashCode().equals(fetchedData.getActualHashCode())) {
-          String msg = "artifact had invalid checksum";
-          reportFailure("fetch(%s, %s): %s", response.requestUrl(), ruleKey, msg);
-          projectFilesystem.deleteFileAtPath(temp);
-          eventBuilder.getFetchBuilder().setErrorMessage(msg);
-          return CacheResult.error(name, mode, msg);
+        if (response.statusCode() == HttpURLConnection.HTTP_NOT_FOUND
+            || response.statusCode() == HttpURLConnection.HTTP_BAD_METHOD
+            || response.statusCode() == HttpURLConnection.HTTP_NOT_IMPLEMENTED) {
+          LOG.info(
+              "multiFetch(%s): server does not support multi-fetch, fetching keys one at a time",
+              response.requestUrl());
+          isMultiFetchSupported = false;
+        } else if (response.statusCode() != HttpURLConnection.HTTP_OK) {
+          String msg =
+              String.format(
+                  "unexpected server response: [%d:%s]",
+                  response.statusCode(), response.statusMessage());
+          reportFailure("multiFetch(%s, %s): %s", response.requestUrl(), requests.keySet(), msg);
+          ImmutableMap.Builder<RuleKey, CacheResult> results = ImmutableMap.builder();
+          for (RuleKey ruleKey : requests.keySet()) {
+            eventBuilders.get(ruleKey).getFetchBuilder().setErrorMessage(msg);
+            results.put(ruleKey, CacheResult.error(name, mode, msg));
+          }
+          return results.build();
+        } else {
+          ImmutableMap.Builder<RuleKey, CacheResult> results = ImmutableMap.builder();
+          for (Map.Entry<RuleKey, LazyPath> request : requests.entrySet()) {
+            RuleKey ruleKey = request.getKey();
+            OptionalLong entryLength =
+                HttpArtifactCacheBinaryProtocol.readMultiFetchResponseEntryHeader(input);
+            if (!entryLength.isPresent()) {
+              LOG.info("multiFetch(%s, %s): cache miss", response.requestUrl(), ruleKey);
+              results.put(ruleKey, CacheResult.miss());
+              continue;
+            }
+            results.put(
+                ruleKey,
+                readFetchedArtifact(
+                    ruleKey,
+                    request.getValue(),
+                    response.requestUrl(),
+                    eventBuilders.get(ruleKey),
+                    payloadReader ->
+                        HttpArtifactCacheBinaryProtocol.readMultiFetchResponseEntry(
+                            input, entryLength.getAsLong(), payloadReader)));
+          }
+          return results.build();
         }
+      }
+    }
+    return super.multiFetchImpl(requests, eventBuilders);
+  }
 
-        // Finally, move the temp file into it's final place.
-        projectFilesystem.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+  private CacheResult readFetchedArtifact(
+      RuleKey ruleKey,
+      LazyPath output,
+      String requestUrl,
+      Finished.Builder eventBuilder,
+      FetchResponseReader reader)
+      throws IOException {
+    // Setup a temporary file, which sits next to the destination, to write to and
+    // make sure all parent dirs exist.
+    Path file = output.get();
+    projectFilesystem.createParentDirs(file);
+    Path temp =
+        projectFilesystem.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
 
-        LOG.info("fetch(%s, %s): cache hit", response.requestUrl(), ruleKey);
-        return CacheResult.hit(
-            name, mode, fetchedData.getMetadata(), fetchedData.getResponseSizeBytes());
-      }
+    FetchResponseReadResult fetchedData;
+    try (OutputStream tempFileOutputStream = projectFilesystem.newFileOutputStream(temp)) {
+      fetchedData =
+          reader.read(
+              (ruleKeys, metadata, payload) -> ByteStreams.copy(payload, tempFileOutputStream));
+    }
+
+    CacheResult result = getFetchResult(ruleKey, requestUrl, eventBuilder, fetchedData);
+    if (!result.getType().isSuccess()) {
+      projectFilesystem.deleteFileAtPath(temp);
+      return result;
+    }
+
+    // Finally, move the temp file into it's final place.
+    projectFilesystem.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+    return result;
+  }
+
+  /**
+   * Hands the payload of a fetch response to {@code consumer} as it is read, rather than saving it
+   * to a file first.
+   */
+  private CacheResult consumeFetchedArtifact(
+      RuleKey ruleKey,
+      ArtifactPayloadConsumer consumer,
+      String requestUrl,
+      Finished.Builder eventBuilder,
+      FetchResponseReader reader)
+      throws IOException {
+    FetchResponseReadResult fetchedData =
+        reader.read(
+            (ruleKeys, metadata, payload) -> {
+              // Artifacts stored under other rule keys are reported as errors once read, and must
+              // not be handed to the consumer in the first place.
+              if (ruleKeys.contains(ruleKey)) {
+                consumer.consume(metadata, payload);
+              }
+            });
+    return getFetchResult(ruleKey, requestUrl, eventBuilder, fetchedData);
+  }
+
+  /** Verifies a fetch response, once its payload was read. */
+  private CacheResult getFetchResult(
+      RuleKey ruleKey,
+      String requestUrl,
+      Finished.Builder eventBuilder,
+      FetchResponseReadResult fetchedData) {
+    eventBuilder
+        .setTarget(ArtifactCacheEvent.getTarget(fetchedData.getMetadata()))
+        .getFetchBuilder()
+        .setResponseSizeBytes(fetchedData.getResponseSizeBytes())
+        .setArtifactContentHash(fetchedData.getArtifactOnlyHashCode().toString());
+
+    // Verify that we were one of the rule keys that stored this artifact.
+    if (!fetchedData.getRuleKeys().contains(ruleKey)) {
+      String msg = "incorrect key name";
+      reportFailure("fetch(%s, %s): %s", requestUrl, ruleKey, msg);
+      eventBuilder.getFetchBuilder().setErrorMessage(msg);
+      return CacheResult.error(name, mode, msg);
     }
+
+    // Now form the checksum on the payload we got and compare it to the checksum form the
+    // the HTTP header.  If it's incorrect, log this and return a miss.
+    if (!fetchedData.getExpectedHashCode().equals(fetchedData.getActualHashCode())) {
+      String msg = "artifact had invalid checksum";
+      reportFailure("fetch(%s, %s): %s", requestUrl, ruleKey, msg);
+      eventBuilder.getFetchBuilder().setErrorMessage(msg);
+      return CacheResult.error(name, mode, msg);
+    }
+
+    LOG.info("fetch(%s, %s): cache hit", requestUrl, ruleKey);
+    return CacheResult.hit(
+        name, mode, fetchedData.getMetadata(), fetchedData.getResponseSizeBytes());
+  }
+
+  /** Handles a successful response to a fetch request. */
+  private interface FetchResponseHandler {
+    CacheResult handle(String requestUrl, DataInputStream input) throws IOException;
+  }
+
+  /** Reads a fetch response, handing its payload to {@code payloadReader}. */
+  private interface FetchResponseReader {
+    FetchResponseReadResult read(HttpArtifactCacheBinaryProtocol.PayloadReader payloadReader)
+        throws IOException;
   }
 
   @Override
@@ -22,6 +22,7 @@ import com.facebook.buck.util.hash.HasherOutputStream;
 import com.facebook.buck.util.immutables.BuckStyleImmutable;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.hash.HashCode;
@@ -30,14 +31,18 @@ import com.google.common.hash.Hasher;
 import com.google.common.hash.Hashing;
 import com.google.common.io.ByteSource;
 import com.google.common.io.ByteStreams;
+import com.google.common.io.CountingInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
 import org.immutables.value.Value;
 
 /** Implements the binary protocol used by Buck to talk to the cache server. */
@@ -47,20 +52,101 @@ public class HttpArtifactCacheBinaryProtocol {
   // 64MB should be enough for everyone.
   private static final long MAX_METADATA_HEADER_SIZE = 64 * 1024 * 1024;
 
+  // Status bytes which start each of the entries of a multi-fetch response.
+  private static final byte MULTI_FETCH_ENTRY_MISS = 0;
+  private static final byte MULTI_FETCH_ENTRY_HIT = 1;
+
   private HttpArtifactCacheBinaryProtocol() {
     // Utility class, don't instantiate.
   }
 
   public static FetchResponseReadResult readFetchResponse(
       DataInputStream input, OutputStream payloadSink) throws IOException {
+    return readFetchResponse(input, copyTo(payloadSink));
+  }
+
+  /**
+   * Reads a fetch response, handing its payload to {@code payloadReader} as it is read rather than
+   * buffering it. The checksum of the response is only known once the whole payload was read, so
+   * whatever {@code payloadReader} does with it must be discarded unless the hash codes of the
+   * result match.
+   */
+  public static FetchResponseReadResult readFetchResponse(
+      DataInputStream input, PayloadReader payloadReader) throws IOException {
 
     MetadataAndPayloadReadResultInternal resultInternal =
-        readMetadataAndPayload(input, payloadSink);
+        readMetadataAndPayload(input, payloadReader);
 
     FetchResponseReadResult.Builder result = FetchResponseReadResult.builder().from(resultInternal);
     return result.build();
   }
 
+  /**
+   * A multi-fetch request lists the rule keys to fetch, in the same format as the keys header of a
+   * store request.
+   */
+  public static byte[] createMultiFetchRequest(ImmutableList<RuleKey> ruleKeys)
+      throws IOException {
+    return createKeysHeader(ImmutableSet.copyOf(ruleKeys));
+  }
+
+  public static ImmutableList<RuleKey> readMultiFetchRequest(DataInputStream input)
+      throws IOException {
+    ImmutableList.Builder<RuleKey> ruleKeys = ImmutableList.builder();
+    int ruleKeysCount = input.readInt();
+    for (int i = 0; i < ruleKeysCount; i++) {
+      ruleKeys.add(new RuleKey(input.readUTF()));
+    }
+    return ruleKeys.build();
+  }
+
+  /**
+   * A multi-fetch response holds one entry per requested rule key, in the order of the request.
+   * Each entry starts with a status byte, and hits are then followed by the length of the entry
+   * and a fetch response for the artifact.
+   *
+   * @return the length of the fetch response in the current entry, or empty on a miss.
+   */
+  public static OptionalLong readMultiFetchResponseEntryHeader(DataInputStream input)
+      throws IOException {
+    byte status = input.readByte();
+    switch (status) {
+      case MULTI_FETCH_ENTRY_MISS:
+        return OptionalLong.empty();
+      case MULTI_FETCH_ENTRY_HIT:
+        return OptionalLong.of(input.readLong());
+      default:
+        throw new IOException(String.format("Unknown multi-fetch entry status %d.", status));
+    }
+  }
+
+  /**
+   * Reads the fetch response of a multi-fetch response entry, leaving {@code input} at the start
+   * of the next entry.
+   */
+  public static FetchResponseReadResult readMultiFetchResponseEntry(
+      DataInputStream input, long entryLength, OutputStream payloadSink) throws IOException {
+    return readMultiFetchResponseEntry(input, entryLength, copyTo(payloadSink));
+  }
+
+  /**
+   * Reads the fetch response of a multi-fetch response entry, handing its payload to {@code
+   * payloadReader} as {@link #readFetchResponse(DataInputStream, PayloadReader)} does.
+   */
+  public static FetchResponseReadResult readMultiFetchResponseEntry(
+      DataInputStream input, long entryLength, PayloadReader payloadReader) throws IOException {
+    // The fetch response is read until the end of its stream, which must stop at the end of the
+    // entry without closing the stream holding the remaining entries.
+    InputStream entryInput =
+        ByteStreams.limit(
+            new FilterInputStream(input) {
+              @Override
+              public void close() {}
+            },
+            entryLength);
+    return readFetchResponse(new DataInputStream(entryInput), payloadReader);
+  }
+
   public static StoreResponseReadResult readStoreRequest(
       DataInputStream input, OutputStream payloadSink) throws IOException {
     ImmutableSet.Builder<RuleKey> rawRuleKeys = ImmutableSet.builder();
@@ -79,6 +165,11 @@ public class HttpArtifactCacheBinaryProtocol {
 
   public static MetadataAndPayloadReadResultInternal readMetadataAndPayload(
       DataInputStream input, OutputStream payloadSink) throws IOException {
+    return readMetadataAndPayload(input, copyTo(payloadSink));
+  }
+
+  public static MetadataAndPayloadReadResultInternal readMetadataAndPayload(
+      DataInputStream input, PayloadReader payloadReader) throws IOException {
     // Read the size of a the metadata, and use that to build a input stream to read and
     // process the rest of it.
     int metadataSize = input.readInt();
@@ -90,6 +181,8 @@ public class HttpArtifactCacheBinaryProtocol {
     // Create a hasher to be used to generate a hash of the metadata and input.  We'll use
     // this to compare against the embedded checksum.
     Hasher hasher = HASH_FUNCTION.newHasher();
+    ImmutableSet.Builder<RuleKey> ruleKeys = ImmutableSet.builder();
+    ImmutableMap.Builder<String, String> metadata = ImmutableMap.builder();
     byte[] rawMetadata = new byte[metadataSize];
     ByteStreams.readFully(input, rawMetadata);
     try (InputStream rawMetadataIn = new ByteArrayInputStream(rawMetadata)) {
@@ -102,7 +195,7 @@ public class HttpArtifactCacheBinaryProtocol {
         // building up.
         int size = metadataIn.readInt();
         for (int i = 0; i < size; i++) {
-          result.addRuleKeys(new RuleKey(metadataIn.readUTF()));
+          ruleKeys.add(new RuleKey(metadataIn.readUTF()));
         }
 
         // Read in the actual metadata map, and add it the hash.
@@ -112,7 +205,7 @@ public class HttpArtifactCacheBinaryProtocol {
           int valSize = metadataIn.readInt();
           byte[] val = new byte[valSize];
           ByteStreams.readFully(metadataIn, val);
-          result.putMetadata(key, new String(val, Charsets.UTF_8));
+          metadata.put(key, new String(val, Charsets.UTF_8));
         }
       }
 
@@ -123,12 +216,26 @@ public class HttpArtifactCacheBinaryProtocol {
       result.setExpectedHashCode(HashCode.fromBytes(hashCodeBytes));
     }
 
-    // The remaining data is the payload, which we write to the created file, and also include
-    // in our verification checksum.
+    ImmutableSet<RuleKey> readRuleKeys = ruleKeys.build();
+    ImmutableMap<String, String> readMetadata = metadata.build();
+    result.setRuleKeys(readRuleKeys);
+    result.setMetadata(readMetadata);
+
+    // The remaining data is the payload, which we hand to the reader, and also include in our
+    // verification checksum. Whatever the reader leaves unread is still part of the checksum.
     Hasher artifactOnlyHasher = HASH_FUNCTION.newHasher();
-    try (InputStream payload =
-        new HasherInputStream(artifactOnlyHasher, new HasherInputStream(hasher, input))) {
-      result.setResponseSizeBytes(ByteStreams.copy(payload, payloadSink));
+    try (CountingInputStream payload =
+        new CountingInputStream(
+            new HasherInputStream(artifactOnlyHasher, new HasherInputStream(hasher, input)))) {
+      payloadReader.read(
+          readRuleKeys,
+          readMetadata,
+          new FilterInputStream(payload) {
+            @Override
+            public void close() {}
+          });
+      ByteStreams.exhaust(payload);
+      result.setResponseSizeBytes(payload.getCount());
       result.setArtifactOnlyHashCode(artifactOnlyHasher.hash());
     }
 
@@ -137,6 +244,10 @@ public class HttpArtifactCacheBinaryProtocol {
     return result.build();
   }
 
+  private static PayloadReader copyTo(OutputStream payloadSink) {
+    return (ruleKeys, metadata, payload) -> ByteStreams.copy(payload, payloadSink);
+  }
+
   @VisibleForTesting
   static byte[] createKeysHeader(ImmutableSet<RuleKey> ruleKeys) throws IOException {
     try (ByteArrayOutputStream out = new ByteArrayOutputStream();
@@ -247,11 +358,58 @@ public class HttpArtifactCacheBinaryProtocol {
 
     public void write(OutputStream responseSink) throws IOException {
       try (DataOutputStream dataOutputStream = new DataOutputStream(responseSink)) {
-        dataOutputStream.writeInt(rawMetadata.length);
-        dataOutputStream.write(rawMetadata);
-        ByteStreams.copy(payloadSource.openStream(), responseSink);
+        writeTo(dataOutputStream);
+      }
+    }
+
+    private void writeTo(DataOutputStream dataOutputStream) throws IOException {
+      dataOutputStream.writeInt(rawMetadata.length);
+      dataOutputStream.write(rawMetadata);
+      ByteStreams.copy(payloadSource.openStream(), dataOutputStream);
+    }
+  }
+
+  public static class MultiFetchResponse {
+    private final ImmutableList<Optional<FetchResponse>> entries;
+    private final long contentLength;
+
+    /** @param entries the responses for each of the requested rule keys, empty for misses. */
+    public MultiFetchResponse(ImmutableList<Optional<FetchResponse>> entries) {
+      this.entries = entries;
+      long length = 0;
+      for (Optional<FetchResponse> entry : entries) {
+        length += 1;
+        if (entry.isPresent()) {
+          length += Long.SIZE / Byte.SIZE + entry.get().getContentLength();
+        }
       }
+      this.contentLength = length;
     }
+
+    public long getContentLength() {
+      return contentLength;
+    }
+
+    public void write(OutputStream responseSink) throws IOException {
+      try (DataOutputStream dataOutputStream = new DataOutputStream(responseSink)) {
+        for (Optional<FetchResponse> entry : entries) {
+          if (!entry.isPresent()) {
+            dataOutputStream.writeByte(MULTI_FETCH_ENTRY_MISS);
+            continue;
+          }
+          dataOutputStream.writeByte(MULTI_FETCH_ENTRY_HIT);
+          dataOutputStream.writeLong(entry.get().getContentLength());
+          entry.get().writeTo(dataOutputStream);
+        }
+      }
+    }
+  }
+
+  /** Reads the payload of a response, given the rule keys and metadata it was stored with. */
+  public interface PayloadReader {
+    void read(
+        ImmutableSet<RuleKey> ruleKeys, ImmutableMap<String, String> metadata, InputStream payload)
+        throws IOException;
   }
 
   abstract static class MetadataAndPayloadReadResult {
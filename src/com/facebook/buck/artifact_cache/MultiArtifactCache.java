@@ -23,10 +23,17 @@ import com.facebook.buck.util.MoreCollectors;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Functions;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 /**
@@ -82,6 +89,86 @@ public class MultiArtifactCache implements ArtifactCache {
     return cacheResult;
   }
 
+  /**
+   * Fetch the artifact matching ruleKey and hand it to {@code consumer}, as {@link #fetch(RuleKey,
+   * LazyPath)} does. An artifact is only streamed to {@code consumer} from a cache which no other
+   * cache needs a copy of it from, the others save it to {@code output} first, so that it can be
+   * stored to the caches which missed it.
+   */
+  @Override
+  public CacheResult fetch(RuleKey ruleKey, LazyPath output, ArtifactPayloadConsumer consumer)
+      throws IOException {
+    CacheResult cacheResult = CacheResult.miss();
+    List<ArtifactCache> priorCaches = new ArrayList<>();
+    for (ArtifactCache artifactCache : artifactCaches) {
+      if (priorCaches.isEmpty()) {
+        cacheResult = artifactCache.fetch(ruleKey, output, consumer);
+        if (cacheResult.getType().isSuccess()) {
+          return cacheResult;
+        }
+      } else {
+        cacheResult = artifactCache.fetch(ruleKey, output);
+        if (cacheResult.getType().isSuccess()) {
+          storeToCaches(
+              ImmutableList.copyOf(priorCaches),
+              ArtifactInfo.builder()
+                  .addRuleKeys(ruleKey)
+                  .setMetadata(cacheResult.getMetadata())
+                  .build(),
+              BorrowablePath.notBorrowablePath(output.getUnchecked()));
+          try (InputStream payload = Files.newInputStream(output.get())) {
+            consumer.consume(cacheResult.getMetadata(), payload);
+          }
+          return cacheResult;
+        }
+      }
+      if (artifactCache.getCacheReadMode().isWritable()) {
+        priorCaches.add(artifactCache);
+      }
+    }
+    return cacheResult;
+  }
+
+  /**
+   * Fetch the artifacts matching the requested rule keys, asking each of the encapsulated
+   * ArtifactCaches in turn for the ones which have not been found yet. As with {@link
+   * #fetch(RuleKey, LazyPath)}, hits are propagated to the caches which missed them.
+   */
+  @Override
+  public ImmutableMap<RuleKey, CacheResult> multiFetch(ImmutableMap<RuleKey, LazyPath> requests) {
+    Map<RuleKey, CacheResult> results = new LinkedHashMap<>();
+    for (RuleKey ruleKey : requests.keySet()) {
+      results.put(ruleKey, CacheResult.miss());
+    }
+    Map<RuleKey, LazyPath> remaining = new LinkedHashMap<>(requests);
+    ImmutableList.Builder<ArtifactCache> priorCaches = ImmutableList.builder();
+    for (ArtifactCache artifactCache : artifactCaches) {
+      if (remaining.isEmpty()) {
+        break;
+      }
+      ImmutableList<ArtifactCache> cachesToPropagateTo = priorCaches.build();
+      for (Map.Entry<RuleKey, CacheResult> entry :
+          artifactCache.multiFetch(ImmutableMap.copyOf(remaining)).entrySet()) {
+        RuleKey ruleKey = entry.getKey();
+        CacheResult cacheResult = entry.getValue();
+        results.put(ruleKey, cacheResult);
+        if (cacheResult.getType().isSuccess()) {
+          storeToCaches(
+              cachesToPropagateTo,
+              ArtifactInfo.builder()
+                  .addRuleKeys(ruleKey)
+                  .setMetadata(cacheResult.getMetadata())
+                  .build(),
+              BorrowablePath.notBorrowablePath(remaining.remove(ruleKey).getUnchecked()));
+        }
+      }
+      if (artifactCache.getCacheReadMode().isWritable()) {
+        priorCaches.add(artifactCache);
+      }
+    }
+    return ImmutableMap.copyOf(results);
+  }
+
   private static ListenableFuture<Void> storeToCaches(
       ImmutableList<ArtifactCache> caches, ArtifactInfo info, BorrowablePath output) {
     // TODO(cjhopman): support BorrowablePath with multiple writable caches.
@@ -18,6 +18,8 @@ package com.facebook.buck.artifact_cache;
 import com.facebook.buck.artifact_cache.thrift.ArtifactMetadata;
 import com.facebook.buck.artifact_cache.thrift.BuckCacheFetchRequest;
 import com.facebook.buck.artifact_cache.thrift.BuckCacheFetchResponse;
+import com.facebook.buck.artifact_cache.thrift.BuckCacheMultiFetchRequest;
+import com.facebook.buck.artifact_cache.thrift.BuckCacheMultiFetchResponse;
 import com.facebook.buck.artifact_cache.thrift.BuckCacheRequest;
 import com.facebook.buck.artifact_cache.thrift.BuckCacheRequestType;
 import com.facebook.buck.artifact_cache.thrift.BuckCacheResponse;
@@ -34,6 +36,7 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Maps;
 import com.google.common.io.ByteSource;
 import java.io.IOException;
 import java.io.InputStream;
@@ -41,6 +44,7 @@ import java.io.OutputStream;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import okhttp3.MediaType;
 import okhttp3.Request;
@@ -78,9 +82,7 @@ public class ThriftArtifactCache extends AbstractNetworkCache {
       throws IOException {
 
     BuckCacheFetchRequest fetchRequest = new BuckCacheFetchRequest();
-    com.facebook.buck.artifact_cache.thrift.RuleKey thriftRuleKey =
-        new com.facebook.buck.artifact_cache.thrift.RuleKey();
-    thriftRuleKey.setHashString(ruleKey.getHashCode().toString());
+    com.facebook.buck.artifact_cache.thrift.RuleKey thriftRuleKey = toThriftRuleKey(ruleKey);
     fetchRequest.setRuleKey(thriftRuleKey);
     fetchRequest.setRepository(repository);
     fetchRequest.setScheduleType(scheduleType);
@@ -128,60 +130,164 @@ public class ThriftArtifactCache extends AbstractNetworkCache {
               ThriftUtil.thriftToDebugJson(cacheResponse));
         }
 
-        if (!fetchResponse.isArtifactExists()) {
-          LOG.verbose("Artifact did not exist.");
-          return CacheResult.miss();
-        }
+        return readFetchResponse(ruleKey, output, fetchResponse, response, eventBuilder);
+      }
+    }
+  }
+
+  @Override
+  protected ImmutableMap<RuleKey, CacheResult> multiFetchImpl(
+      ImmutableMap<RuleKey, LazyPath> requests,
+      ImmutableMap<RuleKey, HttpArtifactCacheEvent.Finished.Builder> eventBuilders)
+      throws IOException {
+
+    BuckCacheMultiFetchRequest multiFetchRequest = new BuckCacheMultiFetchRequest();
+    for (RuleKey ruleKey : requests.keySet()) {
+      multiFetchRequest.addToRuleKeys(toThriftRuleKey(ruleKey));
+    }
+    multiFetchRequest.setRepository(repository);
+    multiFetchRequest.setScheduleType(scheduleType);
+    multiFetchRequest.setDistributedBuildModeEnabled(distributedBuildModeEnabled);
+
+    BuckCacheRequest cacheRequest = new BuckCacheRequest();
+    cacheRequest.setType(BuckCacheRequestType.MULTI_FETCH);
+    cacheRequest.setMultiFetchRequest(multiFetchRequest);
+
+    LOG.verbose("Will fetch %d keys", requests.size());
+
+    final ThriftArtifactCacheProtocol.Request request =
+        ThriftArtifactCacheProtocol.createRequest(PROTOCOL, cacheRequest);
+    Request.Builder builder = toOkHttpRequest(request);
+    try (HttpResponse httpResponse = fetchClient.makeRequest(hybridThriftEndpoint, builder)) {
+      if (httpResponse.statusCode() != 200) {
+        String message =
+            String.format(
+                "Failed to fetch cache artifacts with HTTP status code [%d:%s] "
+                    + " to url [%s] for rule keys [%s].",
+                httpResponse.statusCode(),
+                httpResponse.statusMessage(),
+                httpResponse.requestUrl(),
+                requests.keySet());
+        LOG.error(message);
+        return errorForEach(requests, message);
+      }
 
-        LOG.verbose("Got artifact.  Attempting to read payload.");
-        Path tmp = createTempFileForDownload();
-        ThriftArtifactCacheProtocol.Response.ReadPayloadInfo readResult;
-        try (OutputStream tmpFile = projectFilesystem.newFileOutputStream(tmp)) {
-          readResult = response.readPayload(tmpFile);
-          LOG.verbose("Successfully read payload: %d bytes.", readResult.getBytesRead());
+      try (ThriftArtifactCacheProtocol.Response response =
+          ThriftArtifactCacheProtocol.parseResponse(PROTOCOL, httpResponse.getBody())) {
+        BuckCacheResponse cacheResponse = response.getThriftData();
+        if (!cacheResponse.isWasSuccessful()) {
+          LOG.warn("Request was unsuccessful: %s", cacheResponse.getErrorMessage());
+          return errorForEach(requests, cacheResponse.getErrorMessage());
         }
 
-        ArtifactMetadata metadata = fetchResponse.getMetadata();
-        if (LOG.isVerboseEnabled()) {
-          LOG.verbose(
+        BuckCacheMultiFetchResponse multiFetchResponse = cacheResponse.getMultiFetchResponse();
+        if (multiFetchResponse == null || multiFetchResponse.getResultsSize() != requests.size()) {
+          String message =
               String.format(
-                  "Fetched artifact with rule key [%s] contains the following metadata: [%s]",
-                  ruleKey, ThriftUtil.thriftToDebugJson(metadata)));
+                  "Expected [%d] results in multi-fetch response but got [%d].",
+                  requests.size(),
+                  multiFetchResponse == null ? 0 : multiFetchResponse.getResultsSize());
+          LOG.error(message);
+          return errorForEach(requests, message);
         }
 
-        eventBuilder
-            .setTarget(Optional.ofNullable(metadata.getBuildTarget()))
-            .getFetchBuilder()
-            .setAssociatedRuleKeys(toImmutableSet(metadata.getRuleKeys()))
-            .setArtifactSizeBytes(readResult.getBytesRead());
-        if (!metadata.isSetArtifactPayloadMd5()) {
-          String msg = "Fetched artifact is missing the MD5 hash.";
-          LOG.warn(msg);
-        } else {
-          eventBuilder.getFetchBuilder().setArtifactContentHash(metadata.getArtifactPayloadMd5());
-          if (!readResult
-              .getMd5Hash()
-              .equals(fetchResponse.getMetadata().getArtifactPayloadMd5())) {
-            String msg =
-                String.format(
-                    "The artifact fetched from cache is corrupted. ExpectedMD5=[%s] ActualMD5=[%s]",
-                    fetchResponse.getMetadata().getArtifactPayloadMd5(), readResult.getMd5Hash());
-            LOG.error(msg);
-            return CacheResult.error(name, mode, msg);
-          }
+        if (LOG.isDebugEnabled()) {
+          LOG.debug(
+              "Debug info for cache multi-fetch request: request=[%s] response=[%s]",
+              ThriftUtil.thriftToDebugJson(cacheRequest),
+              ThriftUtil.thriftToDebugJson(cacheResponse));
         }
 
-        // This makes sure we don't have 'half downloaded files' in the dir cache.
-        projectFilesystem.move(tmp, output.get(), StandardCopyOption.REPLACE_EXISTING);
-        return CacheResult.hit(
-            name,
-            mode,
-            ImmutableMap.copyOf(fetchResponse.getMetadata().getMetadata()),
-            readResult.getBytesRead());
+        // Payloads are laid out in the same order as the results which have an artifact.
+        ImmutableMap.Builder<RuleKey, CacheResult> results = ImmutableMap.builder();
+        int index = 0;
+        for (Map.Entry<RuleKey, LazyPath> entry : requests.entrySet()) {
+          RuleKey ruleKey = entry.getKey();
+          results.put(
+              ruleKey,
+              readFetchResponse(
+                  ruleKey,
+                  entry.getValue(),
+                  multiFetchResponse.getResults().get(index++),
+                  response,
+                  eventBuilders.get(ruleKey)));
+        }
+        return results.build();
       }
     }
   }
 
+  private ImmutableMap<RuleKey, CacheResult> errorForEach(
+      ImmutableMap<RuleKey, LazyPath> requests, String message) {
+    CacheResult error = CacheResult.error(name, mode, message);
+    return ImmutableMap.copyOf(Maps.transformValues(requests, path -> error));
+  }
+
+  private CacheResult readFetchResponse(
+      RuleKey ruleKey,
+      LazyPath output,
+      BuckCacheFetchResponse fetchResponse,
+      ThriftArtifactCacheProtocol.Response response,
+      HttpArtifactCacheEvent.Finished.Builder eventBuilder)
+      throws IOException {
+    if (!fetchResponse.isArtifactExists()) {
+      LOG.verbose("Artifact did not exist.");
+      return CacheResult.miss();
+    }
+
+    LOG.verbose("Got artifact.  Attempting to read payload.");
+    Path tmp = createTempFileForDownload();
+    ThriftArtifactCacheProtocol.Response.ReadPayloadInfo readResult;
+    try (OutputStream tmpFile = projectFilesystem.newFileOutputStream(tmp)) {
+      readResult = response.readPayload(tmpFile);
+      LOG.verbose("Successfully read payload: %d bytes.", readResult.getBytesRead());
+    }
+
+    ArtifactMetadata metadata = fetchResponse.getMetadata();
+    if (LOG.isVerboseEnabled()) {
+      LOG.verbose(
+          String.format(
+              "Fetched artifact with rule key [%s] contains the following metadata: [%s]",
+              ruleKey, ThriftUtil.thriftToDebugJson(metadata)));
+    }
+
+    eventBuilder
+        .setTarget(Optional.ofNullable(metadata.getBuildTarget()))
+        .getFetchBuilder()
+        .setAssociatedRuleKeys(toImmutableSet(metadata.getRuleKeys()))
+        .setArtifactSizeBytes(readResult.getBytesRead());
+    if (!metadata.isSetArtifactPayloadMd5()) {
+      String msg = "Fetched artifact is missing the MD5 hash.";
+      LOG.warn(msg);
+    } else {
+      eventBuilder.getFetchBuilder().setArtifactContentHash(metadata.getArtifactPayloadMd5());
+      if (!readResult.getMd5Hash().equals(fetchResponse.getMetadata().getArtifactPayloadMd5())) {
+        String msg =
+            String.format(
+                "The artifact fetched from cache is corrupted. ExpectedMD5=[%s] ActualMD5=[%s]",
+                fetchResponse.getMetadata().getArtifactPayloadMd5(), readResult.getMd5Hash());
+        LOG.error(msg);
+        return CacheResult.error(name, mode, msg);
+      }
+    }
+
+    // This makes sure we don't have 'half downloaded files' in the dir cache.
+    projectFilesystem.move(tmp, output.get(), StandardCopyOption.REPLACE_EXISTING);
+    return CacheResult.hit(
+        name,
+        mode,
+        ImmutableMap.copyOf(fetchResponse.getMetadata().getMetadata()),
+        readResult.getBytesRead());
+  }
+
+  private static com.facebook.buck.artifact_cache.thrift.RuleKey toThriftRuleKey(
+      RuleKey ruleKey) {
+    com.facebook.buck.artifact_cache.thrift.RuleKey thriftRuleKey =
+        new com.facebook.buck.artifact_cache.thrift.RuleKey();
+    thriftRuleKey.setHashString(ruleKey.getHashCode().toString());
+    return thriftRuleKey;
+  }
+
   private static ImmutableSet<RuleKey> toImmutableSet(
       List<com.facebook.buck.artifact_cache.thrift.RuleKey> ruleKeys) {
     return ImmutableSet.copyOf(
@@ -36,6 +36,8 @@ import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Optional;
 
 /**
@@ -123,6 +125,80 @@ public class TwoLevelArtifactCacheDecorator implements ArtifactCache, CacheDecor
     LOG.verbose("Found a first-level artifact with metadata: %s", fetchResult.getMetadata());
     CacheResult outputFileFetchResult =
         delegate.fetch(new RuleKey(fetchResult.getMetadata().get(METADATA_KEY)), output);
+    return handleSecondLevelResult(fetchResult, outputFileFetchResult);
+  }
+
+  @Override
+  public CacheResult fetch(RuleKey ruleKey, LazyPath output, ArtifactPayloadConsumer consumer)
+      throws IOException {
+    // A first-level entry which holds a content hash has no artifact to consume.
+    CacheResult fetchResult =
+        delegate.fetch(
+            ruleKey,
+            output,
+            (metadata, payload) -> {
+              if (!metadata.containsKey(METADATA_KEY)) {
+                consumer.consume(metadata, payload);
+              }
+            });
+    if (!fetchResult.getType().isSuccess()) {
+      LOG.verbose("Missed first-level lookup.");
+      return fetchResult;
+    } else if (!fetchResult.getMetadata().containsKey(METADATA_KEY)) {
+      LOG.verbose("Found a single-level entry.");
+      return fetchResult;
+    }
+    LOG.verbose("Found a first-level artifact with metadata: %s", fetchResult.getMetadata());
+    CacheResult outputFileFetchResult =
+        delegate.fetch(
+            new RuleKey(fetchResult.getMetadata().get(METADATA_KEY)),
+            output,
+            (metadata, payload) -> consumer.consume(fetchResult.getMetadata(), payload));
+    return handleSecondLevelResult(fetchResult, outputFileFetchResult);
+  }
+
+  @Override
+  public ImmutableMap<RuleKey, CacheResult> multiFetch(ImmutableMap<RuleKey, LazyPath> requests) {
+    ImmutableMap<RuleKey, CacheResult> fetchResults = delegate.multiFetch(requests);
+
+    // Batch the second-level lookups too. Several rule keys may share the same content hash, in
+    // which case only the first one can be part of the batch as the outputs are distinct.
+    Map<RuleKey, LazyPath> secondLevelRequests = new LinkedHashMap<>();
+    Map<RuleKey, RuleKey> secondLevelKeys = new LinkedHashMap<>();
+    for (Map.Entry<RuleKey, CacheResult> entry : fetchResults.entrySet()) {
+      CacheResult fetchResult = entry.getValue();
+      if (fetchResult.getType().isSuccess()
+          && fetchResult.getMetadata().containsKey(METADATA_KEY)) {
+        RuleKey contentKey = new RuleKey(fetchResult.getMetadata().get(METADATA_KEY));
+        secondLevelKeys.put(entry.getKey(), contentKey);
+        secondLevelRequests.putIfAbsent(contentKey, requests.get(entry.getKey()));
+      }
+    }
+    if (secondLevelKeys.isEmpty()) {
+      return fetchResults;
+    }
+    ImmutableMap<RuleKey, CacheResult> secondLevelResults =
+        delegate.multiFetch(ImmutableMap.copyOf(secondLevelRequests));
+
+    ImmutableMap.Builder<RuleKey, CacheResult> results = ImmutableMap.builder();
+    for (Map.Entry<RuleKey, CacheResult> entry : fetchResults.entrySet()) {
+      RuleKey contentKey = secondLevelKeys.get(entry.getKey());
+      if (contentKey == null) {
+        results.put(entry);
+        continue;
+      }
+      LazyPath output = requests.get(entry.getKey());
+      CacheResult outputFileFetchResult =
+          secondLevelRequests.get(contentKey) == output
+              ? secondLevelResults.get(contentKey)
+              : delegate.fetch(contentKey, output);
+      results.put(entry.getKey(), handleSecondLevelResult(entry.getValue(), outputFileFetchResult));
+    }
+    return results.build();
+  }
+
+  private CacheResult handleSecondLevelResult(
+      CacheResult fetchResult, CacheResult outputFileFetchResult) {
     if (!outputFileFetchResult.getType().isSuccess()) {
       LOG.verbose("Missed second-level lookup.");
       secondLevelCacheMisses.inc();
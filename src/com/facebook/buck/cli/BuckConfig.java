@@ -493,6 +493,16 @@ public class BuckConfig implements ConfigPathGetter {
     return getBooleanValue("daemon", "flush_events_before_exit", false);
   }
 
+  /** Whether the daemon should persist its file hash caches across restarts. */
+  public boolean isFileHashCacheSnapshotEnabled() {
+    return getBooleanValue("daemon", "file_hash_cache_snapshot", false);
+  }
+
+  /** Minimum time between two periodic writes of the file hash cache snapshots. */
+  public long getFileHashCacheSnapshotIntervalSeconds() {
+    return getLong("daemon", "file_hash_cache_snapshot_interval_seconds").orElse(300L);
+  }
+
   public ImmutableSet<String> getListenerJars() {
     return ImmutableSet.copyOf(getListWithoutComments("extensions", "listeners"));
   }
@@ -559,6 +569,14 @@ public class BuckConfig implements ConfigPathGetter {
     return getBooleanValue("cache", "action_graph_cache_check_enabled", false);
   }
 
+  /**
+   * @return whether to create the action graph by updating the cached one, rather than from
+   *     scratch, when the target graph changed.
+   */
+  public boolean isIncrementalActionGraphEnabled() {
+    return getBooleanValue("cache", "incremental_action_graph", false);
+  }
+
   public Optional<String> getRepository() {
     return config.get("cache", "repository");
   }
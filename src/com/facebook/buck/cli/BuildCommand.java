@@ -759,6 +759,7 @@ public class BuildCommand extends AbstractCommand {
                     params.getBuckEventBus(),
                     params.getBuckConfig().isActionGraphCheckingEnabled(),
                     params.getBuckConfig().isSkipActionGraphCache(),
+                    params.getBuckConfig().isIncrementalActionGraphEnabled(),
                     targetGraphAndBuildTargets.getTargetGraph(),
                     params.getBuckConfig().getKeySeed()));
 
@@ -837,6 +838,9 @@ public class BuildCommand extends AbstractCommand {
                 actionGraphAndResolver.getResolver(),
                 params.getBuildInfoStoreManager(),
                 cachingBuildEngineBuckConfig.getResourceAwareSchedulingInfo(),
+                cachingBuildEngineBuckConfig.getSchedulingMode(),
+                cachingBuildEngineBuckConfig.isArtifactCachePrefetchEnabled(),
+                cachingBuildEngineBuckConfig.isRuleKeyPrecomputeEnabled(),
                 RuleKeyFactories.of(
                     rootCellBuckConfig.getKeySeed(),
                     cachingBuildEngineDelegate.getFileHashCache(),
@@ -43,6 +43,7 @@ import com.facebook.buck.shell.WorkerProcessPool;
 import com.facebook.buck.util.RichStream;
 import com.facebook.buck.util.WatchmanWatcher;
 import com.facebook.buck.util.cache.DefaultFileHashCache;
+import com.facebook.buck.util.cache.FileHashCacheSnapshot;
 import com.facebook.buck.util.cache.ProjectFileHashCache;
 import com.facebook.buck.util.cache.WatchedFileHashCache;
 import com.facebook.buck.versions.VersionedTargetGraphCache;
@@ -54,9 +55,11 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.nio.file.Path;
+import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Daemon used to monitor the file system and cache build rules between Main() method invocations is
@@ -69,6 +72,8 @@ final class Daemon implements Closeable {
   private static final String STATIC_CONTENT_DIRECTORY =
       System.getProperty("buck.path_to_static_content", "webserver/static");
 
+  private static final String FILE_HASH_CACHE_SNAPSHOT_FILE = ".file_hash_cache_snapshot";
+
   private final Cell rootCell;
   private final TypeCoercerFactory typeCoercerFactory;
   private final Parser parser;
@@ -81,6 +86,10 @@ final class Daemon implements Closeable {
   private final BroadcastEventListener broadcastEventListener;
   private final RuleKeyCacheRecycler<RuleKey> defaultRuleKeyFactoryCacheRecycler;
   private final ImmutableMap<Path, WatchmanCursor> cursor;
+  private final ImmutableMap<WatchedFileHashCache, Path> fileHashCacheSnapshots;
+  private final long fileHashCacheSnapshotIntervalMillis;
+  private long lastFileHashCacheSnapshotMillis;
+  private boolean fileHashCacheSnapshotLoadReported = false;
 
   Daemon(Cell rootCell, Optional<WebServer> webServerToReuse) {
     this.rootCell = rootCell;
@@ -90,9 +99,24 @@ final class Daemon implements Closeable {
 
     // Setup the stacked file hash cache from all cells.
     ImmutableList.Builder<ProjectFileHashCache> hashCachesBuilder = ImmutableList.builder();
+    ImmutableMap.Builder<WatchedFileHashCache, Path> snapshotsBuilder = ImmutableMap.builder();
+    boolean snapshotsEnabled = rootCell.getBuckConfig().isFileHashCacheSnapshotEnabled();
     allCells.forEach(
         subCell -> {
           WatchedFileHashCache watchedCache = new WatchedFileHashCache(subCell.getFilesystem());
+          if (snapshotsEnabled) {
+            Path snapshotFile =
+                subCell
+                    .getFilesystem()
+                    .resolve(subCell.getFilesystem().getBuckPaths().getBuckOut())
+                    .resolve(FILE_HASH_CACHE_SNAPSHOT_FILE);
+            try {
+              watchedCache.loadSnapshot(snapshotFile);
+            } catch (IOException e) {
+              LOG.warn(e, "Failed to load file hash cache snapshot %s", snapshotFile);
+            }
+            snapshotsBuilder.put(watchedCache, snapshotFile);
+          }
           fileEventBus.register(watchedCache);
           hashCachesBuilder.add(watchedCache);
         });
@@ -101,6 +125,11 @@ final class Daemon implements Closeable {
             rootCell.getFilesystem().replaceBlacklistedPaths(ImmutableSet.of()),
             rootCell.getFilesystem().getBuckPaths().getBuckOut()));
     this.hashCaches = hashCachesBuilder.build();
+    this.fileHashCacheSnapshots = snapshotsBuilder.build();
+    this.fileHashCacheSnapshotIntervalMillis =
+        TimeUnit.SECONDS.toMillis(
+            rootCell.getBuckConfig().getFileHashCacheSnapshotIntervalSeconds());
+    this.lastFileHashCacheSnapshotMillis = System.currentTimeMillis();
 
     this.broadcastEventListener = new BroadcastEventListener();
     this.actionGraphCache = new ActionGraphCache(broadcastEventListener);
@@ -295,6 +324,7 @@ final class Daemon implements Closeable {
                           cache.getOldCacheRetrievalAggregatedNanoTime(),
                           cache.getNumberOfRetrievals()));
                 }
+                postFileHashCacheSnapshotEvents(eventBus, cache);
                 eventBus.post(
                     new ExperimentEvent(
                         "file_hash_cache_invalidation",
@@ -305,6 +335,49 @@ final class Daemon implements Closeable {
                 cache.resetCounters();
               }
             });
+        fileHashCacheSnapshotLoadReported = true;
+      }
+    }
+  }
+
+  private void postFileHashCacheSnapshotEvents(BuckEventBus eventBus, WatchedFileHashCache cache) {
+    Optional<FileHashCacheSnapshot> snapshot = cache.getSnapshot();
+    if (!snapshot.isPresent()) {
+      return;
+    }
+    if (!fileHashCacheSnapshotLoadReported) {
+      eventBus.post(
+          new FileHashCacheEvent(
+              "snapshot.load",
+              snapshot.get().getLoadNanoTime(),
+              snapshot.get().getLoadNanoTime(),
+              snapshot.get().getEntryCount()));
+    }
+    eventBus.post(new FileHashCacheEvent("snapshot.hits", 0, 0, snapshot.get().getHits()));
+    eventBus.post(
+        new FileHashCacheEvent("snapshot.stale", 0, 0, snapshot.get().getStaleEntries()));
+    snapshot.get().resetCounters();
+  }
+
+  /**
+   * Persists the file hash caches of all cells so that a restarted daemon starts warm. Unless
+   * {@code force} is set, this is a no-op if the previous snapshot is more recent than the
+   * configured interval.
+   */
+  synchronized void writeFileHashCacheSnapshots(boolean force) {
+    long now = System.currentTimeMillis();
+    if (fileHashCacheSnapshots.isEmpty()
+        || (!force
+            && now - lastFileHashCacheSnapshotMillis < fileHashCacheSnapshotIntervalMillis)) {
+      return;
+    }
+    lastFileHashCacheSnapshotMillis = now;
+    for (Map.Entry<WatchedFileHashCache, Path> entry : fileHashCacheSnapshots.entrySet()) {
+      try {
+        int written = entry.getKey().writeSnapshot(entry.getValue());
+        LOG.debug("Wrote %d file hashes to %s", written, entry.getValue());
+      } catch (IOException e) {
+        LOG.warn(e, "Failed to write file hash cache snapshot %s", entry.getValue());
       }
     }
   }
@@ -335,6 +408,7 @@ final class Daemon implements Closeable {
 
   @Override
   public void close() throws IOException {
+    writeFileHashCacheSnapshots(true);
     shutdownPersistentWorkerPools();
     shutdownWebServer();
   }
@@ -125,6 +125,9 @@ public class FetchCommand extends BuildCommand {
                   actionGraphAndResolver.getResolver(),
                   params.getBuildInfoStoreManager(),
                   cachingBuildEngineBuckConfig.getResourceAwareSchedulingInfo(),
+                  cachingBuildEngineBuckConfig.getSchedulingMode(),
+                  cachingBuildEngineBuckConfig.isArtifactCachePrefetchEnabled(),
+                  cachingBuildEngineBuckConfig.isRuleKeyPrecomputeEnabled(),
                   RuleKeyFactories.of(
                       params.getBuckConfig().getKeySeed(),
                       localCachingBuildEngineDelegate.getFileHashCache(),
@@ -138,6 +138,9 @@ final class JavaBuildGraphProcessor {
               buildRuleResolver,
               params.getBuildInfoStoreManager(),
               cachingBuildEngineBuckConfig.getResourceAwareSchedulingInfo(),
+              cachingBuildEngineBuckConfig.getSchedulingMode(),
+              cachingBuildEngineBuckConfig.isArtifactCachePrefetchEnabled(),
+              cachingBuildEngineBuckConfig.isRuleKeyPrecomputeEnabled(),
               RuleKeyFactories.of(
                   params.getBuckConfig().getKeySeed(),
                   cachingBuildEngineDelegate.getFileHashCache(),
@@ -859,11 +859,12 @@ public final class Main {
                     new ConstructorArgMarshaller(typeCoercerFactory));
           }
 
-          // Because the Parser is potentially constructed before the CounterRegistry,
-          // we need to manually register its counters after it's created.
+          // Because the Parser and the ActionGraphCache are potentially constructed before the
+          // CounterRegistry, we need to manually register their counters after they're created.
           //
           // The counters will be unregistered once the counter registry is closed.
           counterRegistry.registerCounters(parser.getCounters());
+          counterRegistry.registerCounters(actionGraphCache.getCounters());
 
           JavaUtilsLoggingBuildListener.ensureLogFileIsWritten(rootCell.getFilesystem());
 
@@ -983,6 +984,11 @@ public final class Main {
           context.get().exit(exitCode); // Allow nailgun client to exit while outputting traces.
         }
 
+        if (daemon.isPresent()) {
+          // Periodically persist the file hash caches so that a restarted daemon starts warm.
+          daemon.get().writeFileHashCacheSnapshots(/* force */ false);
+        }
+
         closeDiskIoExecutorService(diskIoExecutorService);
         flushEventListeners(console, buildId, eventListeners);
         return exitCode;
@@ -806,6 +806,7 @@ public class TargetsCommand extends AbstractCommand {
                   params.getBuckEventBus(),
                   params.getBuckConfig().isActionGraphCheckingEnabled(),
                   params.getBuckConfig().isSkipActionGraphCache(),
+                  params.getBuckConfig().isIncrementalActionGraphEnabled(),
                   targetGraphAndTargetNodes.getTargetGraph(),
                   params.getBuckConfig().getKeySeed());
       actionGraph = Optional.of(result.getActionGraph());
@@ -478,6 +478,7 @@ public class TestCommand extends BuildCommand {
                       params.getBuckEventBus(),
                       params.getBuckConfig().isActionGraphCheckingEnabled(),
                       params.getBuckConfig().isSkipActionGraphCache(),
+                      params.getBuckConfig().isIncrementalActionGraphEnabled(),
                       targetGraphAndBuildTargets.getTargetGraph(),
                       params.getBuckConfig().getKeySeed()));
       // Look up all of the test rules in the action graph.
@@ -521,6 +522,9 @@ public class TestCommand extends BuildCommand {
                     actionGraphAndResolver.getResolver(),
                     params.getBuildInfoStoreManager(),
                     cachingBuildEngineBuckConfig.getResourceAwareSchedulingInfo(),
+                    cachingBuildEngineBuckConfig.getSchedulingMode(),
+                    cachingBuildEngineBuckConfig.isArtifactCachePrefetchEnabled(),
+                    cachingBuildEngineBuckConfig.isRuleKeyPrecomputeEnabled(),
                     RuleKeyFactories.of(
                         params.getBuckConfig().getKeySeed(),
                         localCachingBuildEngineDelegate.getFileHashCache(),
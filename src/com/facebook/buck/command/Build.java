@@ -55,6 +55,7 @@ import com.facebook.buck.util.ExceptionWithHumanReadableMessage;
 import com.facebook.buck.util.HumanReadableException;
 import com.facebook.buck.util.MoreCollectors;
 import com.facebook.buck.util.concurrent.ConcurrencyLimit;
+import com.facebook.buck.util.concurrent.MoreFutures;
 import com.facebook.buck.util.environment.Platform;
 import com.facebook.buck.util.immutables.BuckStyleImmutable;
 import com.google.common.base.Charsets;
@@ -69,6 +70,7 @@ import com.google.common.io.Files;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
 import java.io.Closeable;
 import java.io.IOException;
 import java.nio.channels.ClosedByInterruptException;
@@ -77,9 +79,11 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
 import org.immutables.value.Value;
@@ -204,59 +208,8 @@ public class Build implements Closeable {
   public BuildExecutionResult executeBuild(
       Iterable<? extends BuildTarget> targetish, boolean isKeepGoing)
       throws IOException, ExecutionException, InterruptedException {
-    BuildId buildId = executionContext.getBuildId();
-    BuildEngineBuildContext buildContext =
-        BuildEngineBuildContext.builder()
-            .setBuildContext(
-                BuildContext.builder()
-                    .setActionGraph(actionGraph)
-                    .setSourcePathResolver(
-                        new SourcePathResolver(new SourcePathRuleFinder(ruleResolver)))
-                    .setJavaPackageFinder(javaPackageFinder)
-                    .setEventBus(executionContext.getBuckEventBus())
-                    .setAndroidPlatformTargetSupplier(
-                        executionContext.getAndroidPlatformTargetSupplier())
-                    .build())
-            .setClock(clock)
-            .setArtifactCache(artifactCache)
-            .setBuildId(buildId)
-            .putAllEnvironment(executionContext.getEnvironment())
-            .setKeepGoing(isKeepGoing)
-            .build();
-
-    // It is important to use this logic to determine the set of rules to build rather than
-    // build.getActionGraph().getNodesWithNoIncomingEdges() because, due to graph enhancement,
-    // there could be disconnected subgraphs in the DependencyGraph that we do not want to build.
-    ImmutableSet<BuildTarget> targetsToBuild =
-        StreamSupport.stream(targetish.spliterator(), false)
-            .collect(MoreCollectors.toImmutableSet());
-
-    // It is important to use this logic to determine the set of rules to build rather than
-    // build.getActionGraph().getNodesWithNoIncomingEdges() because, due to graph enhancement,
-    // there could be disconnected subgraphs in the DependencyGraph that we do not want to build.
-    ImmutableList<BuildRule> rulesToBuild =
-        ImmutableList.copyOf(
-            targetsToBuild
-                .stream()
-                .map(
-                    buildTarget -> {
-                      try {
-                        return getRuleResolver().requireRule(buildTarget);
-                      } catch (NoSuchBuildTargetException e) {
-                        throw new HumanReadableException(
-                            "No build rule found for target %s", buildTarget);
-                      }
-                    })
-                .collect(MoreCollectors.toImmutableSet()));
-
-    // Calculate and post the number of rules that need to built.
-    int numRules = buildEngine.getNumRulesToBuild(rulesToBuild);
-    getExecutionContext()
-        .getBuckEventBus()
-        .post(BuildEvent.ruleCountCalculated(targetsToBuild, numRules));
-
-    // Setup symlinks required when configuring the output path.
-    createConfiguredBuckOutSymlinks();
+    BuildEngineBuildContext buildContext = createBuildContext(isKeepGoing);
+    ImmutableList<BuildRule> rulesToBuild = prepareRulesToBuild(targetish);
 
     List<BuildEngineResult> futures =
         rulesToBuild
@@ -309,6 +262,112 @@ public class Build implements Closeable {
         .build();
   }
 
+  /**
+   * Builds {@code targetish} as {@link #executeBuild} does when keeping going, so that they're all
+   * built as concurrently as any build, but calls {@code listener} as soon as each of them is
+   * built, rather than once they all are. {@code listener} is called from the calling thread.
+   *
+   * @return 0 if all the targets were built, 1 otherwise.
+   */
+  public int executeAndReportEachRule(
+      Iterable<? extends BuildTarget> targetish, BuckEventBus eventBus, RuleBuiltListener listener)
+      throws IOException, InterruptedException {
+    BuildEngineBuildContext buildContext = createBuildContext(/* isKeepGoing */ true);
+    ImmutableList<BuildRule> rulesToBuild = prepareRulesToBuild(targetish);
+
+    BlockingQueue<BuildRule> builtRules = new LinkedBlockingQueue<>();
+    Map<BuildRule, ListenableFuture<BuildResult>> futures = new LinkedHashMap<>();
+    for (BuildRule rule : rulesToBuild) {
+      ListenableFuture<BuildResult> future =
+          buildEngine.build(buildContext, executionContext, rule).getResult();
+      futures.put(rule, future);
+      future.addListener(() -> builtRules.add(rule), MoreExecutors.directExecutor());
+    }
+
+    boolean allSucceeded = true;
+    try {
+      for (int i = 0; i < rulesToBuild.size(); i++) {
+        BuildRule rule = builtRules.take();
+        ListenableFuture<BuildResult> future = futures.get(rule);
+        boolean succeeded =
+            MoreFutures.isSuccess(future) && Futures.getUnchecked(future).getSuccess() != null;
+        allSucceeded &= succeeded;
+        listener.ruleBuilt(rule, succeeded);
+      }
+    } catch (InterruptedException | IOException e) {
+      futures.values().forEach(future -> future.cancel(true));
+      throw e;
+    }
+    if (!allSucceeded) {
+      eventBus.post(ConsoleEvent.severe("Not all rules succeeded."));
+    }
+    return allSucceeded ? 0 : 1;
+  }
+
+  private BuildEngineBuildContext createBuildContext(boolean isKeepGoing) {
+    BuildId buildId = executionContext.getBuildId();
+    return BuildEngineBuildContext.builder()
+        .setBuildContext(
+            BuildContext.builder()
+                .setActionGraph(actionGraph)
+                .setSourcePathResolver(
+                    new SourcePathResolver(new SourcePathRuleFinder(ruleResolver)))
+                .setJavaPackageFinder(javaPackageFinder)
+                .setEventBus(executionContext.getBuckEventBus())
+                .setAndroidPlatformTargetSupplier(
+                    executionContext.getAndroidPlatformTargetSupplier())
+                .build())
+        .setClock(clock)
+        .setArtifactCache(artifactCache)
+        .setBuildId(buildId)
+        .putAllEnvironment(executionContext.getEnvironment())
+        .setKeepGoing(isKeepGoing)
+        .build();
+  }
+
+  /**
+   * Resolves the rules of {@code targetish}, posts how many rules building them takes and sets up
+   * buck-out for the build.
+   */
+  private ImmutableList<BuildRule> prepareRulesToBuild(Iterable<? extends BuildTarget> targetish)
+      throws IOException {
+    // It is important to use this logic to determine the set of rules to build rather than
+    // build.getActionGraph().getNodesWithNoIncomingEdges() because, due to graph enhancement,
+    // there could be disconnected subgraphs in the DependencyGraph that we do not want to build.
+    ImmutableSet<BuildTarget> targetsToBuild =
+        StreamSupport.stream(targetish.spliterator(), false)
+            .collect(MoreCollectors.toImmutableSet());
+
+    // It is important to use this logic to determine the set of rules to build rather than
+    // build.getActionGraph().getNodesWithNoIncomingEdges() because, due to graph enhancement,
+    // there could be disconnected subgraphs in the DependencyGraph that we do not want to build.
+    ImmutableList<BuildRule> rulesToBuild =
+        ImmutableList.copyOf(
+            targetsToBuild
+                .stream()
+                .map(
+                    buildTarget -> {
+                      try {
+                        return getRuleResolver().requireRule(buildTarget);
+                      } catch (NoSuchBuildTargetException e) {
+                        throw new HumanReadableException(
+                            "No build rule found for target %s", buildTarget);
+                      }
+                    })
+                .collect(MoreCollectors.toImmutableSet()));
+
+    // Calculate and post the number of rules that need to built.
+    int numRules = buildEngine.getNumRulesToBuild(rulesToBuild);
+    getExecutionContext()
+        .getBuckEventBus()
+        .post(BuildEvent.ruleCountCalculated(targetsToBuild, numRules));
+
+    // Setup symlinks required when configuring the output path.
+    createConfiguredBuckOutSymlinks();
+
+    return rulesToBuild;
+  }
+
   private String getFailureMessage(Throwable thrown) {
     return "BUILD FAILED: " + thrown.getMessage();
   }
@@ -399,6 +458,11 @@ public class Build implements Closeable {
     executionContext.close();
   }
 
+  /** Told about each rule built by {@link #executeAndReportEachRule}. */
+  public interface RuleBuiltListener {
+    void ruleBuilt(BuildRule rule, boolean succeeded) throws IOException;
+  }
+
   @Value.Immutable
   @BuckStyleImmutable
   abstract static class AbstractBuildExecutionResult {
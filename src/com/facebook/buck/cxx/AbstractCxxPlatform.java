@@ -131,4 +131,11 @@ interface AbstractCxxPlatform extends FlavorConvertible {
 
   /** When building or creating a project, create symlinks for the public headers if it's true. */
   boolean getPrivateHeadersSymlinksEnabled();
+
+  /**
+   * @return how headers are made available to the preprocessor, if that shouldn't be picked from
+   *     whether header symlinks are enabled. Modes the preprocessor doesn't support fall back to
+   *     the closest one it does.
+   */
+  Optional<HeaderModes.HeaderMode> getHeaderMode();
 }
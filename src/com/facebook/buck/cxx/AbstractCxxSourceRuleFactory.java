@@ -16,6 +16,7 @@
 
 package com.facebook.buck.cxx;
 
+import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.log.Logger;
 import com.facebook.buck.model.BuildTarget;
 import com.facebook.buck.model.BuildTargets;
@@ -54,6 +55,7 @@ import java.io.File;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -67,8 +69,10 @@ abstract class AbstractCxxSourceRuleFactory {
 
   private static final Logger LOG = Logger.get(AbstractCxxSourceRuleFactory.class);
   private static final String COMPILE_FLAVOR_PREFIX = "compile-";
+  private static final String PREPROCESS_FLAVOR_PREFIX = "preprocess-";
   private static final Flavor AGGREGATED_PREPROCESS_DEPS_FLAVOR =
       InternalFlavor.of("preprocessor-deps");
+  private static final Flavor MERGED_HEADER_MAP_FLAVOR = InternalFlavor.of("merged-header-map");
 
   @Value.Parameter
   protected abstract BuildRuleParams getParams();
@@ -130,6 +134,10 @@ abstract class AbstractCxxSourceRuleFactory {
       builder.add(tree);
       builder.addAll(getRuleFinder().filterBuildRuleInputs(tree.getLinks().values()));
     }
+    // Header maps may have been merged into one of their own.
+    for (CxxHeaders include : getIncludes()) {
+      builder.addAll(include.getDeps(getRuleFinder()));
+    }
     return builder.build();
   }
 
@@ -143,10 +151,80 @@ abstract class AbstractCxxSourceRuleFactory {
 
   @Value.Lazy
   protected ImmutableList<CxxHeaders> getIncludes() {
-    return getCxxPreprocessorInput()
-        .stream()
-        .flatMap(input -> input.getIncludes().stream())
-        .collect(MoreCollectors.toImmutableList());
+    ImmutableList<CxxHeaders> includes =
+        getCxxPreprocessorInput()
+            .stream()
+            .flatMap(input -> input.getIncludes().stream())
+            .collect(MoreCollectors.toImmutableList());
+    if (getCxxPlatform()
+        .getHeaderMode()
+        .equals(Optional.of(CxxPreprocessables.HeaderMode.HEADER_MAP_ONLY))) {
+      includes = mergeHeaderMaps(includes);
+    }
+    return includes;
+  }
+
+  /**
+   * Replaces the header maps of the libraries whose headers are included with one which merges
+   * them, so that the preprocessor looks headers up in one header map rather than in one per
+   * library.
+   */
+  private ImmutableList<CxxHeaders> mergeHeaderMaps(ImmutableList<CxxHeaders> includes) {
+    List<CxxSymlinkTreeHeaders> headerMaps = new ArrayList<>();
+    for (CxxHeaders include : includes) {
+      if (include instanceof CxxSymlinkTreeHeaders
+          && include.getIncludeType() == CxxPreprocessables.IncludeType.LOCAL
+          && include.getHeaderMap().isPresent()
+          && getRuleFinder().getRule(include.getRoot()).orElse(null) instanceof DirectHeaderMap) {
+        headerMaps.add((CxxSymlinkTreeHeaders) include);
+      }
+    }
+    if (headerMaps.size() < 2) {
+      return includes;
+    }
+
+    HeaderSymlinkTree merged = requireMergedHeaderMap(headerMaps);
+    ImmutableList.Builder<CxxHeaders> mergedIncludes = ImmutableList.builder();
+    for (CxxHeaders include : includes) {
+      if (include == headerMaps.get(0)) {
+        mergedIncludes.add(
+            CxxSymlinkTreeHeaders.from(merged, CxxPreprocessables.IncludeType.LOCAL));
+      } else if (!headerMaps.contains(include)) {
+        mergedIncludes.add(include);
+      }
+    }
+    return mergedIncludes.build();
+  }
+
+  private HeaderSymlinkTree requireMergedHeaderMap(List<CxxSymlinkTreeHeaders> headerMaps) {
+    BuildTarget target =
+        BuildTarget.builder(getParams().getBuildTarget())
+            .addFlavors(getCxxPlatform().getFlavor(), MERGED_HEADER_MAP_FLAVOR)
+            .build();
+    Optional<DirectHeaderMap> existingRule =
+        getResolver().getRuleOptionalWithType(target, DirectHeaderMap.class);
+    if (existingRule.isPresent()) {
+      return existingRule.get();
+    }
+
+    // The preprocessor uses the first header map which has a header, so the first library to
+    // export a name wins, as the preprocessor delegate rejects conflicting headers anyway.
+    Map<Path, SourcePath> links = new LinkedHashMap<>();
+    for (CxxSymlinkTreeHeaders headerMap : headerMaps) {
+      for (Map.Entry<Path, SourcePath> entry : headerMap.getNameToPathMap().entrySet()) {
+        links.putIfAbsent(entry.getKey(), entry.getValue());
+      }
+    }
+    ProjectFilesystem filesystem = getParams().getProjectFilesystem();
+    return getResolver()
+        .addToIndex(
+            CxxPreprocessables.createHeaderSymlinkTreeBuildRule(
+                target,
+                filesystem,
+                BuildTargets.getGenPath(filesystem, target, "%s"),
+                ImmutableMap.copyOf(links),
+                CxxPreprocessables.HeaderMode.HEADER_MAP_ONLY,
+                getRuleFinder()));
   }
 
   private final LoadingCache<CxxSource.Type, ImmutableList<String>> preprocessorFlags =
@@ -245,6 +323,32 @@ abstract class AbstractCxxSourceRuleFactory {
         .build();
   }
 
+  /**
+   * @return a build target for a {@link CxxPreprocessAndCompile} rule which only preprocesses the
+   *     source with the given name.
+   */
+  @VisibleForTesting
+  BuildTarget createPreprocessBuildTarget(String name) {
+    String outputName = CxxFlavorSanitizer.sanitize(getOutputName(name));
+    return BuildTarget.builder(getParams().getBuildTarget())
+        .addFlavors(getCxxPlatform().getFlavor())
+        .addFlavors(
+            InternalFlavor.of(
+                String.format(
+                    PREPROCESS_FLAVOR_PREFIX + "%s%s",
+                    getPicType() == PicType.PIC ? "pic-" : "",
+                    outputName)))
+        .build();
+  }
+
+  /** @return the output path for the preprocessed source of the given type and name. */
+  private Path getPreprocessOutputPath(BuildTarget target, CxxSource.Type type, String name) {
+    String extension =
+        CxxSourceTypes.getPreprocessorOutputType(type).getExtensions().iterator().next();
+    return BuildTargets.getGenPath(getParams().getProjectFilesystem(), target, "%s")
+        .resolve(getOutputName(name) + "." + extension);
+  }
+
   public BuildTarget createInferCaptureBuildTarget(String name) {
     String outputName = CxxFlavorSanitizer.sanitize(getCompileFlavorSuffix(name));
     return BuildTarget.builder(getParams().getBuildTarget())
@@ -492,6 +596,11 @@ abstract class AbstractCxxSourceRuleFactory {
               + "and/or 'cxx.pch_enabled' option).");
     }
 
+    if (shouldPreprocessSeparately(source.getType())) {
+      return createCompilePreprocessedBuildRule(
+          target, name, source, preprocessorDelegate, compilerDelegate, depsBuilder.build());
+    }
+
     Optional<CxxPrecompiledHeader> precompiledHeaderRule = Optional.empty();
     if (canUsePrecompiledHeaders(getCxxBuckConfig(), preprocessor, source.getType())
         && (getPrefixHeader().isPresent() || getPrecompiledHeader().isPresent())) {
@@ -535,6 +644,70 @@ abstract class AbstractCxxSourceRuleFactory {
     return result;
   }
 
+  /**
+   * Whether to preprocess sources of the given type in a rule of their own. Sources which use
+   * prefix or precompiled headers are always preprocessed along with their compilation.
+   */
+  private boolean shouldPreprocessSeparately(CxxSource.Type type) {
+    return getCxxBuckConfig().shouldKeyCompilesByPreprocessedSource()
+        && !getPrefixHeader().isPresent()
+        && !getPrecompiledHeader().isPresent()
+        && (type == CxxSource.Type.C
+            || type == CxxSource.Type.CXX
+            || type == CxxSource.Type.OBJC
+            || type == CxxSource.Type.OBJCXX);
+  }
+
+  /**
+   * @return a {@link CxxPreprocessAndCompile} rule which compiles the output of another rule which
+   *     only preprocesses the given {@link CxxSource}. The compile rule's input-based rule key then
+   *     hashes the sanitized preprocessed source, so sources whose preprocessed output is the same,
+   *     such as after a comment or an unused header changes, share their object in the cache.
+   */
+  private CxxPreprocessAndCompile createCompilePreprocessedBuildRule(
+      BuildTarget target,
+      String name,
+      CxxSource source,
+      PreprocessorDelegate preprocessorDelegate,
+      CompilerDelegate compilerDelegate,
+      ImmutableSortedSet<BuildRule> preprocessDeps) {
+    BuildTarget preprocessTarget = createPreprocessBuildTarget(name);
+    // The compiler flags are passed to the preprocessor too, as they may define macros.
+    CxxPreprocessAndCompile preprocessRule =
+        CxxPreprocessAndCompile.preprocess(
+            getParams()
+                .withBuildTarget(preprocessTarget)
+                .copyReplacingDeclaredAndExtraDeps(
+                    Suppliers.ofInstance(preprocessDeps),
+                    Suppliers.ofInstance(ImmutableSortedSet.of())),
+            preprocessorDelegate,
+            compilerDelegate,
+            getPreprocessOutputPath(preprocessTarget, source.getType(), name),
+            source.getPath(),
+            source.getType(),
+            getSanitizerForSourceType(source.getType()),
+            getSandboxTree());
+    getResolver().addToIndex(preprocessRule);
+
+    DepsBuilder depsBuilder = new DepsBuilder(getRuleFinder());
+    depsBuilder.add(compilerDelegate);
+    depsBuilder.add(preprocessRule);
+
+    CxxPreprocessAndCompile result =
+        CxxPreprocessAndCompile.compilePreprocessed(
+            getParams()
+                .withBuildTarget(target)
+                .copyReplacingDeclaredAndExtraDeps(
+                    Suppliers.ofInstance(depsBuilder.build()),
+                    Suppliers.ofInstance(ImmutableSortedSet.of())),
+            preprocessRule,
+            compilerDelegate,
+            getCompileOutputPath(target, name),
+            getSanitizerForSourceType(source.getType()));
+    getResolver().addToIndex(result);
+    return result;
+  }
+
   @VisibleForTesting
   CxxPreprocessAndCompile requirePreprocessAndCompileBuildRule(String name, CxxSource source) {
 
@@ -542,7 +715,7 @@ abstract class AbstractCxxSourceRuleFactory {
     Optional<CxxPreprocessAndCompile> existingRule =
         getResolver().getRuleOptionalWithType(target, CxxPreprocessAndCompile.class);
     if (existingRule.isPresent()) {
-      if (!existingRule.get().getInput().equals(source.getPath())) {
+      if (!existingRule.get().getSourceInput().equals(source.getPath())) {
         throw new RuntimeException(
             String.format("Hash collision for %s; a build rule would have been ignored.", name));
       }
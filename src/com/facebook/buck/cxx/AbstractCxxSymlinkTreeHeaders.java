@@ -54,6 +54,9 @@ abstract class AbstractCxxSymlinkTreeHeaders extends CxxHeaders {
   @Override
   public abstract Optional<SourcePath> getHeaderMap();
 
+  @Override
+  public abstract Optional<SourcePath> getVfsOverlay();
+
   abstract ImmutableMap<Path, SourcePath> getNameToPathMap();
 
   @Override
@@ -69,6 +72,7 @@ abstract class AbstractCxxSymlinkTreeHeaders extends CxxHeaders {
     deps.addAll(ruleFinder.filterBuildRuleInputs(getRoot()));
     deps.addAll(ruleFinder.filterBuildRuleInputs(getIncludeRoot()));
     deps.addAll(ruleFinder.filterBuildRuleInputs(OptionalCompat.asSet(getHeaderMap())));
+    deps.addAll(ruleFinder.filterBuildRuleInputs(OptionalCompat.asSet(getVfsOverlay())));
     return deps.build();
   }
 
@@ -102,6 +106,11 @@ abstract class AbstractCxxSymlinkTreeHeaders extends CxxHeaders {
       builder.setIncludeRoot(
           new ExplicitBuildTargetSourcePath(symlinkTree.getBuildTarget(), symlinkTree.getRoot()));
     }
+    if (symlinkTree.getVfsOverlay().isPresent()) {
+      builder.setVfsOverlay(
+          new ExplicitBuildTargetSourcePath(
+              symlinkTree.getBuildTarget(), symlinkTree.getVfsOverlay().get()));
+    }
     builder.putAllNameToPathMap(symlinkTree.getLinks());
     return builder.build();
   }
@@ -242,6 +242,14 @@ public class CxxBuckConfig {
     return delegate.getBooleanValue(cxxSection, "headers_symlinks_enabled", true);
   }
 
+  /**
+   * @return how to make the headers of all libraries available to the preprocessor, overriding the
+   *     mode picked from whether header symlinks are enabled.
+   */
+  public Optional<CxxPreprocessables.HeaderMode> getHeaderMode() {
+    return delegate.getEnum(cxxSection, "header_mode", CxxPreprocessables.HeaderMode.class);
+  }
+
   public Optional<RuleScheduleInfo> getLinkScheduleInfo() {
     Optional<Long> linkWeight = delegate.getLong(cxxSection, "link_weight");
     if (!linkWeight.isPresent()) {
@@ -263,6 +271,14 @@ public class CxxBuckConfig {
     return delegate.getBooleanValue(cxxSection, "sandbox_sources", false);
   }
 
+  /**
+   * @return whether to preprocess sources in rules of their own, so that compiles are keyed by
+   *     their (sanitized) preprocessed source instead of by the headers they include.
+   */
+  public boolean shouldKeyCompilesByPreprocessedSource() {
+    return delegate.getBooleanValue(cxxSection, "preprocessed_rule_keys", false);
+  }
+
   public Archive.Contents getArchiveContents() {
     return delegate
         .getEnum(cxxSection, "archive_contents", Archive.Contents.class)
@@ -160,7 +160,7 @@ public class CxxCompilationDatabase extends AbstractBuildRule implements HasRunt
 
     private CxxCompilationDatabaseEntry createEntry(CxxPreprocessAndCompile compileRule) {
 
-      SourcePath inputSourcePath = compileRule.getInput();
+      SourcePath inputSourcePath = compileRule.getSourceInput();
       ProjectFilesystem inputFilesystem = compileRule.getProjectFilesystem();
 
       String fileToCompile =
@@ -102,14 +102,35 @@ public class CxxDescriptionEnhancer {
 
   public static CxxPreprocessables.HeaderMode getHeaderModeForPlatform(
       BuildRuleResolver resolver, CxxPlatform cxxPlatform, boolean shouldCreateHeadersSymlinks) {
-    boolean useHeaderMap =
-        (cxxPlatform.getCpp().resolve(resolver).supportsHeaderMaps()
-            && cxxPlatform.getCxxpp().resolve(resolver).supportsHeaderMaps());
-    return !useHeaderMap
-        ? CxxPreprocessables.HeaderMode.SYMLINK_TREE_ONLY
-        : (shouldCreateHeadersSymlinks
-            ? CxxPreprocessables.HeaderMode.SYMLINK_TREE_WITH_HEADER_MAP
-            : CxxPreprocessables.HeaderMode.HEADER_MAP_ONLY);
+    Preprocessor cpp = cxxPlatform.getCpp().resolve(resolver);
+    Preprocessor cxxpp = cxxPlatform.getCxxpp().resolve(resolver);
+    boolean useHeaderMap = cpp.supportsHeaderMaps() && cxxpp.supportsHeaderMaps();
+    boolean useVfsOverlay = cpp.supportsVfsOverlays() && cxxpp.supportsVfsOverlays();
+
+    CxxPreprocessables.HeaderMode mode =
+        cxxPlatform
+            .getHeaderMode()
+            .orElse(
+                shouldCreateHeadersSymlinks
+                    ? CxxPreprocessables.HeaderMode.SYMLINK_TREE_WITH_HEADER_MAP
+                    : CxxPreprocessables.HeaderMode.HEADER_MAP_ONLY);
+    switch (mode) {
+      case SYMLINK_TREE_WITH_HEADER_MAP:
+        return useHeaderMap ? mode : CxxPreprocessables.HeaderMode.SYMLINK_TREE_ONLY;
+      case HEADER_MAP_ONLY:
+        if (useHeaderMap) {
+          return mode;
+        }
+        // Without header maps, an overlay still saves creating the links.
+        return useVfsOverlay
+            ? CxxPreprocessables.HeaderMode.VFS_OVERLAY_ONLY
+            : CxxPreprocessables.HeaderMode.SYMLINK_TREE_ONLY;
+      case VFS_OVERLAY_ONLY:
+        return useVfsOverlay ? mode : CxxPreprocessables.HeaderMode.SYMLINK_TREE_ONLY;
+      case SYMLINK_TREE_ONLY:
+      default:
+        return CxxPreprocessables.HeaderMode.SYMLINK_TREE_ONLY;
+    }
   }
 
   public static HeaderSymlinkTree createHeaderSymlinkTree(
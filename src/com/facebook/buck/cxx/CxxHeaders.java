@@ -27,7 +27,9 @@ import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.LinkedHashMultimap;
 import com.google.common.collect.Multimap;
 import java.nio.file.Path;
+import java.util.LinkedHashSet;
 import java.util.Optional;
+import java.util.Set;
 
 /** Encapsulates headers from a single root location. */
 public abstract class CxxHeaders implements RuleKeyAppendable {
@@ -40,6 +42,14 @@ public abstract class CxxHeaders implements RuleKeyAppendable {
   /** @return the path to the optional header map to use for this header pack. */
   public abstract Optional<SourcePath> getHeaderMap();
 
+  /**
+   * @return the path to the optional virtual file system overlay which makes the headers of this
+   *     header pack appear under its root.
+   */
+  public Optional<SourcePath> getVfsOverlay() {
+    return Optional.empty();
+  }
+
   /**
    * @return the path to add to the preprocessor search path to find the includes. This defaults to
    *     the root, but can be overridden to use an alternate path.
@@ -76,7 +86,13 @@ public abstract class CxxHeaders implements RuleKeyAppendable {
     // 2) De-duplicate redundant include paths.
     Multimap<CxxPreprocessables.IncludeType, String> headerMaps = LinkedHashMultimap.create();
     Multimap<CxxPreprocessables.IncludeType, String> roots = LinkedHashMultimap.create();
+    Set<String> vfsOverlays = new LinkedHashSet<>();
     for (CxxHeaders cxxHeaders : cxxHeaderses) {
+      Optional<SourcePath> vfsOverlay = cxxHeaders.getVfsOverlay();
+      if (vfsOverlay.isPresent()) {
+        vfsOverlays.add(
+            resolveSourcePathAndShorten(resolver, vfsOverlay.get(), pathMinimizer).toString());
+      }
       Optional<SourcePath> headerMap = cxxHeaders.getHeaderMap();
       if (headerMap.isPresent()) {
         headerMaps.put(
@@ -95,6 +111,11 @@ public abstract class CxxHeaders implements RuleKeyAppendable {
         ImmutableSet.of(
             CxxPreprocessables.IncludeType.LOCAL, CxxPreprocessables.IncludeType.SYSTEM);
 
+    // Overlays apply to the whole search path, so they go before any of it.
+    if (!vfsOverlays.isEmpty()) {
+      args.addAll(preprocessor.vfsOverlayArgs(vfsOverlays));
+    }
+
     // Apply the header maps first, so that headers that matching there avoid falling back to
     // stat'ing files in the normal include roots.
     Preconditions.checkState(includeTypes.containsAll(headerMaps.keySet()));
@@ -16,19 +16,24 @@
 
 package com.facebook.buck.cxx;
 
+import com.facebook.buck.io.ExecutableFinder;
 import com.facebook.buck.log.Logger;
 import com.facebook.buck.model.BuildTarget;
 import com.facebook.buck.model.Flavor;
 import com.facebook.buck.model.InternalFlavor;
+import com.facebook.buck.rules.ConstantToolProvider;
 import com.facebook.buck.rules.HashedFileTool;
 import com.facebook.buck.rules.LazyDelegatingTool;
 import com.facebook.buck.rules.Tool;
+import com.facebook.buck.rules.ToolProvider;
 import com.facebook.buck.util.HumanReadableException;
 import com.facebook.buck.util.environment.Platform;
 import com.google.common.base.Function;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Optional;
 
 public class CxxPlatforms {
@@ -44,6 +49,7 @@ public class CxxPlatforms {
   private static final ImmutableList<String> DEFAULT_ARFLAGS = ImmutableList.of();
   private static final ImmutableList<String> DEFAULT_RANLIBFLAGS = ImmutableList.of();
   private static final ImmutableList<String> DEFAULT_COMPILER_ONLY_FLAGS = ImmutableList.of();
+  private static final Path DEFAULT_OBJCOPY = Paths.get("/usr/bin/objcopy");
 
   // Utility class, do not instantiate.
   private CxxPlatforms() {}
@@ -54,9 +60,9 @@ public class CxxPlatforms {
     if (config.shouldUseSharedLibraryInterfaces()) {
       switch (platform) {
         case LINUX:
+        case FREEBSD:
           sharedLibraryInterfaceFactory =
-              Optional.of(
-                  ElfSharedLibraryInterfaceFactory.of(config.getToolProvider("objcopy").get()));
+              Optional.of(ElfSharedLibraryInterfaceFactory.of(getObjcopy(config)));
           break;
           // $CASES-OMITTED$
         default:
@@ -65,6 +71,22 @@ public class CxxPlatforms {
     return sharedLibraryInterfaceFactory;
   }
 
+  /**
+   * @return the configured {@code objcopy}, or else the one on the path, so that shared library
+   *     interfaces only need to be enabled.
+   */
+  private static ToolProvider getObjcopy(CxxBuckConfig config) {
+    return config
+        .getToolProvider("objcopy")
+        .orElseGet(
+            () ->
+                new ConstantToolProvider(
+                    new HashedFileTool(
+                        new ExecutableFinder()
+                            .getOptionalExecutable(Paths.get("objcopy"), config.getEnvironment())
+                            .orElse(DEFAULT_OBJCOPY))));
+  }
+
   public static CxxPlatform build(
       Flavor flavor,
       Platform platform,
@@ -132,7 +154,8 @@ public class CxxPlatforms {
         .setBinaryExtension(binaryExtension)
         .setHeaderVerification(headerVerification)
         .setPublicHeadersSymlinksEnabled(config.getPublicHeadersSymlinksEnabled())
-        .setPrivateHeadersSymlinksEnabled(config.getPrivateHeadersSymlinksEnabled());
+        .setPrivateHeadersSymlinksEnabled(config.getPrivateHeadersSymlinksEnabled())
+        .setHeaderMode(config.getHeaderMode());
 
     builder.setSymbolNameTool(
         new LazyDelegatingSymbolNameTool(
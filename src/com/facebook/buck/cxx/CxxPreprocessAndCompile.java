@@ -53,6 +53,9 @@ public class CxxPreprocessAndCompile extends AbstractBuildRule
 
   @AddToRuleKey private final CompilerDelegate compilerDelegate;
 
+  /** Whether to only preprocess the input, for another rule to compile the result. */
+  @AddToRuleKey private final boolean preprocessOnly;
+
   @AddToRuleKey(stringify = true)
   private final Path output;
 
@@ -62,17 +65,22 @@ public class CxxPreprocessAndCompile extends AbstractBuildRule
   private final DebugPathSanitizer sanitizer;
   private final Optional<SymlinkTree> sandboxTree;
 
+  /** The rule which preprocessed the input, if this rule compiles what it preprocessed. */
+  private final Optional<CxxPreprocessAndCompile> preprocessRule;
+
   @VisibleForTesting
   public CxxPreprocessAndCompile(
       BuildRuleParams params,
       Optional<PreprocessorDelegate> preprocessDelegate,
       CompilerDelegate compilerDelegate,
+      boolean preprocessOnly,
       Path output,
       SourcePath input,
       CxxSource.Type inputType,
       Optional<CxxPrecompiledHeader> precompiledHeaderRule,
       DebugPathSanitizer sanitizer,
-      Optional<SymlinkTree> sandboxTree) {
+      Optional<SymlinkTree> sandboxTree,
+      Optional<CxxPreprocessAndCompile> preprocessRule) {
     super(params);
     this.sandboxTree = sandboxTree;
     if (precompiledHeaderRule.isPresent()) {
@@ -80,8 +88,15 @@ public class CxxPreprocessAndCompile extends AbstractBuildRule
           preprocessDelegate.isPresent(),
           "Precompiled headers are only used when compilation includes preprocessing.");
     }
+    if (preprocessOnly) {
+      Preconditions.checkState(
+          preprocessDelegate.isPresent() && !precompiledHeaderRule.isPresent(),
+          "Preprocessing alone needs a preprocessor and doesn't use precompiled headers.");
+    }
     this.preprocessDelegate = preprocessDelegate;
     this.compilerDelegate = compilerDelegate;
+    this.preprocessOnly = preprocessOnly;
+    this.preprocessRule = preprocessRule;
     this.output = output;
     this.input = input;
     this.inputType = inputType;
@@ -115,12 +130,14 @@ public class CxxPreprocessAndCompile extends AbstractBuildRule
         params,
         Optional.empty(),
         compilerDelegate,
+        false,
         output,
         input,
         inputType,
         Optional.empty(),
         sanitizer,
-        sandboxTree);
+        sandboxTree,
+        Optional.empty());
   }
 
   /**
@@ -140,19 +157,74 @@ public class CxxPreprocessAndCompile extends AbstractBuildRule
         params,
         Optional.of(preprocessorDelegate),
         compilerDelegate,
+        false,
         output,
         input,
         inputType,
         precompiledHeaderRule,
         sanitizer,
-        sandboxTree);
+        sandboxTree,
+        Optional.empty());
+  }
+
+  /**
+   * @return a {@link CxxPreprocessAndCompile} step that only preprocesses the given source, with
+   *     the paths in its output sanitized, for {@link #compilePreprocessed} to compile.
+   */
+  public static CxxPreprocessAndCompile preprocess(
+      BuildRuleParams params,
+      PreprocessorDelegate preprocessorDelegate,
+      CompilerDelegate compilerDelegate,
+      Path output,
+      SourcePath input,
+      CxxSource.Type inputType,
+      DebugPathSanitizer sanitizer,
+      Optional<SymlinkTree> sandboxTree) {
+    return new CxxPreprocessAndCompile(
+        params,
+        Optional.of(preprocessorDelegate),
+        compilerDelegate,
+        true,
+        output,
+        input,
+        inputType,
+        Optional.empty(),
+        sanitizer,
+        sandboxTree,
+        Optional.empty());
+  }
+
+  /**
+   * @return a {@link CxxPreprocessAndCompile} step that compiles the output of the given {@link
+   *     #preprocess} rule. As its input is the preprocessed source, its input-based rule key only
+   *     changes when what the compiler sees does.
+   */
+  public static CxxPreprocessAndCompile compilePreprocessed(
+      BuildRuleParams params,
+      CxxPreprocessAndCompile preprocessRule,
+      CompilerDelegate compilerDelegate,
+      Path output,
+      DebugPathSanitizer sanitizer) {
+    Preconditions.checkArgument(preprocessRule.preprocessOnly);
+    return new CxxPreprocessAndCompile(
+        params,
+        Optional.empty(),
+        compilerDelegate,
+        false,
+        output,
+        preprocessRule.getSourcePathToOutput(),
+        CxxSourceTypes.getPreprocessorOutputType(preprocessRule.inputType),
+        Optional.empty(),
+        sanitizer,
+        Optional.empty(),
+        Optional.of(preprocessRule));
   }
 
   @Override
   public void appendToRuleKey(RuleKeyObjectSink sink) {
     // If a sanitizer is being used for compilation, we need to record the working directory in
     // the rule key, as changing this changes the generated object file.
-    if (preprocessDelegate.isPresent()) {
+    if (preprocessDelegate.isPresent() || CxxSourceTypes.isPreprocessorOutputType(inputType)) {
       sink.setReflectively("compilationDirectory", sanitizer.getCompilationDirectory());
     }
     if (sandboxTree.isPresent()) {
@@ -171,9 +243,26 @@ public class CxxPreprocessAndCompile extends AbstractBuildRule
     return output.getFileSystem().getPath(output.toString() + ".dep");
   }
 
+  private CxxPreprocessAndCompileStep.Operation getOperation() {
+    if (preprocessOnly) {
+      return CxxPreprocessAndCompileStep.Operation.PREPROCESS;
+    }
+    return preprocessDelegate.isPresent()
+        ? CxxPreprocessAndCompileStep.Operation.PREPROCESS_AND_COMPILE
+        : CxxPreprocessAndCompileStep.Operation.COMPILE;
+  }
+
   @VisibleForTesting
   CxxPreprocessAndCompileStep makeMainStep(
       SourcePathResolver resolver, Path scratchDir, boolean useArgfile) {
+    return makeMainStep(resolver, getOperation(), scratchDir, useArgfile);
+  }
+
+  private CxxPreprocessAndCompileStep makeMainStep(
+      SourcePathResolver resolver,
+      CxxPreprocessAndCompileStep.Operation operation,
+      Path scratchDir,
+      boolean useArgfile) {
 
     // If we're compiling, this will just be empty.
     HeaderPathNormalizer headerPathNormalizer =
@@ -191,9 +280,7 @@ public class CxxPreprocessAndCompile extends AbstractBuildRule
     return new CxxPreprocessAndCompileStep(
         getBuildTarget(),
         getProjectFilesystem(),
-        preprocessDelegate.isPresent()
-            ? CxxPreprocessAndCompileStep.Operation.PREPROCESS_AND_COMPILE
-            : CxxPreprocessAndCompileStep.Operation.COMPILE,
+        operation,
         output,
         // Use a depfile if there's a preprocessing stage, this logic should be kept in sync with
         // getInputsAfterBuildingLocally.
@@ -227,7 +314,7 @@ public class CxxPreprocessAndCompile extends AbstractBuildRule
     buildableContext.recordArtifact(output);
 
     for (String flag : compilerDelegate.getCompilerFlags().getAllFlags()) {
-      if (flag.equals("-ftest-coverage")) {
+      if (flag.equals("-ftest-coverage") && !preprocessOnly) {
         buildableContext.recordArtifact(getGcnoPath(output));
         break;
       }
@@ -261,7 +348,18 @@ public class CxxPreprocessAndCompile extends AbstractBuildRule
 
   // Used for compdb
   public ImmutableList<String> getCommand(SourcePathResolver pathResolver) {
-    return makeMainStep(pathResolver, getScratchPath(), false).getCommand();
+    if (preprocessRule.isPresent()) {
+      return preprocessRule.get().getCommand(pathResolver);
+    }
+    // Tools reading the compilation database expect the command which compiles the source.
+    return makeMainStep(
+            pathResolver,
+            preprocessOnly
+                ? CxxPreprocessAndCompileStep.Operation.PREPROCESS_AND_COMPILE
+                : getOperation(),
+            getScratchPath(),
+            false)
+        .getCommand();
   }
 
   @Override
@@ -273,6 +371,14 @@ public class CxxPreprocessAndCompile extends AbstractBuildRule
     return input;
   }
 
+  /**
+   * @return the source this rule builds, which, if it compiles what another rule preprocessed, is
+   *     the input of that rule.
+   */
+  public SourcePath getSourceInput() {
+    return preprocessRule.map(CxxPreprocessAndCompile::getSourceInput).orElse(input);
+  }
+
   @Override
   public boolean useDependencyFileRuleKeys() {
     return compilerDelegate.isDependencyFileSupported();
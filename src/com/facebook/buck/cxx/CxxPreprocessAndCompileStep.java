@@ -37,8 +37,12 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.logging.Level;
@@ -149,7 +153,7 @@ public class CxxPreprocessAndCompileStep implements Step {
                 .orElseGet(ImmutableList::of))
         .addAll(compiler.languageArgs(inputLanguage))
         .addAll(sanitizer.getCompilationFlags())
-        .add("-c")
+        .add(operation == Operation.PREPROCESS ? "-E" : "-c")
         .addAll(
             depFile
                 .map(depFile -> compiler.outputDependenciesArgs(depFile.toString()))
@@ -252,6 +256,15 @@ public class CxxPreprocessAndCompileStep implements Step {
         }
       }
 
+      if (exitCode == 0 && operation == Operation.PREPROCESS) {
+        try {
+          sanitizeLineMarkers(filesystem.getRootPath().toAbsolutePath().resolve(output));
+        } catch (IOException e) {
+          context.logError(e, "error sanitizing preprocessed output");
+          return StepExecutionResult.ERROR;
+        }
+      }
+
       if (exitCode != 0) {
         LOG.warn("error %d %s %s", exitCode, operation.toString().toLowerCase(), input);
       }
@@ -265,6 +278,25 @@ public class CxxPreprocessAndCompileStep implements Step {
     }
   }
 
+  /**
+   * Replaces the paths in the line markers of the preprocessed output with their sanitized
+   * versions, so that the output, and the objects compiled from it, only depend on what was
+   * preprocessed and not on where the project is checked out.
+   */
+  private void sanitizeLineMarkers(Path path) throws IOException {
+    Optional<Path> workingDir = Optional.of(filesystem.getRootPath());
+    // Preprocessed sources aren't necessarily UTF-8, so read and write them byte for byte.
+    List<String> lines = Files.readAllLines(path, StandardCharsets.ISO_8859_1);
+    List<String> sanitized = new ArrayList<>(lines.size());
+    for (String line : lines) {
+      sanitized.add(
+          line.startsWith("# ") || line.startsWith("#line ")
+              ? sanitizer.sanitize(workingDir, line)
+              : line);
+    }
+    Files.write(path, sanitized, StandardCharsets.ISO_8859_1);
+  }
+
   ImmutableList<String> getCommand() {
     // We set allowColorsInDiagnostics to false here because this function is only used by the
     // compilation database (its contents should not depend on how Buck was invoked) and in the
@@ -288,7 +320,10 @@ public class CxxPreprocessAndCompileStep implements Step {
 
   private boolean shouldSanitizeOutputBinary() {
     return inputType.isAssembly()
-        || (operation == Operation.PREPROCESS_AND_COMPILE && compiler.shouldSanitizeOutputBinary());
+        || ((operation == Operation.PREPROCESS_AND_COMPILE
+                || (operation == Operation.COMPILE
+                    && CxxSourceTypes.isPreprocessorOutputType(inputType)))
+            && compiler.shouldSanitizeOutputBinary());
   }
 
   public enum Operation {
@@ -297,6 +332,8 @@ public class CxxPreprocessAndCompileStep implements Step {
     /** Run the preprocessor and compiler on source files. */
     PREPROCESS_AND_COMPILE,
     GENERATE_PCH,
+    /** Run only the preprocessor on source files, sanitizing the paths in its output. */
+    PREPROCESS,
     ;
   }
 
@@ -19,9 +19,6 @@ package com.facebook.buck.cxx;
 import com.facebook.buck.graph.AbstractBreadthFirstThrowingTraversal;
 import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.model.BuildTarget;
-import com.facebook.buck.model.Flavor;
-import com.facebook.buck.model.FlavorConvertible;
-import com.facebook.buck.model.InternalFlavor;
 import com.facebook.buck.parser.NoSuchBuildTargetException;
 import com.facebook.buck.rules.BuildRule;
 import com.facebook.buck.rules.BuildRuleParams;
@@ -29,7 +26,6 @@ import com.facebook.buck.rules.BuildRuleResolver;
 import com.facebook.buck.rules.SourcePath;
 import com.facebook.buck.rules.SourcePathRuleFinder;
 import com.facebook.buck.rules.coercer.FrameworkPath;
-import com.google.common.base.CaseFormat;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Predicate;
 import com.google.common.cache.CacheBuilder;
@@ -47,40 +43,10 @@ import java.util.Map;
 import javax.annotation.Nonnull;
 import org.immutables.value.Value;
 
-public class CxxPreprocessables {
+public class CxxPreprocessables implements HeaderModes {
 
   private CxxPreprocessables() {}
 
-  public enum HeaderMode implements FlavorConvertible {
-
-    /** Creates the tree of symbolic links of headers. */
-    SYMLINK_TREE_ONLY,
-    /** Creates the header map that references the headers directly in the source tree. */
-    HEADER_MAP_ONLY,
-    /**
-     * Creates the tree of symbolic links of headers and creates the header map that references the
-     * symbolic links to the headers.
-     */
-    SYMLINK_TREE_WITH_HEADER_MAP,
-    ;
-
-    private final Flavor flavor;
-
-    HeaderMode() {
-      this.flavor =
-          InternalFlavor.of(
-              String.format(
-                  "%s-%s",
-                  CaseFormat.UPPER_CAMEL.to(CaseFormat.LOWER_HYPHEN, getClass().getSimpleName()),
-                  CaseFormat.UPPER_UNDERSCORE.to(CaseFormat.LOWER_HYPHEN, toString())));
-    }
-
-    @Override
-    public Flavor getFlavor() {
-      return flavor;
-    }
-  }
-
   public enum IncludeType {
 
     /** Headers should be included with `-I`. */
@@ -185,6 +151,8 @@ public class CxxPreprocessables {
         return HeaderSymlinkTreeWithHeaderMap.create(target, filesystem, root, links, ruleFinder);
       case HEADER_MAP_ONLY:
         return new DirectHeaderMap(target, filesystem, root, links, ruleFinder);
+      case VFS_OVERLAY_ONLY:
+        return new HeaderVfsOverlay(target, filesystem, root, links, ruleFinder);
       default:
       case SYMLINK_TREE_ONLY:
         return new HeaderSymlinkTree(target, filesystem, root, links, ruleFinder);
@@ -48,6 +48,15 @@ public class CxxSourceTypes {
         || sourceType == CxxSource.Type.ASM;
   }
 
+  /** Returns true for source types which the C preprocessor produces from C-family sources. */
+  public static boolean isPreprocessorOutputType(CxxSource.Type sourceType) {
+    return sourceType == CxxSource.Type.C_CPP_OUTPUT
+        || sourceType == CxxSource.Type.CXX_CPP_OUTPUT
+        || sourceType == CxxSource.Type.OBJC_CPP_OUTPUT
+        || sourceType == CxxSource.Type.OBJCXX_CPP_OUTPUT
+        || sourceType == CxxSource.Type.CUDA_CPP_OUTPUT;
+  }
+
   /** @return the appropriate {@link com.facebook.buck.rules.Tool} representing the preprocessor. */
   public static PreprocessorProvider getPreprocessor(CxxPlatform cxxPlatform, CxxSource.Type type) {
     PreprocessorProvider preprocessor;
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import com.google.common.annotations.VisibleForTesting;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Interns the paths read out of dep files. The compiles of a build list the same headers over and
+ * over, so paths are looked up by their bytes, and only decoded and copied the first time they're
+ * seen.
+ */
+@ThreadSafe
+class DepfilePathTable {
+
+  private static final DepfilePathTable INSTANCE = new DepfilePathTable(1 << 20);
+
+  private final int maxPaths;
+  private final ConcurrentMap<Key, String> paths = new ConcurrentHashMap<>();
+
+  @VisibleForTesting
+  DepfilePathTable(int maxPaths) {
+    this.maxPaths = maxPaths;
+  }
+
+  /** @return the table shared by all the dep files read in this process. */
+  static DepfilePathTable getInstance() {
+    return INSTANCE;
+  }
+
+  /** @return the path whose UTF-8 bytes are the {@code length} bytes at {@code offset}. */
+  String intern(ByteBuffer buffer, int offset, int length) {
+    String path = paths.get(new Key(buffer, offset, length));
+    if (path != null) {
+      return path;
+    }
+
+    byte[] bytes = new byte[length];
+    for (int i = 0; i < length; i++) {
+      bytes[i] = buffer.get(offset + i);
+    }
+    if (paths.size() >= maxPaths) {
+      // Paths only accumulate as the daemon sees new headers, so just start over if that's a lot.
+      paths.clear();
+    }
+    String newPath = new String(bytes, StandardCharsets.UTF_8);
+    String existing = paths.putIfAbsent(new Key(ByteBuffer.wrap(bytes), 0, length), newPath);
+    return existing == null ? newPath : existing;
+  }
+
+  @VisibleForTesting
+  int size() {
+    return paths.size();
+  }
+
+  /** The bytes of a path, either still in the buffer it was read from or copied out of it. */
+  private static class Key {
+    private final ByteBuffer buffer;
+    private final int offset;
+    private final int length;
+    private final int hashCode;
+
+    private Key(ByteBuffer buffer, int offset, int length) {
+      this.buffer = buffer;
+      this.offset = offset;
+      this.length = length;
+      int hash = length;
+      for (int i = 0; i < length; i++) {
+        hash = 31 * hash + buffer.get(offset + i);
+      }
+      this.hashCode = hash;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (!(other instanceof Key)) {
+        return false;
+      }
+      Key that = (Key) other;
+      if (hashCode != that.hashCode || length != that.length) {
+        return false;
+      }
+      for (int i = 0; i < length; i++) {
+        if (buffer.get(offset + i) != that.buffer.get(that.offset + i)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+  }
+}
@@ -28,12 +28,14 @@ import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
-import java.io.BufferedReader;
+import com.google.common.io.CharStreams;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.nio.CharBuffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.logging.Level;
@@ -55,110 +57,119 @@ public class Depfiles {
     ADD_PREREQ
   }
 
-  private static final String WHITESPACE_CHARS = " \n\r\t";
-  private static final String ESCAPED_TARGET_CHARS = ": #";
-  private static final String ESCAPED_PREREQ_CHARS = " #";
+  private static final long MIN_MAPPED_DEPFILE_SIZE = 256 * 1024;
 
   /**
    * Parses the input as a .d Makefile as emitted by {@code gcc -MD} and returns the (target, [dep,
    * dep2, ...]) inside.
    */
   public static Depfile parseDepfile(Readable readable) throws IOException {
+    return parseDepfile(
+        ByteBuffer.wrap(CharStreams.toString(readable).getBytes(StandardCharsets.UTF_8)));
+  }
+
+  /**
+   * Parses the UTF-8 bytes between the position and the limit of {@code contents} as a .d Makefile
+   * as emitted by {@code gcc -MD} and returns the (target, [dep, dep2, ...]) inside.
+   *
+   * <p>The bytes are parsed where they are, so that prereqs without escapes are never copied, and
+   * prereqs are interned in {@link DepfilePathTable}, as most of them are headers which many other
+   * dep files list too.
+   */
+  public static Depfile parseDepfile(ByteBuffer contents) throws IOException {
+    DepfilePathTable pathTable = DepfilePathTable.getInstance();
     String target = null;
     ImmutableList.Builder<String> prereqsBuilder = ImmutableList.builder();
     State state = State.LOOKING_FOR_TARGET;
-    StringBuilder identifierBuilder = new StringBuilder();
+    Identifier identifier = new Identifier(contents);
 
-    CharBuffer buffer = CharBuffer.allocate(4096);
     int numBackslashes = 0;
+    int backslashesStart = 0;
 
-    while (readable.read(buffer) != -1) {
-      buffer.flip();
+    for (int position = contents.position(); position < contents.limit(); position++) {
+      byte c = contents.get(position);
+      Action action = Action.NONE;
+      boolean isBackslash = c == '\\';
+      boolean isCarriageReturn = c == '\r';
+      boolean isNewline = c == '\n';
+      boolean isWhitespace = c == ' ' || c == '\t' || isNewline || isCarriageReturn;
+      boolean inIdentifier = !identifier.isEmpty();
+      boolean isEscaped;
+      if (state == State.LOOKING_FOR_TARGET) {
+        isEscaped = c == ':' || c == ' ' || c == '#';
+      } else {
+        isEscaped = c == ' ' || c == '#';
+      }
 
-      while (buffer.hasRemaining()) {
-        char c = buffer.get();
-        Action action = Action.NONE;
-        boolean isBackslash = c == '\\';
-        boolean isCarriageReturn = c == '\r';
-        boolean isNewline = c == '\n';
-        boolean isWhitespace = WHITESPACE_CHARS.indexOf(c) != -1;
-        boolean inIdentifier = identifierBuilder.length() > 0;
-        boolean isEscaped;
-        if (state == State.LOOKING_FOR_TARGET) {
-          isEscaped = ESCAPED_TARGET_CHARS.indexOf(c) != -1;
-        } else {
-          isEscaped = ESCAPED_PREREQ_CHARS.indexOf(c) != -1;
+      if (isBackslash) {
+        // We need to count the number of backslashes in case the
+        // first non-backslash is an escaped character.
+        if (numBackslashes == 0) {
+          backslashesStart = position;
         }
-
-        if (isBackslash) {
-          // We need to count the number of backslashes in case the
-          // first non-backslash is an escaped character.
-          numBackslashes++;
-        } else if (numBackslashes > 0 && isEscaped) {
-          // Consume one backslash to escape the special char.
-          numBackslashes--;
-          if (inIdentifier) {
-            action = Action.APPEND_TO_IDENTIFIER;
+        numBackslashes++;
+      } else if (numBackslashes > 0 && isEscaped) {
+        // Consume one backslash to escape the special char.
+        numBackslashes--;
+        if (inIdentifier) {
+          action = Action.APPEND_TO_IDENTIFIER;
+        }
+      } else if (isWhitespace) {
+        if (numBackslashes == 0) {
+          if (state == State.FOUND_TARGET && inIdentifier) {
+            action = Action.ADD_PREREQ;
           }
-        } else if (isWhitespace) {
-          if (numBackslashes == 0) {
-            if (state == State.FOUND_TARGET && inIdentifier) {
-              action = Action.ADD_PREREQ;
-            }
-            if (state == State.FOUND_TARGET && (isNewline || isCarriageReturn)) {
-              state = State.LOOKING_FOR_TARGET;
-            }
-          } else if (isNewline) {
-            // Consume one backslash to escape \n or \r\n.
-            numBackslashes--;
-          } else if (!isCarriageReturn) {
-            action = Action.APPEND_TO_IDENTIFIER;
+          if (state == State.FOUND_TARGET && (isNewline || isCarriageReturn)) {
+            state = State.LOOKING_FOR_TARGET;
           }
-        } else if (c == ':' && state == State.LOOKING_FOR_TARGET) {
-          state = State.FOUND_TARGET;
-          action = Action.SET_TARGET;
-        } else {
+        } else if (isNewline) {
+          // Consume one backslash to escape \n or \r\n.
+          numBackslashes--;
+        } else if (!isCarriageReturn) {
           action = Action.APPEND_TO_IDENTIFIER;
         }
+      } else if (c == ':' && state == State.LOOKING_FOR_TARGET) {
+        state = State.FOUND_TARGET;
+        action = Action.SET_TARGET;
+      } else {
+        action = Action.APPEND_TO_IDENTIFIER;
+      }
 
-        if (!isBackslash && numBackslashes > 0 && !isCarriageReturn) {
-          int numBackslashesToAppend;
-          if (isEscaped || isWhitespace) {
-            // Backslashes escape themselves before an escaped character or whitespace.
-            numBackslashesToAppend = numBackslashes / 2;
-          } else {
-            // Backslashes are literal before a non-escaped character.
-            numBackslashesToAppend = numBackslashes;
-          }
-
-          for (int i = 0; i < numBackslashesToAppend; i++) {
-            identifierBuilder.append('\\');
-          }
-          numBackslashes = 0;
+      if (!isBackslash && numBackslashes > 0 && !isCarriageReturn) {
+        int numBackslashesToAppend;
+        if (isEscaped || isWhitespace) {
+          // Backslashes escape themselves before an escaped character or whitespace.
+          numBackslashesToAppend = numBackslashes / 2;
+        } else {
+          // Backslashes are literal before a non-escaped character.
+          numBackslashesToAppend = numBackslashes;
         }
 
-        switch (action) {
-          case NONE:
-            break;
-          case APPEND_TO_IDENTIFIER:
-            identifierBuilder.append(c);
-            break;
-          case SET_TARGET:
-            if (target != null) {
-              throw new HumanReadableException(
-                  "Depfile parser cannot handle .d file with multiple targets");
-            }
-            target = identifierBuilder.toString();
-            identifierBuilder.setLength(0);
-            break;
-          case ADD_PREREQ:
-            prereqsBuilder.add(identifierBuilder.toString());
-            identifierBuilder.setLength(0);
-            break;
+        for (int i = 0; i < numBackslashesToAppend; i++) {
+          identifier.append((byte) '\\', backslashesStart + i);
         }
+        numBackslashes = 0;
       }
 
-      buffer.clear();
+      switch (action) {
+        case NONE:
+          break;
+        case APPEND_TO_IDENTIFIER:
+          identifier.append(c, position);
+          break;
+        case SET_TARGET:
+          if (target != null) {
+            throw new HumanReadableException(
+                "Depfile parser cannot handle .d file with multiple targets");
+          }
+          target = identifier.decode();
+          identifier.clear();
+          break;
+        case ADD_PREREQ:
+          prereqsBuilder.add(identifier.intern(pathTable));
+          identifier.clear();
+          break;
+      }
     }
 
     ImmutableList<String> prereqs = prereqsBuilder.build();
@@ -169,6 +180,25 @@ public class Depfiles {
     }
   }
 
+  private static ByteBuffer readDepfile(ProjectFilesystem filesystem, Path depFile)
+      throws IOException {
+    try (FileChannel channel =
+        FileChannel.open(filesystem.resolve(depFile), StandardOpenOption.READ)) {
+      long size = channel.size();
+      // Mapping only pays off for large dep files, and mapped buffers are only unmapped once
+      // they're garbage collected, so don't map the many small ones a build reads.
+      if (size >= MIN_MAPPED_DEPFILE_SIZE) {
+        return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+      }
+      ByteBuffer buffer = ByteBuffer.allocate((int) size);
+      while (buffer.hasRemaining() && channel.read(buffer) != -1) {
+        // Keep reading until the buffer is full.
+      }
+      buffer.flip();
+      return buffer;
+    }
+  }
+
   /**
    * Reads and processes {@code .dep} file produced by a cxx compiler.
    *
@@ -204,14 +234,13 @@ public class Depfiles {
     // prerequisites both in the values and the keys of the replacement map.
     Logger.get(Depfiles.class).debug("Processing dependency file %s as Makefile", sourceDepFile);
     ImmutableList.Builder<Path> resultBuilder = ImmutableList.builder();
-    try (InputStream input = filesystem.newFileInputStream(sourceDepFile);
-        BufferedReader reader = new BufferedReader(new InputStreamReader(input));
-        SimplePerfEvent.Scope perfEvent =
-            SimplePerfEvent.scope(
-                eventBus,
-                PerfEventId.of("depfile-parse"),
-                ImmutableMap.of("input", inputPath, "output", outputPath))) {
-      ImmutableList<String> prereqs = Depfiles.parseDepfile(reader).getPrereqs();
+    try (SimplePerfEvent.Scope perfEvent =
+        SimplePerfEvent.scope(
+            eventBus,
+            PerfEventId.of("depfile-parse"),
+            ImmutableMap.of("input", inputPath, "output", outputPath))) {
+      ImmutableList<String> prereqs =
+          Depfiles.parseDepfile(readDepfile(filesystem, sourceDepFile)).getPrereqs();
 
       // Additional files passed in via command-line flags (e.g. `-fsanitize-blacklist=<file>`)
       // appear first in the dep file, followed by the input source file.  So, just skip over
@@ -261,6 +290,69 @@ public class Depfiles {
     return resultBuilder.build();
   }
 
+  /**
+   * The bytes of the target or prereq being parsed. These are usually just a slice of the dep file,
+   * and are only copied out of it once an escape makes them differ from it.
+   */
+  private static class Identifier {
+    private final ByteBuffer contents;
+    private int start = -1;
+    private int length = 0;
+    private byte[] copy = new byte[256];
+
+    private Identifier(ByteBuffer contents) {
+      this.contents = contents;
+    }
+
+    private boolean isEmpty() {
+      return length == 0;
+    }
+
+    /** Appends {@code b}, which was read from {@code position} of the dep file. */
+    private void append(byte b, int position) {
+      if (length == 0) {
+        start = position;
+      } else if (start != -1 && position != start + length) {
+        if (copy.length < length) {
+          copy = new byte[length * 2];
+        }
+        for (int i = 0; i < length; i++) {
+          copy[i] = contents.get(start + i);
+        }
+        start = -1;
+      }
+      if (start == -1) {
+        if (copy.length == length) {
+          copy = Arrays.copyOf(copy, length * 2);
+        }
+        copy[length] = b;
+      }
+      length++;
+    }
+
+    private String intern(DepfilePathTable pathTable) {
+      return start != -1
+          ? pathTable.intern(contents, start, length)
+          : pathTable.intern(ByteBuffer.wrap(copy), 0, length);
+    }
+
+    private String decode() {
+      if (start == -1) {
+        return new String(copy, 0, length, StandardCharsets.UTF_8);
+      }
+      byte[] bytes = new byte[length];
+      for (int i = 0; i < length; i++) {
+        bytes[i] = contents.get(start + i);
+      }
+      return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private void clear() {
+      start = -1;
+      length = 0;
+    }
+  }
+
   public static class Depfile {
 
     private final String target;
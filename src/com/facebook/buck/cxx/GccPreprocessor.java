@@ -42,6 +42,11 @@ public class GccPreprocessor extends AbstractPreprocessor {
     return false;
   }
 
+  @Override
+  public boolean supportsVfsOverlays() {
+    return false;
+  }
+
   @Override
   public boolean supportsPrecompiledHeaders() {
     return true;
@@ -62,6 +67,11 @@ public class GccPreprocessor extends AbstractPreprocessor {
     return MoreIterables.zipAndConcat(Iterables.cycle("-iquote"), includeRoots);
   }
 
+  @Override
+  public Iterable<String> vfsOverlayArgs(Iterable<String> overlays) {
+    throw new UnsupportedOperationException("vfs overlays not supported by " + getClass());
+  }
+
   @Override
   public final Iterable<String> prefixHeaderArgs(
       SourcePathResolver resolver, SourcePath prefixHeader) {
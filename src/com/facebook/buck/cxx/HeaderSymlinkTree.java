@@ -50,4 +50,12 @@ public class HeaderSymlinkTree extends SymlinkTree {
   public Optional<Path> getHeaderMap() {
     return Optional.empty();
   }
+
+  /**
+   * Get path of the virtual file system overlay which makes the files of this tree appear under its
+   * root, if the tree is only virtual.
+   */
+  public Optional<Path> getVfsOverlay() {
+    return Optional.empty();
+  }
 }
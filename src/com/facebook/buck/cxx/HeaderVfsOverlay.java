@@ -0,0 +1,88 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.log.Logger;
+import com.facebook.buck.model.BuildTarget;
+import com.facebook.buck.model.BuildTargets;
+import com.facebook.buck.rules.AddToRuleKey;
+import com.facebook.buck.rules.BuildContext;
+import com.facebook.buck.rules.BuildableContext;
+import com.facebook.buck.rules.ExplicitBuildTargetSourcePath;
+import com.facebook.buck.rules.SourcePath;
+import com.facebook.buck.rules.SourcePathRuleFinder;
+import com.facebook.buck.step.Step;
+import com.facebook.buck.step.fs.MkdirStep;
+import com.facebook.buck.step.fs.RmStep;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.nio.file.Path;
+import java.util.Optional;
+
+/**
+ * Makes the headers appear under the root of the tree through a virtual file system overlay, for
+ * preprocessors which can't use header maps, so that no links need to be created.
+ */
+public class HeaderVfsOverlay extends HeaderSymlinkTree {
+
+  private static final Logger LOG = Logger.get(HeaderVfsOverlay.class);
+
+  @AddToRuleKey(stringify = true)
+  private final Path overlayPath;
+
+  public HeaderVfsOverlay(
+      BuildTarget target,
+      ProjectFilesystem filesystem,
+      Path root,
+      ImmutableMap<Path, SourcePath> links,
+      SourcePathRuleFinder ruleFinder) {
+    super(target, filesystem, root, links, ruleFinder);
+    this.overlayPath = BuildTargets.getGenPath(filesystem, target, "%s.vfsoverlay.yaml");
+  }
+
+  @Override
+  public SourcePath getSourcePathToOutput() {
+    return new ExplicitBuildTargetSourcePath(getBuildTarget(), overlayPath);
+  }
+
+  @Override
+  public ImmutableList<Step> getBuildSteps(
+      BuildContext context, BuildableContext buildableContext) {
+    LOG.debug("Generating post-build steps to write vfs overlay to %s", overlayPath);
+    // The overlay refers to the headers by their absolute paths, which is fine as, like the links
+    // of a symlink tree, it's never cached.
+    ImmutableMap.Builder<Path, Path> overlayEntries = ImmutableMap.builder();
+    Path root = getProjectFilesystem().resolve(getRoot());
+    for (Path key : getLinks().keySet()) {
+      overlayEntries.put(
+          root.resolve(key),
+          context.getSourcePathResolver().getAbsolutePath(getLinks().get(key)));
+    }
+    return ImmutableList.<Step>builder()
+        .add(getVerifyStep())
+        .add(MkdirStep.of(getProjectFilesystem(), overlayPath.getParent()))
+        .add(RmStep.of(getProjectFilesystem(), overlayPath))
+        .add(new VfsOverlayStep(getProjectFilesystem(), overlayPath, overlayEntries.build()))
+        .build();
+  }
+
+  @Override
+  public Optional<Path> getVfsOverlay() {
+    return Optional.of(getProjectFilesystem().resolve(overlayPath));
+  }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import com.facebook.buck.model.BuildTarget;
+import com.facebook.buck.model.Flavor;
+import com.facebook.buck.model.Pair;
+import com.google.common.base.Preconditions;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Remembers, for each {@link NativeLinkable} of an action graph, which linkables a link against it
+ * pulls in for a given platform and link style, so that the links of the many binaries, tests and
+ * shared libraries which share deps don't each walk the whole graph below them again.
+ *
+ * <p>Each linkable's entry only refers to the entries of the linkables it links in, so siblings
+ * share everything below them. Entries are keyed by the identity of the linkable and only weakly
+ * refer to linkables, so they go away along with the action graph they describe.
+ */
+@ThreadSafe
+final class NativeLinkableGraphCache {
+
+  private static final LoadingCache<
+          NativeLinkable, ConcurrentMap<Pair<Flavor, Linker.LinkableDepType>, Node>>
+      NODES =
+          CacheBuilder.newBuilder()
+              .weakKeys()
+              .build(CacheLoader.from(linkable -> new ConcurrentHashMap<>()));
+
+  private NativeLinkableGraphCache() {}
+
+  /**
+   * @return the same linkables, in the same order, as {@link NativeLinkables#getNativeLinkables}
+   *     when it traverses all deps, or nothing if a linkable seen earlier has since gone away.
+   */
+  static Optional<ImmutableMap<BuildTarget, NativeLinkable>> getNativeLinkables(
+      CxxPlatform cxxPlatform,
+      Iterable<? extends NativeLinkable> inputs,
+      Linker.LinkableDepType linkStyle) {
+    Pair<Flavor, Linker.LinkableDepType> key = new Pair<>(cxxPlatform.getFlavor(), linkStyle);
+
+    Map<BuildTarget, Node> nodes = new LinkedHashMap<>();
+    Deque<Node> work = new ArrayDeque<>();
+    for (NativeLinkable input : inputs) {
+      work.add(getNode(cxxPlatform, linkStyle, key, input));
+    }
+    while (!work.isEmpty()) {
+      Node node = work.remove();
+      if (nodes.putIfAbsent(node.target, node) == null) {
+        work.addAll(node.deps);
+      }
+    }
+
+    // This is the order in which TopologicalSort, reversed, lists the same graph: the linkables
+    // furthest from the leaves first, and those equally far in reverse target order.
+    List<Node> ordered = new ArrayList<>(nodes.values());
+    ordered.sort(
+        Comparator.<Node>comparingInt(node -> -node.height)
+            .thenComparing(node -> node.target, Comparator.reverseOrder()));
+
+    ImmutableMap.Builder<BuildTarget, NativeLinkable> result = ImmutableMap.builder();
+    for (Node node : ordered) {
+      NativeLinkable linkable = node.linkable.get();
+      if (linkable == null) {
+        return Optional.empty();
+      }
+      result.put(node.target, linkable);
+    }
+    return Optional.of(result.build());
+  }
+
+  private static Node getNode(
+      CxxPlatform cxxPlatform,
+      Linker.LinkableDepType linkStyle,
+      Pair<Flavor, Linker.LinkableDepType> key,
+      NativeLinkable root) {
+    Node cached = NODES.getUnchecked(root).get(key);
+    if (cached != null) {
+      return cached;
+    }
+
+    // Build the missing entries bottom up, without recursing, as link graphs can be deep.
+    Map<NativeLinkable, Node> built = new IdentityHashMap<>();
+    Map<NativeLinkable, ImmutableList<NativeLinkable>> expanded = new IdentityHashMap<>();
+    Deque<NativeLinkable> stack = new ArrayDeque<>();
+    stack.push(root);
+    while (!stack.isEmpty()) {
+      NativeLinkable current = stack.peek();
+      if (built.containsKey(current)) {
+        stack.pop();
+        continue;
+      }
+      Node node = NODES.getUnchecked(current).get(key);
+      if (node != null) {
+        built.put(current, node);
+        stack.pop();
+        continue;
+      }
+
+      ImmutableList<NativeLinkable> deps = expanded.get(current);
+      if (deps == null) {
+        deps = getTraversedDeps(cxxPlatform, linkStyle, current);
+        expanded.put(current, deps);
+        boolean ready = true;
+        for (NativeLinkable dep : deps) {
+          if (!built.containsKey(dep)) {
+            stack.push(dep);
+            ready = false;
+          }
+        }
+        if (!ready) {
+          continue;
+        }
+      }
+
+      int height = 0;
+      ImmutableList.Builder<Node> depNodes = ImmutableList.builder();
+      for (NativeLinkable dep : deps) {
+        Node depNode =
+            Preconditions.checkNotNull(
+                built.get(dep),
+                "Cycle in native linkable deps: %s and %s",
+                current.getBuildTarget(),
+                dep.getBuildTarget());
+        height = Math.max(height, depNode.height + 1);
+        depNodes.add(depNode);
+      }
+      node = new Node(current, height, depNodes.build());
+      Node existing = NODES.getUnchecked(current).putIfAbsent(key, node);
+      built.put(current, existing == null ? node : existing);
+      stack.pop();
+    }
+    return Preconditions.checkNotNull(built.get(root));
+  }
+
+  private static ImmutableList<NativeLinkable> getTraversedDeps(
+      CxxPlatform cxxPlatform, Linker.LinkableDepType linkStyle, NativeLinkable linkable) {
+    // We always traverse a rule's exported native linkables.
+    Iterable<? extends NativeLinkable> deps =
+        linkable.getNativeLinkableExportedDepsForPlatform(cxxPlatform);
+
+    // If we're linking this dependency statically, we also need to traverse its deps.
+    if (NativeLinkables.shouldTraverseDeps(linkable.getPreferredLinkage(cxxPlatform), linkStyle)) {
+      deps = Iterables.concat(deps, linkable.getNativeLinkableDepsForPlatform(cxxPlatform));
+    }
+    return ImmutableList.copyOf(deps);
+  }
+
+  /** A linkable, how far it is from the leaves of its link graph, and the linkables it pulls in. */
+  private static class Node {
+    private final WeakReference<NativeLinkable> linkable;
+    private final BuildTarget target;
+    private final int height;
+    private final ImmutableList<Node> deps;
+
+    private Node(NativeLinkable linkable, int height, ImmutableList<Node> deps) {
+      this.linkable = new WeakReference<>(linkable);
+      this.target = linkable.getBuildTarget();
+      this.height = height;
+      this.deps = deps;
+    }
+  }
+}
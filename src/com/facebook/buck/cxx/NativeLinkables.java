@@ -127,21 +127,8 @@ public class NativeLinkables {
             Iterable<? extends NativeLinkable> nativeLinkableDeps =
                 nativeLinkable.getNativeLinkableExportedDepsForPlatform(cxxPlatform);
 
-            boolean shouldTraverse = true;
-            switch (nativeLinkable.getPreferredLinkage(cxxPlatform)) {
-              case ANY:
-                shouldTraverse = linkStyle != Linker.LinkableDepType.SHARED;
-                break;
-              case SHARED:
-                shouldTraverse = false;
-                break;
-              case STATIC:
-                shouldTraverse = true;
-                break;
-            }
-
             // If we're linking this dependency statically, we also need to traverse its deps.
-            if (shouldTraverse) {
+            if (shouldTraverseDeps(nativeLinkable.getPreferredLinkage(cxxPlatform), linkStyle)) {
               nativeLinkableDeps =
                   Iterables.concat(
                       nativeLinkableDeps,
@@ -174,13 +161,40 @@ public class NativeLinkables {
     return result.build();
   }
 
+  /**
+   * Like {@link #getNativeLinkables(CxxPlatform, Iterable, Linker.LinkableDepType, Predicate)}
+   * traversing all deps, but sharing the traversal of the linkables below {@code inputs} with the
+   * other links of the action graph through {@link NativeLinkableGraphCache}.
+   */
   public static ImmutableMap<BuildTarget, NativeLinkable> getNativeLinkables(
       final CxxPlatform cxxPlatform,
       Iterable<? extends NativeLinkable> inputs,
       final Linker.LinkableDepType linkStyle) {
+    Optional<ImmutableMap<BuildTarget, NativeLinkable>> nativeLinkables =
+        NativeLinkableGraphCache.getNativeLinkables(cxxPlatform, inputs, linkStyle);
+    if (nativeLinkables.isPresent()) {
+      return nativeLinkables.get();
+    }
     return getNativeLinkables(cxxPlatform, inputs, linkStyle, x -> true);
   }
 
+  /**
+   * @return whether linking {@code linkStyle} against a linkable with the given preferred linkage
+   *     also links in its (non-exported) deps.
+   */
+  static boolean shouldTraverseDeps(
+      NativeLinkable.Linkage preferredLinkage, Linker.LinkableDepType linkStyle) {
+    switch (preferredLinkage) {
+      case ANY:
+        return linkStyle != Linker.LinkableDepType.SHARED;
+      case SHARED:
+        return false;
+      case STATIC:
+        return true;
+    }
+    throw new IllegalStateException();
+  }
+
   public static Linker.LinkableDepType getLinkStyle(
       NativeLinkable.Linkage preferredLinkage, Linker.LinkableDepType requestedLinkStyle) {
     Linker.LinkableDepType linkStyle;
@@ -30,6 +30,8 @@ public interface Preprocessor extends Tool {
 
   boolean supportsHeaderMaps();
 
+  boolean supportsVfsOverlays();
+
   boolean supportsPrecompiledHeaders();
 
   Iterable<String> localIncludeArgs(Iterable<String> includeRoots);
@@ -38,6 +40,8 @@ public interface Preprocessor extends Tool {
 
   Iterable<String> quoteIncludeArgs(Iterable<String> includeRoots);
 
+  Iterable<String> vfsOverlayArgs(Iterable<String> overlays);
+
   Iterable<String> precompiledHeaderArgs(Path pchOutputPath);
 
   Iterable<String> prefixHeaderArgs(SourcePathResolver resolver, SourcePath prefixHeader);
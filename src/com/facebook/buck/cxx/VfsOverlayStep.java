@@ -0,0 +1,123 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.log.Logger;
+import com.facebook.buck.step.ExecutionContext;
+import com.facebook.buck.step.Step;
+import com.facebook.buck.step.StepExecutionResult;
+import com.facebook.buck.util.ObjectMappers;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Writes a clang virtual file system overlay (as passed to {@code -ivfsoverlay}) which makes files
+ * appear at paths where they don't exist.
+ */
+public class VfsOverlayStep implements Step {
+
+  private static final Logger LOG = Logger.get(VfsOverlayStep.class);
+
+  private final ProjectFilesystem filesystem;
+  private final Path output;
+  private final ImmutableMap<Path, Path> entries;
+
+  /**
+   * @param entries maps the absolute paths at which files should appear to the absolute paths of
+   *     the files.
+   */
+  public VfsOverlayStep(
+      ProjectFilesystem filesystem, Path output, ImmutableMap<Path, Path> entries) {
+    this.filesystem = filesystem;
+    this.output = output;
+    this.entries = entries;
+  }
+
+  @Override
+  public String getDescription(ExecutionContext context) {
+    return "vfs overlay @ " + output.toString();
+  }
+
+  @Override
+  public String getShortName() {
+    return "vfs_overlay";
+  }
+
+  @Override
+  public StepExecutionResult execute(ExecutionContext context) throws IOException {
+    LOG.debug("Writing vfs overlay with %d entries to %s", entries.size(), output);
+
+    // Group the files by directory, as each root of an overlay is a directory listing files by
+    // name.
+    SortedMap<Path, SortedMap<String, Path>> filesByDirectory = new TreeMap<>();
+    for (Map.Entry<Path, Path> entry : entries.entrySet()) {
+      Path path = entry.getKey();
+      Preconditions.checkState(path.isAbsolute(), "Overlaid path %s is not absolute.", path);
+      filesByDirectory
+          .computeIfAbsent(path.getParent(), directory -> new TreeMap<>())
+          .put(path.getFileName().toString(), entry.getValue());
+    }
+
+    try (OutputStream stream = filesystem.newFileOutputStream(output);
+        JsonGenerator generator = ObjectMappers.createGenerator(stream)) {
+      generator.writeStartObject();
+      generator.writeNumberField("version", 0);
+      generator.writeArrayFieldStart("roots");
+      for (Map.Entry<Path, SortedMap<String, Path>> directory : filesByDirectory.entrySet()) {
+        generator.writeStartObject();
+        generator.writeStringField("type", "directory");
+        generator.writeStringField("name", directory.getKey().toString());
+        generator.writeArrayFieldStart("contents");
+        for (Map.Entry<String, Path> file : directory.getValue().entrySet()) {
+          generator.writeStartObject();
+          generator.writeStringField("type", "file");
+          generator.writeStringField("name", file.getKey());
+          generator.writeStringField("external-contents", file.getValue().toString());
+          generator.writeEndObject();
+        }
+        generator.writeEndArray();
+        generator.writeEndObject();
+      }
+      generator.writeEndArray();
+      generator.writeEndObject();
+    }
+    return StepExecutionResult.SUCCESS;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (!(obj instanceof VfsOverlayStep)) {
+      return false;
+    }
+    VfsOverlayStep that = (VfsOverlayStep) obj;
+    return Objects.equal(this.output, that.output) && Objects.equal(this.entries, that.entries);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hashCode(output, entries);
+  }
+}
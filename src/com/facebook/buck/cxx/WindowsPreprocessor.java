@@ -36,6 +36,11 @@ public class WindowsPreprocessor extends AbstractPreprocessor {
     return false;
   }
 
+  @Override
+  public boolean supportsVfsOverlays() {
+    return false;
+  }
+
   @Override
   public boolean supportsPrecompiledHeaders() {
     // TODO(steveo) Should be easy to add support; will try @ later time,
@@ -59,6 +64,11 @@ public class WindowsPreprocessor extends AbstractPreprocessor {
     return Iterables.transform(includeRoots, prependIncludeFlag);
   }
 
+  @Override
+  public Iterable<String> vfsOverlayArgs(Iterable<String> overlays) {
+    throw new UnsupportedOperationException("vfs overlays not supported by " + getClass());
+  }
+
   @Override
   public Iterable<String> prefixHeaderArgs(SourcePathResolver resolver, SourcePath prefixHeader) {
     throw new UnsupportedOperationException("prefix header not supported by " + getClass());
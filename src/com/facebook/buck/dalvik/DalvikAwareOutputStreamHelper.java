@@ -27,6 +27,7 @@ import java.io.InputStream;
 import java.io.Writer;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.BitSet;
 import java.util.Set;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
@@ -45,8 +46,10 @@ public class DalvikAwareOutputStreamHelper implements ZipOutputStreamHelper {
   private final Writer reportFileWriter;
   private final DalvikStatsCache dalvikStatsCache;
 
-  private final Set<DalvikStatsTool.MethodReference> currentMethodReferences = Sets.newHashSet();
-  private final Set<DalvikStatsTool.FieldReference> currentFieldReferences = Sets.newHashSet();
+  private final BitSet currentMethodReferences = new BitSet();
+  private final BitSet currentFieldReferences = new BitSet();
+  private int currentMethodReferenceCount;
+  private int currentFieldReferenceCount;
   private long currentLinearAllocSize;
 
   DalvikAwareOutputStreamHelper(
@@ -61,16 +64,16 @@ public class DalvikAwareOutputStreamHelper implements ZipOutputStreamHelper {
   }
 
   private boolean isEntryTooBig(FileLike entry) {
-    DalvikStatsTool.Stats stats = dalvikStatsCache.getStats(entry);
+    DalvikStatsCache.ClassStats stats = dalvikStatsCache.getStats(entry);
     if (currentLinearAllocSize + stats.estimatedLinearAllocSize > linearAllocLimit) {
       return true;
     }
-    int newMethodRefs = Sets.difference(stats.methodReferences, currentMethodReferences).size();
-    if (currentMethodReferences.size() + newMethodRefs > MAX_METHOD_REFERENCES) {
+    int newMethodRefs = stats.countNewMethodReferences(currentMethodReferences);
+    if (currentMethodReferenceCount + newMethodRefs > MAX_METHOD_REFERENCES) {
       return true;
     }
-    int newFieldRefs = Sets.difference(stats.fieldReferences, currentFieldReferences).size();
-    if (currentFieldReferences.size() + newFieldRefs > MAX_FIELD_REFERENCES) {
+    int newFieldRefs = stats.countNewFieldReferences(currentFieldReferences);
+    if (currentFieldReferenceCount + newFieldRefs > MAX_FIELD_REFERENCES) {
       return true;
     }
     return false;
@@ -99,7 +102,7 @@ public class DalvikAwareOutputStreamHelper implements ZipOutputStreamHelper {
       }
 
       // Make sure FileLike#getSize didn't lie (or we forgot to call canPutEntry).
-      DalvikStatsTool.Stats stats = dalvikStatsCache.getStats(fileLike);
+      DalvikStatsCache.ClassStats stats = dalvikStatsCache.getStats(fileLike);
       Preconditions.checkState(
           !isEntryTooBig(fileLike),
           "Putting entry %s (%s) exceeded maximum size of %s",
@@ -107,11 +110,13 @@ public class DalvikAwareOutputStreamHelper implements ZipOutputStreamHelper {
           stats.estimatedLinearAllocSize,
           linearAllocLimit);
       currentLinearAllocSize += stats.estimatedLinearAllocSize;
-      currentMethodReferences.addAll(stats.methodReferences);
-      currentFieldReferences.addAll(stats.fieldReferences);
+      currentMethodReferenceCount += stats.countNewMethodReferences(currentMethodReferences);
+      currentFieldReferenceCount += stats.countNewFieldReferences(currentFieldReferences);
+      stats.addMethodReferencesTo(currentMethodReferences);
+      stats.addFieldReferencesTo(currentFieldReferences);
       String report =
           String.format(
-              "%d %d %s\n", stats.estimatedLinearAllocSize, stats.methodReferences.size(), name);
+              "%d %d %s\n", stats.estimatedLinearAllocSize, stats.getMethodReferenceCount(), name);
       reportFileWriter.append(report);
     }
   }
@@ -17,35 +17,60 @@
 package com.facebook.buck.dalvik;
 
 import com.facebook.buck.jvm.java.classes.FileLike;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
 import com.google.common.collect.MapMaker;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.concurrent.ConcurrentMap;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
 
-/** Cache to memoize results from DalvikStatsTool. */
+/**
+ * Cache to memoize results from DalvikStatsTool.
+ *
+ * <p>Every distinct method and field reference is assigned a dense int id the first time it is
+ * seen, so that the references of each class can be kept as a sorted array of ids rather than as
+ * sets of strings, and the references of a whole dex as a {@link BitSet}. Classes are keyed by the
+ * hash of their contents, so a class which appears in several inputs is only analyzed once.
+ *
+ * <p>This class is not thread safe.
+ */
 class DalvikStatsCache {
 
-  private final ConcurrentMap<FileLike, DalvikStatsTool.Stats> cache;
-
-  DalvikStatsCache() {
-    cache = new MapMaker().weakKeys().makeMap();
-  }
+  private final Map<FileLike, ClassStats> cache = new MapMaker().weakKeys().makeMap();
+  private final Map<HashCode, ClassStats> statsByContents = new HashMap<>();
+  private final Map<DalvikStatsTool.MethodReference, Integer> methodIds = new HashMap<>();
+  private final Map<DalvikStatsTool.FieldReference, Integer> fieldIds = new HashMap<>();
+  private final Interner<String> strings = Interners.newStrongInterner();
 
-  DalvikStatsTool.Stats getStats(FileLike entry) {
+  ClassStats getStats(FileLike entry) {
     String name = entry.getRelativePath();
     if (!name.endsWith(".class")) {
       // Probably something like a pom.properties file in a JAR: this does not contribute
       // to the linear alloc size, so return zero.
-      return DalvikStatsTool.Stats.ZERO;
+      return ClassStats.ZERO;
     }
 
-    DalvikStatsTool.Stats stats = cache.get(entry);
+    ClassStats stats = cache.get(entry);
     if (stats != null) {
       return stats;
     }
 
     try (InputStream is = entry.getInput()) {
-      stats = DalvikStatsTool.getEstimate(is);
+      byte[] contents = ByteStreams.toByteArray(is);
+      HashCode hash = Hashing.sha1().hashBytes(contents);
+      stats = statsByContents.get(hash);
+      if (stats == null) {
+        stats = intern(DalvikStatsTool.getEstimate(contents));
+        statsByContents.put(hash, stats);
+      }
       cache.put(entry, stats);
       return stats;
     } catch (IOException e) {
@@ -54,4 +79,103 @@ class DalvikStatsCache {
       throw new RuntimeException(String.format("Error calculating size for %s.", name), e);
     }
   }
+
+  private ClassStats intern(DalvikStatsTool.Stats stats) {
+    return new ClassStats(
+        stats.estimatedLinearAllocSize,
+        getIds(
+            stats.methodReferences,
+            methodIds,
+            reference ->
+                new DalvikStatsTool.MethodReference(
+                    strings.intern(reference.className),
+                    strings.intern(reference.methodName),
+                    strings.intern(reference.methodDesc))),
+        getIds(
+            stats.fieldReferences,
+            fieldIds,
+            reference ->
+                new DalvikStatsTool.FieldReference(
+                    strings.intern(reference.className),
+                    strings.intern(reference.fieldName),
+                    strings.intern(reference.fieldDesc))));
+  }
+
+  /**
+   * @param internReference makes a copy of a reference which shares its strings with the other
+   *     references in the table, so that the table holds each string once.
+   * @return the sorted ids of {@code references}.
+   */
+  private static <T> int[] getIds(
+      Set<T> references, Map<T, Integer> ids, Function<T, T> internReference) {
+    int[] result = new int[references.size()];
+    int i = 0;
+    for (T reference : references) {
+      Integer id = ids.get(reference);
+      if (id == null) {
+        id = ids.size();
+        ids.put(internReference.apply(reference), id);
+      }
+      result[i++] = id;
+    }
+    Arrays.sort(result);
+    return result;
+  }
+
+  /** Stats about a java class, with its references as ids assigned by the cache. */
+  static class ClassStats {
+
+    static final ClassStats ZERO = new ClassStats(0, new int[0], new int[0]);
+
+    /** Estimated bytes the class will contribute to Dalvik linear alloc. */
+    final int estimatedLinearAllocSize;
+
+    /** Sorted ids of the methods referenced by the class. */
+    private final int[] methodIds;
+
+    /** Sorted ids of the fields referenced by the class. */
+    private final int[] fieldIds;
+
+    private ClassStats(int estimatedLinearAllocSize, int[] methodIds, int[] fieldIds) {
+      this.estimatedLinearAllocSize = estimatedLinearAllocSize;
+      this.methodIds = methodIds;
+      this.fieldIds = fieldIds;
+    }
+
+    int getMethodReferenceCount() {
+      return methodIds.length;
+    }
+
+    /** @return how many of the methods referenced by the class are not in {@code methods}. */
+    int countNewMethodReferences(BitSet methods) {
+      return countNotIn(methodIds, methods);
+    }
+
+    /** @return how many of the fields referenced by the class are not in {@code fields}. */
+    int countNewFieldReferences(BitSet fields) {
+      return countNotIn(fieldIds, fields);
+    }
+
+    void addMethodReferencesTo(BitSet methods) {
+      for (int id : methodIds) {
+        methods.set(id);
+      }
+    }
+
+    void addFieldReferencesTo(BitSet fields) {
+      for (int id : fieldIds) {
+        fields.set(id);
+      }
+    }
+
+    private static int countNotIn(int[] ids, BitSet set) {
+      int count = 0;
+      for (int id : ids) {
+        if (!set.get(id)) {
+          count++;
+        }
+      }
+      return count;
+    }
+  }
 }
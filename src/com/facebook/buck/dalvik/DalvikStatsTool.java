@@ -214,6 +214,17 @@ public class DalvikStatsTool {
     return getEstimateInternal(classReader);
   }
 
+  /**
+   * Estimates the footprint that a given class will have in the LinearAlloc buffer of Android's
+   * Dalvik VM.
+   *
+   * @param rawClass Raw bytes of the Java class to analyze.
+   * @return the estimate
+   */
+  public static Stats getEstimate(byte[] rawClass) {
+    return getEstimateInternal(new ClassReader(rawClass));
+  }
+
   /**
    * Estimates the footprint that a given class will have in the LinearAlloc buffer of Android's
    * Dalvik VM.
@@ -21,14 +21,18 @@ import com.facebook.buck.rules.BuildRuleResolver;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.FluentIterable;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
+import java.util.function.ToLongFunction;
 
 public class BuildTargetsQueue {
   private List<EnqueuedTarget> zeroDependencyTargets;
@@ -46,9 +50,20 @@ public class BuildTargetsQueue {
 
   public static BuildTargetsQueue newQueue(
       BuildRuleResolver resolver, Iterable<BuildTarget> targetsToBuild) {
-    // Build the reverse dependency graph by traversing the action graph Top-Down.
-    Map<String, Set<String>> allReverseDeps = new HashMap<>();
-    Map<String, Integer> numberOfDependencies = new HashMap<>();
+    return newQueue(resolver, targetsToBuild, rule -> 0L);
+  }
+
+  /**
+   * @param durationMillisLoader supplies the historical duration of a rule, or 0 if it is unknown,
+   *     which is used to hand out the targets on the critical path of the build first.
+   */
+  public static BuildTargetsQueue newQueue(
+      BuildRuleResolver resolver,
+      Iterable<BuildTarget> targetsToBuild,
+      ToLongFunction<BuildRule> durationMillisLoader) {
+    // Collect the dependency graph by traversing the action graph Top-Down.
+    Map<String, Set<String>> allDeps = new HashMap<>();
+    Map<String, Long> durationsMillis = new HashMap<>();
     Set<String> visitedTargets = Sets.newHashSet();
     Queue<BuildRule> buildRulesToProcess =
         Lists.newLinkedList(
@@ -62,25 +77,56 @@ public class BuildTargetsQueue {
     while (!buildRulesToProcess.isEmpty()) {
       BuildRule rule = buildRulesToProcess.remove();
       String target = ruleToTarget(rule);
-      numberOfDependencies.put(target, rule.getBuildDeps().size());
+      durationsMillis.put(target, durationMillisLoader.applyAsLong(rule));
+      Set<String> deps = Sets.newHashSet();
       for (BuildRule dependencyRule : rule.getBuildDeps()) {
         String dependencyTarget = ruleToTarget(dependencyRule);
-        if (!allReverseDeps.containsKey(dependencyTarget)) {
-          allReverseDeps.put(dependencyTarget, Sets.newHashSet());
-        }
-        allReverseDeps.get(dependencyTarget).add(target);
+        deps.add(dependencyTarget);
 
         if (!visitedTargets.contains(dependencyTarget)) {
           visitedTargets.add(dependencyTarget);
           buildRulesToProcess.add(dependencyRule);
         }
       }
+      allDeps.put(target, deps);
     }
 
+    return newQueue(allDeps, durationsMillis::get);
+  }
+
+  /**
+   * Creates a queue over a plain dependency graph, such as one recorded from an earlier build.
+   *
+   * @param depsByTarget the targets to build, and the targets each of them depends on.
+   * @param durationMillisLoader supplies the historical duration of a target, or 0 if it is
+   *     unknown.
+   */
+  public static BuildTargetsQueue newQueue(
+      Map<String, ? extends Set<String>> depsByTarget,
+      ToLongFunction<String> durationMillisLoader) {
+    // Build the reverse dependency graph.
+    Map<String, Set<String>> allReverseDeps = new HashMap<>();
+    for (Map.Entry<String, ? extends Set<String>> entry : depsByTarget.entrySet()) {
+      for (String dependencyTarget : entry.getValue()) {
+        Preconditions.checkArgument(
+            depsByTarget.containsKey(dependencyTarget),
+            "Dependency [%s] of [%s] is missing from the graph.",
+            dependencyTarget,
+            entry.getKey());
+        if (!allReverseDeps.containsKey(dependencyTarget)) {
+          allReverseDeps.put(dependencyTarget, Sets.newHashSet());
+        }
+        allReverseDeps.get(dependencyTarget).add(entry.getKey());
+      }
+    }
+
+    Map<String, Long> criticalPathWeights =
+        computeCriticalPathWeights(depsByTarget, allReverseDeps, durationMillisLoader);
+
     // Do the reference counting and create the EnqueuedTargets.
     List<EnqueuedTarget> zeroDependencyTargets = new ArrayList<>();
     Map<String, EnqueuedTarget> allEnqueuedTargets = new HashMap<>();
-    for (String target : visitedTargets) {
+    for (String target : depsByTarget.keySet()) {
       Iterable<String> currentRevDeps = null;
       if (allReverseDeps.containsKey(target)) {
         currentRevDeps = allReverseDeps.get(target);
@@ -92,7 +138,8 @@ public class BuildTargetsQueue {
           new EnqueuedTarget(
               target,
               ImmutableList.copyOf(currentRevDeps),
-              Preconditions.checkNotNull(numberOfDependencies.get(target)));
+              depsByTarget.get(target).size(),
+              Preconditions.checkNotNull(criticalPathWeights.get(target)));
       allEnqueuedTargets.put(target, enqueuedTarget);
 
       if (enqueuedTarget.areAllDependenciesResolved()) {
@@ -103,6 +150,51 @@ public class BuildTargetsQueue {
     return new BuildTargetsQueue(zeroDependencyTargets, allEnqueuedTargets);
   }
 
+  /**
+   * Computes, for each target, its duration plus that of the most expensive chain of targets which
+   * depend on it. Every target counts for at least a millisecond, so that the longest chain of
+   * targets comes first when no durations are known.
+   */
+  private static Map<String, Long> computeCriticalPathWeights(
+      Map<String, ? extends Set<String>> depsByTarget,
+      Map<String, Set<String>> allReverseDeps,
+      ToLongFunction<String> durationMillisLoader) {
+    // Walk the graph from the targets nothing depends on down to their dependencies, so that the
+    // weights of all the dependents of a target are known by the time it is reached.
+    Map<String, Integer> unvisitedDependents = new HashMap<>();
+    Queue<String> targetsToProcess = new ArrayDeque<>();
+    for (String target : depsByTarget.keySet()) {
+      int dependents = allReverseDeps.getOrDefault(target, ImmutableSet.of()).size();
+      unvisitedDependents.put(target, dependents);
+      if (dependents == 0) {
+        targetsToProcess.add(target);
+      }
+    }
+
+    Map<String, Long> criticalPathWeights = new HashMap<>();
+    while (!targetsToProcess.isEmpty()) {
+      String target = targetsToProcess.remove();
+      long heaviestDependent = 0;
+      for (String dependent : allReverseDeps.getOrDefault(target, ImmutableSet.of())) {
+        heaviestDependent = Math.max(heaviestDependent, criticalPathWeights.get(dependent));
+      }
+      criticalPathWeights.put(
+          target, heaviestDependent + Math.max(1, durationMillisLoader.applyAsLong(target)));
+      for (String dependencyTarget : depsByTarget.get(target)) {
+        if (unvisitedDependents.merge(dependencyTarget, -1, Integer::sum) == 0) {
+          targetsToProcess.add(dependencyTarget);
+        }
+      }
+    }
+    Preconditions.checkState(
+        criticalPathWeights.size() == depsByTarget.size(), "The dependency graph has a cycle.");
+    return criticalPathWeights;
+  }
+
+  /**
+   * @return the targets which became ready to build, with those on the longest remaining critical
+   *     path first.
+   */
   public ImmutableList<String> dequeueZeroDependencyNodes(ImmutableList<String> finishedNodes) {
     // Decrement reference counting.
     for (String node : finishedNodes) {
@@ -117,6 +209,8 @@ public class BuildTargetsQueue {
     }
 
     // Return all the Targets that have all dependencies resolved.
+    zeroDependencyTargets.sort(
+        Comparator.<EnqueuedTarget>comparingLong(EnqueuedTarget::getCriticalPathWeight).reversed());
     ImmutableList<String> targetsReadyToBuild =
         ImmutableList.copyOf(
             FluentIterable.from(zeroDependencyTargets).transform(x -> x.getBuildTarget()));
@@ -124,6 +218,14 @@ public class BuildTargetsQueue {
     return targetsReadyToBuild;
   }
 
+  /**
+   * @return the duration of {@code target} plus that of the most expensive chain of targets which
+   *     depend on it.
+   */
+  public long getCriticalPathWeight(String target) {
+    return Preconditions.checkNotNull(allEnqueuedTargets.get(target)).getCriticalPathWeight();
+  }
+
   private static String ruleToTarget(BuildRule rule) {
     return rule.getFullyQualifiedName();
   }
@@ -131,13 +233,18 @@ public class BuildTargetsQueue {
   private static class EnqueuedTarget {
     private final String buildTarget;
     private final ImmutableList<String> dependentTargets;
+    private final long criticalPathWeight;
     private int unsatisfiedDependencies;
 
     private EnqueuedTarget(
-        String buildTarget, ImmutableList<String> dependentTargets, int numberOfDependencies) {
+        String buildTarget,
+        ImmutableList<String> dependentTargets,
+        int numberOfDependencies,
+        long criticalPathWeight) {
       this.buildTarget = buildTarget;
       this.dependentTargets = dependentTargets;
       this.unsatisfiedDependencies = numberOfDependencies;
+      this.criticalPathWeight = criticalPathWeight;
     }
 
     public boolean areAllDependenciesResolved() {
@@ -152,6 +259,10 @@ public class BuildTargetsQueue {
       return dependentTargets;
     }
 
+    public long getCriticalPathWeight() {
+      return criticalPathWeight;
+    }
+
     public void decrementUnsatisfiedDeps() {
       --unsatisfiedDependencies;
       Preconditions.checkArgument(
@@ -167,6 +278,8 @@ public class BuildTargetsQueue {
           + '\''
           + ", unsatisfiedDependencies="
           + unsatisfiedDependencies
+          + ", criticalPathWeight="
+          + criticalPathWeight
           + ", dependentTargets="
           + dependentTargets
           + '}';
@@ -29,6 +29,8 @@ import com.facebook.buck.parser.BuildTargetPatternParser;
 import com.facebook.buck.parser.DefaultParserTargetNodeFactory;
 import com.facebook.buck.parser.ParserTargetNodeFactory;
 import com.facebook.buck.rules.ActionGraphAndResolver;
+import com.facebook.buck.rules.BuildInfo;
+import com.facebook.buck.rules.BuildRule;
 import com.facebook.buck.rules.CachingBuildEngine;
 import com.facebook.buck.rules.CachingBuildEngineBuckConfig;
 import com.facebook.buck.rules.Cell;
@@ -58,9 +60,12 @@ import com.google.common.base.Preconditions;
 import com.google.common.base.Supplier;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
+import com.google.common.primitives.Longs;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -127,10 +132,25 @@ public class DistBuildSlaveExecutor {
     BuildTargetsQueue queue =
         BuildTargetsQueue.newQueue(
             Preconditions.checkNotNull(actionGraphAndResolver).getResolver(),
-            fullyQualifiedNameToBuildTarget(args.getState().getRemoteState().getTopLevelTargets()));
+            fullyQualifiedNameToBuildTarget(args.getState().getRemoteState().getTopLevelTargets()),
+            this::readBuildDurationMillis);
     return new CoordinatorModeRunner(args.getCoordinatorPort(), queue, args.getStampedeId());
   }
 
+  /** @return how long {@code rule} took to build the last time it was built here, or 0. */
+  private long readBuildDurationMillis(BuildRule rule) {
+    CachingBuildEngine.MetadataStorage metadataStorage =
+        args.getRemoteRootCellConfig()
+            .getView(CachingBuildEngineBuckConfig.class)
+            .getBuildMetadataStorage();
+    return args.getBuildInfoStoreManager()
+        .get(rule.getProjectFilesystem(), metadataStorage)
+        .readMetadata(rule.getBuildTarget(), BuildInfo.MetadataKey.BUILD_DURATION_MILLIS)
+        // The metadata may come from an older or foreign build, so treat garbage as unknown.
+        .map(Longs::tryParse)
+        .orElse(0L);
+  }
+
   private TargetGraph createTargetGraph() throws IOException, InterruptedException {
     if (targetGraph != null) {
       return targetGraph;
@@ -284,6 +304,39 @@ public class DistBuildSlaveExecutor {
     @Override
     public int buildLocallyAndReturnExitCode(Iterable<String> targetsToBuild)
         throws IOException, InterruptedException {
+      return runBuild(
+          build ->
+              build.executeAndPrintFailuresToEventBus(
+                  fullyQualifiedNameToBuildTarget(targetsToBuild),
+                  /* isKeepGoing */ true,
+                  args.getBuckEventBus(),
+                  args.getConsole(),
+                  Optional.empty()));
+    }
+
+    @Override
+    public int buildLocallyAndReturnExitCode(
+        Iterable<String> targetsToBuild, TargetBuiltCallback callback)
+        throws IOException, InterruptedException {
+      Map<BuildTarget, String> targetNames = new HashMap<>();
+      for (String targetName : targetsToBuild) {
+        targetNames.put(
+            Iterables.getOnlyElement(fullyQualifiedNameToBuildTarget(ImmutableList.of(targetName))),
+            targetName);
+      }
+      return runBuild(
+          build ->
+              build.executeAndReportEachRule(
+                  targetNames.keySet(),
+                  args.getBuckEventBus(),
+                  (rule, succeeded) ->
+                      callback.targetBuilt(
+                          targetNames.getOrDefault(
+                              rule.getBuildTarget(), rule.getFullyQualifiedName()),
+                          succeeded ? 0 : 1)));
+    }
+
+    private int runBuild(BuildRunner runner) throws IOException, InterruptedException {
       // TODO(ruibm): Fix this to work with Android.
       MetadataChecker.checkAndCleanIfNeeded(args.getRootCell());
       try (CachingBuildEngine buildEngine =
@@ -300,6 +353,9 @@ public class DistBuildSlaveExecutor {
                   Preconditions.checkNotNull(actionGraphAndResolver).getResolver(),
                   args.getBuildInfoStoreManager(),
                   engineConfig.getResourceAwareSchedulingInfo(),
+                  engineConfig.getSchedulingMode(),
+                  engineConfig.isArtifactCachePrefetchEnabled(),
+                  engineConfig.isRuleKeyPrecomputeEnabled(),
                   RuleKeyFactories.of(
                       distBuildConfig.getKeySeed(),
                       cachingBuildEngineDelegate.getFileHashCache(),
@@ -338,16 +394,16 @@ public class DistBuildSlaveExecutor {
                   Optional.empty(),
                   args.getExecutors())) {
 
-        return build.executeAndPrintFailuresToEventBus(
-            fullyQualifiedNameToBuildTarget(targetsToBuild),
-            /* isKeepGoing */ true,
-            args.getBuckEventBus(),
-            args.getConsole(),
-            Optional.empty());
+        return runner.run(build);
       }
     }
   }
 
+  /** Runs a build of some targets, once it was set up. */
+  private interface BuildRunner {
+    int run(Build build) throws IOException, InterruptedException;
+  }
+
   private static class StackedFileHashCaches {
     public final StackedFileHashCache remoteStateCache;
     public final StackedFileHashCache materializingCache;
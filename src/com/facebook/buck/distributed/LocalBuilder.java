@@ -21,4 +21,15 @@ import java.io.IOException;
 public interface LocalBuilder {
   int buildLocallyAndReturnExitCode(Iterable<String> targetsToBuild)
       throws IOException, InterruptedException;
+
+  /**
+   * Builds all the targets together, calling {@code callback} on the calling thread as each one of
+   * them finishes.
+   */
+  int buildLocallyAndReturnExitCode(Iterable<String> targetsToBuild, TargetBuiltCallback callback)
+      throws IOException, InterruptedException;
+
+  interface TargetBuiltCallback {
+    void targetBuilt(String target, int exitCode) throws IOException;
+  }
 }
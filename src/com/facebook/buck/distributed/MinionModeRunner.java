@@ -26,8 +26,10 @@ import com.google.common.collect.Lists;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class MinionModeRunner implements DistBuildModeRunner {
   private static final Logger LOG = Logger.get(MinionModeRunner.class);
@@ -64,13 +66,7 @@ public class MinionModeRunner implements DistBuildModeRunner {
                 String.format(
                     "Minion [%s] is about to build [%d] targets: [%s]",
                     minionId, targetsToBuild.size(), Joiner.on(", ").join(targetsToBuild)));
-            int buildExitCode = builder.buildLocallyAndReturnExitCode(targetsToBuild);
-            LOG.debug(
-                String.format(
-                    "Minion [%s] finished with exit code [%d].", minionId, buildExitCode));
-            FinishedBuildingResponse finishedResponse =
-                client.finishedBuilding(minionId, buildExitCode);
-            if (!finishedResponse.isContinueBuilding()) {
+            if (!buildTargets(client, minionId, targetsToBuild)) {
               return 0;
             }
             break;
@@ -96,6 +92,45 @@ public class MinionModeRunner implements DistBuildModeRunner {
     }
   }
 
+  /**
+   * Builds the targets together in one build, so that they keep sharing deps and local
+   * parallelism, and reports each of them to the coordinator as soon as it's built so that their
+   * dependents can be handed out. Targets are claimed from the coordinator before the build starts,
+   * so only the ones no other minion has taken over yet get built here.
+   *
+   * @return whether the coordinator wants the minion to keep building.
+   */
+  private boolean buildTargets(
+      ThriftCoordinatorClient client, String minionId, List<String> targetsToBuild)
+      throws IOException, InterruptedException {
+    List<String> claimedTargets = new ArrayList<>();
+    for (String target : targetsToBuild) {
+      if (client.startedBuildingTarget(minionId, target).isShouldBuildTarget()) {
+        claimedTargets.add(target);
+      } else {
+        LOG.debug(String.format("Minion [%s] skips [%s] as it was taken over.", minionId, target));
+      }
+    }
+    if (claimedTargets.isEmpty()) {
+      return true;
+    }
+
+    AtomicBoolean continueBuilding = new AtomicBoolean(true);
+    builder.buildLocallyAndReturnExitCode(
+        claimedTargets,
+        (target, exitCode) -> {
+          LOG.debug(
+              String.format(
+                  "Minion [%s] finished [%s] with exit code [%d].", minionId, target, exitCode));
+          FinishedBuildingResponse finishedResponse =
+              client.finishedBuildingTarget(minionId, target, exitCode);
+          if (!finishedResponse.isContinueBuilding()) {
+            continueBuilding.set(false);
+          }
+        });
+    return continueBuilding.get();
+  }
+
   public static String generateNewMinionId() throws UnknownHostException {
     String hostname = "Unknown";
     try {
@@ -18,65 +18,143 @@ package com.facebook.buck.distributed;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.Lists;
-import java.util.HashMap;
-import java.util.List;
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
 
 /**
  * Allocates and keeps track of what BuildTargets are allocated to which Minions. NOTE: Not thread
  * safe.
+ *
+ * <p>Targets are handed out with those on the longest remaining critical path of the build first.
+ * Minions may report their progress on each target with {@link #startedBuildingTarget} and {@link
+ * #finishedBuildingTarget}, which makes the dependents of a target available to all minions as soon
+ * as it is built, rather than once the minion's whole allocation is. A minion which runs out of
+ * work steals targets that other, busy, minions have been allocated but not started yet.
  */
 public class MinionWorkloadAllocator {
 
   private final BuildTargetsQueue queue;
   private final int maxTargetsPerMinion;
   private final Map<String, MinionWorkload> minionAllocations;
-  private final List<String> targetsNotAssignedYet;
+  private final PriorityQueue<String> targetsNotAssignedYet;
+  private final Set<String> finishedTargets;
 
   public MinionWorkloadAllocator(BuildTargetsQueue queue, int maxTargetsPerMinion) {
     this.queue = queue;
-    this.minionAllocations = new HashMap<>();
+    this.minionAllocations = new LinkedHashMap<>();
     this.targetsNotAssignedYet =
-        Lists.newArrayList(queue.dequeueZeroDependencyNodes(ImmutableList.of()));
+        new PriorityQueue<>(
+            Comparator.<String>comparingLong(queue::getCriticalPathWeight).reversed());
+    this.targetsNotAssignedYet.addAll(queue.dequeueZeroDependencyNodes(ImmutableList.of()));
+    this.finishedTargets = new HashSet<>();
     this.maxTargetsPerMinion = maxTargetsPerMinion;
   }
 
+  /**
+   * Tops up the allocation of {@code minionId} to {@code maxTargetsPerMinion} targets.
+   *
+   * @return all the targets allocated to the minion which it has not finished building yet.
+   */
   public ImmutableList<String> getTargetsToBuild(String minionId) {
-    // Return existing one if already allocated.
-    if (minionAllocations.containsKey(minionId)) {
-      return minionAllocations.get(minionId).getTargetsBeingBuilt();
-    }
+    MinionWorkload minionWorkload =
+        minionAllocations.computeIfAbsent(minionId, id -> new MinionWorkload());
 
     // Make sure we keep the list of targets ready to build stocked up.
     if (targetsNotAssignedYet.size() < maxTargetsPerMinion) {
       targetsNotAssignedYet.addAll(queue.dequeueZeroDependencyNodes(ImmutableList.of()));
     }
 
-    if (targetsNotAssignedYet.isEmpty()) {
+    while (minionWorkload.size() < maxTargetsPerMinion && !targetsNotAssignedYet.isEmpty()) {
+      minionWorkload.targetsNotStarted.add(targetsNotAssignedYet.remove());
+    }
+    if (minionWorkload.targetsNotStarted.isEmpty()) {
+      stealTargets(minionId, minionWorkload);
+    }
+
+    if (minionWorkload.size() == 0) {
+      minionAllocations.remove(minionId);
       return ImmutableList.of();
     }
+    return minionWorkload.getTargetsBeingBuilt();
+  }
 
-    // Assign new minionWorkload to the worker.
+  /**
+   * Moves half of the targets which the busy minion with the most of them has not started yet to
+   * {@code thief}, which has nothing left to start.
+   */
+  private void stealTargets(String thiefId, MinionWorkload thief) {
+    MinionWorkload victim = null;
+    for (Map.Entry<String, MinionWorkload> entry : minionAllocations.entrySet()) {
+      MinionWorkload candidate = entry.getValue();
+      // Minions which have not started anything may be about to, and minions which only report
+      // their allocations as a whole never do, so only ever steal from ones known to be busy.
+      if (entry.getKey().equals(thiefId) || candidate.targetsStarted.isEmpty()) {
+        continue;
+      }
+      if (victim == null || candidate.targetsNotStarted.size() > victim.targetsNotStarted.size()) {
+        victim = candidate;
+      }
+    }
+    if (victim == null) {
+      return;
+    }
 
-    // NOTE: This is just a view into the original collection. It's not a clone.
-    int lastIndex = Math.min(targetsNotAssignedYet.size(), maxTargetsPerMinion);
-    List<String> viewIntoTargetsToBuild = targetsNotAssignedYet.subList(0, lastIndex);
-    ImmutableList<String> targetsToBuild = ImmutableList.copyOf(viewIntoTargetsToBuild);
+    int targetsToSteal =
+        Math.min(maxTargetsPerMinion - thief.size(), (victim.targetsNotStarted.size() + 1) / 2);
+    for (int i = 0; i < targetsToSteal; i++) {
+      thief.targetsNotStarted.add(victim.targetsNotStarted.removeFirst());
+    }
+  }
 
-    // Because this is a view over the original List, the .clear() method will remove the
-    // items from the original list.
-    viewIntoTargetsToBuild.clear();
+  /**
+   * Records that {@code minionId} started building {@code target}.
+   *
+   * @return false if the target is no longer allocated to the minion, as another minion stole it,
+   *     in which case the minion must not build it.
+   */
+  public boolean startedBuildingTarget(String minionId, String target) {
+    MinionWorkload minionWorkload = minionAllocations.get(minionId);
+    if (minionWorkload == null) {
+      return false;
+    }
+    if (minionWorkload.targetsNotStarted.remove(target)) {
+      minionWorkload.targetsStarted.add(target);
+    }
+    return minionWorkload.targetsStarted.contains(target);
+  }
 
-    MinionWorkload minionWorkload = new MinionWorkload(targetsToBuild);
-    minionAllocations.put(minionId, minionWorkload);
-    return targetsToBuild;
+  /** Records that {@code minionId} finished building {@code target}. */
+  public void finishedBuildingTarget(String minionId, String target) {
+    MinionWorkload minionWorkload = Preconditions.checkNotNull(minionAllocations.get(minionId));
+    Preconditions.checkArgument(
+        minionWorkload.remove(target),
+        "Minion [%s] finished building [%s] which is not allocated to it.",
+        minionId,
+        target);
+    if (minionWorkload.size() == 0) {
+      minionAllocations.remove(minionId);
+    }
+    markTargetFinished(target);
   }
 
+  /** Records that {@code minionId} finished building all the targets allocated to it. */
   public void finishedBuildingTargets(String minionId) {
     MinionWorkload minionWorkload = Preconditions.checkNotNull(minionAllocations.remove(minionId));
-    targetsNotAssignedYet.addAll(
-        queue.dequeueZeroDependencyNodes(minionWorkload.getTargetsBeingBuilt()));
+    for (String target : minionWorkload.getTargetsBeingBuilt()) {
+      markTargetFinished(target);
+    }
+  }
+
+  private void markTargetFinished(String target) {
+    Preconditions.checkState(finishedTargets.add(target), "[%s] was built twice.", target);
+    targetsNotAssignedYet.addAll(queue.dequeueZeroDependencyNodes(ImmutableList.of(target)));
   }
 
   public boolean isBuildFinished() {
@@ -84,14 +162,22 @@ public class MinionWorkloadAllocator {
   }
 
   private static class MinionWorkload {
-    private final ImmutableList<String> targetsBeingBuilt;
+    private final Set<String> targetsStarted = new LinkedHashSet<>();
+    private final Deque<String> targetsNotStarted = new ArrayDeque<>();
 
-    public MinionWorkload(ImmutableList<String> targetsBeingBuilt) {
-      this.targetsBeingBuilt = targetsBeingBuilt;
+    public ImmutableList<String> getTargetsBeingBuilt() {
+      return ImmutableList.<String>builder()
+          .addAll(targetsStarted)
+          .addAll(targetsNotStarted)
+          .build();
     }
 
-    public ImmutableList<String> getTargetsBeingBuilt() {
-      return targetsBeingBuilt;
+    public int size() {
+      return targetsStarted.size() + targetsNotStarted.size();
+    }
+
+    public boolean remove(String target) {
+      return targetsStarted.remove(target) || targetsNotStarted.remove(target);
     }
   }
 }
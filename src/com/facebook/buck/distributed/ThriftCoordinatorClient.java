@@ -22,6 +22,8 @@ import com.facebook.buck.distributed.thrift.FinishedBuildingResponse;
 import com.facebook.buck.distributed.thrift.GetTargetsToBuildRequest;
 import com.facebook.buck.distributed.thrift.GetTargetsToBuildResponse;
 import com.facebook.buck.distributed.thrift.StampedeId;
+import com.facebook.buck.distributed.thrift.StartedBuildingTargetRequest;
+import com.facebook.buck.distributed.thrift.StartedBuildingTargetResponse;
 import com.facebook.buck.log.Logger;
 import com.facebook.buck.slb.ThriftException;
 import com.google.common.base.Preconditions;
@@ -124,6 +126,42 @@ public class ThriftCoordinatorClient implements Closeable {
     }
   }
 
+  public StartedBuildingTargetResponse startedBuildingTarget(String minionId, String target)
+      throws IOException {
+    LOG.debug(String.format("Minion [%s] is about to start building [%s].", minionId, target));
+    Preconditions.checkNotNull(client, "Client was not started.");
+    StartedBuildingTargetRequest request =
+        new StartedBuildingTargetRequest()
+            .setStampedeId(stampedeId)
+            .setMinionId(minionId)
+            .setBuildTarget(target);
+    try {
+      StartedBuildingTargetResponse response = client.startedBuildingTarget(request);
+      return response;
+    } catch (TException e) {
+      throw new ThriftException(e);
+    }
+  }
+
+  public FinishedBuildingResponse finishedBuildingTarget(
+      String minionId, String target, int minionExitCode) throws IOException {
+    LOG.debug(
+        String.format("Minion [%s] is reporting that it finished building [%s].", minionId, target));
+    Preconditions.checkNotNull(client, "Client was not started.");
+    FinishedBuildingRequest request =
+        new FinishedBuildingRequest()
+            .setStampedeId(stampedeId)
+            .setMinionId(minionId)
+            .setBuildTarget(target)
+            .setBuildExitCode(minionExitCode);
+    try {
+      FinishedBuildingResponse response = client.finishedBuilding(request);
+      return response;
+    } catch (TException e) {
+      throw new ThriftException(e);
+    }
+  }
+
   @Override
   public void close() throws IOException {
     if (client != null) {
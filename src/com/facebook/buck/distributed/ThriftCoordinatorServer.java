@@ -23,6 +23,8 @@ import com.facebook.buck.distributed.thrift.GetTargetsToBuildAction;
 import com.facebook.buck.distributed.thrift.GetTargetsToBuildRequest;
 import com.facebook.buck.distributed.thrift.GetTargetsToBuildResponse;
 import com.facebook.buck.distributed.thrift.StampedeId;
+import com.facebook.buck.distributed.thrift.StartedBuildingTargetRequest;
+import com.facebook.buck.distributed.thrift.StartedBuildingTargetResponse;
 import com.facebook.buck.log.Logger;
 import com.facebook.buck.slb.ThriftException;
 import com.google.common.base.Joiner;
@@ -175,7 +177,11 @@ public class ThriftCoordinatorServer implements Closeable {
     @Override
     public FinishedBuildingResponse finishedBuilding(FinishedBuildingRequest request)
         throws TException {
-      LOG.info(String.format("Minion [%s] has finished building.", request.getMinionId()));
+      LOG.info(
+          String.format(
+              "Minion [%s] has finished building [%s].",
+              request.getMinionId(),
+              request.isSetBuildTarget() ? request.getBuildTarget() : "all its targets"));
       checkBuildId(request.getStampedeId());
       synchronized (lock) {
         Preconditions.checkArgument(request.isSetMinionId());
@@ -185,7 +191,11 @@ public class ThriftCoordinatorServer implements Closeable {
           setBuildExitCode(request.getBuildExitCode());
           response.setContinueBuilding(false);
         } else {
-          allocator.finishedBuildingTargets(request.getMinionId());
+          if (request.isSetBuildTarget()) {
+            allocator.finishedBuildingTarget(request.getMinionId(), request.getBuildTarget());
+          } else {
+            allocator.finishedBuildingTargets(request.getMinionId());
+          }
           if (getExitCode().isDone()) {
             response.setContinueBuilding(false);
           } else {
@@ -203,6 +213,29 @@ public class ThriftCoordinatorServer implements Closeable {
       }
     }
 
+    @Override
+    public StartedBuildingTargetResponse startedBuildingTarget(StartedBuildingTargetRequest request)
+        throws TException {
+      LOG.debug(
+          String.format(
+              "Minion [%s] is about to start building [%s].",
+              request.getMinionId(), request.getBuildTarget()));
+      checkBuildId(request.getStampedeId());
+      synchronized (lock) {
+        Preconditions.checkArgument(request.isSetMinionId());
+        Preconditions.checkArgument(request.isSetBuildTarget());
+        boolean shouldBuildTarget =
+            allocator.startedBuildingTarget(request.getMinionId(), request.getBuildTarget());
+        if (!shouldBuildTarget) {
+          LOG.debug(
+              String.format(
+                  "Minion [%s] is being told not to build [%s] as another minion took it over.",
+                  request.getMinionId(), request.getBuildTarget()));
+        }
+        return new StartedBuildingTargetResponse().setShouldBuildTarget(shouldBuildTarget);
+      }
+    }
+
     private void checkBuildId(StampedeId buildId) {
       Preconditions.checkArgument(
           stampedeId.equals(buildId),
@@ -40,10 +40,26 @@ struct GetTargetsToBuildResponse {
   2: optional list<string> buildTargets;
 }
 
+struct StartedBuildingTargetRequest {
+  1: optional string minionId;
+  2: optional stampede.StampedeId stampedeId;
+
+  // Fully qualified name of one of the BuildTargets allocated to the Minion.
+  3: optional string buildTarget;
+}
+
+struct StartedBuildingTargetResponse {
+  // False if the target was handed to another Minion in the meantime, and must not be built.
+  1: optional bool shouldBuildTarget;
+}
+
 struct FinishedBuildingRequest {
   1: optional string minionId;
   2: optional i32 buildExitCode;
   3: optional stampede.StampedeId stampedeId;
+
+  // The only target which was finished. If not set, all the targets allocated to the Minion were.
+  4: optional string buildTarget;
 }
 
 struct FinishedBuildingResponse {
@@ -62,6 +78,9 @@ service CoordinatorService {
   // Called by Minions to tell the Coordinator they have just finished building their workload.
   FinishedBuildingResponse finishedBuilding(1:FinishedBuildingRequest request);
 
+  // Called by Minions right before they start building one of the targets allocated to them.
+  StartedBuildingTargetResponse startedBuildingTarget(1:StartedBuildingTargetRequest request);
+
 
   // TODO(ruibm): Some form of heartbeat protocol needs to exist between Minions and Coordinator to
   // make sure if some Minion has silently died, the workload is picked up by a different machine.
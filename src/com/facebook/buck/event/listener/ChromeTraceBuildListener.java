@@ -78,6 +78,7 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 /** Logs events to a json file formatted to be viewed in Chrome Trace View (chrome://tracing). */
@@ -111,6 +112,10 @@ public class ChromeTraceBuildListener implements BuckEventListener {
 
   private final ExecutorService outputExecutor;
 
+  // How many rules are running, so that the trace shows how much the build is parallelized, e.g.
+  // by dependents compiling against source ABIs while the libraries they depend on are compiled.
+  private final AtomicInteger runningRules = new AtomicInteger(0);
+
   public ChromeTraceBuildListener(
       ProjectFilesystem projectFilesystem,
       InvocationInfo invocationInfo,
@@ -282,6 +287,7 @@ public class ChromeTraceBuildListener implements BuckEventListener {
         ChromeTraceEvent.Phase.BEGIN,
         ImmutableMap.of(),
         started);
+    writeRunningRulesCount(runningRules.incrementAndGet(), started);
   }
 
   @Subscribe
@@ -294,6 +300,7 @@ public class ChromeTraceBuildListener implements BuckEventListener {
             "cache_result", finished.getCacheResult().toString().toLowerCase(),
             "success_type", finished.getSuccessType().map(Object::toString).orElse("failed")),
         finished);
+    writeRunningRulesCount(runningRules.decrementAndGet(), finished);
   }
 
   @Subscribe
@@ -305,6 +312,7 @@ public class ChromeTraceBuildListener implements BuckEventListener {
         ChromeTraceEvent.Phase.BEGIN,
         ImmutableMap.of("rule_key", resumed.getRuleKey()),
         resumed);
+    writeRunningRulesCount(runningRules.incrementAndGet(), resumed);
   }
 
   @Subscribe
@@ -329,6 +337,16 @@ public class ChromeTraceBuildListener implements BuckEventListener {
         ChromeTraceEvent.Phase.END,
         ImmutableMap.of("rule_key", suspended.getRuleKey()),
         suspended);
+    writeRunningRulesCount(runningRules.decrementAndGet(), suspended);
+  }
+
+  private void writeRunningRulesCount(int count, BuckEvent event) {
+    writeChromeTraceEvent(
+        "perf",
+        "rules",
+        ChromeTraceEvent.Phase.COUNTER,
+        ImmutableMap.of("running_rules", Integer.toString(count)),
+        event);
   }
 
   @Subscribe
@@ -204,6 +204,7 @@ public class IjProjectCommandHelper {
         buckEventBus,
         buckConfig.isActionGraphCheckingEnabled(),
         buckConfig.isSkipActionGraphCache(),
+        buckConfig.isIncrementalActionGraphEnabled(),
         targetGraph,
         buckConfig.getKeySeed());
   }
@@ -57,4 +57,7 @@ abstract class AbstractJavacExecutionContext {
 
   /** Setting this to non-absent value enables direct to jar output. */
   public abstract Optional<DirectToJarOutputSettings> getDirectToJarOutputSettings();
+
+  /** Whether in-process javac should read the prebuilt jars on its classpaths from memory. */
+  public abstract boolean shouldCacheClasspathJars();
 }
@@ -118,6 +118,15 @@ abstract class AbstractJavacOptions implements RuleKeyAppendable {
     return false;
   }
 
+  /**
+   * Whether in-process javac should read the prebuilt jars on its classpaths from memory. This only
+   * changes how the compiler reads its inputs, so it isn't part of the rule key.
+   */
+  @Value.Default
+  public boolean shouldCacheClasspathJars() {
+    return false;
+  }
+
   @Value.Default
   public JavacCompilationMode getCompilationMode() {
     return JavacCompilationMode.FULL;
@@ -29,6 +29,7 @@ import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Function;
 import java.util.regex.Pattern;
 import javax.annotation.Nullable;
 import javax.tools.FileObject;
@@ -183,7 +184,7 @@ class ClassUsageTracker {
         Location location, String packageName, Set<JavaFileObject.Kind> kinds, boolean recurse)
         throws IOException {
       Iterable<JavaFileObject> listIterator = super.list(location, packageName, kinds, recurse);
-      if (location == StandardLocation.ANNOTATION_PROCESSOR_PATH) {
+      if (!isTracked(location)) {
         return listIterator;
       } else {
         return new TrackingIterable(listIterator);
@@ -194,7 +195,7 @@ class ClassUsageTracker {
     public JavaFileObject getJavaFileForInput(
         Location location, String className, JavaFileObject.Kind kind) throws IOException {
       JavaFileObject javaFileObject = super.getJavaFileForInput(location, className, kind);
-      if (location == StandardLocation.ANNOTATION_PROCESSOR_PATH) {
+      if (!isTracked(location)) {
         return javaFileObject;
       } else {
         return fileTracker.wrap(javaFileObject);
@@ -207,7 +208,7 @@ class ClassUsageTracker {
         throws IOException {
       JavaFileObject javaFileObject =
           super.getJavaFileForOutput(location, className, kind, sibling);
-      if (location == StandardLocation.ANNOTATION_PROCESSOR_PATH) {
+      if (!isTracked(location)) {
         return javaFileObject;
       } else {
         return fileTracker.wrap(javaFileObject);
@@ -218,7 +219,7 @@ class ClassUsageTracker {
     public FileObject getFileForInput(Location location, String packageName, String relativeName)
         throws IOException {
       FileObject fileObject = super.getFileForInput(location, packageName, relativeName);
-      if (location == StandardLocation.ANNOTATION_PROCESSOR_PATH) {
+      if (!isTracked(location)) {
         return fileObject;
       } else {
         return fileTracker.wrap(fileObject);
@@ -230,13 +231,23 @@ class ClassUsageTracker {
         Location location, String packageName, String relativeName, FileObject sibling)
         throws IOException {
       FileObject fileObject = super.getFileForOutput(location, packageName, relativeName, sibling);
-      if (location == StandardLocation.ANNOTATION_PROCESSOR_PATH) {
+      if (!isTracked(location)) {
         return fileObject;
       } else {
         return fileTracker.wrap(fileObject);
       }
     }
 
+    /**
+     * Files read from the platform classpath can't end up in the used classes file, since it
+     * holds the JDK or Android SDK rather than jars built in the project, so there's no point in
+     * paying for wrapping the many files javac lists from its packages.
+     */
+    private boolean isTracked(Location location) {
+      return location != StandardLocation.ANNOTATION_PROCESSOR_PATH
+          && location != StandardLocation.PLATFORM_CLASS_PATH;
+    }
+
     private class TrackingIterable implements Iterable<JavaFileObject> {
       private final Iterable<? extends JavaFileObject> inner;
 
@@ -277,6 +288,9 @@ class ClassUsageTracker {
 
   private class FileObjectTracker {
     private final Map<JavaFileObject, JavaFileObject> javaFileObjectCache = new IdentityHashMap<>();
+    // Kept around so that wrapping a file object which has already been seen doesn't allocate.
+    private final Function<JavaFileObject, JavaFileObject> newTrackingJavaFileObject =
+        TrackingJavaFileObject::new;
 
     public FileObject wrap(FileObject inner) {
       if (inner instanceof JavaFileObject) {
@@ -287,38 +301,43 @@ class ClassUsageTracker {
     }
 
     public JavaFileObject wrap(JavaFileObject inner) {
-      if (!javaFileObjectCache.containsKey(inner)) {
-        javaFileObjectCache.put(inner, new TrackingJavaFileObject(inner));
-      }
-
-      return Preconditions.checkNotNull(javaFileObjectCache.get(inner));
+      return javaFileObjectCache.computeIfAbsent(inner, newTrackingJavaFileObject);
     }
   }
 
   private class TrackingJavaFileObject extends ForwardingJavaFileObject<JavaFileObject> {
+    private boolean read = false;
+
     public TrackingJavaFileObject(JavaFileObject fileObject) {
       super(fileObject);
     }
 
+    private void onRead() {
+      if (!read) {
+        read = true;
+        addReadFile(fileObject);
+      }
+    }
+
     public JavaFileObject getJavaFileObject() {
       return fileObject;
     }
 
     @Override
     public InputStream openInputStream() throws IOException {
-      addReadFile(fileObject);
+      onRead();
       return super.openInputStream();
     }
 
     @Override
     public Reader openReader(boolean ignoreEncodingErrors) throws IOException {
-      addReadFile(fileObject);
+      onRead();
       return super.openReader(ignoreEncodingErrors);
     }
 
     @Override
     public CharSequence getCharContent(boolean ignoreEncodingErrors) throws IOException {
-      addReadFile(fileObject);
+      onRead();
       return super.getCharContent(ignoreEncodingErrors);
     }
   }
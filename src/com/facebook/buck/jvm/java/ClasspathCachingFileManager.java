@@ -0,0 +1,315 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import com.facebook.buck.zip.IndexedJar;
+import com.facebook.buck.zip.JarIndex;
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.io.CharStreams;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import javax.annotation.Nullable;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.tools.FileObject;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+
+/**
+ * Lists the classes in the prebuilt jars on the classpath and bootclasspath from a {@link
+ * JavacClasspathCache}, instead of having javac open and read the jars for every compilation.
+ *
+ * <p>Jars under {@code buck-out} are build outputs which change from one build to the next, so they
+ * are left to javac along with directories, as is the JDK's own bootclasspath, which javac reads
+ * through its symbol file rather than from the jars.
+ */
+class ClasspathCachingFileManager extends ForwardingStandardJavaFileManager {
+
+  private static final Path JAVA_HOME = Paths.get(System.getProperty("java.home"));
+
+  private final JavacClasspathCache cache;
+  private final Path buildOutputRoot;
+  private final Map<Location, Optional<ImmutableList<Segment>>> segmentsByLocation =
+      new HashMap<>();
+  private int uncachedLocationCount = 0;
+
+  ClasspathCachingFileManager(
+      StandardJavaFileManager fileManager, JavacClasspathCache cache, Path buildOutputRoot) {
+    super(fileManager);
+    this.cache = cache;
+    this.buildOutputRoot = buildOutputRoot.toAbsolutePath().normalize();
+  }
+
+  @Override
+  public Iterable<JavaFileObject> list(
+      Location location, String packageName, Set<JavaFileObject.Kind> kinds, boolean recurse)
+      throws IOException {
+    Optional<ImmutableList<Segment>> segments = getSegments(location);
+    if (!segments.isPresent() || !kinds.equals(EnumSet.of(JavaFileObject.Kind.CLASS))) {
+      return super.list(location, packageName, kinds, recurse);
+    }
+
+    // Classes are listed in classpath order, as javac uses the first class of a given name.
+    List<JavaFileObject> classes = new ArrayList<>();
+    for (Segment segment : segments.get()) {
+      if (segment.uncachedEntries != null) {
+        Iterables.addAll(
+            classes, super.list(segment.uncachedEntries, packageName, kinds, recurse));
+        continue;
+      }
+      Path jarPath = Preconditions.checkNotNull(segment.cachedJar);
+      IndexedJar jar = cache.getJar(jarPath);
+      for (JarIndex.Entry entry : cache.getJarClasses(jar).getClasses(packageName, recurse)) {
+        classes.add(new CachedClassFileObject(jarPath, jar, entry));
+      }
+    }
+    return classes;
+  }
+
+  @Override
+  public String inferBinaryName(Location location, JavaFileObject file) {
+    if (file instanceof CachedClassFileObject) {
+      return JavacClasspathCache.getBinaryName(((CachedClassFileObject) file).entry);
+    }
+    return super.inferBinaryName(location, file);
+  }
+
+  @Override
+  public boolean isSameFile(FileObject a, FileObject b) {
+    // javac's file manager only compares its own file objects.
+    if (a instanceof CachedClassFileObject || b instanceof CachedClassFileObject) {
+      return a.toUri().equals(b.toUri());
+    }
+    return super.isSameFile(a, b);
+  }
+
+  @Override
+  public void setLocation(Location location, Iterable<? extends File> path) throws IOException {
+    segmentsByLocation.remove(location);
+    super.setLocation(location, path);
+  }
+
+  /**
+   * @return the entries of {@code location} in order, split into the prebuilt jars read from the
+   *     cache and the runs of other entries in between, or nothing if javac should read the whole
+   *     location itself.
+   */
+  private Optional<ImmutableList<Segment>> getSegments(Location location) throws IOException {
+    if (location != StandardLocation.CLASS_PATH
+        && location != StandardLocation.PLATFORM_CLASS_PATH) {
+      return Optional.empty();
+    }
+    Optional<ImmutableList<Segment>> segments = segmentsByLocation.get(location);
+    if (segments == null) {
+      segments = splitIntoSegments(location);
+      segmentsByLocation.put(location, segments);
+    }
+    return segments;
+  }
+
+  private Optional<ImmutableList<Segment>> splitIntoSegments(Location location)
+      throws IOException {
+    Iterable<? extends File> files = getLocation(location);
+    if (files == null) {
+      return Optional.empty();
+    }
+    ImmutableList.Builder<Segment> segments = ImmutableList.builder();
+    List<File> uncachedFiles = new ArrayList<>();
+    boolean hasCachedJars = false;
+    for (File file : files) {
+      Path path = file.toPath().toAbsolutePath();
+      if (path.startsWith(JAVA_HOME.getParent())) {
+        return Optional.empty();
+      }
+      if (!isPrebuiltJar(path)) {
+        uncachedFiles.add(file);
+        continue;
+      }
+      if (!uncachedFiles.isEmpty()) {
+        segments.add(readByJavac(location, uncachedFiles));
+        uncachedFiles.clear();
+      }
+      segments.add(new Segment(path, null));
+      hasCachedJars = true;
+    }
+    if (!hasCachedJars) {
+      return Optional.empty();
+    }
+    if (!uncachedFiles.isEmpty()) {
+      segments.add(readByJavac(location, uncachedFiles));
+    }
+    return Optional.of(segments.build());
+  }
+
+  private boolean isPrebuiltJar(Path path) {
+    String name = path.getFileName().toString();
+    return (name.endsWith(".jar") || name.endsWith(".zip"))
+        && Files.isRegularFile(path)
+        && !path.normalize().startsWith(buildOutputRoot);
+  }
+
+  /** @return a segment of {@code files}, which javac lists through a location of their own. */
+  private Segment readByJavac(Location location, List<File> files) throws IOException {
+    Location entries =
+        new UncachedEntries(String.format("%s#%d", location.getName(), uncachedLocationCount++));
+    super.setLocation(entries, ImmutableList.copyOf(files));
+    return new Segment(null, entries);
+  }
+
+  /** Consecutive entries of a location: a prebuilt jar, or entries which javac reads itself. */
+  private static class Segment {
+    @Nullable private final Path cachedJar;
+    @Nullable private final Location uncachedEntries;
+
+    private Segment(@Nullable Path cachedJar, @Nullable Location uncachedEntries) {
+      this.cachedJar = cachedJar;
+      this.uncachedEntries = uncachedEntries;
+    }
+  }
+
+  /** Some of the entries of a location, which javac reads itself. */
+  private static class UncachedEntries implements Location {
+    private final String name;
+
+    private UncachedEntries(String name) {
+      this.name = name;
+    }
+
+    @Override
+    public String getName() {
+      return name;
+    }
+
+    @Override
+    public boolean isOutputLocation() {
+      return false;
+    }
+  }
+
+  /**
+   * A class read from a {@link JavacClasspathCache}. Unlike {@link
+   * javax.tools.SimpleJavaFileObject}, this allows the jar URIs javac gives the classes it reads
+   * from jars, which is what tells the {@link ClassUsageTracker} which jar a class comes from.
+   */
+  private static class CachedClassFileObject implements JavaFileObject {
+    private final URI uri;
+    private final IndexedJar jar;
+    private final JarIndex.Entry entry;
+
+    private CachedClassFileObject(Path jarPath, IndexedJar jar, JarIndex.Entry entry) {
+      this.uri = URI.create("jar:" + jarPath.toUri() + "!/" + entry.getName());
+      this.jar = jar;
+      this.entry = entry;
+    }
+
+    @Override
+    public URI toUri() {
+      return uri;
+    }
+
+    @Override
+    public String getName() {
+      return uri.toString();
+    }
+
+    @Override
+    public InputStream openInputStream() throws IOException {
+      return jar.openEntry(entry);
+    }
+
+    @Override
+    public OutputStream openOutputStream() {
+      throw new IllegalStateException(String.format("%s is read from a jar.", uri));
+    }
+
+    @Override
+    public Reader openReader(boolean ignoreEncodingErrors) throws IOException {
+      return new InputStreamReader(openInputStream(), Charsets.UTF_8);
+    }
+
+    @Override
+    public CharSequence getCharContent(boolean ignoreEncodingErrors) throws IOException {
+      try (Reader reader = openReader(ignoreEncodingErrors)) {
+        return CharStreams.toString(reader);
+      }
+    }
+
+    @Override
+    public Writer openWriter() {
+      throw new IllegalStateException(String.format("%s is read from a jar.", uri));
+    }
+
+    @Override
+    public long getLastModified() {
+      return 0L;
+    }
+
+    @Override
+    public boolean delete() {
+      return false;
+    }
+
+    @Override
+    public Kind getKind() {
+      return Kind.CLASS;
+    }
+
+    @Override
+    public boolean isNameCompatible(String simpleName, Kind kind) {
+      String entryName = entry.getName();
+      String fileName = entryName.substring(entryName.lastIndexOf('/') + 1);
+      return kind == Kind.CLASS && fileName.equals(simpleName + kind.extension);
+    }
+
+    @Override
+    @Nullable
+    public NestingKind getNestingKind() {
+      return null;
+    }
+
+    @Override
+    @Nullable
+    public Modifier getAccessLevel() {
+      return null;
+    }
+
+    @Override
+    public String toString() {
+      return getClass().getName() + "[" + uri + "]";
+    }
+  }
+}
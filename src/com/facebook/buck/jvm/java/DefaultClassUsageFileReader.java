@@ -20,54 +20,71 @@ import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.rules.ArchiveMemberSourcePath;
 import com.facebook.buck.rules.SourcePath;
 import com.facebook.buck.util.HumanReadableException;
-import com.facebook.buck.util.ObjectMappers;
-import com.fasterxml.jackson.core.type.TypeReference;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.ImmutableSet;
 import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.Map;
+import java.nio.file.StandardOpenOption;
 
-/** Provides utility methods for reading dependency file entries. */
+/**
+ * Provides utility methods for reading dependency file entries, which {@link
+ * DefaultClassUsageFileWriter} writes.
+ */
 class DefaultClassUsageFileReader {
   /** Utility code, not instantiable */
   private DefaultClassUsageFileReader() {}
 
-  private static ImmutableMap<String, ImmutableList<String>> loadClassUsageMap(Path mapFilePath)
-      throws IOException {
-    return ObjectMappers.readValue(
-        mapFilePath.toFile(), new TypeReference<ImmutableMap<String, ImmutableList<String>>>() {});
-  }
-
   /**
    * This method loads a class usage file that maps JARs to the list of files within those jars that
    * were used. Given our rule's deps, we determine which of these JARS in the class usage file are
    * actually among the deps of our rule.
+   *
+   * <p>The file is mapped rather than read, and the classes used from jars which aren't among the
+   * deps are skipped over without being decoded.
    */
   public static ImmutableList<SourcePath> loadFromFile(
       ProjectFilesystem projectFilesystem,
       Path classUsageFilePath,
       ImmutableMap<Path, SourcePath> jarPathToSourcePath) {
     final ImmutableList.Builder<SourcePath> builder = ImmutableList.builder();
-    try {
-      final ImmutableSet<Map.Entry<String, ImmutableList<String>>> classUsageEntries =
-          loadClassUsageMap(classUsageFilePath).entrySet();
-      for (Map.Entry<String, ImmutableList<String>> jarUsedClassesEntry : classUsageEntries) {
-        Path jarAbsolutePath = projectFilesystem.resolve(Paths.get(jarUsedClassesEntry.getKey()));
+    try (FileChannel channel = FileChannel.open(classUsageFilePath, StandardOpenOption.READ)) {
+      ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      if (buffer.getInt() != DefaultClassUsageFileWriter.MAGIC) {
+        throw new IOException("Not a used classes file.");
+      }
+
+      byte[] pathBytes = new byte[0xFFFF];
+      int jarCount = buffer.getInt();
+      for (int i = 0; i < jarCount; i++) {
+        Path jarAbsolutePath =
+            projectFilesystem.resolve(Paths.get(readString(buffer, pathBytes, 0)));
+        int classCount = buffer.getInt();
+        int classesSize = buffer.getInt();
         SourcePath sourcePath = jarPathToSourcePath.get(jarAbsolutePath);
         if (sourcePath == null) {
           // This indicates a dependency that wasn't among the deps of the rule; i.e.,
           // it came from the build environment (JDK, Android SDK, etc.)
+          buffer.position(buffer.position() + classesSize);
           continue;
         }
 
-        for (String classAbsolutePath : jarUsedClassesEntry.getValue()) {
+        for (int j = 0; j < classCount; j++) {
+          // Class paths start with the bytes they share with the previous one, which are still
+          // at the start of pathBytes.
+          int shared = Short.toUnsignedInt(buffer.getShort());
+          String classAbsolutePath = readString(buffer, pathBytes, shared);
           builder.add(ArchiveMemberSourcePath.of(sourcePath, Paths.get(classAbsolutePath)));
         }
       }
-    } catch (IOException e) {
+    } catch (IOException
+        | BufferUnderflowException
+        | IndexOutOfBoundsException
+        | IllegalArgumentException e) {
       throw new HumanReadableException(
           e,
           "Failed to load class usage files from %s:\n%s",
@@ -76,4 +93,10 @@ class DefaultClassUsageFileReader {
     }
     return builder.build();
   }
+
+  private static String readString(ByteBuffer buffer, byte[] bytes, int offset) {
+    int length = Short.toUnsignedInt(buffer.getShort());
+    buffer.get(bytes, offset, length);
+    return new String(bytes, 0, offset + length, StandardCharsets.UTF_8);
+  }
 }
@@ -18,9 +18,14 @@ package com.facebook.buck.jvm.java;
 
 import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.util.HumanReadableException;
-import com.facebook.buck.util.ObjectMappers;
+import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableSetMultimap;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Collection;
 import java.util.Comparator;
@@ -28,8 +33,20 @@ import java.util.Map;
 import java.util.Optional;
 import javax.tools.StandardJavaFileManager;
 
+/**
+ * Writes the classes javac read from each jar on the classpath in a compact binary form, which
+ * {@link DefaultClassUsageFileReader} reads back when computing dep-file rule keys.
+ *
+ * <p>The file starts with {@link #MAGIC} and the number of jars. Each jar then has its path
+ * relative to the project root, the number of classes used from it and the size in bytes of their
+ * paths, followed by those paths in sorted order. Strings are UTF-8 bytes preceded by their length
+ * as an unsigned short, except for class paths, which are preceded by the number of leading bytes
+ * they share with the previous class path, so that the classes of a package share its name.
+ */
 public final class DefaultClassUsageFileWriter implements ClassUsageFileWriter {
 
+  static final int MAGIC = 0x42554331;
+
   private final Path relativePath;
   private final ClassUsageTracker tracker = new ClassUsageTracker();
 
@@ -48,15 +65,54 @@ public final class DefaultClassUsageFileWriter implements ClassUsageFileWriter {
 
   @Override
   public void writeFile(ProjectFilesystem filesystem) {
-    ImmutableSetMultimap<Path, Path> classUsageMap = tracker.getClassUsageMap();
-    try {
-      ObjectMappers.WRITER.writeValue(
-          filesystem.resolve(relativePath).toFile(), relativizeMap(classUsageMap, filesystem));
+    ImmutableSetMultimap<Path, Path> classUsageMap =
+        relativizeMap(tracker.getClassUsageMap(), filesystem);
+    try (DataOutputStream out =
+        new DataOutputStream(
+            new BufferedOutputStream(Files.newOutputStream(filesystem.resolve(relativePath))))) {
+      out.writeInt(MAGIC);
+      out.writeInt(classUsageMap.keySet().size());
+      ByteArrayOutputStream classesBytes = new ByteArrayOutputStream();
+      DataOutputStream classesOut = new DataOutputStream(classesBytes);
+      for (Map.Entry<Path, Collection<Path>> jarClassesEntry : classUsageMap.asMap().entrySet()) {
+        writeString(out, jarClassesEntry.getKey().toString().getBytes(StandardCharsets.UTF_8));
+
+        classesBytes.reset();
+        byte[] previous = new byte[0];
+        for (Path classPath : jarClassesEntry.getValue()) {
+          byte[] current = classPath.toString().getBytes(StandardCharsets.UTF_8);
+          int shared = 0;
+          while (shared < previous.length
+              && shared < current.length
+              && previous[shared] == current[shared]) {
+            shared++;
+          }
+          classesOut.writeShort(shared);
+          writeString(classesOut, current, shared);
+          previous = current;
+        }
+        out.writeInt(jarClassesEntry.getValue().size());
+        out.writeInt(classesBytes.size());
+        classesBytes.writeTo(out);
+      }
     } catch (IOException e) {
       throw new HumanReadableException(e, "Unable to write used classes file.");
     }
   }
 
+  private static void writeString(DataOutputStream out, byte[] bytes) throws IOException {
+    writeString(out, bytes, 0);
+  }
+
+  private static void writeString(DataOutputStream out, byte[] bytes, int offset)
+      throws IOException {
+    int length = bytes.length - offset;
+    Preconditions.checkState(
+        bytes.length <= 0xFFFF, "Path is too long: %s", new String(bytes, StandardCharsets.UTF_8));
+    out.writeShort(length);
+    out.write(bytes, offset, length);
+  }
+
   private static ImmutableSetMultimap<Path, Path> relativizeMap(
       ImmutableSetMultimap<Path, Path> classUsageMap, ProjectFilesystem filesystem) {
     final ImmutableSetMultimap.Builder<Path, Path> builder = ImmutableSetMultimap.builder();
@@ -37,6 +37,7 @@ import com.facebook.buck.rules.BuildableProperties;
 import com.facebook.buck.rules.DefaultBuildTargetSourcePath;
 import com.facebook.buck.rules.ExplicitBuildTargetSourcePath;
 import com.facebook.buck.rules.ExportDependencies;
+import com.facebook.buck.rules.HasRuntimeDeps;
 import com.facebook.buck.rules.InitializableFromDisk;
 import com.facebook.buck.rules.OnDiskBuildInfo;
 import com.facebook.buck.rules.SourcePath;
@@ -64,6 +65,7 @@ import java.util.Optional;
 import java.util.Set;
 import java.util.function.Predicate;
 import java.util.regex.Pattern;
+import java.util.stream.Stream;
 import javax.annotation.Nullable;
 
 /**
@@ -91,6 +93,7 @@ public class DefaultJavaLibrary extends AbstractBuildRuleWithResolver
         ExportDependencies,
         InitializableFromDisk<JavaLibrary.Data>,
         AndroidPackageable,
+        HasRuntimeDeps,
         SupportsInputBasedRuleKey,
         SupportsDependencyFileRuleKey,
         JavaLibraryWithTests {
@@ -109,6 +112,7 @@ public class DefaultJavaLibrary extends AbstractBuildRuleWithResolver
   private final Optional<Path> outputJar;
   private final JarContentsSupplier outputJarContentsSupplier;
   private final BuildTarget abiJar;
+  private final ImmutableSortedSet<BuildTarget> sourceAbiVerifications;
   @AddToRuleKey private final Optional<SourcePath> proguardConfig;
   @AddToRuleKey private final ImmutableList<String> postprocessClassesCommands;
 
@@ -168,6 +172,7 @@ public class DefaultJavaLibrary extends AbstractBuildRuleWithResolver
       ImmutableSortedSet<SourcePath> compileTimeClasspathSourcePaths,
       ImmutableSortedSet<SourcePath> abiInputs,
       BuildTarget abiJar,
+      ImmutableSortedSet<BuildTarget> sourceAbiVerifications,
       boolean trackClassUsage,
       CompileToJarStepFactory compileStepFactory,
       Optional<Path> resourcesRoot,
@@ -220,6 +225,7 @@ public class DefaultJavaLibrary extends AbstractBuildRuleWithResolver
     }
     this.outputJarContentsSupplier = new JarContentsSupplier(resolver, getSourcePathToOutput());
     this.abiJar = abiJar;
+    this.sourceAbiVerifications = sourceAbiVerifications;
 
     this.outputClasspathEntriesSupplier =
         Suppliers.memoize(
@@ -258,7 +264,7 @@ public class DefaultJavaLibrary extends AbstractBuildRuleWithResolver
   }
 
   static Path getUsedClassesFilePath(BuildTarget target, ProjectFilesystem filesystem) {
-    return getOutputJarDirPath(target, filesystem).resolve("used-classes.json");
+    return getOutputJarDirPath(target, filesystem).resolve("used-classes.bin");
   }
 
   /**
@@ -399,6 +405,16 @@ public class DefaultJavaLibrary extends AbstractBuildRuleWithResolver
     return outputJar.isPresent() ? Optional.of(abiJar) : Optional.empty();
   }
 
+  /**
+   * When compiling against the source ABIs of our deps before they've been verified, their
+   * verifications have to pass before anything uses our output. Dependents which compile against
+   * our own ABI don't wait for them, which is what lets source ABIs pipeline the build.
+   */
+  @Override
+  public Stream<BuildTarget> getRuntimeDeps() {
+    return sourceAbiVerifications.stream();
+  }
+
   @Override
   public ImmutableSortedMap<String, HashCode> getClassNamesToHashes() {
     return buildOutputInitializer.getBuildOutput().getClassNamesToHashes();
@@ -212,6 +212,7 @@ public class DefaultJavaLibraryBuilder {
     @Nullable private ImmutableSortedSet<SourcePath> abiInputs;
     @Nullable private CompileToJarStepFactory compileStepFactory;
     @Nullable private BuildTarget abiJar;
+    @Nullable private ImmutableSortedSet<BuildTarget> sourceAbiVerifications;
 
     protected DefaultJavaLibrary build() throws NoSuchBuildTargetException {
       return new DefaultJavaLibrary(
@@ -229,6 +230,7 @@ public class DefaultJavaLibraryBuilder {
           getFinalCompileTimeClasspathSourcePaths(),
           getAbiInputs(),
           getAbiJar(),
+          getSourceAbiVerifications(),
           trackClassUsage,
           getCompileStepFactory(),
           resourcesRoot,
@@ -246,10 +248,13 @@ public class DefaultJavaLibraryBuilder {
       } else if (HasJavaAbi.isSourceAbiTarget(buildTarget)) {
         return buildAbiFromSource();
       } else if (HasJavaAbi.isVerifiedSourceAbiTarget(buildTarget)) {
-        BuildRule classAbi = buildAbiFromClasses();
-        BuildRule sourceAbi = buildAbiFromSource();
-        buildRuleResolver.addToIndex(classAbi);
-        buildRuleResolver.addToIndex(sourceAbi);
+        // Dependents may already have required the source ABI, when they're compiling against it
+        // while it's being verified.
+        BuildTarget libraryTarget = HasJavaAbi.getLibraryTarget(buildTarget);
+        BuildRule classAbi =
+            buildRuleResolver.requireRule(HasJavaAbi.getClassAbiJar(libraryTarget));
+        BuildRule sourceAbi =
+            buildRuleResolver.requireRule(HasJavaAbi.getSourceAbiJar(libraryTarget));
 
         return new CompareAbis(
             params.copyReplacingDeclaredAndExtraDeps(
@@ -272,6 +277,7 @@ public class DefaultJavaLibraryBuilder {
               javaBuckConfig.getSourceAbiVerificationMode();
           abiJar =
               sourceAbiVerificationMode == JavaBuckConfig.SourceAbiVerificationMode.OFF
+                      || javaBuckConfig.shouldPipelineSourceAbis()
                   ? HasJavaAbi.getSourceAbiJar(libraryTarget)
                   : HasJavaAbi.getVerifiedSourceAbiJar(libraryTarget);
         } else {
@@ -282,6 +288,42 @@ public class DefaultJavaLibraryBuilder {
       return abiJar;
     }
 
+    /**
+     * @return the verifications of the unverified source ABIs this library compiles against, which
+     *     have to pass for the library to be considered built.
+     */
+    protected final ImmutableSortedSet<BuildTarget> getSourceAbiVerifications()
+        throws NoSuchBuildTargetException {
+      if (sourceAbiVerifications == null) {
+        sourceAbiVerifications = buildSourceAbiVerifications();
+      }
+
+      return sourceAbiVerifications;
+    }
+
+    private ImmutableSortedSet<BuildTarget> buildSourceAbiVerifications()
+        throws NoSuchBuildTargetException {
+      if (!compileAgainstAbis
+          || javaBuckConfig == null
+          || !javaBuckConfig.shouldPipelineSourceAbis()
+          || javaBuckConfig.getSourceAbiVerificationMode()
+              == JavaBuckConfig.SourceAbiVerificationMode.OFF) {
+        return ImmutableSortedSet.of();
+      }
+
+      ImmutableSortedSet.Builder<BuildTarget> verifications = ImmutableSortedSet.naturalOrder();
+      for (BuildRule abiDep : getCompileTimeClasspathAbiDeps()) {
+        BuildTarget abiTarget = abiDep.getBuildTarget();
+        if (HasJavaAbi.isSourceAbiTarget(abiTarget)) {
+          BuildTarget verificationTarget =
+              HasJavaAbi.getVerifiedSourceAbiJar(HasJavaAbi.getLibraryTarget(abiTarget));
+          buildRuleResolver.requireRule(verificationTarget);
+          verifications.add(verificationTarget);
+        }
+      }
+      return verifications.build();
+    }
+
     private boolean shouldBuildAbiFromSource() {
       return isCompilingJava()
           && sourceAbisEnabled()
@@ -23,24 +23,40 @@ import com.facebook.buck.util.HumanReadableException;
 import com.facebook.buck.zip.CustomJarOutputStream;
 import com.facebook.buck.zip.CustomZipEntry;
 import com.facebook.buck.zip.DeterministicManifest;
+import com.facebook.buck.zip.PrecompressedEntryReader;
 import com.facebook.buck.zip.ZipOutputStreams;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
 import java.util.jar.Attributes;
 import java.util.jar.JarFile;
 import java.util.jar.Manifest;
 import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.ZipEntry;
 import javax.annotation.Nullable;
 
 public class JarBuilder {
@@ -61,6 +77,12 @@ public class JarBuilder {
     void onEntryOmitted(String jarFile, JarEntrySupplier entrySupplier) throws IOException;
   }
 
+  /**
+   * How many entries may be compressed ahead of the one being written, which bounds both how many
+   * threads compress entries at once and how many compressed entries are held in memory.
+   */
+  private static final int MAX_PENDING_ENTRIES = 2 * Runtime.getRuntime().availableProcessors();
+
   private final ProjectFilesystem filesystem;
 
   private Observer observer = Observer.IGNORING;
@@ -73,6 +95,8 @@ public class JarBuilder {
   private Iterable<Pattern> blacklist = new ArrayList<>();
   private List<JarEntryContainer> sourceContainers = new ArrayList<>();
   private Set<String> alreadyAddedEntries = new HashSet<>();
+  @Nullable private ListeningExecutorService compressionExecutor;
+  private final Deque<ListenableFuture<PreparedEntry>> pendingEntries = new ArrayDeque<>();
 
   public JarBuilder(ProjectFilesystem filesystem) {
     this.filesystem = filesystem;
@@ -130,6 +154,19 @@ public class JarBuilder {
     return this;
   }
 
+  /**
+   * Compresses entries on {@code compressionExecutor} ahead of writing them, instead of as they're
+   * written, and copies entries of the jars being merged which are known to be deflated at the same
+   * level already, without inflating and deflating them again. Entries are still written in the
+   * same order. Entries are compressed as they're written when they have to be hashed. The tasks
+   * only read and compress, and never wait on anything, so they shouldn't share an executor with
+   * tasks which might wait for the jar to be written.
+   */
+  public JarBuilder setCompressionExecutor(ListeningExecutorService compressionExecutor) {
+    this.compressionExecutor = compressionExecutor;
+    return this;
+  }
+
   public int createJarFile(Path outputFile) throws IOException {
     Preconditions.checkArgument(outputFile.isAbsolute());
     try (CustomJarOutputStream jar =
@@ -147,8 +184,16 @@ public class JarBuilder {
     // Write the manifest first.
     writeManifest();
 
-    for (JarEntryContainer sourceContainer : sourceContainers) {
-      addEntriesToJar(sourceContainer);
+    try {
+      for (JarEntryContainer sourceContainer : sourceContainers) {
+        addEntriesToJar(sourceContainer);
+      }
+      while (!pendingEntries.isEmpty()) {
+        writeNextPendingEntry();
+      }
+    } finally {
+      pendingEntries.forEach(future -> future.cancel(true));
+      pendingEntries.clear();
     }
 
     if (mainClass != null && !mainClassPresent()) {
@@ -241,14 +286,84 @@ public class JarBuilder {
       return;
     }
 
-    jar.putNextEntry(entry);
+    if (compressionExecutor == null || jar.isEntryHashingEnabled()) {
+      jar.putNextEntry(entry);
+      try (InputStream entryInputStream = entrySupplier.getInputStreamSupplier().get()) {
+        if (entryInputStream != null) {
+          // Null stream means a directory
+          ByteStreams.copy(entryInputStream, jar);
+        }
+      }
+      jar.closeEntry();
+      return;
+    }
+
+    pendingEntries.add(compressionExecutor.submit(() -> prepareEntry(entrySupplier)));
+    while (pendingEntries.size() > MAX_PENDING_ENTRIES) {
+      writeNextPendingEntry();
+    }
+  }
+
+  private void writeNextPendingEntry() throws IOException {
+    PreparedEntry preparedEntry;
+    try {
+      preparedEntry = pendingEntries.remove().get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while compressing jar entries.");
+    } catch (ExecutionException e) {
+      Throwables.throwIfInstanceOf(e.getCause(), IOException.class);
+      Throwables.throwIfUnchecked(e.getCause());
+      throw new RuntimeException(e.getCause());
+    }
+    preparedEntry.writeTo(jar);
+  }
+
+  /** Reads, and compresses if need be, the contents of an entry. Runs on the compression pool. */
+  private static PreparedEntry prepareEntry(JarEntrySupplier entrySupplier) throws IOException {
+    CustomZipEntry entry = entrySupplier.getEntry();
+    if (entry.getMethod() != ZipEntry.DEFLATED) {
+      try (InputStream entryInputStream = entrySupplier.getInputStreamSupplier().get()) {
+        return new PreparedEntry(
+            entry,
+            entryInputStream == null ? null : ByteStreams.toByteArray(entryInputStream),
+            /* compressed */ false);
+      }
+    }
+
+    Optional<PrecompressedEntryReader.Entry> precompressedEntry =
+        entrySupplier.getPrecompressedEntrySupplier().get();
+    if (precompressedEntry.isPresent()
+        && precompressedEntry.get().isCompressedAtLevel(entry.getCompressionLevel())) {
+      entry.setCrc(precompressedEntry.get().getCrc());
+      entry.setSize(precompressedEntry.get().getSize());
+      entry.setCompressedSize(precompressedEntry.get().getCompressedSize());
+      return new PreparedEntry(
+          entry, precompressedEntry.get().readCompressedContents(), /* compressed */ true);
+    }
+
     try (InputStream entryInputStream = entrySupplier.getInputStreamSupplier().get()) {
-      if (entryInputStream != null) {
-        // Null stream means a directory
-        ByteStreams.copy(entryInputStream, jar);
+      if (entryInputStream == null) {
+        return new PreparedEntry(entry, null, /* compressed */ false);
+      }
+      // Compress the contents the way the jar would as they're written to it, so that the jar
+      // doesn't depend on whether entries are compressed ahead of time.
+      Deflater deflater = new Deflater(entry.getCompressionLevel(), /* nowrap */ true);
+      try {
+        CRC32 crc = new CRC32();
+        ByteArrayOutputStream compressedContents = new ByteArrayOutputStream();
+        DeflaterOutputStream deflaterStream =
+            new DeflaterOutputStream(compressedContents, deflater);
+        ByteStreams.copy(new CheckedInputStream(entryInputStream, crc), deflaterStream);
+        deflaterStream.finish();
+        entry.setCrc(crc.getValue());
+        entry.setSize(deflater.getBytesRead());
+        entry.setCompressedSize(deflater.getBytesWritten());
+        return new PreparedEntry(entry, compressedContents.toByteArray(), /* compressed */ true);
+      } finally {
+        deflater.end();
       }
     }
-    jar.closeEntry();
   }
 
   private boolean shouldEntryBeRemovedFromJar(JarEntrySupplier supplier) throws IOException {
@@ -294,4 +409,31 @@ public class JarBuilder {
   private boolean isDuplicateAllowed(String name) {
     return !name.endsWith(".class") && !name.endsWith("/");
   }
+
+  /** An entry whose contents are ready to be written to the jar. */
+  private static class PreparedEntry {
+    private final CustomZipEntry entry;
+    /** Null for directories. */
+    @Nullable private final byte[] contents;
+
+    private final boolean compressed;
+
+    private PreparedEntry(CustomZipEntry entry, @Nullable byte[] contents, boolean compressed) {
+      this.entry = entry;
+      this.contents = contents;
+      this.compressed = compressed;
+    }
+
+    private void writeTo(CustomJarOutputStream jar) throws IOException {
+      if (compressed) {
+        jar.writePrecompressedEntry(entry, new ByteArrayInputStream(contents));
+        return;
+      }
+      jar.putNextEntry(entry);
+      if (contents != null) {
+        jar.write(contents);
+      }
+      jar.closeEntry();
+    }
+  }
 }
@@ -23,15 +23,29 @@ import com.facebook.buck.step.StepExecutionResult;
 import com.google.common.base.Joiner;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.Optional;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
 import javax.annotation.Nullable;
 
 /** Creates a JAR file from a collection of directories/ZIP/JAR files. */
 public class JarDirectoryStep implements Step {
 
+  /**
+   * Compresses the entries of every jar being written, shared by all the steps running at once so
+   * that they don't use more than one thread per core between them. Its tasks never wait on other
+   * tasks, so unlike the build's own executors, which the steps themselves hold on to while they
+   * wait for their entries, it can't run out of threads to make progress with.
+   */
+  private static final ListeningExecutorService COMPRESSION_EXECUTOR = newCompressionExecutor();
+
   private final ProjectFilesystem filesystem;
 
   /** Where to write the new JAR file. */
@@ -151,7 +165,7 @@ public class JarDirectoryStep implements Step {
 
     JavacEventSinkToBuckEventBusBridge eventSink =
         new JavacEventSinkToBuckEventBusBridge(context.getBuckEventBus());
-    return StepExecutionResult.of(
+    JarBuilder jarBuilder =
         new JarBuilder(filesystem)
             .setObserver(new LoggingJarBuilderObserver(eventSink))
             .setEntriesToJar(entriesToJar)
@@ -160,6 +174,24 @@ public class JarDirectoryStep implements Step {
             .setShouldMergeManifests(mergeManifests)
             .setShouldHashEntries(hashEntries)
             .setEntryPatternBlacklist(blacklist)
-            .createJarFile(filesystem.resolve(pathToOutputFile)));
+            .setCompressionExecutor(COMPRESSION_EXECUTOR);
+    return StepExecutionResult.of(jarBuilder.createJarFile(filesystem.resolve(pathToOutputFile)));
+  }
+
+  private static ListeningExecutorService newCompressionExecutor() {
+    int threads = Runtime.getRuntime().availableProcessors();
+    ThreadPoolExecutor executor =
+        new ThreadPoolExecutor(
+            threads,
+            threads,
+            1L,
+            TimeUnit.MINUTES,
+            new LinkedBlockingQueue<>(),
+            new ThreadFactoryBuilder()
+                .setNameFormat(JarDirectoryStep.class.getSimpleName() + "-compression-%d")
+                .setDaemon(true)
+                .build());
+    executor.allowCoreThreadTimeOut(true);
+    return MoreExecutors.listeningDecorator(executor);
   }
 }
@@ -18,8 +18,10 @@ package com.facebook.buck.jvm.java;
 
 import com.facebook.buck.util.function.ThrowingSupplier;
 import com.facebook.buck.zip.CustomZipEntry;
+import com.facebook.buck.zip.PrecompressedEntryReader;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Optional;
 
 /**
  * Encapsulates a file or directory to be added as a single entry to a jar by {@link JarBuilder}.
@@ -28,14 +30,30 @@ public class JarEntrySupplier {
   private final CustomZipEntry entry;
   private final String owner;
   private final ThrowingSupplier<InputStream, IOException> inputStreamSupplier;
+  private final ThrowingSupplier<Optional<PrecompressedEntryReader.Entry>, IOException>
+      precompressedEntrySupplier;
 
   public JarEntrySupplier(
       CustomZipEntry entry,
       String owner,
       ThrowingSupplier<InputStream, IOException> inputStreamSupplier) {
+    this(entry, owner, inputStreamSupplier, Optional::empty);
+  }
+
+  /**
+   * @param precompressedEntrySupplier supplies the entry as it's compressed in a zip file, if it is
+   *     and it can be copied from there as it is.
+   */
+  public JarEntrySupplier(
+      CustomZipEntry entry,
+      String owner,
+      ThrowingSupplier<InputStream, IOException> inputStreamSupplier,
+      ThrowingSupplier<Optional<PrecompressedEntryReader.Entry>, IOException>
+          precompressedEntrySupplier) {
     this.entry = entry;
     this.owner = owner;
     this.inputStreamSupplier = inputStreamSupplier;
+    this.precompressedEntrySupplier = precompressedEntrySupplier;
   }
 
   public CustomZipEntry getEntry() {
@@ -49,4 +67,9 @@ public class JarEntrySupplier {
   public ThrowingSupplier<InputStream, IOException> getInputStreamSupplier() {
     return inputStreamSupplier;
   }
+
+  public ThrowingSupplier<Optional<PrecompressedEntryReader.Entry>, IOException>
+      getPrecompressedEntrySupplier() {
+    return precompressedEntrySupplier;
+  }
 }
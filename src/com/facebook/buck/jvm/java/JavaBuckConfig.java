@@ -88,6 +88,8 @@ public class JavaBuckConfig implements ConfigView<BuckConfig> {
     }
 
     builder.setTrackClassUsage(trackClassUsage());
+    builder.setShouldCacheClasspathJars(
+        delegate.getBooleanValue(SECTION, "cache_classpath_jars", false));
 
     AbiGenerationMode abiGenerationMode = getAbiGenerationMode();
     switch (abiGenerationMode) {
@@ -212,6 +214,18 @@ public class JavaBuckConfig implements ConfigView<BuckConfig> {
     return delegate.getBooleanValue(SECTION, PROPERTY_COMPILE_AGAINST_ABIS, false);
   }
 
+  /**
+   * When ABIs are generated from source and verified, whether dependents should compile against
+   * the source ABI as soon as it's generated, rather than waiting for the library to be compiled so
+   * that the source ABI can be checked against its class ABI. The check still runs, alongside the
+   * dependents, and the library isn't considered built until it passes.
+   */
+  public boolean shouldPipelineSourceAbis() {
+    return shouldGenerateAbisFromSource()
+        && shouldCompileAgainstAbis()
+        && delegate.getBooleanValue(SECTION, "pipeline_source_abis", false);
+  }
+
   public enum AbiGenerationMode {
     /** Generate ABIs by stripping .class files */
     CLASS,
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import com.facebook.buck.zip.IndexedJar;
+import com.facebook.buck.zip.JarIndex;
+import com.facebook.buck.zip.JarIndexCache;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.HashCode;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Lists the classes of the jars on javac's classpaths by package, so that the in-process
+ * compilations of a daemon don't open and scan the same jars over and over. The jars themselves are
+ * read through the {@link JarIndexCache} shared by everything which reads jars, so the daemon holds
+ * a single copy of each of them.
+ *
+ * <p>Listings are keyed by the hash of the jar's contents, so a jar which is rebuilt without
+ * changes stays warm too. They only reference the index entries of the classes, are bounded by the
+ * number of classes they list, and are softly referenced.
+ */
+@ThreadSafe
+public class JavacClasspathCache {
+
+  private static final long MAX_LISTED_CLASSES = 1_000_000;
+
+  private static final JavacClasspathCache INSTANCE =
+      new JavacClasspathCache(JarIndexCache.getInstance(), MAX_LISTED_CLASSES);
+
+  private static final String CLASS_FILE_EXTENSION = ".class";
+
+  private final JarIndexCache jarIndexCache;
+  private final Cache<HashCode, JarClasses> jarClasses;
+
+  @VisibleForTesting
+  JavacClasspathCache(JarIndexCache jarIndexCache, long maxListedClasses) {
+    this.jarIndexCache = jarIndexCache;
+    this.jarClasses =
+        CacheBuilder.newBuilder()
+            .maximumWeight(maxListedClasses)
+            .weigher((HashCode hash, JarClasses classes) -> classes.getWeight())
+            .softValues()
+            .build();
+  }
+
+  /** @return the cache shared by all the compilations of this process. */
+  public static JavacClasspathCache getInstance() {
+    return INSTANCE;
+  }
+
+  /** @return the contents of the jar at {@code jarPath}. */
+  IndexedJar getJar(Path jarPath) throws IOException {
+    return jarIndexCache.get(jarPath);
+  }
+
+  /** @return the classes in {@code jar}. */
+  JarClasses getJarClasses(IndexedJar jar) throws IOException {
+    try {
+      return jarClasses.get(jar.getContentHash(), () -> JarClasses.list(jar));
+    } catch (ExecutionException e) {
+      Throwables.throwIfInstanceOf(e.getCause(), IOException.class);
+      throw new RuntimeException(e.getCause());
+    }
+  }
+
+  /** @return the binary name of the class in {@code entry}. */
+  static String getBinaryName(JarIndex.Entry entry) {
+    String name = entry.getName();
+    return name.substring(0, name.length() - CLASS_FILE_EXTENSION.length()).replace('/', '.');
+  }
+
+  @VisibleForTesting
+  long size() {
+    return jarClasses.size();
+  }
+
+  /** The classes of a jar, by package. */
+  static class JarClasses {
+    private final ImmutableMap<String, ImmutableList<JarIndex.Entry>> classesByPackage;
+    private final int weight;
+
+    private JarClasses(
+        ImmutableMap<String, ImmutableList<JarIndex.Entry>> classesByPackage, int weight) {
+      this.classesByPackage = classesByPackage;
+      this.weight = weight;
+    }
+
+    private static JarClasses list(IndexedJar jar) {
+      Map<String, ImmutableList.Builder<JarIndex.Entry>> classesByPackage = new TreeMap<>();
+      int weight = 0;
+      for (JarIndex.Entry entry : jar.getEntries()) {
+        String name = entry.getName();
+        if (entry.isDirectory() || !name.endsWith(CLASS_FILE_EXTENSION)) {
+          continue;
+        }
+        int lastSlash = name.lastIndexOf('/');
+        String packageName = lastSlash < 0 ? "" : name.substring(0, lastSlash).replace('/', '.');
+        classesByPackage
+            .computeIfAbsent(packageName, key -> ImmutableList.builder())
+            .add(entry);
+        weight++;
+      }
+
+      ImmutableMap.Builder<String, ImmutableList<JarIndex.Entry>> builder = ImmutableMap.builder();
+      for (Map.Entry<String, ImmutableList.Builder<JarIndex.Entry>> entry :
+          classesByPackage.entrySet()) {
+        builder.put(entry.getKey(), entry.getValue().build());
+      }
+      return new JarClasses(builder.build(), weight);
+    }
+
+    /** @return the classes in {@code packageName}, and in its subpackages if {@code recurse}. */
+    List<JarIndex.Entry> getClasses(String packageName, boolean recurse) {
+      if (!recurse) {
+        return classesByPackage.getOrDefault(packageName, ImmutableList.of());
+      }
+      List<JarIndex.Entry> classes = new ArrayList<>();
+      String subpackagePrefix = packageName.isEmpty() ? "" : packageName + ".";
+      for (Map.Entry<String, ImmutableList<JarIndex.Entry>> entry : classesByPackage.entrySet()) {
+        if (entry.getKey().equals(packageName) || entry.getKey().startsWith(subpackagePrefix)) {
+          classes.addAll(entry.getValue());
+        }
+      }
+      return classes;
+    }
+
+    private int getWeight() {
+      return weight;
+    }
+  }
+}
@@ -48,6 +48,7 @@ public class JavacExecutionContextSerializer {
   private static final String PROCESS_EXECUTOR = "process_executor";
   private static final String ABSOLUTE_PATHS_FOR_INPUTS = "absolute_paths_for_inputs";
   private static final String DIRECT_TO_JAR_SETTINGS = "direct_to_jar_settings";
+  private static final String CACHE_CLASSPATH_JARS = "cache_classpath_jars";
 
   public static ImmutableMap<String, Object> serialize(JavacExecutionContext context) {
     ImmutableMap.Builder<String, Object> builder = ImmutableMap.builder();
@@ -74,6 +75,7 @@ public class JavacExecutionContextSerializer {
           DirectToJarOutputSettingsSerializer.serialize(
               context.getDirectToJarOutputSettings().get()));
     }
+    builder.put(CACHE_CLASSPATH_JARS, context.shouldCacheClasspathJars());
 
     return builder.build();
   }
@@ -141,6 +143,7 @@ public class JavacExecutionContextSerializer {
                 "Missing environment when deserializing JavacExectionContext"),
         processExecutor,
         absolutePathsForInputs,
-        directToJarOutputSettings);
+        directToJarOutputSettings,
+        (boolean) Preconditions.checkNotNull(data.get(CACHE_CLASSPATH_JARS)));
   }
 }
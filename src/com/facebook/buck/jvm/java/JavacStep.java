@@ -133,7 +133,8 @@ public class JavacStep implements Step {
               firstOrderContext.getEnvironment(),
               firstOrderContext.getProcessExecutor(),
               getAbsolutePathsForJavacInputs(getJavac()),
-              directToJarOutputSettings);
+              directToJarOutputSettings,
+              javacOptions.shouldCacheClasspathJars());
       return performBuild(context, stdout, stderr, getJavac(), javacExecutionContext);
     }
   }
@@ -17,6 +17,7 @@
 package com.facebook.buck.jvm.java;
 
 import com.facebook.buck.event.api.BuckTracing;
+import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.jvm.java.abi.SourceBasedAbiStubber;
 import com.facebook.buck.jvm.java.abi.StubGenerator;
 import com.facebook.buck.jvm.java.abi.source.api.BootClasspathOracle;
@@ -129,6 +130,14 @@ public abstract class Jsr199Javac implements Javac {
     Path directToJarPath = null;
     try {
       fileManager = compiler.getStandardFileManager(null, null, null);
+      if (context.shouldCacheClasspathJars()) {
+        ProjectFilesystem filesystem = context.getProjectFilesystem();
+        fileManager =
+            new ClasspathCachingFileManager(
+                fileManager,
+                JavacClasspathCache.getInstance(),
+                filesystem.resolve(filesystem.getBuckPaths().getBuckOut()));
+      }
       if (context.getDirectToJarOutputSettings().isPresent()) {
         directToJarPath =
             context
@@ -16,10 +16,13 @@
 
 package com.facebook.buck.jvm.java;
 
+import com.facebook.buck.log.Logger;
 import com.facebook.buck.zip.CustomZipEntry;
+import com.facebook.buck.zip.PrecompressedEntryReader;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.Optional;
 import java.util.jar.JarFile;
 import java.util.jar.Manifest;
 import java.util.stream.Stream;
@@ -28,9 +31,12 @@ import javax.annotation.Nullable;
 
 /** Provides all entries of a given zip or jar file, so they can be added to another jar. */
 class ZipFileJarEntryContainer implements JarEntryContainer {
+  private static final Logger LOG = Logger.get(ZipFileJarEntryContainer.class);
+
   private final String owner;
   private final Path jarFilePath;
   @Nullable private JarFile jar;
+  @Nullable private Optional<PrecompressedEntryReader> precompressedEntryReader;
 
   public ZipFileJarEntryContainer(Path jarFilePath) {
     this.jarFilePath = jarFilePath;
@@ -50,12 +56,36 @@ class ZipFileJarEntryContainer implements JarEntryContainer {
         .map(
             entry ->
                 new JarEntrySupplier(
-                    makeCustomEntry(entry), owner, () -> getJarFile().getInputStream(entry)));
+                    makeCustomEntry(entry),
+                    owner,
+                    () -> getJarFile().getInputStream(entry),
+                    () ->
+                        getPrecompressedEntryReader()
+                            .flatMap(reader -> reader.getEntry(entry.getName()))));
   }
 
   @Override
   public void close() throws IOException {
     getJarFile().close();
+    synchronized (this) {
+      if (precompressedEntryReader != null && precompressedEntryReader.isPresent()) {
+        precompressedEntryReader.get().close();
+      }
+      precompressedEntryReader = null;
+    }
+  }
+
+  private synchronized Optional<PrecompressedEntryReader> getPrecompressedEntryReader() {
+    if (precompressedEntryReader == null) {
+      try {
+        precompressedEntryReader = Optional.of(new PrecompressedEntryReader(jarFilePath));
+      } catch (IOException e) {
+        // The entries will be inflated and deflated again instead.
+        LOG.debug(e, "Can't copy compressed entries from %s.", owner);
+        precompressedEntryReader = Optional.empty();
+      }
+    }
+    return precompressedEntryReader;
   }
 
   private JarFile getJarFile() throws IOException {
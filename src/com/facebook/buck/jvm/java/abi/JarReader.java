@@ -16,21 +16,29 @@
 
 package com.facebook.buck.jvm.java.abi;
 
-import com.google.common.collect.Iterables;
+import com.facebook.buck.io.MorePaths;
+import com.facebook.buck.zip.IndexedJar;
+import com.facebook.buck.zip.JarIndex;
+import com.facebook.buck.zip.JarIndexCache;
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.file.FileSystem;
-import java.nio.file.FileSystems;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
 import javax.annotation.Nullable;
+import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassVisitor;
 
-/** A {@link LibraryReader} that reads from a jar file. */
+/**
+ * A {@link LibraryReader} that reads from a jar file, through the {@link JarIndexCache} shared by
+ * the daemon.
+ */
 class JarReader implements LibraryReader {
   private final Path jarPath;
-  @Nullable FileSystem fileSystem;
-  @Nullable private DirectoryReader inner;
+  @Nullable private IndexedJar jar;
 
   JarReader(Path jarPath) {
     this.jarPath = jarPath;
@@ -38,34 +46,55 @@ class JarReader implements LibraryReader {
 
   @Override
   public List<Path> getRelativePaths() throws IOException {
-    return getInner().getRelativePaths();
+    Set<String> names = new LinkedHashSet<>();
+    for (JarIndex.Entry entry : getJar().getEntries()) {
+      if (!entry.isDirectory()) {
+        names.add(entry.getName());
+      }
+    }
+    return names.stream().map(Paths::get).collect(Collectors.toList());
   }
 
   @Override
   public InputStream openResourceFile(Path relativePath) throws IOException {
-    return getInner().openResourceFile(relativePath);
+    if (!isResource(relativePath)) {
+      throw new IllegalArgumentException();
+    }
+    return openInputStream(relativePath);
   }
 
   @Override
   public void visitClass(Path relativePath, ClassVisitor cv) throws IOException {
-    getInner().visitClass(relativePath, cv);
+    if (!isClass(relativePath)) {
+      throw new IllegalArgumentException();
+    }
+
+    try (InputStream inputStream = openInputStream(relativePath)) {
+      ClassReader reader = new ClassReader(inputStream);
+      reader.accept(cv, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+    }
   }
 
   @Override
-  public void close() throws IOException {
-    if (fileSystem != null) {
-      fileSystem.close();
-      fileSystem = null;
-      inner = null;
-    }
+  public void close() {
+    jar = null;
+  }
+
+  private InputStream openInputStream(Path relativePath) throws IOException {
+    IndexedJar jar = getJar();
+    String name = MorePaths.pathWithUnixSeparators(relativePath);
+    JarIndex.Entry entry =
+        jar.getEntry(name)
+            .orElseThrow(
+                () -> new IOException(String.format("%s has no entry %s.", jarPath, name)));
+    return jar.openEntry(entry);
   }
 
-  private DirectoryReader getInner() throws IOException {
-    if (inner == null) {
-      fileSystem = FileSystems.newFileSystem(jarPath, null);
-      inner = new DirectoryReader(Iterables.getOnlyElement(fileSystem.getRootDirectories()));
+  private IndexedJar getJar() throws IOException {
+    if (jar == null) {
+      jar = JarIndexCache.getInstance().get(jarPath);
     }
 
-    return inner;
+    return jar;
   }
 }
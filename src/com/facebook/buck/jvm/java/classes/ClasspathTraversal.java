@@ -18,7 +18,9 @@ package com.facebook.buck.jvm.java.classes;
 
 import com.facebook.buck.io.MorePaths;
 import com.facebook.buck.io.ProjectFilesystem;
-import com.facebook.buck.util.ZipFileTraversal;
+import com.facebook.buck.zip.IndexedJar;
+import com.facebook.buck.zip.JarIndex;
+import com.facebook.buck.zip.JarIndexCache;
 import com.google.common.collect.ImmutableSet;
 import java.io.IOException;
 import java.io.InputStream;
@@ -29,8 +31,6 @@ import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.Collection;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
 import javax.annotation.Nullable;
 
 /**
@@ -94,24 +94,20 @@ public abstract class ClasspathTraversal {
 
     @Override
     public void traverse(final ClasspathTraversal traversal) throws IOException {
-      ZipFileTraversal impl =
-          new ZipFileTraversal(file) {
-            @Override
-            public void visit(ZipFile zipFile, ZipEntry zipEntry) throws IOException {
-              traversal.visit(new FileLikeInZip(file, zipFile, zipEntry));
-            }
-          };
-      impl.traverse();
+      IndexedJar jar = JarIndexCache.getInstance().get(file);
+      for (JarIndex.Entry entry : jar.getEntries()) {
+        traversal.visit(new FileLikeInZip(file, jar, entry));
+      }
     }
 
     private static class FileLikeInZip extends AbstractFileLike {
       private final Path container;
-      private final ZipFile zipFile;
-      private final ZipEntry entry;
+      private final IndexedJar jar;
+      private final JarIndex.Entry entry;
 
-      public FileLikeInZip(Path container, ZipFile zipFile, ZipEntry entry) {
+      public FileLikeInZip(Path container, IndexedJar jar, JarIndex.Entry entry) {
         this.container = container;
-        this.zipFile = zipFile;
+        this.jar = jar;
         this.entry = entry;
       }
 
@@ -132,7 +128,7 @@ public abstract class ClasspathTraversal {
 
       @Override
       public InputStream getInput() throws IOException {
-        return zipFile.getInputStream(entry);
+        return jar.openEntry(entry);
       }
     }
   }
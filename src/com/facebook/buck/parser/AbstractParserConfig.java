@@ -179,6 +179,15 @@ abstract class AbstractParserConfig implements ConfigView<BuckConfig> {
     return Math.min(value, getDelegate().getNumThreads());
   }
 
+  /**
+   * @return whether the raw nodes of parsed build files are persisted to disk, so that a new daemon
+   *     only runs the build file parser for build files which changed since they were last parsed.
+   */
+  @Value.Lazy
+  public boolean getEnablePersistentParseCache() {
+    return getDelegate().getBooleanValue("parser", "persistent_cache", false);
+  }
+
   @Value.Lazy
   public ApplyDefaultFlavorsMode getDefaultFlavorsMode() {
     return getDelegate()
@@ -75,10 +75,10 @@ class DaemonicParserState {
    * list of strings with the root build file as the head and included build files as the tail, for
    * example: {"__includes":["/foo/BUCK", "/foo/buck_includes"]}
    */
-  private static final String INCLUDES_META_RULE = "__includes";
+  static final String INCLUDES_META_RULE = "__includes";
 
-  private static final String CONFIGS_META_RULE = "__configs";
-  private static final String ENV_META_RULE = "__env";
+  static final String CONFIGS_META_RULE = "__configs";
+  static final String ENV_META_RULE = "__env";
 
   private static final String COUNTER_CATEGORY = "buck_parser_state";
   private static final String INVALIDATED_BY_ENV_VARS_COUNTER_NAME = "invalidated_by_env_vars";
@@ -262,6 +262,7 @@ class DaemonicParserState {
   private final LoadingCache<Class<?>, DaemonicCacheView<?>> typedNodeCaches =
       CacheBuilder.newBuilder().build(CacheLoader.from(cls -> new DaemonicCacheView<>(cls)));
   private final DaemonicRawCacheView rawNodeCache;
+  private final PersistentRawNodeCache persistentRawNodeCache;
 
   private final int parsingThreads;
 
@@ -322,6 +323,7 @@ class DaemonicParserState {
         new ConcurrentHashMap<>(DEFAULT_INITIAL_CAPACITY, DEFAULT_LOAD_FACTOR, parsingThreads);
 
     this.rawNodeCache = new DaemonicRawCacheView();
+    this.persistentRawNodeCache = new PersistentRawNodeCache();
 
     this.cachedStateLock = new AutoCloseableReadWriteUpdateLock();
     this.cellStateLock = new AutoCloseableReadWriteUpdateLock();
@@ -355,6 +357,11 @@ class DaemonicParserState {
     return rawNodeCache;
   }
 
+  /** @return the on-disk cache consulted before parsing build files missing from the raw cache. */
+  PersistentRawNodeCache getPersistentRawNodeCache() {
+    return persistentRawNodeCache;
+  }
+
   @Nullable
   private DaemonicCellState getCellState(Cell cell) {
     try (AutoCloseableLock readLock = cellStateLock.readLock()) {
@@ -404,6 +411,8 @@ class DaemonicParserState {
                   fullPath, cell);
               // If a build file has been added or removed, reconstruct the build file tree.
               buildFileTrees.invalidate(cell);
+              // Subpackages are left out of the listings of their parent packages.
+              persistentRawNodeCache.invalidateAllPackageListings();
             }
 
             // Added or removed files can affect globs, so invalidate the package build file
@@ -486,6 +495,8 @@ class DaemonicParserState {
     // Invalidate all the packages we found.
     for (Path buildFile : packageBuildFiles) {
       invalidatePath(state, buildFile.resolve(cell.getBuildFileName()));
+      persistentRawNodeCache.invalidatePackageListing(
+          cell.getFilesystem().resolve(buildFile).resolve(cell.getBuildFileName()));
     }
   }
 
@@ -577,6 +588,7 @@ class DaemonicParserState {
     try (AutoCloseableLock writeLock = cellStateLock.writeLock()) {
       boolean invalidated = cellPathToDaemonicState.containsKey(cell.getRoot());
       cellPathToDaemonicState.remove(cell.getRoot());
+      persistentRawNodeCache.invalidateAllPackageListings();
       if (invalidated) {
         LOG.debug("Cell cache data invalidated.");
       } else {
@@ -592,6 +604,7 @@ class DaemonicParserState {
     try (AutoCloseableLock writeLock = cellStateLock.writeLock()) {
       boolean invalidated = !cellPathToDaemonicState.isEmpty();
       cellPathToDaemonicState.clear();
+      persistentRawNodeCache.invalidateAllPackageListings();
       if (invalidated) {
         LOG.debug("Cache data invalidated.");
       } else {
@@ -603,14 +616,17 @@ class DaemonicParserState {
   }
 
   public ImmutableList<Counter> getCounters() {
-    return ImmutableList.of(
-        cacheInvalidatedByEnvironmentVariableChangeCounter,
-        cacheInvalidatedByDefaultIncludesChangeCounter,
-        cacheInvalidatedByWatchOverflowCounter,
-        buildFilesInvalidatedByFileAddOrRemoveCounter,
-        filesChangedCounter,
-        rulesInvalidatedByWatchEventsCounter,
-        pathsAddedOrRemovedInvalidatingBuildFiles);
+    return ImmutableList.<Counter>builder()
+        .add(
+            cacheInvalidatedByEnvironmentVariableChangeCounter,
+            cacheInvalidatedByDefaultIncludesChangeCounter,
+            cacheInvalidatedByWatchOverflowCounter,
+            buildFilesInvalidatedByFileAddOrRemoveCounter,
+            filesChangedCounter,
+            rulesInvalidatedByWatchEventsCounter,
+            pathsAddedOrRemovedInvalidatingBuildFiles)
+        .addAll(persistentRawNodeCache.getCounters())
+        .build();
   }
 
   @Override
@@ -0,0 +1,482 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.parser;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.facebook.buck.bser.BserDeserializer;
+import com.facebook.buck.bser.BserSerializer;
+import com.facebook.buck.counters.Counter;
+import com.facebook.buck.counters.IntegerCounter;
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.log.Logger;
+import com.facebook.buck.model.BuckVersion;
+import com.facebook.buck.rules.Cell;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * On-disk cache of the raw nodes of build files, which lets a freshly started daemon skip running
+ * the build file parser for build files which did not change since they were last parsed.
+ *
+ * <p>Each build file has a BSER encoded entry holding its raw nodes, including the meta rules
+ * which list the files it included and the config values and environment variables it read. An
+ * entry is only used if all of these, the parser configuration, and the listing of the package
+ * directory which globs are evaluated against are unchanged.
+ */
+@ThreadSafe
+class PersistentRawNodeCache {
+  private static final Logger LOG = Logger.get(PersistentRawNodeCache.class);
+
+  /** Bump this when the layout of the entries changes. */
+  private static final int FORMAT_VERSION = 1;
+
+  /** Config sections which affect how the build file parser is set up. */
+  private static final ImmutableSet<String> PARSER_CONFIG_SECTIONS =
+      ImmutableSet.of("build", "buildfile", "parser", "project", "python", "repositories");
+
+  /**
+   * Files modified this recently before a parse started may change again without their modification
+   * time changing, so neither their hashes nor build files depending on them are persisted.
+   */
+  private static final long MODIFICATION_TIME_GRANULARITY_MILLIS = 2000;
+
+  private static final String BUILD_FILE_KEY = "build_file";
+  private static final String PARSER_CONFIG_KEY = "parser_config";
+  private static final String PACKAGE_LISTING_KEY = "package_listing";
+  private static final String FILE_HASHES_KEY = "file_hashes";
+  private static final String RAW_NODES_KEY = "raw_nodes";
+
+  private static final String COUNTER_CATEGORY = "buck_persistent_parse_cache";
+  private static final String HITS_COUNTER_NAME = "hits";
+  private static final String MISSES_COUNTER_NAME = "misses";
+
+  private final IntegerCounter hitsCounter =
+      new IntegerCounter(COUNTER_CATEGORY, HITS_COUNTER_NAME, ImmutableMap.of());
+  private final IntegerCounter missesCounter =
+      new IntegerCounter(COUNTER_CATEGORY, MISSES_COUNTER_NAME, ImmutableMap.of());
+
+  private final LoadingCache<Cell, String> parserConfigFingerprints =
+      CacheBuilder.newBuilder()
+          .weakKeys()
+          .build(CacheLoader.from(PersistentRawNodeCache::computeParserConfigFingerprint));
+
+  /** Hashes of included files, which are shared by many build files, by absolute path. */
+  private final ConcurrentMap<Path, FileHash> fileHashes = new ConcurrentHashMap<>();
+
+  /**
+   * Fingerprints of the package listings of build files, by absolute path. They're computed once
+   * and kept until a watch event invalidates the package, as walking the package on every lookup
+   * would cost much of what the cache saves.
+   */
+  private final ConcurrentMap<Path, String> packageListingFingerprints = new ConcurrentHashMap<>();
+
+  /**
+   * Bumped by every invalidation, so that a fingerprint computed while the package changed isn't
+   * kept. Guarded by {@link #packageListingFingerprints}.
+   */
+  private long packageListingGeneration = 0;
+
+  /** State of the build files which missed the cache, captured before they were parsed. */
+  private final ConcurrentMap<Path, PendingParse> pendingParses = new ConcurrentHashMap<>();
+
+  public static boolean isEnabled(Cell cell) {
+    return cell.getBuckConfig().getView(ParserConfig.class).getEnablePersistentParseCache();
+  }
+
+  /**
+   * @return the raw nodes persisted for {@code buildFile}, including meta rules, if they are still
+   *     up to date. Otherwise, the caller is expected to parse the build file and {@link #store}
+   *     the result.
+   */
+  public Optional<ImmutableSet<Map<String, Object>>> lookup(Cell cell, Path buildFile) {
+    Preconditions.checkState(buildFile.isAbsolute());
+    long startedMillis = System.currentTimeMillis();
+    try {
+      String packageListing = getPackageListingFingerprint(cell, buildFile);
+      Optional<ImmutableSet<Map<String, Object>>> rawNodes =
+          readEntry(cell, buildFile, packageListing);
+      if (rawNodes.isPresent()) {
+        hitsCounter.inc();
+        pendingParses.remove(buildFile);
+        return rawNodes;
+      }
+      pendingParses.put(buildFile, new PendingParse(packageListing, startedMillis));
+    } catch (IOException e) {
+      LOG.debug(e, "Failed to look up the persisted raw nodes of %s", buildFile);
+    }
+    missesCounter.inc();
+    return Optional.empty();
+  }
+
+  /** Persists the raw nodes, including meta rules, parsed after a {@link #lookup} missed. */
+  @SuppressWarnings("unchecked")
+  public void store(Cell cell, Path buildFile, ImmutableSet<Map<String, Object>> rawNodes) {
+    PendingParse pendingParse = pendingParses.remove(buildFile);
+    if (pendingParse == null) {
+      return;
+    }
+    try {
+      List<Path> inputs = new ArrayList<>();
+      inputs.add(buildFile);
+      for (Map<String, Object> rawNode : rawNodes) {
+        Object includes = rawNode.get(DaemonicParserState.INCLUDES_META_RULE);
+        if (includes != null) {
+          for (String include : (List<String>) includes) {
+            inputs.add(cell.getFilesystem().resolve(include));
+          }
+        }
+      }
+      for (String include : cell.getBuckConfig().getView(ParserConfig.class).getDefaultIncludes()) {
+        inputs.add(cell.getFilesystem().resolve(include.substring(2)));
+      }
+
+      Map<String, String> inputHashes = new LinkedHashMap<>();
+      for (Path input : inputs) {
+        Optional<String> hash = getFileHash(cell, input, pendingParse.startedMillis);
+        if (!hash.isPresent()) {
+          LOG.verbose("Not persisting %s as %s changed while it was parsed", buildFile, input);
+          return;
+        }
+        inputHashes.put(input.toString(), hash.get());
+      }
+
+      writeEntry(
+          getEntryPath(cell, buildFile),
+          ImmutableMap.of(
+              BUILD_FILE_KEY, buildFile.toString(),
+              PARSER_CONFIG_KEY, parserConfigFingerprints.getUnchecked(cell),
+              PACKAGE_LISTING_KEY, pendingParse.packageListing,
+              FILE_HASHES_KEY, inputHashes,
+              RAW_NODES_KEY, rawNodes));
+    } catch (IOException | RuntimeException e) {
+      // The serializer throws RuntimeException for values it cannot encode, which only means the
+      // build file has to be parsed again by the next daemon.
+      LOG.debug(e, "Failed to persist the raw nodes of %s", buildFile);
+    }
+  }
+
+  /**
+   * Forgets the package listing of {@code buildFile}, after a file was added to or removed from its
+   * package.
+   */
+  public void invalidatePackageListing(Path buildFile) {
+    synchronized (packageListingFingerprints) {
+      packageListingGeneration++;
+      packageListingFingerprints.remove(buildFile);
+    }
+  }
+
+  /** Forgets the package listings of all build files, after their packages may have changed. */
+  public void invalidateAllPackageListings() {
+    synchronized (packageListingFingerprints) {
+      packageListingGeneration++;
+      packageListingFingerprints.clear();
+    }
+  }
+
+  public ImmutableList<Counter> getCounters() {
+    return ImmutableList.of(hitsCounter, missesCounter);
+  }
+
+  @SuppressWarnings("unchecked")
+  private Optional<ImmutableSet<Map<String, Object>>> readEntry(
+      Cell cell, Path buildFile, String packageListing) throws IOException {
+    Path entryPath = getEntryPath(cell, buildFile);
+    if (!Files.isRegularFile(entryPath)) {
+      return Optional.empty();
+    }
+    Map<String, Object> entry;
+    try (InputStream input = new BufferedInputStream(Files.newInputStream(entryPath))) {
+      entry =
+          (Map<String, Object>)
+              new BserDeserializer(BserDeserializer.KeyOrdering.UNSORTED)
+                  .deserializeBserValue(input);
+    }
+
+    if (!buildFile.toString().equals(entry.get(BUILD_FILE_KEY))
+        || !parserConfigFingerprints.getUnchecked(cell).equals(entry.get(PARSER_CONFIG_KEY))
+        || !packageListing.equals(entry.get(PACKAGE_LISTING_KEY))) {
+      return Optional.empty();
+    }
+    for (Map.Entry<String, Object> inputHash :
+        ((Map<String, Object>) entry.get(FILE_HASHES_KEY)).entrySet()) {
+      Path input = buildFile.getFileSystem().getPath(inputHash.getKey());
+      if (!Files.isRegularFile(input)
+          || !getFileHash(cell, input, Long.MAX_VALUE).get().equals(inputHash.getValue())) {
+        LOG.verbose("Persisted raw nodes of %s are out of date: %s changed", buildFile, input);
+        return Optional.empty();
+      }
+    }
+
+    ImmutableSet.Builder<Map<String, Object>> rawNodes = ImmutableSet.builder();
+    for (Object rawNode : (List<Object>) entry.get(RAW_NODES_KEY)) {
+      Map<String, Object> node = (Map<String, Object>) copyAsParsed(rawNode);
+      if (node.containsKey(DaemonicParserState.ENV_META_RULE)
+          && !isEnvUnchanged(
+              cell, (Map<String, Object>) node.get(DaemonicParserState.ENV_META_RULE))) {
+        LOG.verbose("Persisted raw nodes of %s are out of date: env changed", buildFile);
+        return Optional.empty();
+      }
+      if (node.containsKey(DaemonicParserState.CONFIGS_META_RULE)
+          && !areConfigsUnchanged(
+              cell, (Map<String, Object>) node.get(DaemonicParserState.CONFIGS_META_RULE))) {
+        LOG.verbose("Persisted raw nodes of %s are out of date: config changed", buildFile);
+        return Optional.empty();
+      }
+      rawNodes.add(node);
+    }
+    return Optional.of(rawNodes.build());
+  }
+
+  private static void writeEntry(Path entryPath, Map<String, Object> entry) throws IOException {
+    Files.createDirectories(entryPath.getParent());
+    Path tmp =
+        Files.createTempFile(entryPath.getParent(), entryPath.getFileName().toString(), ".tmp");
+    try {
+      try (OutputStream output = new BufferedOutputStream(Files.newOutputStream(tmp))) {
+        new BserSerializer().serializeToStream(entry, output);
+      }
+      Files.move(
+          tmp, entryPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(tmp);
+    }
+  }
+
+  /**
+   * @return the hash of {@code file}, or nothing if it was modified too close to {@code
+   *     notModifiedSinceMillis} for the hash to be trusted later on.
+   */
+  private Optional<String> getFileHash(Cell cell, Path file, long notModifiedSinceMillis)
+      throws IOException {
+    BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+    long modifiedMillis = attributes.lastModifiedTime().toMillis();
+    if (modifiedMillis > notModifiedSinceMillis - MODIFICATION_TIME_GRANULARITY_MILLIS) {
+      return Optional.empty();
+    }
+    FileHash cached = fileHashes.get(file);
+    if (cached != null
+        && cached.modifiedMillis == modifiedMillis
+        && cached.size == attributes.size()) {
+      return Optional.of(cached.hash);
+    }
+    String hash = cell.getFilesystem().computeSha1(file).getHash();
+    if (modifiedMillis < System.currentTimeMillis() - MODIFICATION_TIME_GRANULARITY_MILLIS) {
+      fileHashes.put(file, new FileHash(modifiedMillis, attributes.size(), hash));
+    }
+    return Optional.of(hash);
+  }
+
+  private static boolean isEnvUnchanged(Cell cell, Map<String, Object> usedEnv) {
+    ImmutableMap<String, String> environment = cell.getBuckConfig().getEnvironment();
+    for (Map.Entry<String, Object> variable : usedEnv.entrySet()) {
+      if (!Objects.equals(environment.get(variable.getKey()), variable.getValue())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static boolean areConfigsUnchanged(Cell cell, Map<String, Object> usedConfigs) {
+    ImmutableMap<String, ImmutableMap<String, String>> config =
+        cell.getBuckConfig().getRawConfigForParser();
+    for (Map.Entry<String, Object> section : usedConfigs.entrySet()) {
+      ImmutableMap<String, String> entries =
+          config.getOrDefault(section.getKey(), ImmutableMap.of());
+      Map<String, Object> fields = (Map<String, Object>) section.getValue();
+      for (Map.Entry<String, Object> field : fields.entrySet()) {
+        if (!Objects.equals(entries.get(field.getKey()), field.getValue())) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  private static String computeParserConfigFingerprint(Cell cell) {
+    Hasher hasher = Hashing.sha1().newHasher();
+    hasher.putInt(FORMAT_VERSION);
+    hasher.putString(BuckVersion.getVersion(), UTF_8);
+    hasher.putString(cell.getRoot().toString(), UTF_8);
+    ImmutableMap<String, ImmutableMap<String, String>> config =
+        cell.getBuckConfig().getRawConfigForParser();
+    for (String section : PARSER_CONFIG_SECTIONS) {
+      for (Map.Entry<String, String> entry :
+          config.getOrDefault(section, ImmutableMap.of()).entrySet()) {
+        hasher.putString(section, UTF_8).putByte((byte) 0);
+        hasher.putString(entry.getKey(), UTF_8).putByte((byte) 0);
+        hasher.putString(entry.getValue(), UTF_8).putByte((byte) 0);
+      }
+    }
+    return hasher.hash().toString();
+  }
+
+  private String getPackageListingFingerprint(Cell cell, Path buildFile) throws IOException {
+    String fingerprint = packageListingFingerprints.get(buildFile);
+    if (fingerprint != null) {
+      return fingerprint;
+    }
+    long generation;
+    synchronized (packageListingFingerprints) {
+      generation = packageListingGeneration;
+    }
+    fingerprint = computePackageListingFingerprint(cell, buildFile);
+    synchronized (packageListingFingerprints) {
+      if (generation == packageListingGeneration) {
+        packageListingFingerprints.put(buildFile, fingerprint);
+      }
+    }
+    return fingerprint;
+  }
+
+  /**
+   * Fingerprints the paths under the package of {@code buildFile} which its globs can match. Like
+   * the daemon's own invalidation of added and removed files, this stops at subpackages if package
+   * boundaries are enforced.
+   */
+  @VisibleForTesting
+  static String computePackageListingFingerprint(Cell cell, Path buildFile) throws IOException {
+    ProjectFilesystem filesystem = cell.getFilesystem();
+    Path packagePath = filesystem.relativize(buildFile.getParent());
+    boolean enforcingBoundaries = cell.isEnforcingBuckPackageBoundaries(buildFile);
+    List<String> paths = new ArrayList<>();
+    filesystem.walkRelativeFileTree(
+        packagePath,
+        new SimpleFileVisitor<Path>() {
+          @Override
+          public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+            if (dir.equals(packagePath)) {
+              return FileVisitResult.CONTINUE;
+            }
+            if (filesystem.isIgnored(dir)
+                || (enforcingBoundaries
+                    && filesystem.isFile(dir.resolve(cell.getBuildFileName())))) {
+              return FileVisitResult.SKIP_SUBTREE;
+            }
+            paths.add(dir + "/");
+            return FileVisitResult.CONTINUE;
+          }
+
+          @Override
+          public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+            if (!filesystem.isIgnored(file)) {
+              paths.add(file.toString());
+            }
+            return FileVisitResult.CONTINUE;
+          }
+        });
+    Collections.sort(paths);
+    Hasher hasher = Hashing.sha1().newHasher();
+    for (String path : paths) {
+      hasher.putString(path, UTF_8).putByte((byte) 0);
+    }
+    return hasher.hash().toString();
+  }
+
+  private static Path getEntryPath(Cell cell, Path buildFile) {
+    ProjectFilesystem filesystem = cell.getFilesystem();
+    String key =
+        Hashing.sha1().hashString(filesystem.relativize(buildFile).toString(), UTF_8).toString();
+    return filesystem
+        .resolve(filesystem.getBuckPaths().getScratchDir())
+        .resolve("parser-cache")
+        .resolve(key.substring(0, 2))
+        .resolve(key + ".bser");
+  }
+
+  /**
+   * Copies a deserialized value into the types which the build file parser's JSON decoding yields,
+   * as BSER encodes integers in as few bytes as possible.
+   */
+  @SuppressWarnings("unchecked")
+  @Nullable
+  private static Object copyAsParsed(@Nullable Object value) {
+    if (value instanceof Map) {
+      Map<String, Object> copy = new LinkedHashMap<>();
+      for (Map.Entry<String, Object> entry : ((Map<String, Object>) value).entrySet()) {
+        copy.put(entry.getKey(), copyAsParsed(entry.getValue()));
+      }
+      return copy;
+    } else if (value instanceof List) {
+      List<Object> list = (List<Object>) value;
+      List<Object> copy = new ArrayList<>(list.size());
+      for (Object element : list) {
+        copy.add(copyAsParsed(element));
+      }
+      return copy;
+    } else if (value instanceof Byte || value instanceof Short) {
+      return ((Number) value).intValue();
+    } else if (value instanceof Long && (Long) value == ((Long) value).intValue()) {
+      return ((Long) value).intValue();
+    }
+    return value;
+  }
+
+  private static class PendingParse {
+    private final String packageListing;
+    private final long startedMillis;
+
+    private PendingParse(String packageListing, long startedMillis) {
+      this.packageListing = packageListing;
+      this.startedMillis = startedMillis;
+    }
+  }
+
+  private static class FileHash {
+    private final long modifiedMillis;
+    private final long size;
+    private final String hash;
+
+    private FileHash(long modifiedMillis, long size, String hash) {
+      this.modifiedMillis = modifiedMillis;
+      this.size = size;
+      this.hash = hash;
+    }
+  }
+}
@@ -26,6 +26,7 @@ import com.google.common.collect.ImmutableSet;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
 import java.nio.file.Path;
 import java.util.Map;
 import java.util.Optional;
@@ -34,6 +35,7 @@ import java.util.concurrent.atomic.AtomicLong;
 public class RawNodeParsePipeline extends ParsePipeline<Map<String, Object>> {
 
   private final PipelineNodeCache<Path, ImmutableSet<Map<String, Object>>> cache;
+  private final Optional<PersistentRawNodeCache> persistentCache;
   private final ListeningExecutorService executorService;
   private final ProjectBuildFileParserPool projectBuildFileParserPool;
 
@@ -41,9 +43,18 @@ public class RawNodeParsePipeline extends ParsePipeline<Map<String, Object>> {
       Cache<Path, ImmutableSet<Map<String, Object>>> cache,
       ProjectBuildFileParserPool projectBuildFileParserPool,
       ListeningExecutorService executorService) {
+    this(cache, Optional.empty(), projectBuildFileParserPool, executorService);
+  }
+
+  RawNodeParsePipeline(
+      Cache<Path, ImmutableSet<Map<String, Object>>> cache,
+      Optional<PersistentRawNodeCache> persistentCache,
+      ProjectBuildFileParserPool projectBuildFileParserPool,
+      ListeningExecutorService executorService) {
     super();
     this.executorService = executorService;
     this.cache = new PipelineNodeCache<>(cache);
+    this.persistentCache = persistentCache;
     this.projectBuildFileParserPool = projectBuildFileParserPool;
   }
 
@@ -95,11 +106,45 @@ public class RawNodeParsePipeline extends ParsePipeline<Map<String, Object>> {
             return Futures.immediateCancelledFuture();
           }
 
+          if (persistentCache.isPresent() && PersistentRawNodeCache.isEnabled(cell)) {
+            return getAllNodesJobWithPersistentCache(
+                persistentCache.get(), cell, buildFile, processedBytes);
+          }
           return projectBuildFileParserPool.getAllRulesAndMetaRules(
               cell, buildFile, processedBytes, executorService);
         });
   }
 
+  /**
+   * Looks up the raw nodes of {@code buildFile} on disk, and only hands it to the build file parser
+   * if they are out of date, persisting what the parser returns for the next daemon.
+   */
+  private ListenableFuture<ImmutableSet<Map<String, Object>>> getAllNodesJobWithPersistentCache(
+      PersistentRawNodeCache persistentCache,
+      Cell cell,
+      Path buildFile,
+      AtomicLong processedBytes) {
+    return Futures.transformAsync(
+        executorService.submit(() -> persistentCache.lookup(cell, buildFile)),
+        persistedNodes -> {
+          if (persistedNodes.isPresent()) {
+            return Futures.immediateFuture(persistedNodes.get());
+          }
+          if (shuttingDown()) {
+            return Futures.immediateCancelledFuture();
+          }
+          return Futures.transform(
+              projectBuildFileParserPool.getAllRulesAndMetaRules(
+                  cell, buildFile, processedBytes, executorService),
+              rawNodes -> {
+                persistentCache.store(cell, buildFile, rawNodes);
+                return rawNodes;
+              },
+              executorService);
+        },
+        MoreExecutors.directExecutor());
+  }
+
   @Override
   public ListenableFuture<Map<String, Object>> getNodeJob(
       final Cell cell, final BuildTarget buildTarget, AtomicLong processedBytes)
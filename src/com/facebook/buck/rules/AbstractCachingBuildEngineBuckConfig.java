@@ -59,6 +59,29 @@ abstract class AbstractCachingBuildEngineBuckConfig implements ConfigView<BuckCo
     return getDelegate().getLong("build", "input_rule_key_file_size_limit").orElse(Long.MAX_VALUE);
   }
 
+  /** @return how the build engine should prioritize rules which are ready to be built. */
+  public CachingBuildEngine.SchedulingMode getSchedulingMode() {
+    return getDelegate()
+        .getEnum("build", "scheduling_mode", CachingBuildEngine.SchedulingMode.class)
+        .orElse(CachingBuildEngine.SchedulingMode.DEFAULT);
+  }
+
+  /**
+   * @return whether the build engine should fetch the artifacts of all the deps of a rule which
+   *     missed the cache in a single batch, ahead of checking each of them.
+   */
+  public boolean isArtifactCachePrefetchEnabled() {
+    return getDelegate().getBooleanValue("build", "artifact_cache_prefetch", false);
+  }
+
+  /**
+   * @return whether the build engine should compute the default rule keys of all the rules to build
+   *     in parallel before it starts scheduling them.
+   */
+  public boolean isRuleKeyPrecomputeEnabled() {
+    return getDelegate().getBooleanValue("build", "rule_key_precompute", false);
+  }
+
   public ResourceAwareSchedulingInfo getResourceAwareSchedulingInfo() {
     return ResourceAwareSchedulingInfo.of(
         getDelegate().isResourceAwareSchedulingEnabled(),
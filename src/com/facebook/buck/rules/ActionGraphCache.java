@@ -16,6 +16,8 @@
 
 package com.facebook.buck.rules;
 
+import com.facebook.buck.counters.Counter;
+import com.facebook.buck.counters.IntegerCounter;
 import com.facebook.buck.event.ActionGraphEvent;
 import com.facebook.buck.event.BuckEventBus;
 import com.facebook.buck.event.PerfEventId;
@@ -25,6 +27,7 @@ import com.facebook.buck.event.listener.BroadcastEventListener;
 import com.facebook.buck.graph.AbstractBottomUpTraversal;
 import com.facebook.buck.log.Logger;
 import com.facebook.buck.model.Pair;
+import com.facebook.buck.model.UnflavoredBuildTarget;
 import com.facebook.buck.parser.NoSuchBuildTargetException;
 import com.facebook.buck.rules.keys.ContentAgnosticRuleKeyFactory;
 import com.facebook.buck.rules.keys.RuleKeyFieldLoader;
@@ -32,34 +35,100 @@ import com.facebook.buck.util.HumanReadableException;
 import com.facebook.buck.util.WatchmanOverflowEvent;
 import com.facebook.buck.util.WatchmanPathEvent;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.collect.MapDifference;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Multimap;
+import com.google.common.collect.SetMultimap;
+import com.google.common.collect.Sets;
 import com.google.common.eventbus.Subscribe;
 import com.google.common.hash.HashCode;
 import com.google.common.hash.Hasher;
 import com.google.common.hash.Hashing;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
 import javax.annotation.Nullable;
 
 /**
  * Class that transforms {@link TargetGraph} to {@link ActionGraph}. It also holds a cache for the
  * last ActionGraph it generated.
+ *
+ * <p>When incremental action graphs are enabled, a cache miss does not throw the last ActionGraph
+ * away. Instead, its rules are kept for the targets whose nodes and transitive deps did not change,
+ * and only the rules of the other targets are created again. The kept rules may hold on to the
+ * resolver which created them, so every incremental ActionGraph can keep the previous ones alive.
+ * To bound that, the ActionGraph is created from scratch again after {@link
+ * #MAX_INCREMENTAL_GENERATIONS} incremental ones.
  */
 public class ActionGraphCache {
   private static final Logger LOG = Logger.get(ActionGraphCache.class);
 
+  private static final String COUNTER_CATEGORY = "buck_action_graph_cache";
+  private static final String REUSED_TARGET_NODES_COUNTER_NAME = "reused_target_nodes";
+  private static final String REBUILT_TARGET_NODES_COUNTER_NAME = "rebuilt_target_nodes";
+
+  @VisibleForTesting static final int MAX_INCREMENTAL_GENERATIONS = 8;
+
   @Nullable private Pair<TargetGraph, ActionGraphAndResolver> lastActionGraph;
 
   @Nullable private HashCode lastTargetGraphHash;
 
+  /**
+   * The last ActionGraph, kept for incremental construction even after file events invalidated it.
+   */
+  @Nullable private Pair<TargetGraph, ActionGraphAndResolver> incrementalBaseActionGraph;
+
+  /**
+   * How many ActionGraphs were created incrementally in a row to get to {@link
+   * #incrementalBaseActionGraph}.
+   */
+  private int incrementalBaseGenerations;
+
+  /**
+   * Files added or removed since {@link #incrementalBaseActionGraph} was created, keyed by the root
+   * of their cell. Descriptions may look at the files in their package, so these invalidate the
+   * rules of the targets in the package which owns them, the closest one above them.
+   */
+  private final SetMultimap<Path, Path> pathsChangedSinceIncrementalBase = HashMultimap.create();
+
+  private final IntegerCounter reusedTargetNodesCounter;
+  private final IntegerCounter rebuiltTargetNodesCounter;
+
   private BroadcastEventListener broadcastEventListener;
 
   public ActionGraphCache(BroadcastEventListener broadcastEventListener) {
     this.broadcastEventListener = broadcastEventListener;
+    this.reusedTargetNodesCounter =
+        new IntegerCounter(COUNTER_CATEGORY, REUSED_TARGET_NODES_COUNTER_NAME, ImmutableMap.of());
+    this.rebuiltTargetNodesCounter =
+        new IntegerCounter(COUNTER_CATEGORY, REBUILT_TARGET_NODES_COUNTER_NAME, ImmutableMap.of());
+  }
+
+  /** Like the other overload, but always creates the {@link ActionGraph} from scratch on a miss. */
+  public ActionGraphAndResolver getActionGraph(
+      final BuckEventBus eventBus,
+      final boolean checkActionGraphs,
+      final boolean skipActionGraphCache,
+      final TargetGraph targetGraph,
+      int keySeed) {
+    return getActionGraph(
+        eventBus,
+        checkActionGraphs,
+        skipActionGraphCache,
+        /* incrementalActionGraph */ false,
+        targetGraph,
+        keySeed);
   }
 
   /**
@@ -71,6 +140,8 @@ public class ActionGraphCache {
    * @param skipActionGraphCache if true, do not invalidate the {@link ActionGraph} cached in
    *     memory. Instead, create a new {@link ActionGraph} for this request, which should be
    *     garbage-collected at the end of the request.
+   * @param incrementalActionGraph if true, create the {@link ActionGraph} on a cache miss by
+   *     updating the last one, rather than from scratch.
    * @param targetGraph the target graph that the action graph will be based on.
    * @return a {@link ActionGraphAndResolver}
    */
@@ -78,6 +149,7 @@ public class ActionGraphCache {
       final BuckEventBus eventBus,
       final boolean checkActionGraphs,
       final boolean skipActionGraphCache,
+      final boolean incrementalActionGraph,
       final TargetGraph targetGraph,
       int keySeed) {
     ActionGraphEvent.Started started = ActionGraphEvent.started();
@@ -105,15 +177,27 @@ public class ActionGraphCache {
           LOG.info("ActionGraph cache miss. TargetGraphs mismatched.");
         }
         lastTargetGraphHash = targetGraphHash;
-        Pair<TargetGraph, ActionGraphAndResolver> freshActionGraph =
-            new Pair<TargetGraph, ActionGraphAndResolver>(
-                targetGraph,
-                createActionGraph(
-                    eventBus, new DefaultTargetNodeToBuildRuleTransformer(), targetGraph));
-        out = freshActionGraph.getSecond();
+        int generations = 0;
+        if (incrementalActionGraph
+            && incrementalBaseActionGraph != null
+            && incrementalBaseGenerations < MAX_INCREMENTAL_GENERATIONS) {
+          out = createIncrementalActionGraph(eventBus, incrementalBaseActionGraph, targetGraph);
+          generations = incrementalBaseGenerations + 1;
+          if (checkActionGraphs) {
+            compareActionGraphs(eventBus, out, targetGraph, fieldLoader);
+          }
+        } else {
+          out =
+              createActionGraph(
+                  eventBus, new DefaultTargetNodeToBuildRuleTransformer(), targetGraph);
+          rebuiltTargetNodesCounter.inc(targetGraph.getNodes().size());
+        }
         if (!skipActionGraphCache) {
           LOG.info("ActionGraph cache assignment. skipActionGraphCache? %s", skipActionGraphCache);
-          lastActionGraph = freshActionGraph;
+          lastActionGraph = new Pair<>(targetGraph, out);
+          incrementalBaseActionGraph = incrementalActionGraph ? lastActionGraph : null;
+          incrementalBaseGenerations = generations;
+          pathsChangedSinceIncrementalBase.clear();
         }
       }
     } finally {
@@ -163,8 +247,12 @@ public class ActionGraphCache {
       final BuckEventBus eventBus,
       TargetNodeToBuildRuleTransformer transformer,
       TargetGraph targetGraph) {
-    final BuildRuleResolver resolver = new BuildRuleResolver(targetGraph, transformer, eventBus);
+    BuildRuleResolver resolver = new BuildRuleResolver(targetGraph, transformer, eventBus);
+    return createActionGraph(resolver, targetGraph);
+  }
 
+  private static ActionGraphAndResolver createActionGraph(
+      final BuildRuleResolver resolver, TargetGraph targetGraph) {
     AbstractBottomUpTraversal<TargetNode<?, ?>, RuntimeException> bottomUpTraversal =
         new AbstractBottomUpTraversal<TargetNode<?, ?>, RuntimeException>(targetGraph) {
 
@@ -185,6 +273,118 @@ public class ActionGraphCache {
         .build();
   }
 
+  /**
+   * Updates the ActionGraph of {@code base} for {@code targetGraph}, reusing the rules of every
+   * target whose nodes and transitive deps are unchanged.
+   */
+  private ActionGraphAndResolver createIncrementalActionGraph(
+      BuckEventBus eventBus,
+      Pair<TargetGraph, ActionGraphAndResolver> base,
+      TargetGraph targetGraph) {
+    Set<UnflavoredBuildTarget> reusableTargets =
+        getReusableTargets(base.getFirst(), targetGraph, pathsChangedSinceIncrementalBase);
+
+    int reusedNodes = 0;
+    for (TargetNode<?, ?> node : targetGraph.getNodes()) {
+      if (reusableTargets.contains(node.getBuildTarget().getUnflavoredBuildTarget())) {
+        reusedNodes++;
+      }
+    }
+    int rebuiltNodes = targetGraph.getNodes().size() - reusedNodes;
+    LOG.info(
+        "Incremental ActionGraph update: reusing the rules of %d target nodes, rebuilding %d.",
+        reusedNodes,
+        rebuiltNodes);
+    reusedTargetNodesCounter.inc(reusedNodes);
+    rebuiltTargetNodesCounter.inc(rebuiltNodes);
+
+    // The base resolver is left untouched, so the reused rules, which may hold on to it, keep
+    // working, and the base ActionGraph stays valid if this one is not cached.
+    BuildRuleResolver resolver =
+        base.getSecond()
+            .getResolver()
+            .withRetainedRules(
+                targetGraph,
+                eventBus,
+                target -> reusableTargets.contains(target.getUnflavoredBuildTarget()));
+    return createActionGraph(resolver, targetGraph);
+  }
+
+  /**
+   * Finds the targets whose rules can be carried over from the ActionGraph of {@code
+   * lastTargetGraph} to that of {@code targetGraph}. All the rules of a target, including flavored
+   * ones, are reused together, and only if none of the nodes of the target or of its transitive
+   * deps changed. The parser hands out the same {@link TargetNode} instance for as long as the
+   * build file it comes from is unchanged, so nodes are compared by identity.
+   *
+   * <p>A file added or removed only changes the rules of the targets of the package which owns it,
+   * the closest one above it of those in the graph, as descriptions, like globs, don't look into
+   * the packages below theirs. A file in a package which is not in the graph counts for the closest
+   * one above it which is.
+   */
+  @VisibleForTesting
+  static Set<UnflavoredBuildTarget> getReusableTargets(
+      TargetGraph lastTargetGraph, TargetGraph targetGraph, SetMultimap<Path, Path> changedPaths) {
+    Set<TargetNode<?, ?>> lastNodes = Sets.newIdentityHashSet();
+    lastNodes.addAll(lastTargetGraph.getNodes());
+    Set<TargetNode<?, ?>> nodes = Sets.newIdentityHashSet();
+    nodes.addAll(targetGraph.getNodes());
+
+    Multimap<UnflavoredBuildTarget, TargetNode<?, ?>> nodesByTarget = HashMultimap.create();
+    SetMultimap<Path, Path> packages = HashMultimap.create();
+    for (TargetNode<?, ?> node : targetGraph.getNodes()) {
+      UnflavoredBuildTarget target = node.getBuildTarget().getUnflavoredBuildTarget();
+      nodesByTarget.put(target, node);
+      packages.put(target.getCellPath(), target.getBasePath());
+    }
+    SetMultimap<Path, Path> changedPackages = HashMultimap.create();
+    for (Map.Entry<Path, Path> changedPath : changedPaths.entries()) {
+      Set<Path> packagesOfCell = packages.get(changedPath.getKey());
+      getPackageOwningPath(changedPath.getValue(), packagesOfCell)
+          .ifPresent(basePath -> changedPackages.put(changedPath.getKey(), basePath));
+    }
+
+    Set<UnflavoredBuildTarget> dirtyTargets = new HashSet<>();
+    for (TargetNode<?, ?> node : targetGraph.getNodes()) {
+      UnflavoredBuildTarget target = node.getBuildTarget().getUnflavoredBuildTarget();
+      if (!lastNodes.contains(node)
+          || changedPackages.containsEntry(target.getCellPath(), target.getBasePath())) {
+        dirtyTargets.add(target);
+      }
+    }
+    for (TargetNode<?, ?> lastNode : lastTargetGraph.getNodes()) {
+      if (!nodes.contains(lastNode)) {
+        dirtyTargets.add(lastNode.getBuildTarget().getUnflavoredBuildTarget());
+      }
+    }
+
+    // Everything depending on a dirty target is dirty too.
+    Deque<UnflavoredBuildTarget> toVisit = new ArrayDeque<>(dirtyTargets);
+    while (!toVisit.isEmpty()) {
+      for (TargetNode<?, ?> node : nodesByTarget.get(toVisit.pop())) {
+        for (TargetNode<?, ?> dependent : targetGraph.getIncomingNodesFor(node)) {
+          UnflavoredBuildTarget dependentTarget =
+              dependent.getBuildTarget().getUnflavoredBuildTarget();
+          if (dirtyTargets.add(dependentTarget)) {
+            toVisit.push(dependentTarget);
+          }
+        }
+      }
+    }
+
+    return Sets.difference(nodesByTarget.keySet(), dirtyTargets).immutableCopy();
+  }
+
+  /** @return the closest of {@code packages} above {@code path}, if any is. */
+  private static Optional<Path> getPackageOwningPath(Path path, Set<Path> packages) {
+    for (Path directory = path.getParent(); directory != null; directory = directory.getParent()) {
+      if (packages.contains(directory)) {
+        return Optional.of(directory);
+      }
+    }
+    return packages.stream().filter(basePath -> basePath.toString().isEmpty()).findFirst();
+  }
+
   private static HashCode getTargetGraphHash(TargetGraph targetGraph) {
     Hasher hasher = Hashing.sha1().newHasher();
     ImmutableSet<TargetNode<?, ?>> nodes = targetGraph.getNodes();
@@ -279,7 +479,11 @@ public class ActionGraphCache {
     if (!isCacheEmpty()) {
       LOG.info("ActionGraphCache invalidation due to Watchman event %s.", event);
     }
-    invalidateCache();
+    lastActionGraph = null;
+    lastTargetGraphHash = null;
+    if (incrementalBaseActionGraph != null) {
+      pathsChangedSinceIncrementalBase.put(event.getCellPath(), event.getPath());
+    }
     switch (event.getKind()) {
       case CREATE:
         broadcastEventListener.broadcast(
@@ -307,6 +511,12 @@ public class ActionGraphCache {
   private void invalidateCache() {
     lastActionGraph = null;
     lastTargetGraphHash = null;
+    incrementalBaseActionGraph = null;
+    pathsChangedSinceIncrementalBase.clear();
+  }
+
+  public ImmutableList<Counter> getCounters() {
+    return ImmutableList.of(reusedTargetNodesCounter, rebuiltTargetNodesCounter);
   }
 
   @VisibleForTesting
@@ -0,0 +1,177 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.rules;
+
+import com.facebook.buck.artifact_cache.ArtifactCache;
+import com.facebook.buck.artifact_cache.CacheResult;
+import com.facebook.buck.io.LazyPath;
+import com.facebook.buck.io.MoreFiles;
+import com.facebook.buck.log.Logger;
+import com.facebook.buck.util.concurrent.ResourceAmounts;
+import com.facebook.buck.util.concurrent.WeightedListeningExecutorService;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Speculatively fetches the artifacts of rules which are about to be checked against the cache
+ * using a single {@link ArtifactCache#multiFetch} call, so that a build of mostly cached rules is
+ * bound by bandwidth rather than by the latency of one cache round-trip per rule.
+ *
+ * <p>Each prefetched artifact is claimed at most once by the rule key cache check of its rule.
+ * Artifacts which are never claimed are deleted when the prefetcher is closed.
+ */
+@ThreadSafe
+class ArtifactCachePrefetcher implements AutoCloseable {
+
+  private static final Logger LOG = Logger.get(ArtifactCachePrefetcher.class);
+
+  private final WeightedListeningExecutorService cacheActivityService;
+  private final ResourceAmounts resourceAmounts;
+  private final ConcurrentMap<RuleKey, Prefetch> prefetches = new ConcurrentHashMap<>();
+
+  ArtifactCachePrefetcher(
+      WeightedListeningExecutorService cacheActivityService, ResourceAmounts resourceAmounts) {
+    this.cacheActivityService = cacheActivityService;
+    this.resourceAmounts = resourceAmounts;
+  }
+
+  /**
+   * Starts fetching the artifacts of {@code rules}, keyed by their rule keys, in the background.
+   * Keys which are already being prefetched are skipped, and nothing is fetched for fewer than two
+   * new keys, as a single fetch is no cheaper ahead of time than when the rule asks for it.
+   */
+  public void prefetch(ArtifactCache artifactCache, Map<RuleKey, BuildRule> rules) {
+    Map<RuleKey, Prefetch> started = new LinkedHashMap<>();
+    for (Map.Entry<RuleKey, BuildRule> entry : rules.entrySet()) {
+      Prefetch prefetch = new Prefetch(entry.getValue());
+      if (prefetches.putIfAbsent(entry.getKey(), prefetch) == null) {
+        started.put(entry.getKey(), prefetch);
+      }
+    }
+    if (started.size() < 2) {
+      for (Map.Entry<RuleKey, Prefetch> entry : started.entrySet()) {
+        // The prefetch may have been claimed already, so make sure whoever did is not left waiting.
+        prefetches.remove(entry.getKey(), entry.getValue());
+        entry.getValue().result.set(CacheResult.ignored());
+      }
+      return;
+    }
+
+    LOG.debug("Prefetching %d artifacts", started.size());
+    ImmutableMap<RuleKey, LazyPath> requests =
+        ImmutableMap.copyOf(Maps.transformValues(started, prefetch -> prefetch.output));
+    ListenableFuture<ImmutableMap<RuleKey, CacheResult>> results =
+        cacheActivityService.submit(() -> artifactCache.multiFetch(requests), resourceAmounts);
+    for (Map.Entry<RuleKey, Prefetch> entry : started.entrySet()) {
+      RuleKey ruleKey = entry.getKey();
+      // Prefetching is only an optimization, so failures are reported as ignored results, which
+      // make the rule fall back to a regular fetch rather than fail the build.
+      entry
+          .getValue()
+          .result
+          .setFuture(
+              Futures.catching(
+                  Futures.transform(
+                      results,
+                      resultsByKey ->
+                          Optional.ofNullable(resultsByKey.get(ruleKey))
+                              .orElse(CacheResult.ignored()),
+                      MoreExecutors.directExecutor()),
+                  Throwable.class,
+                  e -> {
+                    LOG.warn(e, "Failed to prefetch artifact for %s", ruleKey);
+                    return CacheResult.ignored();
+                  },
+                  MoreExecutors.directExecutor()));
+    }
+  }
+
+  /** @return the prefetch started for {@code ruleKey}, which no one else can claim afterwards. */
+  public Optional<Prefetch> claim(RuleKey ruleKey) {
+    return Optional.ofNullable(prefetches.remove(ruleKey));
+  }
+
+  @Override
+  public void close() {
+    for (Prefetch prefetch : prefetches.values()) {
+      prefetch.result.addListener(prefetch::deleteOutput, MoreExecutors.directExecutor());
+    }
+    prefetches.clear();
+  }
+
+  /**
+   * An artifact fetch started ahead of the rule key cache check which needs it. Its result is
+   * {@link CacheResult#ignored()} if the artifact could not be prefetched.
+   */
+  static class Prefetch {
+    private final SettableFuture<CacheResult> result = SettableFuture.create();
+    private final AtomicReference<Path> createdOutput = new AtomicReference<>();
+    private final LazyPath output;
+
+    private Prefetch(BuildRule rule) {
+      this.output =
+          new LazyPath() {
+            @Override
+            protected Path create() throws IOException {
+              Path path =
+                  Files.createTempFile(
+                      "buck_artifact_" + MoreFiles.sanitize(rule.getBuildTarget().getShortName()),
+                      ".zip");
+              createdOutput.set(path);
+              return path;
+            }
+          };
+    }
+
+    /** @return the path the artifact is fetched into. */
+    public LazyPath getOutput() {
+      return output;
+    }
+
+    /** @return a future which never fails, holding the result of the fetch. */
+    public ListenableFuture<CacheResult> getResult() {
+      return result;
+    }
+
+    /** Deletes the fetched artifact, if anything was written for it. */
+    public void deleteOutput() {
+      Path path = createdOutput.get();
+      if (path == null) {
+        return;
+      }
+      try {
+        Files.deleteIfExists(path);
+      } catch (IOException e) {
+        LOG.warn(e, "Failed to delete prefetched artifact %s", path);
+      }
+    }
+  }
+}
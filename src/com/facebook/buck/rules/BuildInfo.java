@@ -66,6 +66,9 @@ public class BuildInfo {
 
     /** Key containing the ID of the build that previously built/cached this rule's outputs. */
     static final String ORIGIN_BUILD_ID = "ORIGIN_BUILD_ID";
+
+    /** Key containing the wall time, in milliseconds, the rule's steps took to build locally. */
+    public static final String BUILD_DURATION_MILLIS = "BUILD_DURATION_MILLIS";
   }
 
   /** All keys corresponding to rule keys. */
@@ -46,6 +46,8 @@ public class BuildInfoStoreManager implements AutoCloseable {
                 return new MapDBBuildInfoStore(filesystem);
               case SQLITE:
                 return new SQLiteBuildInfoStore(filesystem);
+              case LOG_STRUCTURED:
+                return new LogStructuredBuildInfoStore(filesystem);
               case FILESYSTEM:
                 return new FilesystemBuildInfoStore(filesystem);
               default:
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.rules;
+
+import com.facebook.buck.model.BuildTarget;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.ToLongFunction;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Estimates, for each rule, the length of the longest chain of work which remains to be done once
+ * it is ready to run: its own historical duration plus that of the most expensive chain of rules
+ * which depend on it, up to a top-level rule.
+ *
+ * <p>The estimate is refined as the build engine walks the action graph from the top-level rules
+ * down to their deps, so rules discovered through several dependents end up with the maximum over
+ * all the paths seen so far. Since a rule only becomes runnable once its own deps have been built,
+ * its estimate has usually settled by the time it competes for resources.
+ */
+@ThreadSafe
+class BuildRuleCriticalPathEstimator {
+
+  private final ToLongFunction<BuildRule> durationMillisLoader;
+  private final ConcurrentMap<BuildTarget, Long> durationsMillis = new ConcurrentHashMap<>();
+  private final ConcurrentMap<BuildTarget, Long> criticalPathsMillis = new ConcurrentHashMap<>();
+
+  /**
+   * @param durationMillisLoader supplies the historical duration of a rule, or 0 if it is unknown.
+   */
+  BuildRuleCriticalPathEstimator(ToLongFunction<BuildRule> durationMillisLoader) {
+    this.durationMillisLoader = durationMillisLoader;
+  }
+
+  private long getDurationMillis(BuildRule rule) {
+    return durationsMillis.computeIfAbsent(
+        rule.getBuildTarget(), target -> durationMillisLoader.applyAsLong(rule));
+  }
+
+  /** Records a rule the build was asked for, whose critical path is only its own duration. */
+  public void registerTopLevelRule(BuildRule rule) {
+    criticalPathsMillis.merge(rule.getBuildTarget(), getDurationMillis(rule), Math::max);
+  }
+
+  /** Propagates the critical path estimate of {@code rule} to its {@code deps}. */
+  public void registerDeps(BuildRule rule, Iterable<BuildRule> deps) {
+    long criticalPathMillis = getCriticalPathMillis(rule);
+    for (BuildRule dep : deps) {
+      criticalPathsMillis.merge(
+          dep.getBuildTarget(), criticalPathMillis + getDurationMillis(dep), Math::max);
+    }
+  }
+
+  /** @return the current estimate of the remaining critical path starting at {@code rule}. */
+  public long getCriticalPathMillis(BuildRule rule) {
+    Long criticalPathMillis = criticalPathsMillis.get(rule.getBuildTarget());
+    return criticalPathMillis == null ? getDurationMillis(rule) : criticalPathMillis;
+  }
+
+  /** Sorts {@code rules} so that those with the longest critical path come first. */
+  public void sortByDescendingCriticalPath(List<BuildRule> rules) {
+    // Estimates may grow concurrently, so sort on a snapshot to keep the comparator consistent.
+    Map<BuildRule, Long> snapshot = new HashMap<>();
+    for (BuildRule rule : rules) {
+      snapshot.put(rule, getCriticalPathMillis(rule));
+    }
+    rules.sort(Comparator.comparing(snapshot::get, Comparator.reverseOrder()));
+  }
+}
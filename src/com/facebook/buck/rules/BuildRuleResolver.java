@@ -31,9 +31,13 @@ import com.google.common.cache.LoadingCache;
 import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Ordering;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.function.Predicate;
 import javax.annotation.Nullable;
 
 /**
@@ -51,6 +55,16 @@ public class BuildRuleResolver {
   private final ConcurrentHashMap<BuildTarget, BuildRule> buildRuleIndex;
   private final LoadingCache<Pair<BuildTarget, Class<?>>, Optional<?>> metadataCache;
 
+  /**
+   * The target whose rule or metadata was being created when each rule of the index was added to
+   * it, so that rules can be carried over to a later version of the target graph along with the
+   * target they were created on behalf of.
+   */
+  private final ConcurrentHashMap<BuildTarget, BuildTarget> ruleCreators;
+
+  private final ThreadLocal<Deque<BuildTarget>> targetsBeingCreated =
+      ThreadLocal.withInitial(ArrayDeque::new);
+
   public BuildRuleResolver(
       TargetGraph targetGraph, TargetNodeToBuildRuleTransformer buildRuleGenerator) {
     this(targetGraph, buildRuleGenerator, null);
@@ -68,6 +82,7 @@ public class BuildRuleResolver {
     final int initialCapacity = (int) (targetGraph.getNodes().size() * 5 * 1.1);
 
     this.buildRuleIndex = new ConcurrentHashMap<>(initialCapacity);
+    this.ruleCreators = new ConcurrentHashMap<>(initialCapacity);
     this.metadataCache =
         CacheBuilder.newBuilder()
             .initialCapacity(initialCapacity)
@@ -76,7 +91,13 @@ public class BuildRuleResolver {
                   @Override
                   public Optional<?> load(Pair<BuildTarget, Class<?>> key) throws Exception {
                     TargetNode<?, ?> node = BuildRuleResolver.this.targetGraph.get(key.getFirst());
-                    return load(node, key.getSecond());
+                    Deque<BuildTarget> creating = targetsBeingCreated.get();
+                    creating.push(key.getFirst());
+                    try {
+                      return load(node, key.getSecond());
+                    } finally {
+                      creating.pop();
+                    }
                   }
 
                   @SuppressWarnings("unchecked")
@@ -130,7 +151,13 @@ public class BuildRuleResolver {
       return rule;
     }
     TargetNode<?, ?> node = targetGraph.get(target);
-    rule = buildRuleGenerator.transform(targetGraph, this, node);
+    Deque<BuildTarget> creating = targetsBeingCreated.get();
+    creating.push(target);
+    try {
+      rule = buildRuleGenerator.transform(targetGraph, this, node);
+    } finally {
+      creating.pop();
+    }
     Preconditions.checkState(
         // TODO(jakubzika): This should hold for flavored build targets as well.
         rule.getBuildTarget().getUnflavoredBuildTarget().equals(target.getUnflavoredBuildTarget()),
@@ -148,6 +175,7 @@ public class BuildRuleResolver {
         target,
         rule,
         oldRule);
+    ruleCreators.putIfAbsent(target, target);
     return rule;
   }
 
@@ -212,6 +240,10 @@ public class BuildRuleResolver {
       throw new IllegalStateException(
           "A build rule for this target has already been created: " + oldValue.getBuildTarget());
     }
+    BuildTarget creator = targetsBeingCreated.get().peek();
+    if (creator != null) {
+      ruleCreators.putIfAbsent(buildRule.getBuildTarget(), creator);
+    }
     return buildRule;
   }
 
@@ -223,6 +255,43 @@ public class BuildRuleResolver {
     return buildRules;
   }
 
+  /**
+   * @return the target whose rule or metadata was being created when the rule for {@code target}
+   *     was added to the index, if there was one.
+   */
+  Optional<BuildTarget> getRuleCreator(BuildTarget target) {
+    return Optional.ofNullable(ruleCreators.get(target));
+  }
+
+  /**
+   * Creates a resolver for {@code newTargetGraph} which starts out with the rules and metadata of
+   * this one which were created on behalf of the targets accepted by {@code isRetainedCreator}.
+   * This resolver is left unchanged, and the carried over rules keep referring to it, so it stays
+   * alive, with all its rules, for as long as the new one does. Callers which chain resolvers this
+   * way should start from a new resolver every few generations.
+   */
+  BuildRuleResolver withRetainedRules(
+      TargetGraph newTargetGraph,
+      @Nullable BuckEventBus newEventBus,
+      Predicate<BuildTarget> isRetainedCreator) {
+    BuildRuleResolver resolver =
+        new BuildRuleResolver(newTargetGraph, buildRuleGenerator, newEventBus);
+    for (Map.Entry<BuildTarget, BuildTarget> entry : ruleCreators.entrySet()) {
+      BuildRule rule = buildRuleIndex.get(entry.getKey());
+      if (rule != null && isRetainedCreator.test(entry.getValue())) {
+        resolver.buildRuleIndex.put(entry.getKey(), rule);
+        resolver.ruleCreators.put(entry.getKey(), entry.getValue());
+      }
+    }
+    for (Map.Entry<Pair<BuildTarget, Class<?>>, Optional<?>> entry :
+        metadataCache.asMap().entrySet()) {
+      if (isRetainedCreator.test(entry.getKey().getFirst())) {
+        resolver.metadataCache.put(entry.getKey(), entry.getValue());
+      }
+    }
+    return resolver;
+  }
+
   @Nullable
   public BuckEventBus getEventBus() {
     return eventBus;
@@ -47,7 +47,6 @@ import com.facebook.buck.step.StepRunner;
 import com.facebook.buck.util.ContextualProcessExecutor;
 import com.facebook.buck.util.HumanReadableException;
 import com.facebook.buck.util.MoreCollectors;
-import com.facebook.buck.util.MoreFunctions;
 import com.facebook.buck.util.ObjectMappers;
 import com.facebook.buck.util.OptionalCompat;
 import com.facebook.buck.util.RichStream;
@@ -57,6 +56,7 @@ import com.facebook.buck.util.cache.ProjectFileHashCache;
 import com.facebook.buck.util.concurrent.MoreFutures;
 import com.facebook.buck.util.concurrent.ResourceAmounts;
 import com.facebook.buck.util.concurrent.WeightedListeningExecutorService;
+import com.facebook.buck.zip.UnstreamableZipEntryException;
 import com.facebook.buck.zip.Unzip;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.google.common.annotations.VisibleForTesting;
@@ -72,6 +72,7 @@ import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.google.common.hash.HashCode;
 import com.google.common.io.ByteStreams;
+import com.google.common.primitives.Longs;
 import com.google.common.util.concurrent.AsyncFunction;
 import com.google.common.util.concurrent.Atomics;
 import com.google.common.util.concurrent.FutureCallback;
@@ -82,6 +83,7 @@ import com.google.common.util.concurrent.SettableFuture;
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.Closeable;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -91,6 +93,7 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -98,10 +101,13 @@ import java.util.Set;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Stream;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
@@ -164,6 +170,9 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
   private final RuleKeyDiagnostics<RuleKey, String> defaultRuleKeyDiagnostics;
 
   private final BuildInfoStoreManager buildInfoStoreManager;
+  private final Optional<BuildRuleCriticalPathEstimator> criticalPathEstimator;
+  private final Optional<ArtifactCachePrefetcher> artifactCachePrefetcher;
+  private final Optional<RuleKeyPrecomputer> ruleKeyPrecomputer;
 
   public CachingBuildEngine(
       CachingBuildEngineDelegate cachingBuildEngineDelegate,
@@ -178,6 +187,9 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
       final BuildRuleResolver resolver,
       BuildInfoStoreManager buildInfoStoreManager,
       ResourceAwareSchedulingInfo resourceAwareSchedulingInfo,
+      SchedulingMode schedulingMode,
+      boolean artifactCachePrefetchEnabled,
+      boolean ruleKeyPrecomputeEnabled,
       RuleKeyFactories ruleKeyFactories) {
     this.cachingBuildEngineDelegate = cachingBuildEngineDelegate;
 
@@ -200,6 +212,9 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
 
     this.ruleDeps = new RuleDepsCache(resolver);
     this.unskippedRulesTracker = createUnskippedRulesTracker(buildMode, ruleDeps, resolver);
+    this.criticalPathEstimator = createCriticalPathEstimator(schedulingMode);
+    this.artifactCachePrefetcher = createArtifactCachePrefetcher(artifactCachePrefetchEnabled);
+    this.ruleKeyPrecomputer = createRuleKeyPrecomputer(ruleKeyPrecomputeEnabled, ruleDeps);
     this.defaultRuleKeyDiagnostics =
         new RuleKeyDiagnostics<>(
             rule ->
@@ -228,7 +243,10 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
       SourcePathRuleFinder ruleFinder,
       SourcePathResolver pathResolver,
       RuleKeyFactories ruleKeyFactories,
-      ResourceAwareSchedulingInfo resourceAwareSchedulingInfo) {
+      ResourceAwareSchedulingInfo resourceAwareSchedulingInfo,
+      SchedulingMode schedulingMode,
+      boolean artifactCachePrefetchEnabled,
+      boolean ruleKeyPrecomputeEnabled) {
     this.cachingBuildEngineDelegate = cachingBuildEngineDelegate;
 
     this.service = service;
@@ -250,11 +268,17 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
 
     this.ruleDeps = new RuleDepsCache(resolver);
     this.unskippedRulesTracker = createUnskippedRulesTracker(buildMode, ruleDeps, resolver);
+    this.criticalPathEstimator = createCriticalPathEstimator(schedulingMode);
+    this.artifactCachePrefetcher = createArtifactCachePrefetcher(artifactCachePrefetchEnabled);
+    this.ruleKeyPrecomputer = createRuleKeyPrecomputer(ruleKeyPrecomputeEnabled, ruleDeps);
     this.defaultRuleKeyDiagnostics = RuleKeyDiagnostics.nop();
   }
 
   @Override
-  public void close() {}
+  public void close() {
+    artifactCachePrefetcher.ifPresent(ArtifactCachePrefetcher::close);
+    ruleKeyPrecomputer.ifPresent(RuleKeyPrecomputer::close);
+  }
 
   /**
    * We have a lot of places where tasks are submitted into a service implicitly. There is no way to
@@ -278,6 +302,41 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
     return Optional.of(new UnskippedRulesTracker(ruleDeps, resolver));
   }
 
+  private Optional<BuildRuleCriticalPathEstimator> createCriticalPathEstimator(
+      SchedulingMode schedulingMode) {
+    if (schedulingMode != SchedulingMode.CRITICAL_PATH) {
+      return Optional.empty();
+    }
+    return Optional.of(new BuildRuleCriticalPathEstimator(this::readBuildDurationMillis));
+  }
+
+  private Optional<ArtifactCachePrefetcher> createArtifactCachePrefetcher(
+      boolean artifactCachePrefetchEnabled) {
+    if (!artifactCachePrefetchEnabled) {
+      return Optional.empty();
+    }
+    return Optional.of(
+        new ArtifactCachePrefetcher(cacheActivityService, CACHE_CHECK_RESOURCE_AMOUNTS));
+  }
+
+  private static Optional<RuleKeyPrecomputer> createRuleKeyPrecomputer(
+      boolean ruleKeyPrecomputeEnabled, RuleDepsCache ruleDeps) {
+    if (!ruleKeyPrecomputeEnabled) {
+      return Optional.empty();
+    }
+    return Optional.of(
+        new RuleKeyPrecomputer(Runtime.getRuntime().availableProcessors(), ruleDeps));
+  }
+
+  private long readBuildDurationMillis(BuildRule rule) {
+    return buildInfoStoreManager
+        .get(rule.getProjectFilesystem(), metadataStorage)
+        .readMetadata(rule.getBuildTarget(), BuildInfo.MetadataKey.BUILD_DURATION_MILLIS)
+        // The metadata may come from an older or foreign build, so treat garbage as unknown.
+        .map(Longs::tryParse)
+        .orElse(0L);
+  }
+
   @VisibleForTesting
   void setBuildRuleResult(
       BuildRule buildRule, BuildRuleSuccessType success, CacheResult cacheResult) {
@@ -305,13 +364,78 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
       ConcurrentLinkedQueue<ListenableFuture<Void>> asyncCallbacks) {
     List<ListenableFuture<BuildResult>> depResults =
         Lists.newArrayListWithExpectedSize(rule.getBuildDeps().size());
-    for (BuildRule dep : shuffled(rule.getBuildDeps())) {
+    List<BuildRule> deps = shuffled(rule.getBuildDeps());
+    if (criticalPathEstimator.isPresent()) {
+      // Kick off the deps on the longest path first, so they get ahead in the executor's queue.
+      criticalPathEstimator.get().registerDeps(rule, deps);
+      criticalPathEstimator.get().sortByDescendingCriticalPath(deps);
+    }
+    for (BuildRule dep : deps) {
       depResults.add(
           getBuildRuleResultWithRuntimeDeps(dep, buildContext, executionContext, asyncCallbacks));
     }
     return Futures.allAsList(depResults);
   }
 
+  /**
+   * Starts fetching the artifacts of the deps of {@code rule} which are about to be checked against
+   * the cache, so that their rule key cache checks find them already downloaded.
+   *
+   * <p>The rule keys of the deps are taken from the futures already scheduled for them, so this
+   * never computes keys on the calling thread.
+   *
+   * @return a future which completes, and never fails, once the prefetch has been started. The
+   *     deps must not be scheduled before then, or their cache checks could miss the prefetch.
+   */
+  private ListenableFuture<Void> prefetchDepArtifacts(
+      BuildRule rule, BuildEngineBuildContext buildContext) {
+    if (!artifactCachePrefetcher.isPresent()) {
+      return Futures.immediateFuture(null);
+    }
+    List<BuildRule> deps = new ArrayList<>();
+    List<ListenableFuture<RuleKey>> depRuleKeys = new ArrayList<>();
+    for (BuildRule dep : rule.getBuildDeps()) {
+      if (dep.isCacheable() && !results.containsKey(dep.getBuildTarget())) {
+        deps.add(dep);
+        depRuleKeys.add(calculateRuleKey(dep, buildContext));
+      }
+    }
+    ListenableFuture<Void> prefetchStarted =
+        Futures.transform(
+            Futures.successfulAsList(depRuleKeys),
+            ruleKeys -> {
+              Map<RuleKey, BuildRule> candidates = new LinkedHashMap<>();
+              for (int i = 0; i < deps.size(); i++) {
+                BuildRule dep = deps.get(i);
+                RuleKey ruleKey = ruleKeys.get(i);
+                // Deps whose keys failed will fail their own builds, and aren't worth fetching.
+                if (ruleKey == null) {
+                  continue;
+                }
+                Optional<RuleKey> localRuleKey =
+                    buildInfoStoreManager
+                        .get(dep.getProjectFilesystem(), metadataStorage)
+                        .readMetadata(dep.getBuildTarget(), BuildInfo.MetadataKey.RULE_KEY)
+                        .map(RuleKey::new);
+                if (!ruleKey.equals(localRuleKey.orElse(null))) {
+                  candidates.put(ruleKey, dep);
+                }
+              }
+              artifactCachePrefetcher.get().prefetch(buildContext.getArtifactCache(), candidates);
+              return null;
+            },
+            serviceByAdjustingDefaultWeightsTo(SCHEDULING_MORE_WORK_RESOURCE_AMOUNTS));
+    // Prefetching is only an optimization, so its failures must not hold up the build.
+    return Futures.catching(
+        prefetchStarted,
+        Throwable.class,
+        e -> {
+          LOG.warn(e, "Failed to prefetch the artifacts of the deps of %s.", rule);
+          return null;
+        },
+        MoreExecutors.directExecutor());
+  }
+
   private static List<BuildRule> shuffled(Iterable<BuildRule> rules) {
     ArrayList<BuildRule> rulesList = Lists.newArrayList(rules);
     Collections.shuffle(rulesList);
@@ -324,6 +448,7 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
       final ExecutionContext executionContext,
       final RuleKeyFactories ruleKeyFactory,
       final BuildableContext buildableContext,
+      final BuildInfoRecorder buildInfoRecorder,
       final CacheResult cacheResult)
       throws StepFailedException, InterruptedException {
     if (!buildContext.isKeepGoing() && firstFailure != null) {
@@ -335,7 +460,13 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
             rule,
             buildRuleDurationTracker,
             ruleKeyFactory.getDefaultRuleKeyFactory())) {
+      long startNanos = System.nanoTime();
       executeCommandsNowThatDepsAreBuilt(rule, buildContext, executionContext, buildableContext);
+      // Record how long the steps took, so that future builds can schedule this rule according
+      // to its position on the critical path.
+      buildInfoRecorder.addBuildMetadata(
+          BuildInfo.MetadataKey.BUILD_DURATION_MILLIS,
+          String.valueOf(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos)));
       return BuildResult.success(rule, BuildRuleSuccessType.BUILT_LOCALLY, cacheResult);
     }
   }
@@ -477,16 +608,28 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
         return Futures.immediateFuture(buildResult.get());
       }
 
-      // 2. Rule key cache lookup.
+      // 2. Rule key cache lookup, once a prefetch of the artifact, if any, has completed.
+      Optional<ArtifactCachePrefetcher.Prefetch> prefetch =
+          artifactCachePrefetcher.flatMap(
+              prefetcher ->
+                  prefetcher.claim(ruleKeyFactories.getDefaultRuleKeyFactory().build(rule)));
       AtomicReference<CacheResult> rulekeyCacheResult = new AtomicReference<>();
       ListenableFuture<Optional<BuildResult>> buildResultFuture =
-          cacheActivityService.submit(
-              () -> {
-                CacheResult cacheResult = performRuleKeyCacheCheck(rule, buildContext);
-                rulekeyCacheResult.set(cacheResult);
-                return getBuildResultForRuleKeyCacheResult(rule, cacheResult, buildInfoRecorder);
-              },
-              CACHE_CHECK_RESOURCE_AMOUNTS);
+          Futures.transformAsync(
+              prefetch
+                  .map(ArtifactCachePrefetcher.Prefetch::getResult)
+                  .orElse(Futures.immediateFuture(CacheResult.ignored())),
+              prefetchResult ->
+                  cacheActivityService.submit(
+                      () -> {
+                        CacheResult cacheResult =
+                            performRuleKeyCacheCheck(rule, buildContext, prefetch);
+                        rulekeyCacheResult.set(cacheResult);
+                        return getBuildResultForRuleKeyCacheResult(
+                            rule, cacheResult, buildInfoRecorder);
+                      },
+                      CACHE_CHECK_RESOURCE_AMOUNTS),
+              MoreExecutors.directExecutor());
 
       // 3. Build deps.
       buildResultFuture =
@@ -497,8 +640,12 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
                   return Futures.immediateFuture(result);
                 }
                 return Futures.transformAsync(
-                    getDepResults(rule, buildContext, executionContext, asyncCallbacks),
-                    (depResults) -> handleDepsResults(rule, depResults),
+                    prefetchDepArtifacts(rule, buildContext),
+                    prefetchStarted ->
+                        Futures.transformAsync(
+                            getDepResults(rule, buildContext, executionContext, asyncCallbacks),
+                            (depResults) -> handleDepsResults(rule, depResults),
+                            MoreExecutors.directExecutor()),
                     MoreExecutors.directExecutor());
               },
               serviceByAdjustingDefaultWeightsTo(SCHEDULING_MORE_WORK_RESOURCE_AMOUNTS));
@@ -540,8 +687,10 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
                         executionContext,
                         ruleKeyFactories,
                         buildableContext,
+                        buildInfoRecorder,
                         Preconditions.checkNotNull(rulekeyCacheResult.get())),
-                getRuleResourceAmounts(rule));
+                getRuleResourceAmounts(rule),
+                criticalPathEstimator.map(e -> e.getCriticalPathMillis(rule)).orElse(0L));
           },
           serviceByAdjustingDefaultWeightsTo(SCHEDULING_MORE_WORK_RESOURCE_AMOUNTS));
     }
@@ -559,9 +708,27 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
     return Optional.empty();
   }
 
-  private CacheResult performRuleKeyCacheCheck(BuildRule rule, BuildEngineBuildContext buildContext)
+  private CacheResult performRuleKeyCacheCheck(
+      BuildRule rule,
+      BuildEngineBuildContext buildContext,
+      Optional<ArtifactCachePrefetcher.Prefetch> prefetch)
       throws IOException {
     final RuleKey defaultRuleKey = ruleKeyFactories.getDefaultRuleKeyFactory().build(rule);
+    if (prefetch.isPresent()) {
+      CacheResult prefetchResult = Futures.getUnchecked(prefetch.get().getResult());
+      if (prefetchResult.getType() == CacheResultType.HIT
+          || prefetchResult.getType() == CacheResultType.MISS) {
+        return unzipArtifactFromCacheResult(
+            rule,
+            defaultRuleKey,
+            prefetch.get().getOutput(),
+            buildContext,
+            rule.getProjectFilesystem(),
+            prefetchResult);
+      }
+      // The prefetch failed, so throw away whatever it left behind and fetch the artifact again.
+      prefetch.get().deleteOutput();
+    }
     return tryToFetchArtifactFromBuildCacheAndOverlayOnTopOfProjectFilesystem(
         rule,
         defaultRuleKey,
@@ -743,13 +910,15 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
             // Record the inputs into our metadata for next time.
             // TODO(#9117006): We don't support a way to serlialize `SourcePath`s to the cache,
             // so need to use DependencyFileEntry's instead and recover them on deserialization.
+            // They're recorded in their compact form, as this is read back for every rule which
+            // uses dep files.
             ImmutableList<String> inputStrings =
                 inputs
                     .stream()
                     .map(
                         inputString ->
-                            DependencyFileEntry.fromSourcePath(inputString, pathResolver))
-                    .map(MoreFunctions.toJsonFunction())
+                            DependencyFileEntry.fromSourcePath(inputString, pathResolver)
+                                .toMetadataString())
                     .collect(MoreCollectors.toImmutableList());
             buildInfoRecorder.addMetadata(BuildInfo.MetadataKey.DEP_FILE, inputStrings);
 
@@ -1260,6 +1429,20 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
       return fromOurCache;
     }
 
+    // Use the key being precomputed, if there is one, and compute it here if that fails.
+    Optional<ListenableFuture<RuleKey>> precomputed =
+        ruleKeyPrecomputer.flatMap(p -> p.getRuleKey(rule));
+    if (precomputed.isPresent()) {
+      ListenableFuture<RuleKey> calculated =
+          Futures.catching(
+              precomputed.get(),
+              Throwable.class,
+              e -> calculateDefaultRuleKey(rule, context),
+              serviceByAdjustingDefaultWeightsTo(RULE_KEY_COMPUTATION_RESOURCE_AMOUNTS));
+      ruleKeys.put(rule.getBuildTarget(), calculated);
+      return calculated;
+    }
+
     // Grab all the dependency rule key futures.  Since our rule key calculation depends on this
     // one, we need to wait for them to complete.
     ListenableFuture<List<RuleKey>> depKeys =
@@ -1279,16 +1462,7 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
     ListenableFuture<RuleKey> calculated =
         Futures.transform(
             depKeys,
-            (List<RuleKey> input) -> {
-              try (BuildRuleEvent.Scope scope =
-                  BuildRuleEvent.ruleKeyCalculationScope(
-                      context.getEventBus(),
-                      rule,
-                      buildRuleDurationTracker,
-                      ruleKeyFactories.getDefaultRuleKeyFactory())) {
-                return ruleKeyFactories.getDefaultRuleKeyFactory().build(rule);
-              }
-            },
+            (List<RuleKey> input) -> calculateDefaultRuleKey(rule, context),
             serviceByAdjustingDefaultWeightsTo(RULE_KEY_COMPUTATION_RESOURCE_AMOUNTS));
 
     // Record the rule key future.
@@ -1296,6 +1470,17 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
     return calculated;
   }
 
+  private RuleKey calculateDefaultRuleKey(BuildRule rule, BuildEngineBuildContext context) {
+    try (BuildRuleEvent.Scope scope =
+        BuildRuleEvent.ruleKeyCalculationScope(
+            context.getEventBus(),
+            rule,
+            buildRuleDurationTracker,
+            ruleKeyFactories.getDefaultRuleKeyFactory())) {
+      return ruleKeyFactories.getDefaultRuleKeyFactory().build(rule);
+    }
+  }
+
   @Override
   public BuildEngineResult build(
       BuildEngineBuildContext buildContext, ExecutionContext executionContext, BuildRule rule) {
@@ -1304,6 +1489,11 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
     final ConcurrentLinkedQueue<ListenableFuture<Void>> asyncCallbacks =
         new ConcurrentLinkedQueue<>();
     registerTopLevelRule(rule, buildContext.getEventBus());
+    criticalPathEstimator.ifPresent(estimator -> estimator.registerTopLevelRule(rule));
+    ruleKeyPrecomputer.ifPresent(
+        precomputer ->
+            precomputer.precompute(
+                ImmutableList.of(rule), dep -> calculateDefaultRuleKey(dep, buildContext)));
     ListenableFuture<BuildResult> resultFuture =
         getBuildRuleResultWithRuntimeDeps(rule, buildContext, executionContext, asyncCallbacks);
     return BuildEngineResult.builder()
@@ -1330,21 +1520,71 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
     }
 
     // Create a temp file whose extension must be ".zip" for Filesystems.newFileSystem() to infer
-    // that we are creating a zip-based FileSystem.
+    // that we are creating a zip-based FileSystem. Caches which can stream artifacts don't need it.
+    final AtomicBoolean zipPathCreated = new AtomicBoolean();
     final LazyPath lazyZipPath =
         new LazyPath() {
           @Override
           protected Path create() throws IOException {
+            zipPathCreated.set(true);
             return Files.createTempFile(
                 "buck_artifact_" + MoreFiles.sanitize(rule.getBuildTarget().getShortName()),
                 ".zip");
           }
         };
 
-    // TODO(mbolin): Change ArtifactCache.fetch() so that it returns a File instead of takes one.
-    // Then we could download directly from the remote cache into the on-disk cache and unzip it
-    // from there.
-    CacheResult cacheResult = artifactCache.fetch(ruleKey, lazyZipPath);
+    // The artifact is unzipped as it is fetched, rather than from a copy saved to disk. Failures to
+    // read or unzip it are failures of the cache, after which the rule is built locally, but
+    // failures to write it out are failures of the build.
+    final AtomicReference<ImmutableList<Path>> unzippedPaths =
+        new AtomicReference<>(ImmutableList.of());
+    final AtomicReference<IOException> payloadFailure = new AtomicReference<>();
+    CacheResult cacheResult =
+        artifactCache.fetch(
+            ruleKey,
+            lazyZipPath,
+            (metadata, payload) -> {
+              ReadFailureTrackingInputStream trackedPayload =
+                  new ReadFailureTrackingInputStream(payload);
+              try {
+                unzipArtifact(
+                    rule,
+                    ruleKey,
+                    buildContext,
+                    () ->
+                        unzippedPaths.set(
+                            Unzip.extractZipStream(
+                                trackedPayload,
+                                filesystem,
+                                Unzip.ExistingFileMode.OVERWRITE_AND_CLEAN_DIRECTORIES)));
+              } catch (IOException e) {
+                if (!(e instanceof ZipException) && !trackedPayload.hasFailed()) {
+                  throw e;
+                }
+                payloadFailure.set(e);
+              }
+            });
+
+    IOException failure = payloadFailure.get();
+    if (failure != null && cacheResult.getType().isSuccess()) {
+      if (failure instanceof UnstreamableZipEntryException) {
+        // Fall back to saving the artifact to a file, which it can always be unzipped from.
+        LOG.debug("Fetching '%s' again to a file to unzip it: %s", rule, failure.getMessage());
+        return unzipArtifactFromCacheResult(
+            rule,
+            ruleKey,
+            lazyZipPath,
+            buildContext,
+            filesystem,
+            artifactCache.fetch(ruleKey, lazyZipPath));
+      }
+      String msg = String.format("%s: %s", failure.getClass().getName(), failure.getMessage());
+      LOG.warn(
+          "%s: failed to unzip the artifact fetched with rule key %s, building it locally: %s",
+          rule.getBuildTarget(), ruleKey, msg);
+      cacheResult =
+          CacheResult.error(cacheResult.getCacheSource(), cacheResult.getCacheMode(), msg);
+    }
 
     // Verify that the rule key we used to fetch the artifact is one of the rule keys reported in
     // it's metadata.
@@ -1362,8 +1602,26 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
       }
     }
 
-    return unzipArtifactFromCacheResult(
-        rule, ruleKey, lazyZipPath, buildContext, filesystem, cacheResult);
+    // We only keep the output of hits. Artifacts which were unzipped whole may still turn out to
+    // have failed the checksum of the fetch, and those which were not already cleaned up after
+    // themselves.
+    if (!cacheResult.getType().isSuccess()) {
+      LOG.debug("Cache miss for '%s' with rulekey '%s'", rule, ruleKey);
+      for (Path path : unzippedPaths.get()) {
+        filesystem.deleteFileAtPathIfExists(path);
+      }
+      return cacheResult;
+    }
+    Preconditions.checkArgument(cacheResult.getType() == CacheResultType.HIT);
+    LOG.debug("Fetched '%s' from cache with rulekey '%s'", rule, ruleKey);
+
+    if (zipPathCreated.get()) {
+      Files.deleteIfExists(lazyZipPath.getUnchecked());
+    }
+    buildInfoStoreManager
+        .get(rule.getProjectFilesystem(), metadataStorage)
+        .updateMetadata(rule.getBuildTarget(), cacheResult.getMetadata());
+    return cacheResult;
   }
 
   private CacheResult unzipArtifactFromCacheResult(
@@ -1396,6 +1654,35 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
     //
     // Unfortunately, this does not appear to work, in practice, because MoreFiles fails when trying
     // to resolve a Path for a zip entry against a file Path on disk.
+    unzipArtifact(
+        rule,
+        ruleKey,
+        buildContext,
+        () -> {
+          Unzip.extractZipFile(
+              zipPath.toAbsolutePath(),
+              filesystem,
+              Unzip.ExistingFileMode.OVERWRITE_AND_CLEAN_DIRECTORIES);
+
+          // We only delete the ZIP file when it has been unzipped successfully. Otherwise, we
+          // leave it around for debugging purposes.
+          Files.delete(zipPath);
+        });
+
+    // Also write out the build metadata.
+    buildInfoStoreManager
+        .get(rule.getProjectFilesystem(), metadataStorage)
+        .updateMetadata(rule.getBuildTarget(), cacheResult.getMetadata());
+    return cacheResult;
+  }
+
+  /** Clears the metadata of {@code rule}, and then unzips a cached artifact of it. */
+  private void unzipArtifact(
+      BuildRule rule,
+      RuleKey ruleKey,
+      BuildEngineBuildContext buildContext,
+      ArtifactUnzipper unzipper)
+      throws IOException {
     ArtifactCompressionEvent.Started started =
         ArtifactCompressionEvent.started(
             ArtifactCompressionEvent.Operation.DECOMPRESS, ImmutableSet.of(ruleKey));
@@ -1415,22 +1702,58 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
           BuildInfo.getPathToMetadataDirectory(rule.getBuildTarget(), rule.getProjectFilesystem());
       rule.getProjectFilesystem().deleteRecursivelyIfExists(metadataDir);
 
-      Unzip.extractZipFile(
-          zipPath.toAbsolutePath(),
-          filesystem,
-          Unzip.ExistingFileMode.OVERWRITE_AND_CLEAN_DIRECTORIES);
-
-      // We only delete the ZIP file when it has been unzipped successfully. Otherwise, we leave it
-      // around for debugging purposes.
-      Files.delete(zipPath);
-
-      // Also write out the build metadata.
-      buildInfoStore.updateMetadata(rule.getBuildTarget(), cacheResult.getMetadata());
+      unzipper.unzip();
     } finally {
       buildContext.getEventBus().post(ArtifactCompressionEvent.finished(started));
     }
+  }
 
-    return cacheResult;
+  /** Unzips an artifact to the root of the project directory. */
+  private interface ArtifactUnzipper {
+    void unzip() throws IOException;
+  }
+
+  /** Remembers whether reading from the stream it wraps ever failed. */
+  private static class ReadFailureTrackingInputStream extends FilterInputStream {
+    private boolean failed = false;
+
+    private ReadFailureTrackingInputStream(InputStream in) {
+      super(in);
+    }
+
+    public boolean hasFailed() {
+      return failed;
+    }
+
+    @Override
+    public int read() throws IOException {
+      try {
+        return super.read();
+      } catch (IOException e) {
+        failed = true;
+        throw e;
+      }
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      try {
+        return super.read(b, off, len);
+      } catch (IOException e) {
+        failed = true;
+        throw e;
+      }
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      try {
+        return super.skip(n);
+      } catch (IOException e) {
+        failed = true;
+        throw e;
+      }
+    }
   }
 
   /**
@@ -1592,7 +1915,8 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
         depFile
             .get()
             .stream()
-            .map(MoreFunctions.fromJsonFunction(DependencyFileEntry.class))
+            // Not a method reference, as the method is declared in a package-private superclass.
+            .map(entry -> DependencyFileEntry.fromMetadataString(entry))
             .collect(MoreCollectors.toImmutableList());
 
     try (BuckEvent.Scope scope =
@@ -1899,11 +2223,23 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
     CACHE,
   }
 
+  /** How rules which are ready to be built locally are prioritized. */
+  public enum SchedulingMode {
+
+    // Build rules in the order in which their deps finish.
+    DEFAULT,
+
+    // Prefer rules with the longest historical chain of remaining work, as recorded in the build
+    // metadata of previous builds.
+    CRITICAL_PATH,
+  }
+
   public enum MetadataStorage {
     FILESYSTEM,
     SQLITE,
     MAPDB,
     ROCKSDB,
+    LOG_STRUCTURED,
   }
 
   // Wrap an async function in rule resume/suspend events.
@@ -0,0 +1,636 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.rules;
+
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.log.Logger;
+import com.facebook.buck.model.BuildTarget;
+import com.facebook.buck.util.concurrent.MostExecutors;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableMap;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * A {@link BuildInfoStore} which appends metadata updates to a log of checksummed segment files
+ * and serves reads from an in-memory index of the latest metadata of every target.
+ *
+ * <p>Every record holds the complete metadata of one target, or a tombstone, so the index is
+ * rebuilt by replaying the segments in order. Concurrent updates are encoded in parallel by the
+ * build threads and appended in batches by whichever of them gets to the log first, which forces
+ * the whole batch to disk at once (group commit). Sealed segments are rewritten in the background
+ * once most of their records have been superseded.
+ */
+@ThreadSafe
+public class LogStructuredBuildInfoStore implements BuildInfoStore {
+
+  private static final Logger LOG = Logger.get(LogStructuredBuildInfoStore.class);
+
+  private static final int MAGIC = 0x42495354;
+  private static final byte VERSION = 1;
+  private static final int SEGMENT_HEADER_SIZE = 6;
+
+  private static final byte FLAG_NONE = 0;
+  // Set on segments written by compaction, which hold the whole state of the log before them.
+  private static final byte FLAG_BASE = 1;
+
+  // Each record is its payload length, the CRC32 of its payload, and the payload itself.
+  private static final int RECORD_HEADER_SIZE = 8;
+  private static final byte OP_PUT = 1;
+  private static final byte OP_DELETE = 2;
+
+  private static final String SEGMENT_PREFIX = "segment-";
+  private static final String SEGMENT_SUFFIX = ".log";
+  private static final String TMP_SUFFIX = ".tmp";
+
+  private static final long DEFAULT_SEGMENT_SIZE_BYTES = 32 * 1024 * 1024;
+  private static final int MAX_SEALED_SEGMENTS = 16;
+
+  private final Path logDir;
+  private final long segmentSizeBytes;
+  private final Executor compactionExecutor;
+  private final Optional<ExecutorService> ownedCompactionExecutor;
+  private final AtomicBoolean isCompactionScheduled = new AtomicBoolean(false);
+
+  private final ConcurrentHashMap<String, Entry> index = new ConcurrentHashMap<>();
+  private final AtomicLong liveBytes = new AtomicLong();
+  private final AtomicLong logBytes = new AtomicLong();
+  private final Queue<PendingRecord> pendingRecords = new ConcurrentLinkedQueue<>();
+
+  private final ReentrantLock commitLock = new ReentrantLock();
+
+  @GuardedBy("commitLock")
+  private final TreeSet<Integer> sealedSegmentIds = new TreeSet<>();
+
+  @GuardedBy("commitLock")
+  private FileChannel activeSegment;
+
+  @GuardedBy("commitLock")
+  private int activeSegmentId;
+
+  // Written under commitLock, but read without it to decide whether to compact.
+  private volatile int sealedSegmentCount;
+  private volatile boolean closed = false;
+
+  public LogStructuredBuildInfoStore(ProjectFilesystem filesystem) throws IOException {
+    this(
+        filesystem.resolve(filesystem.getBuckPaths().getScratchDir().resolve("metadata-log")),
+        DEFAULT_SEGMENT_SIZE_BYTES,
+        Optional.empty());
+  }
+
+  /**
+   * @param compactionExecutor runs the compaction of sealed segments. If absent, the store uses a
+   *     background thread of its own.
+   */
+  @VisibleForTesting
+  LogStructuredBuildInfoStore(
+      Path logDir, long segmentSizeBytes, Optional<Executor> compactionExecutor)
+      throws IOException {
+    this.logDir = logDir;
+    this.segmentSizeBytes = segmentSizeBytes;
+    if (compactionExecutor.isPresent()) {
+      this.ownedCompactionExecutor = Optional.empty();
+      this.compactionExecutor = compactionExecutor.get();
+    } else {
+      ExecutorService executor = MostExecutors.newSingleThreadExecutor("BuildInfoStore compaction");
+      this.ownedCompactionExecutor = Optional.of(executor);
+      this.compactionExecutor = executor;
+    }
+
+    Files.createDirectories(logDir);
+    SortedMap<Integer, Path> segments = listSegments();
+    long totalBytes = 0;
+    for (Path segment : segments.values()) {
+      replaySegment(segment, this::applyToIndex);
+      totalBytes += Files.size(segment);
+    }
+    for (Entry entry : index.values()) {
+      liveBytes.addAndGet(entry.recordSize);
+    }
+
+    commitLock.lock();
+    try {
+      sealedSegmentIds.addAll(segments.keySet());
+      sealedSegmentCount = sealedSegmentIds.size();
+      activeSegmentId = segments.isEmpty() ? 0 : segments.lastKey() + 1;
+      activeSegment = createSegment(getSegmentPath(activeSegmentId), FLAG_NONE);
+    } finally {
+      commitLock.unlock();
+    }
+    logBytes.set(totalBytes + SEGMENT_HEADER_SIZE);
+    LOG.debug(
+        "Loaded metadata of %d targets from %d segments in %s",
+        index.size(),
+        segments.size(),
+        logDir);
+    maybeScheduleCompaction();
+  }
+
+  @Override
+  public Optional<String> readMetadata(BuildTarget buildTarget, String key) {
+    Entry entry = index.get(buildTarget.getFullyQualifiedName());
+    return entry == null ? Optional.empty() : Optional.ofNullable(entry.metadata.get(key));
+  }
+
+  @Override
+  public void updateMetadata(BuildTarget buildTarget, Map<String, String> metadata)
+      throws IOException {
+    PendingRecord[] record = new PendingRecord[1];
+    // Records are queued while the index entry is locked, so that the log and the index agree on
+    // the order of concurrent updates to the same target.
+    index.compute(
+        buildTarget.getFullyQualifiedName(),
+        (target, existing) -> {
+          Map<String, String> merged = new LinkedHashMap<>();
+          if (existing != null) {
+            merged.putAll(existing.metadata);
+          }
+          merged.putAll(metadata);
+          byte[] bytes = encodePut(target, merged);
+          Entry entry = new Entry(ImmutableMap.copyOf(merged), bytes.length);
+          record[0] = enqueue(bytes, existing, entry);
+          return entry;
+        });
+    commit(record[0]);
+  }
+
+  @Override
+  public void deleteMetadata(BuildTarget buildTarget) throws IOException {
+    PendingRecord[] record = new PendingRecord[1];
+    index.computeIfPresent(
+        buildTarget.getFullyQualifiedName(),
+        (target, existing) -> {
+          record[0] = enqueue(encodeDelete(target), existing, null);
+          return null;
+        });
+    if (record[0] != null) {
+      commit(record[0]);
+    }
+  }
+
+  @Override
+  public void close() {
+    if (ownedCompactionExecutor.isPresent()) {
+      try {
+        MostExecutors.shutdown(ownedCompactionExecutor.get(), 10, TimeUnit.MINUTES);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    commitLock.lock();
+    try {
+      writePendingRecords();
+    } catch (IOException e) {
+      LOG.warn(e, "Failed to write the last records to the metadata log in %s", logDir);
+    } finally {
+      closed = true;
+      try {
+        activeSegment.close();
+      } catch (IOException e) {
+        LOG.warn(e, "Failed to close the metadata log in %s", logDir);
+      }
+      commitLock.unlock();
+    }
+  }
+
+  private PendingRecord enqueue(byte[] bytes, @Nullable Entry previous, @Nullable Entry next) {
+    liveBytes.addAndGet(
+        (next == null ? 0 : next.recordSize) - (previous == null ? 0 : previous.recordSize));
+    PendingRecord record = new PendingRecord(bytes);
+    pendingRecords.add(record);
+    return record;
+  }
+
+  /** Waits until {@code record} is on disk, writing it along with all other queued records. */
+  private void commit(PendingRecord record) throws IOException {
+    if (!record.committed) {
+      commitLock.lock();
+      try {
+        // Another writer may have written this record while we were waiting for the lock.
+        if (!record.committed) {
+          writePendingRecords();
+        }
+      } finally {
+        commitLock.unlock();
+      }
+    }
+    if (record.failure != null) {
+      throw new IOException("Failed to write to the metadata log in " + logDir, record.failure);
+    }
+    maybeScheduleCompaction();
+  }
+
+  @GuardedBy("commitLock")
+  private void writePendingRecords() throws IOException {
+    List<PendingRecord> batch = new ArrayList<>();
+    for (PendingRecord record = pendingRecords.poll();
+        record != null;
+        record = pendingRecords.poll()) {
+      batch.add(record);
+    }
+    if (batch.isEmpty()) {
+      return;
+    }
+
+    long startPosition = -1;
+    try {
+      if (closed) {
+        throw new IOException("The metadata log is closed");
+      }
+      ByteBuffer[] buffers = new ByteBuffer[batch.size()];
+      long batchBytes = 0;
+      for (int i = 0; i < buffers.length; i++) {
+        buffers[i] = ByteBuffer.wrap(batch.get(i).bytes);
+        batchBytes += buffers[i].remaining();
+      }
+      startPosition = activeSegment.position();
+      for (long written = 0; written < batchBytes; ) {
+        written += activeSegment.write(buffers);
+      }
+      activeSegment.force(false);
+      logBytes.addAndGet(batchBytes);
+      if (activeSegment.position() >= segmentSizeBytes) {
+        rollSegment();
+      }
+    } catch (IOException e) {
+      for (PendingRecord record : batch) {
+        record.failure = e;
+      }
+      // Drop a partially written batch, so that it does not hide the records appended after it.
+      if (startPosition >= 0) {
+        try {
+          activeSegment.truncate(startPosition);
+        } catch (IOException truncateException) {
+          LOG.warn(truncateException, "Failed to truncate the metadata log in %s", logDir);
+        }
+      }
+      throw e;
+    } finally {
+      for (PendingRecord record : batch) {
+        record.committed = true;
+      }
+    }
+  }
+
+  @GuardedBy("commitLock")
+  private void rollSegment() throws IOException {
+    activeSegment.close();
+    sealedSegmentIds.add(activeSegmentId);
+    sealedSegmentCount = sealedSegmentIds.size();
+    activeSegmentId++;
+    activeSegment = createSegment(getSegmentPath(activeSegmentId), FLAG_NONE);
+    logBytes.addAndGet(SEGMENT_HEADER_SIZE);
+  }
+
+  private void maybeScheduleCompaction() {
+    int sealedSegments = sealedSegmentCount;
+    boolean needsCompaction =
+        !closed
+            && sealedSegments > 0
+            && (logBytes.get() > 2 * liveBytes.get() + segmentSizeBytes
+                || sealedSegments > MAX_SEALED_SEGMENTS);
+    if (needsCompaction && isCompactionScheduled.compareAndSet(false, true)) {
+      compactionExecutor.execute(
+          () -> {
+            try {
+              compact();
+            } catch (IOException e) {
+              LOG.warn(e, "Failed to compact the metadata log in %s", logDir);
+            } finally {
+              isCompactionScheduled.set(false);
+            }
+          });
+    }
+  }
+
+  /**
+   * Rewrites the live records of all sealed segments into a single base segment, which replaces
+   * the newest of them, and deletes the others.
+   */
+  @VisibleForTesting
+  void compact() throws IOException {
+    List<Integer> segmentIds;
+    commitLock.lock();
+    try {
+      if (closed) {
+        return;
+      }
+      if (activeSegment.position() > SEGMENT_HEADER_SIZE) {
+        rollSegment();
+      }
+      segmentIds = new ArrayList<>(sealedSegmentIds);
+    } finally {
+      commitLock.unlock();
+    }
+    if (segmentIds.isEmpty()) {
+      return;
+    }
+
+    // Compaction only reads sealed segments, so build threads keep appending to the active one.
+    Map<String, ImmutableMap<String, String>> state = new LinkedHashMap<>();
+    long compactedBytes = 0;
+    for (int segmentId : segmentIds) {
+      Path segment = getSegmentPath(segmentId);
+      replaySegment(
+          segment,
+          (target, metadata, recordSize) -> {
+            if (target == null) {
+              state.clear();
+            } else if (metadata == null) {
+              state.remove(target);
+            } else {
+              state.put(target, metadata);
+            }
+          });
+      compactedBytes += Files.size(segment);
+    }
+
+    int baseSegmentId = segmentIds.get(segmentIds.size() - 1);
+    Path baseSegment = getSegmentPath(baseSegmentId);
+    Path tmp = baseSegment.resolveSibling(baseSegment.getFileName() + TMP_SUFFIX);
+    try (FileChannel channel = createSegment(tmp, FLAG_BASE)) {
+      for (Map.Entry<String, ImmutableMap<String, String>> entry : state.entrySet()) {
+        ByteBuffer buffer = ByteBuffer.wrap(encodePut(entry.getKey(), entry.getValue()));
+        while (buffer.hasRemaining()) {
+          channel.write(buffer);
+        }
+      }
+      channel.force(true);
+    }
+    long baseBytes = Files.size(tmp);
+    // The base segment replaces the newest compacted one atomically, and resets the state built
+    // from the segments before it when replayed, so a crash at any point leaves a consistent log.
+    Files.move(tmp, baseSegment, StandardCopyOption.ATOMIC_MOVE);
+    for (int segmentId : segmentIds.subList(0, segmentIds.size() - 1)) {
+      Files.deleteIfExists(getSegmentPath(segmentId));
+    }
+
+    commitLock.lock();
+    try {
+      sealedSegmentIds.removeAll(segmentIds);
+      sealedSegmentIds.add(baseSegmentId);
+      sealedSegmentCount = sealedSegmentIds.size();
+    } finally {
+      commitLock.unlock();
+    }
+    logBytes.addAndGet(baseBytes - compactedBytes);
+    LOG.debug(
+        "Compacted %d metadata log segments from %d to %d bytes",
+        segmentIds.size(),
+        compactedBytes,
+        baseBytes);
+  }
+
+  @VisibleForTesting
+  int getSegmentCount() {
+    return sealedSegmentCount + 1;
+  }
+
+  private void applyToIndex(
+      @Nullable String target, @Nullable ImmutableMap<String, String> metadata, int recordSize) {
+    if (target == null) {
+      index.clear();
+    } else if (metadata == null) {
+      index.remove(target);
+    } else {
+      index.put(target, new Entry(metadata, recordSize));
+    }
+  }
+
+  private SortedMap<Integer, Path> listSegments() throws IOException {
+    SortedMap<Integer, Path> segments = new TreeMap<>();
+    try (DirectoryStream<Path> paths = Files.newDirectoryStream(logDir)) {
+      for (Path path : paths) {
+        String name = path.getFileName().toString();
+        if (name.endsWith(TMP_SUFFIX)) {
+          // Left behind by an interrupted compaction.
+          Files.deleteIfExists(path);
+        } else if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+          try {
+            segments.put(
+                Integer.parseInt(
+                    name.substring(
+                        SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())),
+                path);
+          } catch (NumberFormatException e) {
+            LOG.warn("Ignoring unexpected file %s in the metadata log", path);
+          }
+        }
+      }
+    }
+    return segments;
+  }
+
+  private Path getSegmentPath(int segmentId) {
+    return logDir.resolve(String.format("%s%08d%s", SEGMENT_PREFIX, segmentId, SEGMENT_SUFFIX));
+  }
+
+  private static FileChannel createSegment(Path path, byte flags) throws IOException {
+    FileChannel channel =
+        FileChannel.open(
+            path,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING,
+            StandardOpenOption.WRITE);
+    ByteBuffer header = ByteBuffer.allocate(SEGMENT_HEADER_SIZE);
+    header.putInt(MAGIC).put(VERSION).put(flags).flip();
+    while (header.hasRemaining()) {
+      channel.write(header);
+    }
+    return channel;
+  }
+
+  /**
+   * Feeds the records of {@code segment} to {@code visitor}, stopping at the first damaged one,
+   * which is usually the tail of a write interrupted by a crash.
+   */
+  private static void replaySegment(Path segment, RecordVisitor visitor) throws IOException {
+    ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(segment));
+    if (buffer.remaining() < SEGMENT_HEADER_SIZE
+        || buffer.getInt() != MAGIC
+        || buffer.get() != VERSION) {
+      LOG.warn("Ignoring metadata log segment %s with an unknown format", segment);
+      return;
+    }
+    if (buffer.get() == FLAG_BASE) {
+      visitor.visit(null, null, 0);
+    }
+    CRC32 crc = new CRC32();
+    while (buffer.remaining() >= RECORD_HEADER_SIZE) {
+      int start = buffer.position();
+      int length = buffer.getInt();
+      int checksum = buffer.getInt();
+      if (length < 0 || length > buffer.remaining()) {
+        LOG.warn("Ignoring truncated record at offset %d of %s", start, segment);
+        return;
+      }
+      crc.reset();
+      crc.update(buffer.array(), buffer.position(), length);
+      if ((int) crc.getValue() != checksum) {
+        LOG.warn("Ignoring corrupt record at offset %d of %s", start, segment);
+        return;
+      }
+      ByteBuffer payload = buffer.slice();
+      payload.limit(length);
+      buffer.position(buffer.position() + length);
+      try {
+        byte op = payload.get();
+        String target = readString(payload);
+        if (op == OP_DELETE) {
+          visitor.visit(target, null, RECORD_HEADER_SIZE + length);
+        } else if (op == OP_PUT) {
+          int size = payload.getInt();
+          ImmutableMap.Builder<String, String> metadata = ImmutableMap.builder();
+          for (int i = 0; i < size; i++) {
+            metadata.put(readString(payload), readString(payload));
+          }
+          visitor.visit(target, metadata.build(), RECORD_HEADER_SIZE + length);
+        } else {
+          LOG.warn("Ignoring record with unknown operation %d in %s", op, segment);
+        }
+      } catch (BufferUnderflowException | IllegalArgumentException e) {
+        LOG.warn(e, "Ignoring malformed record at offset %d of %s", start, segment);
+        return;
+      }
+    }
+  }
+
+  private static byte[] encodePut(String target, Map<String, String> metadata) {
+    return encode(
+        out -> {
+          out.writeByte(OP_PUT);
+          writeString(out, target);
+          out.writeInt(metadata.size());
+          for (Map.Entry<String, String> entry : metadata.entrySet()) {
+            writeString(out, entry.getKey());
+            writeString(out, entry.getValue());
+          }
+        });
+  }
+
+  private static byte[] encodeDelete(String target) {
+    return encode(
+        out -> {
+          out.writeByte(OP_DELETE);
+          writeString(out, target);
+        });
+  }
+
+  private static byte[] encode(PayloadWriter writer) {
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(bytes);
+      // Reserve room for the record header, which depends on the payload.
+      out.writeLong(0);
+      writer.write(out);
+      out.flush();
+      byte[] record = bytes.toByteArray();
+      CRC32 crc = new CRC32();
+      crc.update(record, RECORD_HEADER_SIZE, record.length - RECORD_HEADER_SIZE);
+      ByteBuffer.wrap(record)
+          .putInt(record.length - RECORD_HEADER_SIZE)
+          .putInt((int) crc.getValue());
+      return record;
+    } catch (IOException e) {
+      throw new IllegalStateException("Writing to a byte array cannot fail", e);
+    }
+  }
+
+  // Unlike DataOutput#writeUTF, this handles strings longer than 64k, such as large dep files.
+  private static void writeString(DataOutputStream out, String string) throws IOException {
+    byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static String readString(ByteBuffer buffer) {
+    int length = buffer.getInt();
+    if (length < 0 || length > buffer.remaining()) {
+      throw new IllegalArgumentException("Invalid string length " + length);
+    }
+    int offset = buffer.arrayOffset() + buffer.position();
+    String string = new String(buffer.array(), offset, length, StandardCharsets.UTF_8);
+    buffer.position(buffer.position() + length);
+    return string;
+  }
+
+  private interface PayloadWriter {
+    void write(DataOutputStream out) throws IOException;
+  }
+
+  private interface RecordVisitor {
+    /**
+     * Called with a null {@code target} when the state replayed so far must be discarded, and
+     * with null {@code metadata} when the metadata of {@code target} is deleted.
+     */
+    void visit(
+        @Nullable String target, @Nullable ImmutableMap<String, String> metadata, int recordSize);
+  }
+
+  private static class Entry {
+    private final ImmutableMap<String, String> metadata;
+    private final int recordSize;
+
+    private Entry(ImmutableMap<String, String> metadata, int recordSize) {
+      this.metadata = metadata;
+      this.recordSize = recordSize;
+    }
+  }
+
+  private static class PendingRecord {
+    private final byte[] bytes;
+    // Set before the record is marked as committed, which publishes it to the waiting writer.
+    @Nullable private IOException failure;
+    private volatile boolean committed = false;
+
+    private PendingRecord(byte[] bytes) {
+      this.bytes = bytes;
+    }
+  }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.rules;
+
+import com.facebook.buck.log.Logger;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Computes the default rule keys of a whole action graph bottom-up on a pool of its own, so that
+ * independent subgraphs are hashed in parallel as soon as the build starts, without going through
+ * the build engine's scheduling of each rule.
+ *
+ * <p>Every rule is computed at most once, after the keys of all of its deps. Rules are discovered
+ * and computed by separate tasks chained through futures, so no thread ever waits on another and
+ * long chains of deps don't nest. A rule whose key fails to compute, for any reason, is left to the
+ * build engine, which reports the failure as part of building it.
+ */
+@ThreadSafe
+class RuleKeyPrecomputer implements AutoCloseable {
+
+  private static final Logger LOG = Logger.get(RuleKeyPrecomputer.class);
+
+  private final ForkJoinPool pool;
+  private final RuleDepsCache ruleDeps;
+  private final ConcurrentMap<BuildRule, SettableFuture<RuleKey>> ruleKeys =
+      new ConcurrentHashMap<>();
+
+  RuleKeyPrecomputer(int parallelism, RuleDepsCache ruleDeps) {
+    this.pool = new ForkJoinPool(parallelism);
+    this.ruleDeps = ruleDeps;
+  }
+
+  /**
+   * Starts computing the rule keys of {@code rules} and all of their transitive deps which were not
+   * scheduled by an earlier call. This doesn't wait for any of them.
+   *
+   * @param ruleKeyCalculator computes the key of a rule once the keys of its deps are available.
+   */
+  public void precompute(
+      Iterable<? extends BuildRule> rules, Function<BuildRule, RuleKey> ruleKeyCalculator) {
+    for (BuildRule rule : rules) {
+      schedule(rule, ruleKeyCalculator);
+    }
+  }
+
+  /**
+   * @return the future key of {@code rule}, which fails if it couldn't be computed, or nothing if
+   *     it was never scheduled.
+   */
+  public Optional<ListenableFuture<RuleKey>> getRuleKey(BuildRule rule) {
+    return Optional.ofNullable(ruleKeys.get(rule));
+  }
+
+  private ListenableFuture<RuleKey> schedule(
+      BuildRule rule, Function<BuildRule, RuleKey> ruleKeyCalculator) {
+    SettableFuture<RuleKey> ruleKey = SettableFuture.create();
+    SettableFuture<RuleKey> existingRuleKey = ruleKeys.putIfAbsent(rule, ruleKey);
+    if (existingRuleKey != null) {
+      return existingRuleKey;
+    }
+    try {
+      pool.execute(
+          () -> {
+            try {
+              List<ListenableFuture<RuleKey>> depKeys = new ArrayList<>();
+              for (BuildRule dep : ruleDeps.get(rule)) {
+                depKeys.add(schedule(dep, ruleKeyCalculator));
+              }
+              ruleKey.setFuture(
+                  Futures.transform(
+                      Futures.allAsList(depKeys),
+                      (List<RuleKey> keys) -> {
+                        try {
+                          return ruleKeyCalculator.apply(rule);
+                        } catch (RuntimeException e) {
+                          LOG.debug(e, "Failed to precompute the rule key of %s.", rule);
+                          throw e;
+                        }
+                      },
+                      pool));
+            } catch (Throwable t) {
+              ruleKey.setException(t);
+            }
+          });
+    } catch (RejectedExecutionException e) {
+      ruleKey.setException(e);
+    }
+    return ruleKey;
+  }
+
+  @Override
+  public void close() {
+    pool.shutdownNow();
+    // Fail the keys whose tasks will never run, so that nothing waits for them.
+    for (SettableFuture<RuleKey> ruleKey : ruleKeys.values()) {
+      ruleKey.setException(new CancellationException("Rule key precomputation was shut down."));
+    }
+  }
+}
@@ -19,10 +19,14 @@ import com.facebook.buck.io.ArchiveMemberPath;
 import com.facebook.buck.rules.ArchiveMemberSourcePath;
 import com.facebook.buck.rules.SourcePath;
 import com.facebook.buck.rules.SourcePathResolver;
+import com.facebook.buck.util.HumanReadableException;
+import com.facebook.buck.util.ObjectMappers;
 import com.facebook.buck.util.immutables.BuckStyleImmutable;
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import com.google.common.base.Preconditions;
+import java.io.IOException;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Optional;
 import org.immutables.value.Value;
 
@@ -30,6 +34,13 @@ import org.immutables.value.Value;
 @JsonSerialize
 @Value.Immutable
 abstract class AbstractDependencyFileEntry {
+
+  /**
+   * Separates the path of an archive from the path of the member within it in the metadata form of
+   * an entry, as paths can't contain NULs.
+   */
+  private static final char ARCHIVE_MEMBER_SEPARATOR = '\0';
+
   @Value.Parameter
   public abstract Path pathToFile();
 
@@ -58,4 +69,34 @@ abstract class AbstractDependencyFileEntry {
 
     return builder.build();
   }
+
+  /**
+   * @return the entry in the compact form in which dep files are recorded in build metadata, which
+   *     {@link #fromMetadataString(String)} reads back without going through JSON.
+   */
+  public String toMetadataString() {
+    if (pathWithinArchive().isPresent()) {
+      return pathToFile().toString() + ARCHIVE_MEMBER_SEPARATOR + pathWithinArchive().get();
+    }
+    return pathToFile().toString();
+  }
+
+  /** @return the entry recorded in build metadata as {@code entry}. */
+  public static DependencyFileEntry fromMetadataString(String entry) {
+    if (entry.startsWith("{\"")) {
+      // Entries used to be recorded as JSON objects.
+      try {
+        return ObjectMappers.readValue(entry, DependencyFileEntry.class);
+      } catch (IOException e) {
+        throw new HumanReadableException(e, "Failed to read dep file entry: " + entry);
+      }
+    }
+    int separator = entry.indexOf(ARCHIVE_MEMBER_SEPARATOR);
+    if (separator == -1) {
+      return DependencyFileEntry.of(Paths.get(entry), Optional.empty());
+    }
+    return DependencyFileEntry.of(
+        Paths.get(entry.substring(0, separator)),
+        Optional.of(Paths.get(entry.substring(separator + 1))));
+  }
 }
@@ -28,12 +28,17 @@ import java.nio.file.Path;
 
 public class RuleKeyFieldLoader {
 
+  /**
+   * The fields to add to the rule key of each class of rule. They only depend on the class, so they
+   * are shared by all loaders, and only reflected upon once per class for the life of the daemon.
+   */
+  private static final LoadingCache<Class<? extends BuildRule>, ImmutableCollection<AlterRuleKey>>
+      CACHE = CacheBuilder.newBuilder().weakKeys().build(new ReflectiveAlterKeyLoader());
+
   private final int seed;
-  private final LoadingCache<Class<? extends BuildRule>, ImmutableCollection<AlterRuleKey>> cache;
 
   public RuleKeyFieldLoader(int seed) {
     this.seed = seed;
-    this.cache = CacheBuilder.newBuilder().build(new ReflectiveAlterKeyLoader());
   }
 
   public void setFields(RuleKeyObjectSink builder, BuildRule buildRule, RuleKeyType ruleKeyType) {
@@ -58,7 +63,7 @@ public class RuleKeyFieldLoader {
     // error out if we see the `RuleKeyAppendable` being used improperly.
     Preconditions.checkArgument(!(builder instanceof RuleKeyAppendable));
 
-    for (AlterRuleKey alterRuleKey : cache.getUnchecked(buildRule.getClass())) {
+    for (AlterRuleKey alterRuleKey : CACHE.getUnchecked(buildRule.getClass())) {
       alterRuleKey.amendKey(builder, buildRule);
     }
   }
@@ -19,8 +19,12 @@ import com.facebook.buck.util.concurrent.AutoCloseableLock;
 import com.facebook.buck.util.concurrent.AutoCloseableReadWriteUpdateLock;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Stack;
@@ -225,4 +229,31 @@ public class FileSystemMap<T> {
       return entry.value;
     }
   }
+
+  /**
+   * Returns a snapshot of the paths which are currently associated with a value.
+   *
+   * @return A map from each path that has a value to its value.
+   */
+  public ImmutableMap<Path, T> asMap() {
+    ImmutableMap.Builder<Path, T> builder = ImmutableMap.builder();
+    try (AutoCloseableLock readLock = lock.readLock()) {
+      // Walk the trie without recursing, as paths can be arbitrarily deep.
+      Deque<Map.Entry<Path, Entry<T>>> stack = new ArrayDeque<>(root.subLevels.entrySet());
+      while (!stack.isEmpty()) {
+        Map.Entry<Path, Entry<T>> current = stack.pop();
+        Path path = current.getKey();
+        Entry<T> entry = current.getValue();
+        if (entry.value != null) {
+          builder.put(path, entry.value);
+        }
+        for (Map.Entry<Path, Entry<T>> child : entry.subLevels.entrySet()) {
+          stack.push(
+              new AbstractMap.SimpleImmutableEntry<>(
+                  path.resolve(child.getKey()), child.getValue()));
+        }
+      }
+    }
+    return builder.build();
+  }
 }
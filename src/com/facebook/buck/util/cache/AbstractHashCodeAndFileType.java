@@ -43,6 +43,17 @@ abstract class AbstractHashCodeAndFileType {
   @Value.Auxiliary
   abstract Optional<JarContentHasher> getJarContentHasher();
 
+  /**
+   * The modification time of the file when it was hashed, recorded only when it's known to describe
+   * the hashed contents.
+   */
+  @Value.Auxiliary
+  abstract Optional<Long> getHashedModifiedTimeMillis();
+
+  /** The size of the file when it was hashed, recorded along with the modification time. */
+  @Value.Auxiliary
+  abstract Optional<Long> getHashedSize();
+
   @Value.Lazy
   ImmutableMap<Path, HashCodeAndFileType> getContents() {
     try {
@@ -57,6 +68,9 @@ abstract class AbstractHashCodeAndFileType {
   void check() {
     Preconditions.checkState(getType() == Type.DIRECTORY || getChildren().isEmpty());
     Preconditions.checkState(getType() == Type.ARCHIVE || !getJarContentHasher().isPresent());
+    Preconditions.checkState(
+        getHashedModifiedTimeMillis().isPresent() == getHashedSize().isPresent());
+    Preconditions.checkState(getType() != Type.DIRECTORY || !getHashedSize().isPresent());
   }
 
   public static HashCodeAndFileType ofArchive(
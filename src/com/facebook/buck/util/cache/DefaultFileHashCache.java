@@ -36,7 +36,9 @@ import java.io.IOException;
 import java.nio.file.FileSystems;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -61,6 +63,9 @@ public class DefaultFileHashCache implements ProjectFileHashCache {
   @VisibleForTesting final LoadingCache<Path, Long> sizeCache;
   /* *****************************************************************************/
 
+  private volatile Optional<FileHashCacheSnapshot> snapshot = Optional.empty();
+  private volatile boolean recordFileMetadata = false;
+
   @VisibleForTesting
   DefaultFileHashCache(ProjectFilesystem projectFilesystem, Optional<Path> buckOutPath) {
     this.projectFilesystem = projectFilesystem;
@@ -154,17 +159,76 @@ public class DefaultFileHashCache implements ProjectFileHashCache {
   HashCodeAndFileType getHashCodeAndFileType(Path path) throws IOException {
     if (projectFilesystem.isDirectory(path)) {
       return getDirHashCode(path);
-    } else if (path.toString().endsWith(".jar")) {
-      return HashCodeAndFileType.ofArchive(getFileHashCode(path), projectFilesystem, path);
     }
+    if (!recordFileMetadata) {
+      return getFileHashCodeAndFileType(path, projectFilesystem.computeSha1(path).asHashCode());
+    }
+
+    // Stat the file on both sides of hashing it, so that the metadata recorded for a snapshot is
+    // known to describe the contents which were hashed.
+    long hashStartMillis = System.currentTimeMillis();
+    BasicFileAttributes before = projectFilesystem.readAttributes(path, BasicFileAttributes.class);
+    HashCode hashCode = getFileHashCode(path, before);
+    BasicFileAttributes after = projectFilesystem.readAttributes(path, BasicFileAttributes.class);
+    HashCodeAndFileType value = getFileHashCodeAndFileType(path, hashCode);
+    if (!FileHashCacheSnapshot.canRecord(before, after, hashStartMillis)) {
+      return value;
+    }
+    return HashCodeAndFileType.builder()
+        .from(value)
+        .setHashedModifiedTimeMillis(before.lastModifiedTime().toMillis())
+        .setHashedSize(before.size())
+        .build();
+  }
 
-    return HashCodeAndFileType.ofFile(getFileHashCode(path));
+  private HashCodeAndFileType getFileHashCodeAndFileType(Path path, HashCode hashCode) {
+    if (path.toString().endsWith(".jar")) {
+      return HashCodeAndFileType.ofArchive(hashCode, projectFilesystem, path);
+    }
+    return HashCodeAndFileType.ofFile(hashCode);
   }
 
-  private HashCode getFileHashCode(Path path) throws IOException {
+  private HashCode getFileHashCode(Path path, BasicFileAttributes attributes) throws IOException {
+    Optional<FileHashCacheSnapshot> currentSnapshot = snapshot;
+    if (currentSnapshot.isPresent()) {
+      Optional<HashCode> snapshotted = currentSnapshot.get().get(path, attributes);
+      if (snapshotted.isPresent()) {
+        return snapshotted.get();
+      }
+    }
     return projectFilesystem.computeSha1(path).asHashCode();
   }
 
+  /**
+   * Seeds this cache from a snapshot written by {@link #writeSnapshot(Path)}, typically by a
+   * previous daemon, and starts recording the metadata that files are hashed with so that they can
+   * be written to the next snapshot. Snapshotted hashes are only used for files whose modification
+   * time and size are unchanged.
+   */
+  public Optional<FileHashCacheSnapshot> loadSnapshot(Path snapshotFile) throws IOException {
+    recordFileMetadata = true;
+    snapshot = FileHashCacheSnapshot.load(snapshotFile);
+    return snapshot;
+  }
+
+  public Optional<FileHashCacheSnapshot> getSnapshot() {
+    return snapshot;
+  }
+
+  /**
+   * Persists the hashes of all files and archives currently in the cache, along with the metadata
+   * they had when they were hashed, to {@code snapshotFile}.
+   *
+   * @return the number of entries written.
+   */
+  public int writeSnapshot(Path snapshotFile) throws IOException {
+    Map<Path, HashCodeAndFileType> entries = new HashMap<>();
+    // Either cache may hold a file, depending on which one hashed it, so save the union of both.
+    entries.putAll(loadingCache.asMap());
+    entries.putAll(newLoadingCache.asMap());
+    return FileHashCacheSnapshot.write(entries, snapshotFile);
+  }
+
   private long getPathSize(Path path) throws IOException {
     long size = 0;
     for (Path child : projectFilesystem.getFilesUnderPath(path)) {
@@ -0,0 +1,302 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.util.cache;
+
+import com.facebook.buck.log.Logger;
+import com.google.common.hash.HashCode;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A read-only, memory-mapped view of file hashes persisted by a previous daemon. Entries record the
+ * modification time and size a file had when it was hashed, and are only handed out if a fresh stat
+ * of the file still matches them.
+ *
+ * <p>The on-disk layout is a header (magic, version, entry count) followed by entries of the form
+ * {@code (short pathLength, byte[] utf8Path, long mtimeMillis, long size, byte[20] sha1)}.
+ *
+ * <p>Each write goes to a new file, named after the snapshot path and a generation number, rather
+ * than over the previous one: the daemon keeps the snapshot it loaded mapped, and a mapped file can
+ * be neither replaced nor deleted on Windows. Older generations are deleted once they can be.
+ */
+public class FileHashCacheSnapshot {
+
+  private static final Logger LOG = Logger.get(FileHashCacheSnapshot.class);
+
+  private static final int MAGIC = 0xB0C4F11E;
+  private static final int VERSION = 2;
+  private static final int SHA1_LENGTH = 20;
+  private static final int HEADER_SIZE = 3 * Integer.BYTES;
+
+  /**
+   * Files modified this recently before they're hashed aren't recorded, as a later write within the
+   * same timestamp granularity would be indistinguishable from the hashed version.
+   */
+  private static final long RACY_MODIFICATION_WINDOW_MILLIS = 2000;
+
+  private final ByteBuffer buffer;
+  private final Map<String, Integer> offsets;
+  private final long loadNanoTime;
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong staleEntries = new AtomicLong();
+
+  private FileHashCacheSnapshot(
+      ByteBuffer buffer, Map<String, Integer> offsets, long loadNanoTime) {
+    this.buffer = buffer;
+    this.offsets = offsets;
+    this.loadNanoTime = loadNanoTime;
+  }
+
+  /**
+   * Maps the latest generation of the snapshot at {@code snapshotFile} into memory and indexes its
+   * entries. Returns an empty optional if there is none or it was written in an incompatible format.
+   */
+  public static Optional<FileHashCacheSnapshot> load(Path snapshotFile) throws IOException {
+    long start = System.nanoTime();
+    Optional<Path> latest = getLatestGeneration(snapshotFile);
+    if (!latest.isPresent()) {
+      return Optional.empty();
+    }
+    MappedByteBuffer buffer;
+    try (FileChannel channel = FileChannel.open(latest.get(), StandardOpenOption.READ)) {
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    } catch (NoSuchFileException e) {
+      return Optional.empty();
+    }
+
+    if (buffer.limit() < HEADER_SIZE
+        || buffer.getInt(0) != MAGIC
+        || buffer.getInt(Integer.BYTES) != VERSION) {
+      LOG.warn("Ignoring file hash cache snapshot in unknown format: %s", latest.get());
+      return Optional.empty();
+    }
+
+    int entryCount = buffer.getInt(2 * Integer.BYTES);
+    Map<String, Integer> offsets = new HashMap<>(entryCount * 2);
+    ByteBuffer reader = buffer.duplicate();
+    reader.position(HEADER_SIZE);
+    try {
+      for (int i = 0; i < entryCount; i++) {
+        byte[] pathBytes = new byte[reader.getShort() & 0xFFFF];
+        reader.get(pathBytes);
+        offsets.put(new String(pathBytes, StandardCharsets.UTF_8), reader.position());
+        reader.position(reader.position() + 2 * Long.BYTES + SHA1_LENGTH);
+      }
+    } catch (RuntimeException e) {
+      // A truncated snapshot (e.g. from a daemon killed mid-write) is just a cold start.
+      LOG.warn(e, "Ignoring truncated file hash cache snapshot: %s", latest.get());
+      return Optional.empty();
+    }
+
+    long loadNanoTime = System.nanoTime() - start;
+    LOG.debug("Loaded %d file hashes from %s in %dns", entryCount, latest.get(), loadNanoTime);
+    return Optional.of(new FileHashCacheSnapshot(buffer, offsets, loadNanoTime));
+  }
+
+  /**
+   * Writes the hashes of the files and archives of {@code entries} whose metadata was recorded when
+   * they were hashed to a new generation of {@code snapshotFile}, and deletes the older ones. The
+   * metadata is persisted as recorded: stat'ing the files now could pair a stale hash with the
+   * metadata of newer contents.
+   */
+  public static int write(Map<Path, HashCodeAndFileType> entries, Path snapshotFile)
+      throws IOException {
+    Path parent = snapshotFile.getParent();
+    Files.createDirectories(parent);
+    List<Path> previousGenerations = getGenerations(snapshotFile);
+    long generation = 0;
+    for (Path previous : previousGenerations) {
+      generation = Math.max(generation, getGeneration(snapshotFile, previous) + 1);
+    }
+    Path generationFile = getGenerationFile(snapshotFile, generation);
+
+    Path tempFile = Files.createTempFile(parent, snapshotFile.getFileName().toString(), ".tmp");
+    int written = 0;
+    try {
+      try (OutputStream fileStream = Files.newOutputStream(tempFile);
+          DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileStream))) {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        // Placeholder for the entry count, which is patched in below once known.
+        out.writeInt(0);
+        for (Map.Entry<Path, HashCodeAndFileType> entry : entries.entrySet()) {
+          HashCodeAndFileType value = entry.getValue();
+          byte[] pathBytes = entry.getKey().toString().getBytes(StandardCharsets.UTF_8);
+          byte[] hashBytes = value.getHashCode().asBytes();
+          if (value.getType() == HashCodeAndFileType.Type.DIRECTORY
+              || !value.getHashedModifiedTimeMillis().isPresent()
+              || pathBytes.length > 0xFFFF
+              || hashBytes.length != SHA1_LENGTH) {
+            continue;
+          }
+          out.writeShort(pathBytes.length);
+          out.write(pathBytes);
+          out.writeLong(value.getHashedModifiedTimeMillis().get());
+          out.writeLong(value.getHashedSize().get());
+          out.write(hashBytes);
+          written++;
+        }
+      }
+      try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+        ByteBuffer count = ByteBuffer.allocate(Integer.BYTES);
+        count.putInt(0, written);
+        channel.write(count, 2 * Integer.BYTES);
+      }
+      Files.move(tempFile, generationFile, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(tempFile);
+    }
+
+    for (Path previous : previousGenerations) {
+      try {
+        Files.deleteIfExists(previous);
+      } catch (IOException e) {
+        // Most likely still mapped on Windows; the next write will try again.
+        LOG.debug(e, "Failed to delete old file hash cache snapshot %s", previous);
+      }
+    }
+    return written;
+  }
+
+  /**
+   * @return whether the hash of a file whose attributes were {@code before} when hashing started at
+   *     {@code hashStartMillis} and {@code after} once it was done can be persisted with them.
+   */
+  static boolean canRecord(
+      BasicFileAttributes before, BasicFileAttributes after, long hashStartMillis) {
+    long mtimeMillis = before.lastModifiedTime().toMillis();
+    return before.isRegularFile()
+        && mtimeMillis == after.lastModifiedTime().toMillis()
+        && before.size() == after.size()
+        && mtimeMillis < hashStartMillis - RACY_MODIFICATION_WINDOW_MILLIS;
+  }
+
+  /**
+   * @return the snapshotted hash of {@code relativePath} if {@code attributes}, its current
+   *     attributes, still match the modification time and size recorded in the snapshot.
+   */
+  public Optional<HashCode> get(Path relativePath, BasicFileAttributes attributes) {
+    Integer offset = offsets.get(relativePath.toString());
+    if (offset == null) {
+      return Optional.empty();
+    }
+
+    if (attributes.lastModifiedTime().toMillis() != buffer.getLong(offset)
+        || attributes.size() != buffer.getLong(offset + Long.BYTES)) {
+      staleEntries.incrementAndGet();
+      return Optional.empty();
+    }
+
+    byte[] hashBytes = new byte[SHA1_LENGTH];
+    ByteBuffer reader = buffer.duplicate();
+    reader.position(offset + 2 * Long.BYTES);
+    reader.get(hashBytes);
+    hits.incrementAndGet();
+    return Optional.of(HashCode.fromBytes(hashBytes));
+  }
+
+  public int getEntryCount() {
+    return offsets.size();
+  }
+
+  public long getLoadNanoTime() {
+    return loadNanoTime;
+  }
+
+  public long getHits() {
+    return hits.get();
+  }
+
+  public long getStaleEntries() {
+    return staleEntries.get();
+  }
+
+  public void resetCounters() {
+    hits.set(0);
+    staleEntries.set(0);
+  }
+
+  private static Optional<Path> getLatestGeneration(Path snapshotFile) throws IOException {
+    Optional<Path> latest = Optional.empty();
+    for (Path generation : getGenerations(snapshotFile)) {
+      if (!latest.isPresent()
+          || getGeneration(snapshotFile, generation) > getGeneration(snapshotFile, latest.get())) {
+        latest = Optional.of(generation);
+      }
+    }
+    return latest;
+  }
+
+  private static List<Path> getGenerations(Path snapshotFile) throws IOException {
+    List<Path> generations = new ArrayList<>();
+    if (!Files.isDirectory(snapshotFile.getParent())) {
+      return generations;
+    }
+    try (DirectoryStream<Path> siblings =
+        Files.newDirectoryStream(
+            snapshotFile.getParent(), snapshotFile.getFileName().toString() + ".*")) {
+      for (Path sibling : siblings) {
+        if (getGeneration(snapshotFile, sibling) >= 0) {
+          generations.add(sibling);
+        }
+      }
+    }
+    return generations;
+  }
+
+  private static Path getGenerationFile(Path snapshotFile, long generation) {
+    return snapshotFile.resolveSibling(snapshotFile.getFileName() + "." + generation);
+  }
+
+  /** @return the generation of {@code file}, or -1 if it isn't a generation of the snapshot. */
+  private static long getGeneration(Path snapshotFile, Path file) {
+    String suffix =
+        file.getFileName().toString().substring(snapshotFile.getFileName().toString().length());
+    if (suffix.length() < 2 || suffix.charAt(0) != '.') {
+      return -1;
+    }
+    for (int i = 1; i < suffix.length(); i++) {
+      if (!Character.isDigit(suffix.charAt(i))) {
+        return -1;
+      }
+    }
+    try {
+      return Long.parseLong(suffix.substring(1));
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+}
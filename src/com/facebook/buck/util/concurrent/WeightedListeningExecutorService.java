@@ -69,10 +69,10 @@ public class WeightedListeningExecutorService extends AbstractListeningExecutorS
   }
 
   private <T> ListenableFuture<T> submitWithSemaphore(
-      final Callable<T> callable, final ResourceAmounts amounts) {
+      final Callable<T> callable, final ResourceAmounts amounts, long priority) {
     ListenableFuture<T> future =
         Futures.transformAsync(
-            semaphore.acquire(amounts),
+            semaphore.acquire(amounts, priority),
             input -> {
               try {
                 return Futures.immediateFuture(callable.call());
@@ -104,7 +104,8 @@ public class WeightedListeningExecutorService extends AbstractListeningExecutorS
           task.run();
           return result;
         },
-        amounts);
+        amounts,
+        0);
   }
 
   @Nonnull
@@ -114,7 +115,15 @@ public class WeightedListeningExecutorService extends AbstractListeningExecutorS
   }
 
   public <T> ListenableFuture<T> submit(Callable<T> task, ResourceAmounts amounts) {
-    return submitWithSemaphore(task, amounts);
+    return submitWithSemaphore(task, amounts, 0);
+  }
+
+  /**
+   * Submits a task which, while waiting for resources, is scheduled ahead of waiting tasks with a
+   * lower priority.
+   */
+  public <T> ListenableFuture<T> submit(Callable<T> task, ResourceAmounts amounts, long priority) {
+    return submitWithSemaphore(task, amounts, priority);
   }
 
   @Nonnull
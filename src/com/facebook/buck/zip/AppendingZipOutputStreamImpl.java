@@ -20,6 +20,7 @@ import com.facebook.buck.timing.Clock;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Sets;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.LinkedList;
 import java.util.List;
@@ -74,6 +75,14 @@ class AppendingZipOutputStreamImpl implements CustomZipOutputStream.Impl {
     currentOffset += currentEntry.writeLocalFileHeader(delegate);
   }
 
+  @Override
+  public void actuallyWritePrecompressedEntry(ZipEntry entry, InputStream compressedContents)
+      throws IOException {
+    actuallyPutNextEntry(entry);
+    Preconditions.checkNotNull(currentEntry).writePrecompressed(delegate, compressedContents);
+    actuallyCloseEntry();
+  }
+
   @Override
   public void actuallyCloseEntry() throws IOException {
     if (currentEntry == null) {
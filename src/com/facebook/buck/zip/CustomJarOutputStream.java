@@ -20,6 +20,7 @@ import com.google.common.hash.HashFunction;
 import com.google.common.hash.Hasher;
 import com.google.common.hash.Hashing;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.jar.JarFile;
 import java.util.zip.ZipEntry;
@@ -47,6 +48,10 @@ public class CustomJarOutputStream extends CustomZipOutputStream {
     impl.setEntryHashingEnabled(shouldHashEntries);
   }
 
+  public boolean isEntryHashingEnabled() {
+    return impl.isEntryHashingEnabled();
+  }
+
   public void writeManifest() throws IOException {
     impl.writeManifest();
   }
@@ -74,6 +79,10 @@ public class CustomJarOutputStream extends CustomZipOutputStream {
       this.shouldHashEntries = shouldHashEntries;
     }
 
+    public boolean isEntryHashingEnabled() {
+      return shouldHashEntries;
+    }
+
     @Override
     public void actuallyPutNextEntry(ZipEntry entry) throws IOException {
       inner.actuallyPutNextEntry(entry);
@@ -94,6 +103,17 @@ public class CustomJarOutputStream extends CustomZipOutputStream {
       }
     }
 
+    @Override
+    public void actuallyWritePrecompressedEntry(ZipEntry entry, InputStream compressedContents)
+        throws IOException {
+      if (shouldHashEntries) {
+        // The digests are of the uncompressed contents, which we never see here.
+        throw new IllegalStateException(
+            "Attempted to write a precompressed entry with hashing enabled.");
+      }
+      inner.actuallyWritePrecompressedEntry(entry, compressedContents);
+    }
+
     @Override
     public void actuallyCloseEntry() throws IOException {
       inner.actuallyCloseEntry();
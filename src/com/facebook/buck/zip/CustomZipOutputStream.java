@@ -54,6 +54,15 @@ public class CustomZipOutputStream extends OutputStream {
      */
     void actuallyWrite(byte b[], int off, int len) throws IOException;
 
+    /**
+     * Called by {@link CustomZipOutputStream#writePrecompressedEntry(ZipEntry, InputStream)} once
+     * it is known that the stream is open, that there's no current entry open, and that {@code
+     * entry} is a deflated entry with its sizes and CRC set. Impls write the entry, copying {@code
+     * compressedContents} as they are, and close it.
+     */
+    void actuallyWritePrecompressedEntry(ZipEntry entry, InputStream compressedContents)
+        throws IOException;
+
     void actuallyClose() throws IOException;
   }
 
@@ -77,6 +86,25 @@ public class CustomZipOutputStream extends OutputStream {
     entryOpen = true;
   }
 
+  /**
+   * Writes a complete deflated entry whose contents were compressed ahead of time, such as by
+   * another thread or when they were put in another zip file, so that they don't have to be
+   * compressed again. The entry must have its size, compressed size and CRC set.
+   */
+  public final void writePrecompressedEntry(ZipEntry entry, InputStream compressedContents)
+      throws IOException {
+    Preconditions.checkState(state != State.CLOSED, "Stream has been closed.");
+    Preconditions.checkArgument(
+        entry.getMethod() == ZipEntry.DEFLATED, "Precompressed entries must be deflated.");
+    Preconditions.checkArgument(
+        entry.getSize() >= 0 && entry.getCompressedSize() >= 0 && entry.getCrc() != -1,
+        "Precompressed entries must have their sizes and CRC set.");
+
+    state = State.OPEN;
+    closeEntry();
+    impl.actuallyWritePrecompressedEntry(entry, compressedContents);
+  }
+
   private void validateEntry(ZipEntry entry) {
     if (entry.getMethod() == ZipEntry.STORED) {
       Preconditions.checkState(
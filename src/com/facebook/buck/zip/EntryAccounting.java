@@ -21,8 +21,10 @@ import com.google.common.base.Charsets;
 import com.google.common.base.Preconditions;
 import com.google.common.hash.Hasher;
 import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.Arrays;
 import java.util.Calendar;
@@ -47,6 +49,8 @@ class EntryAccounting {
       };
 
   private static final int DATA_DESCRIPTOR_FLAG = 1 << 3;
+  private static final int BEST_COMPRESSION_FLAG = 1 << 1;
+  private static final int BEST_SPEED_FLAG = 1 << 2;
   private static final int UTF8_NAMES_FLAG = 1 << 11;
   private static final int ARBITRARY_SIZE = 1024;
   private static final byte[] emptyBytes = new byte[] {};
@@ -57,6 +61,7 @@ class EntryAccounting {
   private long offset;
   private long length = 0;
   private long externalAttributes = 0;
+  private boolean precompressed = false;
 
   /**
    * General purpose bit flag: Bit 00: encrypted file Bit 01: compression option Bit 02: compression
@@ -169,16 +174,7 @@ class EntryAccounting {
       // | Normal   |   0   |   0   |
       // | Best     |   1   |   0   |
       // +----------+-------+-------+
-      int level = ((CustomZipEntry) entry).getCompressionLevel();
-      switch (level) {
-        case Deflater.BEST_COMPRESSION:
-          flags |= (1 << 1);
-          break;
-
-        case Deflater.BEST_SPEED:
-          flags |= (1 << 2);
-          break;
-      }
+      flags |= getCompressionLevelFlags(((CustomZipEntry) entry).getCompressionLevel());
     }
 
     if (requiresDataDescriptor()) {
@@ -217,6 +213,21 @@ class EntryAccounting {
     }
   }
 
+  /**
+   * @return the bits of the general purpose bit flag which tell which level of compression a
+   *     deflated entry was compressed at.
+   */
+  static int getCompressionLevelFlags(int level) {
+    switch (level) {
+      case Deflater.BEST_COMPRESSION:
+        return BEST_COMPRESSION_FLAG;
+      case Deflater.BEST_SPEED:
+        return BEST_SPEED_FLAG;
+      default:
+        return 0;
+    }
+  }
+
   private byte[] getDataDescriptor() throws IOException {
     if (!requiresDataDescriptor()) {
       return emptyBytes;
@@ -257,6 +268,27 @@ class EntryAccounting {
     }
   }
 
+  /**
+   * Copies the contents of a deflated entry which were compressed ahead of time, instead of
+   * compressing them as they're written. The entry must already hold their size, compressed size
+   * and CRC, and nothing else may be written to it.
+   */
+  public void writePrecompressed(OutputStream out, InputStream compressedContents)
+      throws IOException {
+    Preconditions.checkState(
+        method == Method.DEFLATE, "Only deflated entries can be written precompressed.");
+    Preconditions.checkState(
+        !precompressed && deflater.getBytesRead() == 0, "Entry contents were already written.");
+    Preconditions.checkState(
+        entry.getSize() >= 0 && entry.getCompressedSize() >= 0 && entry.getCrc() != -1,
+        "Precompressed entries must have their sizes and CRC set.");
+    precompressed = true;
+    long written = ByteStreams.copy(compressedContents, out);
+    Preconditions.checkState(
+        written == entry.getCompressedSize(),
+        "Number of bytes written differs from what is specified in the entry.");
+  }
+
   /**
    * Finish the entry and return the total number of compressed bytes written (not counting the
    * local file header, but counting the data descriptor if present). Must be called exactly once.
@@ -269,7 +301,7 @@ class EntryAccounting {
       Preconditions.checkState(
           entry.getCrc() == calculateCrc(),
           "CRC of bytes written differs from what is specified in the entry.");
-    } else if (method == Method.DEFLATE) {
+    } else if (method == Method.DEFLATE && !precompressed) {
       deflater.finish();
       while (!deflater.finished()) {
         deflate(out);
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.zip;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashCode;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * The contents of a jar held in memory, along with their {@link JarIndex}. Entries are read
+ * straight out of those contents, so they may be read from several threads at once, and nothing
+ * needs to be closed.
+ */
+@ThreadSafe
+public class IndexedJar {
+
+  private static final int INFLATER_BUFFER_SIZE = 8192;
+
+  private final Path path;
+  private final ByteBuffer contents;
+  private final JarIndex index;
+
+  IndexedJar(Path path, ByteBuffer contents, JarIndex index) {
+    this.path = path;
+    this.contents = contents;
+    this.index = index;
+  }
+
+  public Path getPath() {
+    return path;
+  }
+
+  public HashCode getContentHash() {
+    return index.getContentHash();
+  }
+
+  /** @see JarIndex#getEntries() */
+  public ImmutableList<JarIndex.Entry> getEntries() {
+    return index.getEntries();
+  }
+
+  /** @see JarIndex#getEntry(String) */
+  public Optional<JarIndex.Entry> getEntry(String name) {
+    return index.getEntry(name);
+  }
+
+  /** @return a stream of the uncompressed contents of {@code entry}. */
+  public InputStream openEntry(JarIndex.Entry entry) throws IOException {
+    ByteBuffer data = contents.duplicate();
+    data.position(entry.getDataOffset());
+    data.limit((int) (entry.getDataOffset() + entry.getCompressedSize()));
+    InputStream stored = new ByteBufferInputStream(data.slice());
+    switch (entry.getMethod()) {
+      case ZipEntry.STORED:
+        return stored;
+      case ZipEntry.DEFLATED:
+        // Raw deflate data isn't terminated, so the inflater needs an extra byte to find its end.
+        return new InflaterInputStream(
+            new SequenceInputStream(stored, new ByteArrayInputStream(new byte[1])),
+            new Inflater(true),
+            INFLATER_BUFFER_SIZE) {
+          private boolean closed;
+
+          @Override
+          public void close() throws IOException {
+            if (!closed) {
+              closed = true;
+              inf.end();
+              super.close();
+            }
+          }
+        };
+      default:
+        throw new ZipException(
+            String.format(
+                "Entry %s of %s uses unsupported compression method %d.",
+                entry.getName(), path, entry.getMethod()));
+    }
+  }
+
+  /** @return the manifest of the jar, or null if it doesn't have one. */
+  @Nullable
+  public Manifest getManifest() throws IOException {
+    Optional<JarIndex.Entry> entry = getEntry(JarFile.MANIFEST_NAME);
+    if (!entry.isPresent()) {
+      return null;
+    }
+    try (InputStream stream = openEntry(entry.get())) {
+      return new Manifest(stream);
+    }
+  }
+
+  private static class ByteBufferInputStream extends InputStream {
+    private final ByteBuffer buffer;
+
+    private ByteBufferInputStream(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    @Override
+    public int read() {
+      return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) {
+      if (length == 0) {
+        return 0;
+      }
+      if (!buffer.hasRemaining()) {
+        return -1;
+      }
+      int count = Math.min(length, buffer.remaining());
+      buffer.get(bytes, offset, count);
+      return count;
+    }
+
+    @Override
+    public long skip(long count) {
+      int skipped = (int) Math.max(0, Math.min(count, buffer.remaining()));
+      buffer.position(buffer.position() + skipped);
+      return skipped;
+    }
+
+    @Override
+    public int available() {
+      return buffer.remaining();
+    }
+  }
+}
@@ -0,0 +1,268 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.zip;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.HashCode;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * The entries of a jar, as its central directory lists them, along with where each entry's data
+ * starts. An index only depends on the contents of the jar, so it's shared by all the jars with the
+ * same contents; see {@link JarIndexCache}.
+ */
+@Immutable
+public class JarIndex {
+
+  private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+  private static final int MAX_COMMENT_SIZE = 0xffff;
+  private static final int ZIP64_LOCATOR_SIZE = 20;
+  private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+  private static final int ZIP64_END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06064b50;
+  private static final int ZIP64_EXTRA_FIELD_ID = 0x0001;
+  private static final int CENTRAL_DIRECTORY_HEADER_SIZE = 46;
+  private static final int LOCAL_HEADER_SIZE = 30;
+  private static final long ZIP64_MAGIC = 0xffffffffL;
+
+  private final HashCode contentHash;
+  private final ImmutableList<Entry> entries;
+  private final ImmutableMap<String, Entry> entriesByName;
+
+  private JarIndex(HashCode contentHash, ImmutableList<Entry> entries) {
+    this.contentHash = contentHash;
+    this.entries = entries;
+
+    // Like java.util.zip.ZipFile, look up the first of several entries with the same name.
+    Map<String, Entry> entriesByName = new LinkedHashMap<>();
+    for (Entry entry : entries) {
+      entriesByName.putIfAbsent(entry.getName(), entry);
+    }
+    this.entriesByName = ImmutableMap.copyOf(entriesByName);
+  }
+
+  /** Indexes the jar whose contents are {@code contents}, which hash to {@code contentHash}. */
+  static JarIndex read(HashCode contentHash, ByteBuffer contents) throws ZipException {
+    ByteBuffer zip = contents.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    int endOffset = findEndOfCentralDirectory(zip);
+
+    long directorySize = getUnsignedInt(zip, endOffset + 12);
+    long directoryOffset = getUnsignedInt(zip, endOffset + 16);
+    if (directoryOffset == ZIP64_MAGIC || directorySize == ZIP64_MAGIC) {
+      int locatorOffset = endOffset - ZIP64_LOCATOR_SIZE;
+      if (locatorOffset < 0 || zip.getInt(locatorOffset) != ZIP64_LOCATOR_SIGNATURE) {
+        throw new ZipException("Can't find the zip64 end of the central directory.");
+      }
+      int zip64EndOffset = checkOffset(zip, zip.getLong(locatorOffset + 8), 56);
+      if (zip.getInt(zip64EndOffset) != ZIP64_END_OF_CENTRAL_DIRECTORY_SIGNATURE) {
+        throw new ZipException("Bad zip64 end of the central directory.");
+      }
+      directorySize = zip.getLong(zip64EndOffset + 40);
+      directoryOffset = zip.getLong(zip64EndOffset + 48);
+    }
+    int offset = checkOffset(zip, directoryOffset, directorySize);
+    int directoryEnd = (int) (offset + directorySize);
+
+    ImmutableList.Builder<Entry> entries = ImmutableList.builder();
+    while (offset + CENTRAL_DIRECTORY_HEADER_SIZE <= directoryEnd
+        && zip.getInt(offset) == (int) ZipEntry.CENSIG) {
+      int method = getUnsignedShort(zip, offset + 10);
+      long crc = getUnsignedInt(zip, offset + 16);
+      long compressedSize = getUnsignedInt(zip, offset + 20);
+      long size = getUnsignedInt(zip, offset + 24);
+      int nameLength = getUnsignedShort(zip, offset + 28);
+      int extraLength = getUnsignedShort(zip, offset + 30);
+      int commentLength = getUnsignedShort(zip, offset + 32);
+      long localHeaderOffset = getUnsignedInt(zip, offset + 42);
+
+      int nameOffset = offset + CENTRAL_DIRECTORY_HEADER_SIZE;
+      String name = getString(zip, nameOffset, nameLength);
+
+      if (size == ZIP64_MAGIC
+          || compressedSize == ZIP64_MAGIC
+          || localHeaderOffset == ZIP64_MAGIC) {
+        // The zip64 extra field holds, in this order, whichever of these didn't fit.
+        int field = findExtraField(zip, nameOffset + nameLength, extraLength, ZIP64_EXTRA_FIELD_ID);
+        if (field == -1) {
+          throw new ZipException(String.format("Missing zip64 sizes for entry %s.", name));
+        }
+        int value = field + 4;
+        if (size == ZIP64_MAGIC) {
+          size = zip.getLong(value);
+          value += 8;
+        }
+        if (compressedSize == ZIP64_MAGIC) {
+          compressedSize = zip.getLong(value);
+          value += 8;
+        }
+        if (localHeaderOffset == ZIP64_MAGIC) {
+          localHeaderOffset = zip.getLong(value);
+        }
+      }
+
+      int localHeader = checkOffset(zip, localHeaderOffset, LOCAL_HEADER_SIZE);
+      if (zip.getInt(localHeader) != (int) ZipEntry.LOCSIG) {
+        throw new ZipException(String.format("Bad local header for entry %s.", name));
+      }
+      long dataOffset =
+          localHeaderOffset
+              + LOCAL_HEADER_SIZE
+              + getUnsignedShort(zip, localHeader + 26)
+              + getUnsignedShort(zip, localHeader + 28);
+      checkOffset(zip, dataOffset, compressedSize);
+
+      entries.add(new Entry(name, method, crc, compressedSize, size, (int) dataOffset));
+      offset = nameOffset + nameLength + extraLength + commentLength;
+    }
+    return new JarIndex(contentHash, entries.build());
+  }
+
+  /** @return the hash of the contents of the jar. */
+  public HashCode getContentHash() {
+    return contentHash;
+  }
+
+  /** @return all of the entries of the jar, including directories, in central directory order. */
+  public ImmutableList<Entry> getEntries() {
+    return entries;
+  }
+
+  /** @return the entry called {@code name}, if there is one. */
+  public Optional<Entry> getEntry(String name) {
+    return Optional.ofNullable(entriesByName.get(name));
+  }
+
+  /** @return a rough estimate of how many bytes of the heap the index takes up. */
+  int getWeight() {
+    long weight = 0;
+    for (Entry entry : entries) {
+      weight += 64 + 2 * entry.getName().length();
+    }
+    return (int) Math.min(weight, Integer.MAX_VALUE);
+  }
+
+  private static int findEndOfCentralDirectory(ByteBuffer zip) throws ZipException {
+    int fileSize = zip.limit();
+    int tailSize = Math.min(fileSize, END_OF_CENTRAL_DIRECTORY_SIZE + MAX_COMMENT_SIZE);
+    for (int offset = fileSize - END_OF_CENTRAL_DIRECTORY_SIZE;
+        offset >= fileSize - tailSize;
+        offset--) {
+      if (zip.getInt(offset) == (int) ZipEntry.ENDSIG
+          && offset + END_OF_CENTRAL_DIRECTORY_SIZE + getUnsignedShort(zip, offset + 20)
+              == fileSize) {
+        return offset;
+      }
+    }
+    throw new ZipException("Can't find the end of the central directory.");
+  }
+
+  private static int findExtraField(ByteBuffer zip, int offset, int length, int id) {
+    int end = offset + length;
+    while (offset + 4 <= end) {
+      int fieldId = getUnsignedShort(zip, offset);
+      int fieldLength = getUnsignedShort(zip, offset + 2);
+      if (fieldId == id) {
+        return offset;
+      }
+      offset += 4 + fieldLength;
+    }
+    return -1;
+  }
+
+  private static int checkOffset(ByteBuffer zip, long offset, long length) throws ZipException {
+    if (offset < 0 || length < 0 || offset + length > zip.limit()) {
+      throw new ZipException("Zip structure lies outside of the file.");
+    }
+    return (int) offset;
+  }
+
+  private static String getString(ByteBuffer zip, int offset, int length) {
+    byte[] bytes = new byte[length];
+    ByteBuffer slice = zip.duplicate();
+    slice.position(offset);
+    slice.get(bytes);
+    return new String(bytes, Charsets.UTF_8);
+  }
+
+  private static int getUnsignedShort(ByteBuffer buffer, int offset) {
+    return buffer.getShort(offset) & 0xffff;
+  }
+
+  private static long getUnsignedInt(ByteBuffer buffer, int offset) {
+    return buffer.getInt(offset) & 0xffffffffL;
+  }
+
+  /** An entry of the jar, as its central directory describes it. */
+  @Immutable
+  public static class Entry {
+    private final String name;
+    private final int method;
+    private final long crc;
+    private final long compressedSize;
+    private final long size;
+    private final int dataOffset;
+
+    private Entry(
+        String name, int method, long crc, long compressedSize, long size, int dataOffset) {
+      this.name = name;
+      this.method = method;
+      this.crc = crc;
+      this.compressedSize = compressedSize;
+      this.size = size;
+      this.dataOffset = dataOffset;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public boolean isDirectory() {
+      return name.endsWith("/");
+    }
+
+    /** @return the {@link ZipEntry} compression method of the entry. */
+    public int getMethod() {
+      return method;
+    }
+
+    /** @return the CRC-32 of the uncompressed contents of the entry. */
+    public long getCrc() {
+      return crc;
+    }
+
+    public long getCompressedSize() {
+      return compressedSize;
+    }
+
+    public long getSize() {
+      return size;
+    }
+
+    /** @return the offset in the jar of the entry's (compressed) contents. */
+    int getDataOffset() {
+      return dataOffset;
+    }
+  }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.zip;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.zip.ZipException;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Keeps the jars read during the builds of a daemon in memory and indexed, so that ABI generation,
+ * classpath traversals and javac's classpath don't each open and scan the same jars over and over,
+ * nor keep copies of their own.
+ *
+ * <p>Indexes are keyed by the hash of the jar's contents, so jars with the same contents, such as a
+ * jar which is rebuilt without changes, share one. Contents are copied onto the heap rather than
+ * mapped: a mapping isn't a snapshot, and would keep the jar from being overwritten or deleted on
+ * some platforms. A path is only read and hashed again once its size, modification time or file
+ * key change.
+ */
+@ThreadSafe
+public class JarIndexCache {
+
+  private static final JarIndexCache INSTANCE =
+      new JarIndexCache(
+          Runtime.getRuntime().maxMemory() / 32, Runtime.getRuntime().maxMemory() / 8);
+
+  private final Cache<HashCode, JarIndex> indexes;
+  private final Cache<Path, CachedJar> jars;
+
+  @VisibleForTesting
+  JarIndexCache(long maxIndexBytes, long maxJarBytes) {
+    this.indexes =
+        CacheBuilder.newBuilder()
+            .maximumWeight(maxIndexBytes)
+            .weigher((HashCode hash, JarIndex index) -> index.getWeight())
+            .softValues()
+            .build();
+    this.jars =
+        CacheBuilder.newBuilder()
+            .maximumWeight(maxJarBytes)
+            .weigher((Path path, CachedJar jar) -> jar.size)
+            .softValues()
+            .build();
+  }
+
+  /** @return the cache shared by everything which reads jars in this process. */
+  public static JarIndexCache getInstance() {
+    return INSTANCE;
+  }
+
+  /** @return the contents of the jar at {@code jarPath}, indexed. */
+  public IndexedJar get(Path jarPath) throws IOException {
+    Path path = jarPath.toAbsolutePath().normalize();
+    BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+    CachedJar cached = jars.getIfPresent(path);
+    if (cached != null && cached.matches(attributes)) {
+      return cached.jar;
+    }
+
+    // Hash and index the same copy of the bytes, so that a jar which changes while it is read
+    // can't be indexed under the hash of other contents.
+    if (attributes.size() > Integer.MAX_VALUE) {
+      throw new ZipException(String.format("%s is too large to be indexed.", path));
+    }
+    byte[] bytes = Files.readAllBytes(path);
+    HashCode contentHash = Hashing.sha1().hashBytes(bytes);
+    ByteBuffer contents = ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+    JarIndex index;
+    try {
+      index = indexes.get(contentHash, () -> JarIndex.read(contentHash, contents));
+    } catch (ExecutionException e) {
+      Throwables.throwIfInstanceOf(e.getCause(), IOException.class);
+      throw new RuntimeException(e.getCause());
+    }
+    IndexedJar jar = new IndexedJar(path, contents, index);
+    jars.put(path, new CachedJar(attributes, bytes.length, jar));
+    return jar;
+  }
+
+  @VisibleForTesting
+  long size() {
+    return indexes.size();
+  }
+
+  /** A jar's contents, along with what its file looked like when they were read. */
+  private static class CachedJar {
+    private final long fileSize;
+    private final long lastModifiedMillis;
+    private final Object fileKey;
+    private final int size;
+    private final IndexedJar jar;
+
+    private CachedJar(BasicFileAttributes attributes, int size, IndexedJar jar) {
+      this.fileSize = attributes.size();
+      this.lastModifiedMillis = attributes.lastModifiedTime().toMillis();
+      this.fileKey = attributes.fileKey();
+      this.size = size;
+      this.jar = jar;
+    }
+
+    private boolean matches(BasicFileAttributes attributes) {
+      return fileSize == attributes.size()
+          && lastModifiedMillis == attributes.lastModifiedTime().toMillis()
+          && Objects.equals(fileKey, attributes.fileKey());
+    }
+  }
+}
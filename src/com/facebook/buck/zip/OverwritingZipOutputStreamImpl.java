@@ -24,6 +24,7 @@ import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
@@ -84,6 +85,15 @@ public class OverwritingZipOutputStreamImpl implements CustomZipOutputStream.Imp
     currentOutput = new BufferedOutputStream(new FileOutputStream(file));
   }
 
+  @Override
+  public void actuallyWritePrecompressedEntry(ZipEntry entry, InputStream compressedContents)
+      throws IOException {
+    actuallyPutNextEntry(entry);
+    Preconditions.checkNotNull(currentEntry)
+        .writePrecompressed(Preconditions.checkNotNull(currentOutput), compressedContents);
+    actuallyCloseEntry();
+  }
+
   @Override
   public void actuallyCloseEntry() throws IOException {
     // We'll close the entry once we have the ultimate output stream and know the entry's location
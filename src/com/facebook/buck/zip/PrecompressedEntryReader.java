@@ -0,0 +1,230 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.zip;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableMap;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Reads the compressed contents of the deflated entries of a zip file, so that they can be copied
+ * into another zip file with {@link CustomZipOutputStream#writePrecompressedEntry} instead of being
+ * inflated and deflated again.
+ *
+ * <p>Only entries which can be copied as they are, which excludes encrypted entries, entries which
+ * need zip64 and entries whose name appears more than once, are available. Reads don't move any
+ * shared position, so entries may be read from several threads at once.
+ */
+@ThreadSafe
+public class PrecompressedEntryReader implements AutoCloseable {
+
+  private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+  private static final int MAX_COMMENT_SIZE = 0xffff;
+  private static final int CENTRAL_DIRECTORY_HEADER_SIZE = 46;
+  private static final int LOCAL_HEADER_SIZE = 30;
+
+  private static final int ENCRYPTED_FLAG = 1;
+  private static final int COMPRESSION_LEVEL_FLAGS = (1 << 1) | (1 << 2);
+  private static final long ZIP64_MAGIC = 0xffffffffL;
+
+  private final FileChannel channel;
+  private final ImmutableMap<String, Entry> entries;
+
+  public PrecompressedEntryReader(Path zipFile) throws IOException {
+    this.channel = FileChannel.open(zipFile, StandardOpenOption.READ);
+    try {
+      this.entries = readCentralDirectory();
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /** @return the deflated entry called {@code name}, if it can be copied as it is. */
+  public Optional<Entry> getEntry(String name) {
+    return Optional.ofNullable(entries.get(name));
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+
+  private ImmutableMap<String, Entry> readCentralDirectory() throws IOException {
+    long fileSize = channel.size();
+    int tailSize = (int) Math.min(fileSize, END_OF_CENTRAL_DIRECTORY_SIZE + MAX_COMMENT_SIZE);
+    ByteBuffer tail = read(fileSize - tailSize, tailSize);
+
+    int endOffset = -1;
+    for (int offset = tailSize - END_OF_CENTRAL_DIRECTORY_SIZE; offset >= 0; offset--) {
+      if (tail.getInt(offset) == (int) ZipEntry.ENDSIG
+          && offset + END_OF_CENTRAL_DIRECTORY_SIZE + getUnsignedShort(tail, offset + 20)
+              == tailSize) {
+        endOffset = offset;
+        break;
+      }
+    }
+    if (endOffset == -1) {
+      throw new ZipException("Can't find the end of the central directory.");
+    }
+
+    long directorySize = getUnsignedInt(tail, endOffset + 12);
+    long directoryOffset = getUnsignedInt(tail, endOffset + 16);
+    if (directoryOffset == ZIP64_MAGIC || directorySize == ZIP64_MAGIC) {
+      // Zip64 archives are rare enough that we simply don't copy anything from them.
+      return ImmutableMap.of();
+    }
+    if (directoryOffset + directorySize > fileSize || directorySize > Integer.MAX_VALUE) {
+      throw new ZipException("Central directory lies outside of the file.");
+    }
+    ByteBuffer directory = read(directoryOffset, (int) directorySize);
+
+    Map<String, Entry> entries = new HashMap<>();
+    Set<String> duplicateNames = new HashSet<>();
+    int offset = 0;
+    while (offset + CENTRAL_DIRECTORY_HEADER_SIZE <= directory.limit()
+        && directory.getInt(offset) == (int) ZipEntry.CENSIG) {
+      int flags = getUnsignedShort(directory, offset + 8);
+      int method = getUnsignedShort(directory, offset + 10);
+      long crc = getUnsignedInt(directory, offset + 16);
+      long compressedSize = getUnsignedInt(directory, offset + 20);
+      long size = getUnsignedInt(directory, offset + 24);
+      int nameLength = getUnsignedShort(directory, offset + 28);
+      int extraLength = getUnsignedShort(directory, offset + 30);
+      int commentLength = getUnsignedShort(directory, offset + 32);
+      long localHeaderOffset = getUnsignedInt(directory, offset + 42);
+
+      byte[] nameBytes = new byte[nameLength];
+      directory.position(offset + CENTRAL_DIRECTORY_HEADER_SIZE);
+      directory.get(nameBytes);
+      String name = new String(nameBytes, Charsets.UTF_8);
+      offset += CENTRAL_DIRECTORY_HEADER_SIZE + nameLength + extraLength + commentLength;
+
+      if (duplicateNames.contains(name) || entries.remove(name) != null) {
+        // We can't tell which of the entries a reader of the zip file would pick.
+        duplicateNames.add(name);
+        continue;
+      }
+      if (method != ZipEntry.DEFLATED
+          || (flags & ENCRYPTED_FLAG) != 0
+          || compressedSize == ZIP64_MAGIC
+          || size == ZIP64_MAGIC
+          || localHeaderOffset == ZIP64_MAGIC) {
+        continue;
+      }
+      entries.put(name, new Entry(name, flags, crc, compressedSize, size, localHeaderOffset));
+    }
+    return ImmutableMap.copyOf(entries);
+  }
+
+  private ByteBuffer read(long position, int length) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, position + buffer.position()) == -1) {
+        throw new EOFException();
+      }
+    }
+    buffer.flip();
+    return buffer;
+  }
+
+  private static int getUnsignedShort(ByteBuffer buffer, int offset) {
+    return buffer.getShort(offset) & 0xffff;
+  }
+
+  private static long getUnsignedInt(ByteBuffer buffer, int offset) {
+    return buffer.getInt(offset) & 0xffffffffL;
+  }
+
+  /** A deflated entry of the zip file, as its central directory describes it. */
+  public class Entry {
+    private final String name;
+    private final int flags;
+    private final long crc;
+    private final long compressedSize;
+    private final long size;
+    private final long localHeaderOffset;
+
+    private Entry(
+        String name, int flags, long crc, long compressedSize, long size, long localHeaderOffset) {
+      this.name = name;
+      this.flags = flags;
+      this.crc = crc;
+      this.compressedSize = compressedSize;
+      this.size = size;
+      this.localHeaderOffset = localHeaderOffset;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public long getCrc() {
+      return crc;
+    }
+
+    public long getCompressedSize() {
+      return compressedSize;
+    }
+
+    public long getSize() {
+      return size;
+    }
+
+    /**
+     * @return whether the entry is known to have been compressed at the given {@link
+     *     java.util.zip.Deflater} level. Only the fastest and best levels have flags of their own:
+     *     "normal" is also what {@code java.util.zip} writes for every level, so an entry flagged
+     *     that way could have been compressed at any level and never matches.
+     */
+    public boolean isCompressedAtLevel(int level) {
+      int levelFlags = flags & COMPRESSION_LEVEL_FLAGS;
+      return levelFlags != 0 && levelFlags == EntryAccounting.getCompressionLevelFlags(level);
+    }
+
+    /** @return the compressed contents of the entry, exactly as they're stored in the zip. */
+    public byte[] readCompressedContents() throws IOException {
+      ByteBuffer localHeader = read(localHeaderOffset, LOCAL_HEADER_SIZE);
+      if (localHeader.getInt(0) != (int) ZipEntry.LOCSIG) {
+        throw new ZipException(String.format("Bad local header for entry %s.", name));
+      }
+      long dataOffset =
+          localHeaderOffset
+              + LOCAL_HEADER_SIZE
+              + getUnsignedShort(localHeader, 26)
+              + getUnsignedShort(localHeader, 28);
+      if (compressedSize > Integer.MAX_VALUE) {
+        throw new ZipException(String.format("Entry %s is too large to be read.", name));
+      }
+      return read(dataOffset, (int) compressedSize).array();
+    }
+  }
+}
@@ -0,0 +1,32 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.zip;
+
+import java.util.zip.ZipException;
+
+/**
+ * Thrown when a zip read from a stream holds an entry which may well be valid, but can't be read
+ * from a stream, such as a zip64 entry, a stored entry without its sizes in its local header or an
+ * entry compressed with another method than deflate. Such zips may still be read from a file with
+ * {@link Unzip#extractZipFile}.
+ */
+public class UnstreamableZipEntryException extends ZipException {
+
+  public UnstreamableZipEntryException(String message) {
+    super(message);
+  }
+}
@@ -22,6 +22,7 @@ import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.util.MoreCollectors;
 import com.google.common.base.Charsets;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 import com.google.common.io.ByteStreams;
@@ -38,11 +39,15 @@ import java.nio.file.Paths;
 import java.nio.file.attribute.PosixFilePermission;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.Optional;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.zip.ZipEntry;
 import java.util.zip.ZipError;
 import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.UnixStat;
 import org.apache.commons.compress.archivers.zip.ZipFile;
 
 public class Unzip {
@@ -240,6 +245,112 @@ public class Unzip {
     return extractZipFile(zipFile, filesystem, filesystem.getPath(""), existingFileMode);
   }
 
+  /**
+   * Unzips a zip file read from a stream to the root of {@code filesystem}, with the same results
+   * as {@link #extractZipFile(Path, ProjectFilesystem, ExistingFileMode)}, but without saving it to
+   * a file first. The contents of each entry are verified against their checksum as they are
+   * written. If the zip can't be read to its end, the files written from it so far are deleted.
+   *
+   * @return the paths of the written files.
+   * @throws java.util.zip.ZipException if the stream doesn't hold a valid zip, or {@link
+   *     UnstreamableZipEntryException} if it holds an entry which can only be read from a file.
+   */
+  public static ImmutableList<Path> extractZipStream(
+      InputStream zipStream, ProjectFilesystem filesystem, ExistingFileMode existingFileMode)
+      throws IOException {
+    Path relativePath = filesystem.getPath("");
+    SortedMap<Path, ZipEntry> pathMap = new TreeMap<>();
+    Set<Path> directories = new HashSet<>();
+    ImmutableMap<String, Long> externalAttributes;
+    try (ZipStreamReader reader = new ZipStreamReader(zipStream)) {
+      for (Optional<ZipEntry> next = reader.getNextEntry();
+          next.isPresent();
+          next = reader.getNextEntry()) {
+        ZipEntry entry = next.get();
+        Path target = relativePath.resolve(entry.getName()).normalize();
+        pathMap.put(target, entry);
+        // Entries are not sorted, so the parent directories of each entry may not have been listed
+        // yet, and anything which is in their way has to be deleted first.
+        prepareDirectories(filesystem, target.getParent(), directories);
+        if (entry.isDirectory()) {
+          prepareDirectories(filesystem, target, directories);
+          continue;
+        }
+        if (filesystem.exists(target, LinkOption.NOFOLLOW_LINKS)
+            && !filesystem.isFile(target, LinkOption.NOFOLLOW_LINKS)) {
+          filesystem.deleteRecursivelyIfExists(target);
+        }
+        try (OutputStream out = filesystem.newFileOutputStream(target)) {
+          reader.copyEntryContents(out);
+        }
+        filesystem.resolve(target).toFile().setLastModified(entry.getTime());
+      }
+      externalAttributes = reader.readCentralDirectory();
+    } catch (IOException e) {
+      // Don't leave a part of the zip behind, as if it was all there.
+      for (SortedMap.Entry<Path, ZipEntry> p : pathMap.entrySet()) {
+        if (!p.getValue().isDirectory()) {
+          try {
+            filesystem.deleteFileAtPathIfExists(p.getKey());
+          } catch (IOException deleteFailure) {
+            e.addSuppressed(deleteFailure);
+          }
+        }
+      }
+      throw e;
+    }
+
+    // Only now that every entry is known can stale contents of the directories be deleted.
+    if (existingFileMode == ExistingFileMode.OVERWRITE_AND_CLEAN_DIRECTORIES) {
+      // Every directory either is an entry or holds entries, as extractZipFile would clean it.
+      for (Path directory : directories) {
+        for (File f : filesystem.listFiles(directory)) {
+          Path path = f.toPath();
+          if (!pathMap.containsKey(path) && !directories.contains(path)) {
+            filesystem.deleteRecursivelyIfExists(path);
+          }
+        }
+      }
+    }
+
+    // The file attributes are only in the central directory, at the end of the zip.
+    ImmutableList.Builder<Path> filesWritten = ImmutableList.builder();
+    for (SortedMap.Entry<Path, ZipEntry> p : pathMap.entrySet()) {
+      Path target = p.getKey();
+      ZipEntry entry = p.getValue();
+      if (entry.isDirectory()) {
+        continue;
+      }
+      filesWritten.add(target);
+      int mode = (int) (externalAttributes.getOrDefault(entry.getName(), 0L) >> 16);
+      if ((mode & UnixStat.LINK_FLAG) == UnixStat.LINK_FLAG) {
+        String linkTarget =
+            new String(Files.readAllBytes(filesystem.resolve(target)), Charsets.UTF_8);
+        filesystem.createSymLink(target, filesystem.getPath(linkTarget), /* force */ true);
+      } else if (MorePosixFilePermissions.fromMode(mode)
+          .contains(PosixFilePermission.OWNER_EXECUTE)) {
+        MoreFiles.makeExecutable(filesystem.resolve(target));
+      }
+    }
+    return filesWritten.build();
+  }
+
+  /** Makes sure {@code directory} and its parents are directories, deleting files in the way. */
+  private static void prepareDirectories(
+      ProjectFilesystem filesystem, Path directory, Set<Path> directories) throws IOException {
+    if (directory == null || directory.toString().isEmpty() || directories.contains(directory)) {
+      return;
+    }
+    prepareDirectories(filesystem, directory.getParent(), directories);
+    if (!filesystem.isDirectory(directory, LinkOption.NOFOLLOW_LINKS)) {
+      if (filesystem.exists(directory, LinkOption.NOFOLLOW_LINKS)) {
+        filesystem.deleteFileAtPath(directory);
+      }
+      filesystem.mkdirs(directory);
+    }
+    directories.add(directory);
+  }
+
   public static ImmutableList<Path> extractZipFile(
       Path zipFile, final Path destination, ExistingFileMode existingFileMode)
       throws InterruptedException, IOException {
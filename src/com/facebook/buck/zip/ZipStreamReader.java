@@ -0,0 +1,287 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.zip;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.ByteStreams;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.util.Optional;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import org.apache.commons.compress.archivers.zip.ZipUtil;
+
+/**
+ * Reads the entries of a zip file in the order in which they are stored, from a stream which can't
+ * be seeked, such as a network response.
+ *
+ * <p>Entries are delimited using their local headers, so stored entries must record their sizes in
+ * them, which is the case for all the zip files Buck writes. The central directory, which holds the
+ * file attributes of the entries, comes last and can only be read once all entries were read.
+ *
+ * <p>Contents which aren't a valid zip, including a stream which ends too early, are reported as
+ * {@link ZipException}s, and valid entries which can't be streamed as {@link
+ * UnstreamableZipEntryException}s. Failures of the underlying stream are passed on as they are.
+ */
+class ZipStreamReader implements AutoCloseable {
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private static final int DATA_DESCRIPTOR_FLAG = 1 << 3;
+  private static final int ZIP64_EXTRA_FIELD_ID = 0x0001;
+
+  private final PushbackInputStream input;
+  private final byte[] buffer = new byte[BUFFER_SIZE];
+  private final Inflater inflater = new Inflater(/* nowrap */ true);
+  private final CRC32 crc = new CRC32();
+
+  private int signature;
+  private Optional<LocalEntry> currentEntry = Optional.empty();
+
+  ZipStreamReader(InputStream input) {
+    this.input = new PushbackInputStream(input, BUFFER_SIZE);
+  }
+
+  /** @return the next entry, or empty once all entries were read. */
+  public Optional<ZipEntry> getNextEntry() throws IOException {
+    if (currentEntry.isPresent()) {
+      copyEntryContents(ByteStreams.nullOutputStream());
+    }
+    signature = readInt();
+    if (signature != ZipEntry.LOCSIG) {
+      return Optional.empty();
+    }
+
+    readShort(); // Version needed to extract.
+    int flags = readShort();
+    int method = readShort();
+    long time = readUnsignedInt();
+    long crc = readUnsignedInt();
+    long compressedSize = readUnsignedInt();
+    long size = readUnsignedInt();
+    int nameLength = readShort();
+    int extraLength = readShort();
+    String name = new String(readBytes(nameLength), Charsets.UTF_8);
+    if (hasZip64ExtraField(readBytes(extraLength))) {
+      throw new UnstreamableZipEntryException(
+          String.format("Zip64 entry %s can't be streamed.", name));
+    }
+
+    if (method == ZipEntry.STORED && (flags & DATA_DESCRIPTOR_FLAG) != 0) {
+      throw new UnstreamableZipEntryException(
+          String.format("Stored entry %s does not record its size, so can't be streamed.", name));
+    }
+    if (method != ZipEntry.STORED && method != ZipEntry.DEFLATED) {
+      throw new UnstreamableZipEntryException(
+          String.format("Entry %s uses unsupported compression method %d.", name, method));
+    }
+
+    ZipEntry entry = new ZipEntry(name);
+    entry.setTime(ZipUtil.dosToJavaTime(time));
+    entry.setMethod(method);
+    currentEntry =
+        Optional.of(
+            new LocalEntry(
+                entry, (flags & DATA_DESCRIPTOR_FLAG) != 0, crc, compressedSize, size));
+    return Optional.of(entry);
+  }
+
+  /**
+   * Writes the uncompressed contents of the entry last returned by {@link #getNextEntry()} to
+   * {@code output}, verifying them against the checksum recorded in the zip.
+   */
+  public long copyEntryContents(OutputStream output) throws IOException {
+    LocalEntry entry =
+        currentEntry.orElseThrow(() -> new IllegalStateException("No entry to read."));
+    currentEntry = Optional.empty();
+    crc.reset();
+
+    long size;
+    if (entry.entry.getMethod() == ZipEntry.STORED) {
+      size = copyStored(entry.compressedSize, output);
+    } else {
+      size = inflate(output);
+    }
+
+    long expectedCrc = entry.crc;
+    long expectedSize = entry.size;
+    if (entry.hasDataDescriptor) {
+      long descriptorCrc = readUnsignedInt();
+      if (descriptorCrc == ZipEntry.EXTSIG) {
+        // The data descriptor signature is optional.
+        descriptorCrc = readUnsignedInt();
+      }
+      expectedCrc = descriptorCrc;
+      readUnsignedInt(); // Compressed size.
+      expectedSize = readUnsignedInt();
+    }
+    if (crc.getValue() != expectedCrc || size != expectedSize) {
+      throw new ZipException(
+          String.format("Contents of entry %s do not match its checksum.", entry.entry.getName()));
+    }
+    return size;
+  }
+
+  /**
+   * Reads the central directory, which follows the last entry, and skips whatever is left of the
+   * stream.
+   *
+   * @return the external file attributes of the entries, by name.
+   */
+  public ImmutableMap<String, Long> readCentralDirectory() throws IOException {
+    if (currentEntry.isPresent() || signature == ZipEntry.LOCSIG) {
+      throw new IllegalStateException("Entries must all be read first.");
+    }
+    ImmutableMap.Builder<String, Long> externalAttributes = ImmutableMap.builder();
+    while (signature == ZipEntry.CENSIG) {
+      // Skip the versions, flags, method, time, checksum and sizes, which the local headers hold.
+      readBytes(24);
+      int nameLength = readShort();
+      int extraLength = readShort();
+      int commentLength = readShort();
+      readShort(); // Disk number start.
+      readShort(); // Internal file attributes.
+      long attributes = readUnsignedInt();
+      readUnsignedInt(); // Offset of the local header.
+      String name = new String(readBytes(nameLength), Charsets.UTF_8);
+      readBytes(extraLength + commentLength);
+      externalAttributes.put(name, attributes);
+      signature = readInt();
+    }
+    ByteStreams.exhaust(input);
+    return externalAttributes.build();
+  }
+
+  @Override
+  public void close() {
+    inflater.end();
+  }
+
+  private long copyStored(long length, OutputStream output) throws IOException {
+    long remaining = length;
+    while (remaining > 0) {
+      int read = input.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+      if (read == -1) {
+        throw unexpectedEnd();
+      }
+      crc.update(buffer, 0, read);
+      output.write(buffer, 0, read);
+      remaining -= read;
+    }
+    return length;
+  }
+
+  private long inflate(OutputStream output) throws IOException {
+    inflater.reset();
+    byte[] inflated = new byte[BUFFER_SIZE];
+    int read = 0;
+    long size = 0;
+    try {
+      while (!inflater.finished()) {
+        if (inflater.needsInput()) {
+          read = input.read(buffer);
+          if (read == -1) {
+            throw unexpectedEnd();
+          }
+          inflater.setInput(buffer, 0, read);
+        }
+        int length = inflater.inflate(inflated);
+        if (length == 0 && inflater.needsDictionary()) {
+          throw new ZipException("Deflated entries with a preset dictionary are not supported.");
+        }
+        crc.update(inflated, 0, length);
+        output.write(inflated, 0, length);
+        size += length;
+      }
+    } catch (DataFormatException e) {
+      throw (ZipException) new ZipException(e.getMessage()).initCause(e);
+    }
+    // Give back whatever was read past the end of the compressed data.
+    int remaining = inflater.getRemaining();
+    if (remaining > 0) {
+      input.unread(buffer, read - remaining, remaining);
+    }
+    return size;
+  }
+
+  private static boolean hasZip64ExtraField(byte[] extra) {
+    for (int offset = 0; offset + 4 <= extra.length; ) {
+      int id = (extra[offset] & 0xff) | (extra[offset + 1] & 0xff) << 8;
+      int length = (extra[offset + 2] & 0xff) | (extra[offset + 3] & 0xff) << 8;
+      if (id == ZIP64_EXTRA_FIELD_ID) {
+        return true;
+      }
+      offset += 4 + length;
+    }
+    return false;
+  }
+
+  private byte[] readBytes(int length) throws IOException {
+    byte[] bytes = new byte[length];
+    try {
+      ByteStreams.readFully(input, bytes);
+    } catch (EOFException e) {
+      throw unexpectedEnd();
+    }
+    return bytes;
+  }
+
+  private static ZipException unexpectedEnd() {
+    return new ZipException("Unexpected end of zip stream.");
+  }
+
+  private int readShort() throws IOException {
+    byte[] bytes = readBytes(2);
+    return (bytes[0] & 0xff) | (bytes[1] & 0xff) << 8;
+  }
+
+  private int readInt() throws IOException {
+    return readShort() | readShort() << 16;
+  }
+
+  private long readUnsignedInt() throws IOException {
+    return readInt() & 0xffffffffL;
+  }
+
+  private static class LocalEntry {
+    private final ZipEntry entry;
+    private final boolean hasDataDescriptor;
+    private final long crc;
+    private final long compressedSize;
+    private final long size;
+
+    private LocalEntry(
+        ZipEntry entry,
+        boolean hasDataDescriptor,
+        long crc,
+        long compressedSize,
+        long size) {
+      this.entry = entry;
+      this.hasDataDescriptor = hasDataDescriptor;
+      this.crc = crc;
+      this.compressedSize = compressedSize;
+      this.size = size;
+    }
+  }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.android;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.event.BuckEventBus;
+import com.facebook.buck.event.BuckEventBusFactory;
+import com.facebook.buck.event.SimplePerfEvent;
+import com.google.common.collect.ImmutableList;
+import com.google.common.eventbus.Subscribe;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.Uninterruptibles;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import org.junit.After;
+import org.junit.Test;
+
+public class DxServiceTest {
+
+  private static final PrintStream NULL_STREAM = new PrintStream(ByteStreams.nullOutputStream());
+
+  private final ExecutorService executor = Executors.newCachedThreadPool();
+  private final BuckEventBus eventBus = BuckEventBusFactory.newInstance();
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void requestsWhichDoNotFitTheBudgetWaitForRunningOnes() throws Exception {
+    CountDownLatch finishFirstRequest = new CountDownLatch(1);
+    AtomicInteger runningRequests = new AtomicInteger();
+    AtomicInteger maxRunningRequests = new AtomicInteger();
+    DxService service =
+        new DxService(
+            /* heapBudgetBytes */ 100,
+            (args, stdout, stderr) -> {
+              maxRunningRequests.accumulateAndGet(runningRequests.incrementAndGet(), Math::max);
+              if (args.contains("first")) {
+                Uninterruptibles.awaitUninterruptibly(finishFirstRequest);
+              }
+              runningRequests.decrementAndGet();
+              return new DxService.Result(0, Optional.empty());
+            });
+
+    Future<?> first = executor.submit(() -> dex(service, "first", 6));
+    waitUntil(() -> runningRequests.get() == 1);
+    // Each byte of input is estimated to take ten bytes of heap, so this one doesn't fit.
+    Future<?> second = executor.submit(() -> dex(service, "second", 6));
+    Thread.sleep(100);
+    assertFalse(second.isDone());
+
+    finishFirstRequest.countDown();
+    first.get(5, TimeUnit.SECONDS);
+    second.get(5, TimeUnit.SECONDS);
+    assertEquals(1, maxRunningRequests.get());
+  }
+
+  @Test
+  public void requestsRunTogetherWhileTheyFitTheBudget() throws Exception {
+    CountDownLatch bothRunning = new CountDownLatch(2);
+    DxService service =
+        new DxService(
+            /* heapBudgetBytes */ 100,
+            (args, stdout, stderr) -> {
+              bothRunning.countDown();
+              Uninterruptibles.awaitUninterruptibly(bothRunning);
+              return new DxService.Result(0, Optional.empty());
+            });
+
+    Future<?> first = executor.submit(() -> dex(service, "first", 5));
+    Future<?> second = executor.submit(() -> dex(service, "second", 5));
+    first.get(5, TimeUnit.SECONDS);
+    second.get(5, TimeUnit.SECONDS);
+  }
+
+  @Test
+  public void requestLargerThanTheBudgetRunsAlone() throws Exception {
+    DxService service =
+        new DxService(
+            /* heapBudgetBytes */ 100,
+            (args, stdout, stderr) -> new DxService.Result(2, Optional.empty()));
+
+    assertEquals(2, dex(service, "huge", 1000).getExitCode());
+  }
+
+  @Test
+  public void requestTimingIsReportedOnTheEventBus() throws Exception {
+    List<SimplePerfEvent> events = new ArrayList<>();
+    eventBus.register(
+        new Object() {
+          @Subscribe
+          public void onPerfEvent(SimplePerfEvent event) {
+            events.add(event);
+          }
+        });
+    DxService service =
+        new DxService(
+            /* heapBudgetBytes */ 100,
+            (args, stdout, stderr) -> new DxService.Result(0, Optional.empty()));
+
+    dex(service, "request", 3);
+
+    assertEquals(2, events.size());
+    assertEquals("dx_in_process", events.get(0).getEventId().getValue());
+    assertEquals(3L, events.get(0).getEventInfo().get("input_size_bytes"));
+    assertEquals(SimplePerfEvent.Type.FINISHED, events.get(1).getEventType());
+    assertEquals(0, events.get(1).getEventInfo().get("exit_code"));
+    assertTrue(events.get(1).getEventInfo().containsKey("wait_millis"));
+  }
+
+  private DxService.Result dex(DxService service, String name, long inputSizeBytes)
+      throws Exception {
+    return service.dex(eventBus, ImmutableList.of(name), inputSizeBytes, NULL_STREAM, NULL_STREAM);
+  }
+
+  private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (!condition.getAsBoolean()) {
+      assertTrue(System.nanoTime() < deadline);
+      Thread.sleep(10);
+    }
+  }
+}
@@ -61,6 +61,7 @@ import java.util.Optional;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 import org.junit.Before;
@@ -69,6 +70,8 @@ import org.junit.Test;
 
 public class ExopackageInstallerIntegrationTest {
   private static final boolean DEBUG = false;
+  // The installer remembers device state across installs, so every test uses a new device.
+  private static final AtomicInteger nextDeviceId = new AtomicInteger();
   private static final String FAKE_PACKAGE_NAME = "buck.exotest.fake";
   private static final Path INSTALL_ROOT =
       ExopackageInstaller.EXOPACKAGE_INSTALL_ROOT.resolve(FAKE_PACKAGE_NAME);
@@ -200,6 +203,26 @@ public class ExopackageInstallerIntegrationTest {
     checkExoInstall(0, 0, 0, 0);
   }
 
+  @Test
+  public void testExoNoopReinstallOnlyReadsMetadata() throws Exception {
+    device.abi = SdkConstants.ABI_ARMEABI_V7A;
+    setDefaultFullBuildState();
+
+    checkExoInstall(1, 2, 2, 3);
+    device.allowDirectoryChanges = false;
+    checkExoInstall(0, 0, 0, 0);
+  }
+
+  @Test
+  public void testExoReinstallAfterDeviceWasCleared() throws Exception {
+    device.abi = SdkConstants.ABI_ARMEABI_V7A;
+    setDefaultFullBuildState();
+
+    checkExoInstall(1, 2, 2, 3);
+    device.deviceState.keySet().removeIf(path -> path.startsWith(INSTALL_ROOT.toString()));
+    checkExoInstall(0, 2, 2, 3);
+  }
+
   private void setDefaultFullBuildState() {
     currentBuildState =
         new ExoState(
@@ -437,6 +460,9 @@ public class ExopackageInstallerIntegrationTest {
    */
   private class TestExopackageDevice implements ExopackageDevice {
     public String abi;
+    // Whether directories may be created, listed or have files removed from them.
+    public boolean allowDirectoryChanges = true;
+    private final String serialNumber = "fake-device-" + nextDeviceId.getAndIncrement();
     // Persistent "device" state.
     private NavigableMap<String, String> deviceState;
     private Set<Path> directories;
@@ -518,6 +544,7 @@ public class ExopackageInstallerIntegrationTest {
 
     @Override
     public String listDir(String dirPath) throws Exception {
+      assertTrue("Unexpected listing of " + dirPath, allowDirectoryChanges);
       Set<String> res = new TreeSet<>();
       for (String s : deviceState.subMap(dirPath, false, dirPath + "\u00FF", false).keySet()) {
         s = s.substring(dirPath.length() + 1);
@@ -534,6 +561,7 @@ public class ExopackageInstallerIntegrationTest {
 
     @Override
     public void rmFiles(String dirPath, Iterable<String> filesToDelete) throws Exception {
+      assertTrue("Unexpected removal from " + dirPath, allowDirectoryChanges);
       debug("rmfiles dir=" + dirPath + " files=" + ImmutableList.copyOf(filesToDelete));
       for (String s : filesToDelete) {
         deviceState.remove(dirPath + "/" + s);
@@ -581,8 +609,14 @@ public class ExopackageInstallerIntegrationTest {
       }
     }
 
+    @Override
+    public Optional<String> readFile(String path) throws Exception {
+      return Optional.ofNullable(deviceState.get(path));
+    }
+
     @Override
     public void mkDirP(String dir) throws Exception {
+      assertTrue("Unexpected creation of " + dir, allowDirectoryChanges);
       Path dirPath = Paths.get(dir);
       while (dirPath != null) {
         directories.add(dirPath);
@@ -604,6 +638,11 @@ public class ExopackageInstallerIntegrationTest {
       return ImmutableList.of(abi);
     }
 
+    @Override
+    public String getSerialNumber() {
+      return serialNumber;
+    }
+
     public void setAllowedInstallCounts(
         int expectedApksInstalled,
         int expectedDexesInstalled,
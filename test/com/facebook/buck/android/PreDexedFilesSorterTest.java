@@ -17,6 +17,7 @@
 package com.facebook.buck.android;
 
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
 import static org.hamcrest.Matchers.oneOf;
 import static org.junit.Assert.assertThat;
 
@@ -182,6 +183,64 @@ public class PreDexedFilesSorterTest {
     }
   }
 
+  @Test
+  public void testSecondaryDexesArePackedLikeThePreviousBuild() throws IOException {
+    int half = (int) DEX_WEIGHT_LIMIT / 2;
+    ImmutableMap<Path, Integer> groups =
+        sortSecondaryDexes(ImmutableMap.of(), half + 1, half, half);
+    assertThat(groups.values().asList(), is(ImmutableList.of(0, 1, 1)));
+
+    // Shrinking the first dex would let the second one fit into the first secondary dex, but that
+    // would change both secondary dexes.
+    assertThat(sortSecondaryDexes(ImmutableMap.of(), 1, half, half), is(not(groups)));
+    assertThat(sortSecondaryDexes(groups, 1, half, half), is(groups));
+  }
+
+  @Test
+  public void testNewSecondaryDexesGoIntoSecondaryDexesWithRoom() throws IOException {
+    int third = (int) DEX_WEIGHT_LIMIT / 3;
+    ImmutableMap<Path, Integer> previousGroups =
+        ImmutableMap.of(
+            Paths.get("secondary/secondary1.dex"), 0,
+            Paths.get("secondary/secondary2.dex"), 0,
+            Paths.get("secondary/secondary3.dex"), 1);
+
+    ImmutableMap<Path, Integer> groups =
+        sortSecondaryDexes(previousGroups, third, third, third, third, third);
+    assertThat(groups.get(Paths.get("secondary/secondary0.dex")), is(0));
+    assertThat(groups.get(Paths.get("secondary/secondary1.dex")), is(0));
+    assertThat(groups.get(Paths.get("secondary/secondary2.dex")), is(0));
+    assertThat(groups.get(Paths.get("secondary/secondary3.dex")), is(1));
+    assertThat(groups.get(Paths.get("secondary/secondary4.dex")), is(1));
+  }
+
+  @Test
+  public void testSecondaryDexesArePackedFromScratchWhenTheyOutgrowTheLimit() throws IOException {
+    int half = (int) DEX_WEIGHT_LIMIT / 2;
+    ImmutableMap<Path, Integer> previousGroups =
+        ImmutableMap.of(
+            Paths.get("secondary/secondary0.dex"), 0,
+            Paths.get("secondary/secondary1.dex"), 0,
+            Paths.get("secondary/secondary2.dex"), 1);
+
+    ImmutableMap<Path, Integer> groups = sortSecondaryDexes(previousGroups, half, half + 1, 1);
+    assertThat(groups.values().asList(), is(ImmutableList.of(0, 1, 1)));
+  }
+
+  @Test
+  public void testSecondaryDexesArePackedFromScratchWhenASecondaryDexIsLeftEmpty()
+      throws IOException {
+    int half = (int) DEX_WEIGHT_LIMIT / 2;
+    ImmutableMap<Path, Integer> previousGroups =
+        ImmutableMap.of(
+            Paths.get("secondary/secondary0.dex"), 0,
+            Paths.get("secondary/secondary1.dex"), 1,
+            Paths.get("secondary/removed.dex"), 2);
+
+    ImmutableMap<Path, Integer> groups = sortSecondaryDexes(previousGroups, 1, 1);
+    assertThat(groups.values().asList(), is(ImmutableList.of(0, 0)));
+  }
+
   private ImmutableMap<String, PreDexedFilesSorter.Result> generatePreDexSorterResults(
       int numberOfPrimaryDexes, int numberOfSecondaryDexes, int numberOfExtraDexes)
       throws IOException {
@@ -221,12 +280,43 @@ public class PreDexedFilesSorterTest {
             DEX_WEIGHT_LIMIT,
             DexStore.JAR,
             tempDir.newFolder("secondary").toPath(),
-            tempDir.newFolder("additional").toPath());
+            tempDir.newFolder("additional").toPath(),
+            ImmutableMap.of());
     ImmutableList.Builder<Step> steps = ImmutableList.builder();
     FakeProjectFilesystem filesystem = new FakeProjectFilesystem();
     return sorter.sortIntoPrimaryAndSecondaryDexes(filesystem, steps);
   }
 
+  private ImmutableMap<Path, Integer> sortSecondaryDexes(
+      ImmutableMap<Path, Integer> previousGroups, int... weights) throws IOException {
+    ImmutableMultimap.Builder<APKModule, DexWithClasses> inputDexes = ImmutableMultimap.builder();
+    for (int i = 0; i < weights.length; i++) {
+      inputDexes.put(
+          moduleGraph.getRootAPKModule(),
+          createFakeDexWithClasses(
+              Paths.get("secondary").resolve(String.format("secondary%d.dex", i)),
+              ImmutableSet.of(String.format("secondary.secondary%d.class", i)),
+              weights[i]));
+    }
+
+    PreDexedFilesSorter sorter =
+        new PreDexedFilesSorter(
+            Optional.empty(),
+            inputDexes.build(),
+            ImmutableSet.of(PRIMARY_DEX_PATTERN),
+            moduleGraph,
+            tempDir.newFolder().toPath(),
+            DEX_WEIGHT_LIMIT,
+            DexStore.JAR,
+            tempDir.newFolder().toPath(),
+            tempDir.newFolder().toPath(),
+            ImmutableMap.of(APKModuleGraph.ROOT_APKMODULE_NAME, previousGroups));
+    return sorter
+        .sortIntoPrimaryAndSecondaryDexes(new FakeProjectFilesystem(), ImmutableList.builder())
+        .get(APKModuleGraph.ROOT_APKMODULE_NAME)
+        .secondaryDexGroups;
+  }
+
   private DexWithClasses createFakeDexWithClasses(
       final Path pathToDex, final ImmutableSet<String> classNames, final int weightEstimate) {
     return new DexWithClasses() {
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.android.resources;
+
+import com.google.caliper.AfterExperiment;
+import com.google.caliper.BeforeExperiment;
+import com.google.caliper.Benchmark;
+import com.google.caliper.Param;
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Compares rewriting the ids of a large resource table read onto the heap with rewriting it in a
+ * private mapping of the file, as {@link ExoResourcesRewriter} does.
+ */
+public class ResourceTableBenchmark {
+  private static final int CONFIG_SIZE = 64;
+  private static final int ENTRY_SIZE = 16;
+
+  @Param({"10000", "60000"})
+  private int resourceCount = 1000;
+
+  private Path arscPath;
+
+  @Before
+  public void setUpTest() throws Exception {
+    setUpBenchmark();
+  }
+
+  @After
+  public void tearDownTest() throws Exception {
+    tearDownBenchmark();
+  }
+
+  @BeforeExperiment
+  public void setUpBenchmark() throws Exception {
+    arscPath = Files.createTempFile("benchmark", ".arsc");
+    Files.write(arscPath, createResourceTable(resourceCount).serialize());
+  }
+
+  @AfterExperiment
+  public void tearDownBenchmark() throws Exception {
+    Files.deleteIfExists(arscPath);
+  }
+
+  @Test
+  public void rewriteReadTablePerformance() throws Exception {
+    rewriteReadTable();
+  }
+
+  @Benchmark
+  public int rewriteReadTable() throws IOException {
+    ResourceTable resourceTable = ResourceTable.get(ResChunk.wrap(Files.readAllBytes(arscPath)));
+    resourceTable.reassignIds(ReversingMapper.construct(resourceTable));
+    return resourceTable.getTotalSize();
+  }
+
+  @Test
+  public void rewriteMappedTablePerformance() throws Exception {
+    rewriteMappedTable();
+  }
+
+  @Benchmark
+  public int rewriteMappedTable() throws IOException {
+    ResourceTable resourceTable = ResourceTable.get(ResChunk.map(arscPath));
+    resourceTable.reassignIds(ReversingMapper.construct(resourceTable));
+    return resourceTable.getTotalSize();
+  }
+
+  /** Creates a table with a single type of string resources, which each refer to the next one. */
+  private static ResourceTable createResourceTable(int count) {
+    StringPool strings =
+        StringPool.create(
+            IntStream.range(0, count).mapToObj(i -> "value " + i).collect(Collectors.toList()));
+    StringPool types = StringPool.create(ImmutableList.of("string"));
+    StringPool keys =
+        StringPool.create(
+            IntStream.range(0, count).mapToObj(i -> "key_" + i).collect(Collectors.toList()));
+
+    int specSize = 16 + 4 * count;
+    int typeHeaderSize = 20 + CONFIG_SIZE;
+    int typeSize = typeHeaderSize + 4 * count + ENTRY_SIZE * count;
+    ByteBuffer spec = ResChunk.wrap(new byte[specSize + typeSize]);
+    spec.putShort(ResChunk.CHUNK_RES_TABLE_TYPE_SPEC);
+    spec.putShort((short) 16);
+    spec.putInt(specSize);
+    spec.put((byte) 1);
+    spec.put((byte) 0);
+    spec.putShort((short) 0);
+    spec.putInt(count);
+    spec.position(specSize);
+
+    spec.putShort(ResChunk.CHUNK_RES_TABLE_TYPE);
+    spec.putShort((short) typeHeaderSize);
+    spec.putInt(typeSize);
+    spec.put((byte) 1);
+    spec.put((byte) 0);
+    spec.putShort((short) 0);
+    spec.putInt(count);
+    spec.putInt(typeHeaderSize + 4 * count);
+    spec.putInt(CONFIG_SIZE);
+    spec.position(specSize + typeHeaderSize);
+    for (int i = 0; i < count; i++) {
+      spec.putInt(i * ENTRY_SIZE);
+    }
+    for (int i = 0; i < count; i++) {
+      spec.putShort((short) 8);
+      spec.putShort((short) 0);
+      spec.putInt(i);
+      spec.putShort((short) 8);
+      spec.put((byte) 0);
+      spec.put((byte) ResChunk.RES_REFERENCE);
+      spec.putInt(0x7f010000 | ((i + 1) % count));
+    }
+    spec.rewind();
+    ResTableTypeSpec typeSpec = ResTableTypeSpec.get(spec);
+
+    ResTablePackage resPackage =
+        new ResTablePackage(
+            ResTablePackage.HEADER_SIZE
+                + types.getChunkSize()
+                + keys.getChunkSize()
+                + typeSpec.getTotalSize(),
+            ResTablePackage.APP_PACKAGE_ID,
+            new byte[ResTablePackage.NAME_DATA_LENGTH],
+            types,
+            keys,
+            ImmutableList.of(typeSpec));
+    return new ResourceTable(strings, resPackage);
+  }
+}
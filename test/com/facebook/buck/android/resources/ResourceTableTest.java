@@ -168,6 +168,25 @@ public class ResourceTableTest {
     }
   }
 
+  @Test
+  public void testRewriteMappedResources() throws Exception {
+    try (ZipFile apkZip = new ZipFile(apkPath.toFile())) {
+      byte[] data =
+          ByteStreams.toByteArray(apkZip.getInputStream(apkZip.getEntry("resources.arsc")));
+      Path arscPath = tmpFolder.newFile("resources.arsc");
+      Files.write(arscPath, data);
+
+      ResourceTable resourceTable = ResourceTable.get(ResChunk.wrap(data.clone()));
+      ResourceTable mappedTable = ResourceTable.get(ResChunk.map(arscPath));
+      resourceTable.reassignIds(ReversingMapper.construct(resourceTable));
+      mappedTable.reassignIds(ReversingMapper.construct(mappedTable));
+
+      assertArrayEquals(resourceTable.serialize(), mappedTable.serialize());
+      // The rewrites only apply to the mapping.
+      assertArrayEquals(data, Files.readAllBytes(arscPath));
+    }
+  }
+
   @Test
   public void testFullSliceResourceTable() throws Exception {
     try (ZipFile apkZip = new ZipFile(apkPath.toFile())) {
@@ -50,6 +50,7 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.hash.HashCode;
+import com.google.common.util.concurrent.MoreExecutors;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -505,6 +506,8 @@ public class DirArtifactCacheTest {
     Files.createDirectories(fileY.getParent());
     Files.createDirectories(fileZ.getParent());
 
+    // With the index owned by someone else, the cache falls back to ordering by access times.
+    DirArtifactCacheIndex index = DirArtifactCacheIndex.open(cacheDir).get();
     dirArtifactCache =
         new DirArtifactCache(
             "dir",
@@ -512,6 +515,7 @@ public class DirArtifactCacheTest {
             Paths.get("."),
             CacheReadMode.READWRITE,
             /* maxCacheSizeBytes */ Optional.of(3L));
+    assertFalse(dirArtifactCache.getIndex().isPresent());
 
     Files.write(fileW, "w".getBytes(UTF_8));
     Files.write(fileX, "x".getBytes(UTF_8));
@@ -525,12 +529,141 @@ public class DirArtifactCacheTest {
 
     // On some filesystems, setting creationTime silently fails. So don't test that here.
 
-    assertEquals(4, cacheDir.toFile().listFiles().length);
+    assertEquals(4, dirArtifactCache.getAllFilesInCache().size());
 
     dirArtifactCache.deleteOldFiles();
 
     List<Path> filesInCache = dirArtifactCache.getAllFilesInCache();
     assertEquals(ImmutableSet.of(fileZ, fileW), ImmutableSet.copyOf(filesInCache));
+    index.close();
+  }
+
+  @Test
+  public void testDeleteLeastRecentlyUsed() throws InterruptedException, IOException {
+    Path cacheDir = tmpDir.newFolder();
+    dirArtifactCache =
+        new DirArtifactCache(
+            "dir",
+            new ProjectFilesystem(cacheDir),
+            Paths.get("."),
+            CacheReadMode.READWRITE,
+            /* maxCacheSizeBytes */ Optional.of(1300L));
+
+    RuleKey ruleKeyW = new RuleKey("11111111");
+    RuleKey ruleKeyX = new RuleKey("22222222");
+    RuleKey ruleKeyY = new RuleKey("33333333");
+    RuleKey ruleKeyZ = new RuleKey("44444444");
+    for (RuleKey ruleKey : ImmutableList.of(ruleKeyW, ruleKeyX, ruleKeyY, ruleKeyZ)) {
+      storeArtifact(ruleKey, new byte[300]);
+    }
+    // Access times may well not be updated by the filesystem, but fetching still counts as a use.
+    assertEquals(
+        CacheResultType.HIT,
+        dirArtifactCache.fetch(ruleKeyW, LazyPath.ofInstance(tmpDir.newFile())).getType());
+
+    dirArtifactCache.deleteOldFiles();
+
+    assertEquals(
+        ImmutableList.of(ruleKeyZ, ruleKeyW),
+        dirArtifactCache.getIndex().get().getRuleKeysInEvictionOrder());
+    assertEquals(
+        CacheResultType.MISS,
+        dirArtifactCache.fetch(ruleKeyX, LazyPath.ofInstance(tmpDir.newFile())).getType());
+    assertEquals(
+        CacheResultType.MISS,
+        dirArtifactCache.fetch(ruleKeyY, LazyPath.ofInstance(tmpDir.newFile())).getType());
+    assertEquals(4, dirArtifactCache.getAllFilesInCache().size());
+  }
+
+  @Test
+  public void testIndexIsPersistedAcrossInstances() throws InterruptedException, IOException {
+    Path cacheDir = tmpDir.newFolder();
+    dirArtifactCache =
+        new DirArtifactCache(
+            "dir",
+            new ProjectFilesystem(cacheDir),
+            Paths.get("."),
+            CacheReadMode.READWRITE,
+            /* maxCacheSizeBytes */ Optional.of(1024L));
+    RuleKey ruleKeyX = new RuleKey("22222222");
+    RuleKey ruleKeyY = new RuleKey("33333333");
+    storeArtifact(ruleKeyX, new byte[10]);
+    storeArtifact(ruleKeyY, new byte[20]);
+    dirArtifactCache.fetch(ruleKeyX, LazyPath.ofInstance(tmpDir.newFile()));
+    long totalSizeBytes = dirArtifactCache.getIndex().get().getTotalSizeBytes();
+    dirArtifactCache.close();
+
+    dirArtifactCache =
+        new DirArtifactCache(
+            "dir",
+            new ProjectFilesystem(cacheDir),
+            Paths.get("."),
+            CacheReadMode.READWRITE,
+            /* maxCacheSizeBytes */ Optional.of(1024L));
+    DirArtifactCacheIndex index = dirArtifactCache.getIndex().get();
+    assertFalse(index.isIncomplete());
+    assertEquals(ImmutableList.of(ruleKeyY, ruleKeyX), index.getRuleKeysInEvictionOrder());
+    assertEquals(totalSizeBytes, index.getTotalSizeBytes());
+  }
+
+  @Test
+  public void testExistingArtifactsAreAddedToNewIndex() throws InterruptedException, IOException {
+    Path cacheDir = tmpDir.newFolder();
+    dirArtifactCache =
+        new DirArtifactCache(
+            "dir",
+            new ProjectFilesystem(cacheDir),
+            Paths.get("."),
+            CacheReadMode.READWRITE,
+            /* maxCacheSizeBytes */ Optional.empty());
+    RuleKey ruleKeyX = new RuleKey("22222222");
+    storeArtifact(ruleKeyX, new byte[10]);
+    dirArtifactCache.close();
+
+    dirArtifactCache =
+        new DirArtifactCache(
+            "dir",
+            new ProjectFilesystem(cacheDir),
+            Paths.get("."),
+            CacheReadMode.READWRITE,
+            /* maxCacheSizeBytes */ Optional.of(1024L));
+    DirArtifactCacheIndex index = dirArtifactCache.getIndex().get();
+    assertTrue(index.isIncomplete());
+    assertEquals(ImmutableList.of(ruleKeyX), index.getRuleKeysInEvictionOrder());
+    assertEquals(
+        Files.size(cacheDir.resolve("22/22/22222222"))
+            + Files.size(cacheDir.resolve("22/22/22222222.metadata")),
+        index.getTotalSizeBytes());
+  }
+
+  @Test
+  public void testEvictionRunsInBackgroundOnceFull() throws InterruptedException, IOException {
+    Path cacheDir = tmpDir.newFolder();
+    dirArtifactCache =
+        new DirArtifactCache(
+            "dir",
+            new ProjectFilesystem(cacheDir),
+            Paths.get("."),
+            CacheReadMode.READWRITE,
+            /* maxCacheSizeBytes */ Optional.of(100L));
+    RuleKey ruleKeyX = new RuleKey("22222222");
+    RuleKey ruleKeyY = new RuleKey("33333333");
+    storeArtifact(ruleKeyX, new byte[60]);
+    storeArtifact(ruleKeyY, new byte[60]);
+
+    // Closing the cache waits for the pending eviction.
+    dirArtifactCache.close();
+    dirArtifactCache = null;
+    assertFalse(Files.exists(cacheDir.resolve("22/22/22222222")));
+    assertTrue(Files.exists(cacheDir.resolve("33/33/33333333")));
+  }
+
+  private void storeArtifact(RuleKey ruleKey, byte[] contents) throws IOException {
+    Path file = tmpDir.newFile();
+    Files.write(file, contents);
+    dirArtifactCache.store(
+        ArtifactInfo.builder().addRuleKeys(ruleKey).build(),
+        BorrowablePath.notBorrowablePath(file));
   }
 
   private DirectoryCleaner.PathStats fakePathStats(long creationTime, long lastAccessTime) {
@@ -581,7 +714,8 @@ public class DirArtifactCacheTest {
             new ProjectFilesystem(cacheDir),
             cacheDir,
             CacheReadMode.READWRITE,
-            /* maxCacheSizeBytes */ Optional.of(9L));
+            /* maxCacheSizeBytes */ Optional.of(9L),
+            Optional.of(MoreExecutors.directExecutor()));
 
     Files.write(fileX, "x".getBytes(UTF_8));
     Files.write(fileY, "y".getBytes(UTF_8));
@@ -612,15 +746,6 @@ public class DirArtifactCacheTest {
         CacheResultType.HIT,
         dirArtifactCache.fetch(ruleKeyX, LazyPath.ofInstance(fileX)).getType());
 
-    Files.setAttribute(
-        dirArtifactCache.getPathForRuleKey(ruleKeyX, Optional.empty()),
-        "lastAccessTime",
-        FileTime.fromMillis(0));
-    Files.setAttribute(
-        dirArtifactCache.getPathForRuleKey(ruleKeyX, Optional.of(".metadata")),
-        "lastAccessTime",
-        FileTime.fromMillis(0));
-
     dirArtifactCache.store(
         ArtifactInfo.builder().addRuleKeys(ruleKeyY).build(),
         BorrowablePath.notBorrowablePath(fileY));
@@ -631,15 +756,6 @@ public class DirArtifactCacheTest {
         CacheResultType.HIT,
         dirArtifactCache.fetch(ruleKeyY, LazyPath.ofInstance(fileY)).getType());
 
-    Files.setAttribute(
-        dirArtifactCache.getPathForRuleKey(ruleKeyY, Optional.empty()),
-        "lastAccessTime",
-        FileTime.fromMillis(1000));
-    Files.setAttribute(
-        dirArtifactCache.getPathForRuleKey(ruleKeyY, Optional.of(".metadata")),
-        "lastAccessTime",
-        FileTime.fromMillis(1000));
-
     dirArtifactCache.store(
         ArtifactInfo.builder().addRuleKeys(ruleKeyZ).build(),
         BorrowablePath.notBorrowablePath(fileZ));
@@ -20,6 +20,7 @@ import static org.junit.Assert.assertThat;
 
 import com.facebook.buck.rules.RuleKey;
 import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.hash.HashCode;
@@ -32,6 +33,8 @@ import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Optional;
+import java.util.OptionalLong;
 import org.hamcrest.Matchers;
 import org.junit.Rule;
 import org.junit.Test;
@@ -101,6 +104,61 @@ public class HttpArtifactCacheBinaryProtocolTest {
     assertThat(fetchResponsePayload.toByteArray(), Matchers.equalTo(data.getBytes(Charsets.UTF_8)));
   }
 
+  @Test
+  public void testMultiFetchRequest() throws IOException {
+    ImmutableList<RuleKey> ruleKeys =
+        ImmutableList.of(
+            new RuleKey("00000000000000000000000000000000"),
+            new RuleKey("90000000000000000000008000000005"));
+    byte[] request = HttpArtifactCacheBinaryProtocol.createMultiFetchRequest(ruleKeys);
+    assertThat(
+        HttpArtifactCacheBinaryProtocol.readMultiFetchRequest(
+            new DataInputStream(new ByteArrayInputStream(request))),
+        Matchers.equalTo(ruleKeys));
+  }
+
+  @Test
+  public void testMultiFetchResponse() throws IOException {
+    RuleKey ruleKey = new RuleKey("00000000000000000000000000000000");
+    ImmutableMap<String, String> metadata = ImmutableMap.of("metaKey", "metaValue");
+    byte[] data = "data".getBytes(Charsets.UTF_8);
+    HttpArtifactCacheBinaryProtocol.MultiFetchResponse multiFetchResponse =
+        new HttpArtifactCacheBinaryProtocol.MultiFetchResponse(
+            ImmutableList.of(
+                Optional.empty(),
+                Optional.of(
+                    new HttpArtifactCacheBinaryProtocol.FetchResponse(
+                        ImmutableSet.of(ruleKey), metadata, ByteSource.wrap(data))),
+                Optional.empty()));
+
+    ByteArrayOutputStream responseOutputStream = new ByteArrayOutputStream();
+    multiFetchResponse.write(responseOutputStream);
+    assertThat(
+        (long) responseOutputStream.size(),
+        Matchers.equalTo(multiFetchResponse.getContentLength()));
+
+    DataInputStream input =
+        new DataInputStream(new ByteArrayInputStream(responseOutputStream.toByteArray()));
+    assertThat(
+        HttpArtifactCacheBinaryProtocol.readMultiFetchResponseEntryHeader(input).isPresent(),
+        Matchers.is(false));
+    OptionalLong entryLength =
+        HttpArtifactCacheBinaryProtocol.readMultiFetchResponseEntryHeader(input);
+    assertThat(entryLength.isPresent(), Matchers.is(true));
+    ByteArrayOutputStream payload = new ByteArrayOutputStream();
+    FetchResponseReadResult readResult =
+        HttpArtifactCacheBinaryProtocol.readMultiFetchResponseEntry(
+            input, entryLength.getAsLong(), payload);
+    assertThat(readResult.getRuleKeys(), Matchers.contains(ruleKey));
+    assertThat(readResult.getMetadata(), Matchers.equalTo(metadata));
+    assertThat(payload.toByteArray(), Matchers.equalTo(data));
+    // The entry must be consumed exactly, leaving the stream at the next one.
+    assertThat(
+        HttpArtifactCacheBinaryProtocol.readMultiFetchResponseEntryHeader(input).isPresent(),
+        Matchers.is(false));
+    assertThat(input.read(), Matchers.equalTo(-1));
+  }
+
   @Test
   public void testReadFetchResponse() throws IOException {
     final String base64EncodedData =
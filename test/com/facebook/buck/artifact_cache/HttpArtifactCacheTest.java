@@ -35,10 +35,12 @@ import com.facebook.buck.slb.OkHttpResponseWrapper;
 import com.facebook.buck.testutil.FakeProjectFilesystem;
 import com.facebook.buck.timing.IncrementingFakeClock;
 import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Sets;
 import com.google.common.io.ByteSource;
+import com.google.common.io.ByteStreams;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.MoreExecutors;
 import java.io.ByteArrayInputStream;
@@ -125,6 +127,64 @@ public class HttpArtifactCacheTest {
     };
   }
 
+  private HttpService withFetchResponse(
+      ImmutableSet<RuleKey> ruleKeys, ByteSource source, String data, List<Response> responseList) {
+    return withMakeRequest(
+        (path, requestBuilder) -> {
+          Request request = requestBuilder.url(SERVER + path).build();
+          Response response =
+              new Response.Builder()
+                  .request(request)
+                  .protocol(Protocol.HTTP_1_1)
+                  .code(HttpURLConnection.HTTP_OK)
+                  .body(createResponseBody(ruleKeys, ImmutableMap.of(), source, data))
+                  .build();
+          responseList.add(response);
+          return new OkHttpResponseWrapper(response);
+        });
+  }
+
+  private static HttpArtifactCacheBinaryProtocol.FetchResponse createFetchResponse(
+      RuleKey ruleKey, String data) throws IOException {
+    return new HttpArtifactCacheBinaryProtocol.FetchResponse(
+        ImmutableSet.of(ruleKey),
+        ImmutableMap.of("rule", ruleKey.toString()),
+        ByteSource.wrap(data.getBytes(Charsets.UTF_8)));
+  }
+
+  private static Path getOutput(RuleKey ruleKey) {
+    return Paths.get("output", ruleKey.toString());
+  }
+
+  private static ImmutableMap<RuleKey, LazyPath> createRequests(RuleKey... ruleKeys) {
+    ImmutableMap.Builder<RuleKey, LazyPath> requests = ImmutableMap.builder();
+    for (RuleKey ruleKey : ruleKeys) {
+      requests.put(ruleKey, LazyPath.ofInstance(getOutput(ruleKey)));
+    }
+    return requests.build();
+  }
+
+  private HttpService withMultiFetchResponse(
+      ImmutableList<Optional<HttpArtifactCacheBinaryProtocol.FetchResponse>> entries,
+      List<Response> responseList) {
+    return withMakeRequest(
+        (path, requestBuilder) -> {
+          Request request = requestBuilder.url(SERVER + path).build();
+          assertEquals("/artifacts/multikey", request.url().encodedPath());
+          ByteArrayOutputStream body = new ByteArrayOutputStream();
+          new HttpArtifactCacheBinaryProtocol.MultiFetchResponse(entries).write(body);
+          Response response =
+              new Response.Builder()
+                  .request(request)
+                  .protocol(Protocol.HTTP_1_1)
+                  .code(HttpURLConnection.HTTP_OK)
+                  .body(ResponseBody.create(OCTET_STREAM, body.toByteArray()))
+                  .build();
+          responseList.add(response);
+          return new OkHttpResponseWrapper(response);
+        });
+  }
+
   @Before
   public void setUp() {
     this.argsBuilder =
@@ -464,6 +524,101 @@ public class HttpArtifactCacheTest {
     cache.close();
   }
 
+  @Test
+  public void testStreamingFetchOK() throws Exception {
+    final String data = "test";
+    final RuleKey ruleKey = new RuleKey("00000000000000000000000000000000");
+    final List<Response> responseList = new ArrayList<>();
+    argsBuilder.setFetchClient(
+        withFetchResponse(
+            ImmutableSet.of(ruleKey),
+            ByteSource.wrap(data.getBytes(Charsets.UTF_8)),
+            data,
+            responseList));
+    HttpArtifactCache cache = new HttpArtifactCache(argsBuilder.build());
+
+    ByteArrayOutputStream consumed = new ByteArrayOutputStream();
+    CacheResult result =
+        cache.fetch(
+            ruleKey,
+            new LazyPath() {
+              @Override
+              protected Path create() throws IOException {
+                throw new AssertionError("Streamed artifacts should not be saved to a file.");
+              }
+            },
+            (metadata, payload) -> ByteStreams.copy(payload, consumed));
+    assertEquals(result.cacheError().orElse(""), CacheResultType.HIT, result.getType());
+    assertEquals(data, new String(consumed.toByteArray(), Charsets.UTF_8));
+    assertEquals(Optional.of((long) data.length()), result.artifactSizeBytes());
+    assertTrue("response wasn't fully read!", responseList.get(0).body().source().exhausted());
+    cache.close();
+  }
+
+  @Test
+  public void testStreamingFetchBadChecksum() throws Exception {
+    final RuleKey ruleKey = new RuleKey("00000000000000000000000000000000");
+    final List<Response> responseList = new ArrayList<>();
+    argsBuilder.setFetchClient(
+        withFetchResponse(
+            ImmutableSet.of(ruleKey), ByteSource.wrap(new byte[0]), "data", responseList));
+    HttpArtifactCache cache = new HttpArtifactCache(argsBuilder.build());
+
+    // The consumer may only read part of the payload.
+    CacheResult result =
+        cache.fetch(
+            ruleKey,
+            LazyPath.ofInstance(Paths.get("output/file")),
+            (metadata, payload) -> payload.read());
+    assertEquals(CacheResultType.ERROR, result.getType());
+    assertTrue("response wasn't fully read!", responseList.get(0).body().source().exhausted());
+    cache.close();
+  }
+
+  @Test
+  public void testStreamingFetchWrongKeyIsNotConsumed() throws Exception {
+    final RuleKey ruleKey = new RuleKey("00000000000000000000000000000000");
+    final RuleKey otherRuleKey = new RuleKey("11111111111111111111111111111111");
+    final String data = "data";
+    argsBuilder.setFetchClient(
+        withFetchResponse(
+            ImmutableSet.of(otherRuleKey),
+            ByteSource.wrap(data.getBytes(Charsets.UTF_8)),
+            data,
+            new ArrayList<>()));
+    HttpArtifactCache cache = new HttpArtifactCache(argsBuilder.build());
+
+    CacheResult result =
+        cache.fetch(
+            ruleKey,
+            LazyPath.ofInstance(Paths.get("output/file")),
+            (metadata, payload) -> {
+              throw new AssertionError("Artifacts of other rule keys should not be consumed.");
+            });
+    assertEquals(CacheResultType.ERROR, result.getType());
+    cache.close();
+  }
+
+  @Test(expected = IOException.class)
+  public void testStreamingFetchConsumerFailureIsThrown() throws Exception {
+    final RuleKey ruleKey = new RuleKey("00000000000000000000000000000000");
+    final String data = "data";
+    argsBuilder.setFetchClient(
+        withFetchResponse(
+            ImmutableSet.of(ruleKey),
+            ByteSource.wrap(data.getBytes(Charsets.UTF_8)),
+            data,
+            new ArrayList<>()));
+    try (HttpArtifactCache cache = new HttpArtifactCache(argsBuilder.build())) {
+      cache.fetch(
+          ruleKey,
+          LazyPath.ofInstance(Paths.get("output/file")),
+          (metadata, payload) -> {
+            throw new IOException("No space left on device");
+          });
+    }
+  }
+
   @Test
   public void testFetchMetadata() throws Exception {
     Path output = Paths.get("output/file");
@@ -495,6 +650,151 @@ public class HttpArtifactCacheTest {
     cache.close();
   }
 
+  @Test
+  public void testMultiFetchPartialHits() throws Exception {
+    FakeProjectFilesystem filesystem = new FakeProjectFilesystem();
+    RuleKey ruleKey1 = new RuleKey("00000000000000000000000000000001");
+    RuleKey ruleKey2 = new RuleKey("00000000000000000000000000000002");
+    RuleKey ruleKey3 = new RuleKey("00000000000000000000000000000003");
+    List<Response> responseList = new ArrayList<>();
+    argsBuilder.setProjectFilesystem(filesystem);
+    argsBuilder.setFetchClient(
+        withMultiFetchResponse(
+            ImmutableList.of(
+                Optional.of(createFetchResponse(ruleKey1, "data1")),
+                Optional.empty(),
+                Optional.of(createFetchResponse(ruleKey3, "data3"))),
+            responseList));
+    HttpArtifactCache cache = new HttpArtifactCache(argsBuilder.build());
+    ImmutableMap<RuleKey, CacheResult> results =
+        cache.multiFetch(createRequests(ruleKey1, ruleKey2, ruleKey3));
+    assertEquals(CacheResultType.HIT, results.get(ruleKey1).getType());
+    assertEquals(ImmutableMap.of("rule", ruleKey1.toString()), results.get(ruleKey1).getMetadata());
+    assertEquals(CacheResultType.MISS, results.get(ruleKey2).getType());
+    assertEquals(CacheResultType.HIT, results.get(ruleKey3).getType());
+    assertEquals(ImmutableMap.of("rule", ruleKey3.toString()), results.get(ruleKey3).getMetadata());
+    assertEquals(Optional.of("data1"), filesystem.readFileIfItExists(getOutput(ruleKey1)));
+    assertEquals(Optional.empty(), filesystem.readFileIfItExists(getOutput(ruleKey2)));
+    assertEquals(Optional.of("data3"), filesystem.readFileIfItExists(getOutput(ruleKey3)));
+    assertEquals(1, responseList.size());
+    assertTrue("response wasn't fully read!", responseList.get(0).body().source().exhausted());
+    cache.close();
+  }
+
+  @Test
+  public void testMultiFetchWrongKeyOnlyFailsItsEntry() throws Exception {
+    FakeProjectFilesystem filesystem = new FakeProjectFilesystem();
+    RuleKey ruleKey1 = new RuleKey("00000000000000000000000000000001");
+    RuleKey ruleKey2 = new RuleKey("00000000000000000000000000000002");
+    RuleKey otherRuleKey = new RuleKey("11111111111111111111111111111111");
+    List<Response> responseList = new ArrayList<>();
+    argsBuilder.setProjectFilesystem(filesystem);
+    argsBuilder.setFetchClient(
+        withMultiFetchResponse(
+            ImmutableList.of(
+                Optional.of(createFetchResponse(otherRuleKey, "other")),
+                Optional.of(createFetchResponse(ruleKey2, "data2"))),
+            responseList));
+    HttpArtifactCache cache = new HttpArtifactCache(argsBuilder.build());
+    ImmutableMap<RuleKey, CacheResult> results =
+        cache.multiFetch(createRequests(ruleKey1, ruleKey2));
+    assertEquals(CacheResultType.ERROR, results.get(ruleKey1).getType());
+    assertEquals(Optional.empty(), filesystem.readFileIfItExists(getOutput(ruleKey1)));
+    // The payload of the mismatched entry is still skipped, so the next entry reads correctly.
+    assertEquals(CacheResultType.HIT, results.get(ruleKey2).getType());
+    assertEquals(Optional.of("data2"), filesystem.readFileIfItExists(getOutput(ruleKey2)));
+    assertTrue("response wasn't fully read!", responseList.get(0).body().source().exhausted());
+    cache.close();
+  }
+
+  @Test
+  public void testMultiFetchServerErrorFailsEveryKey() throws Exception {
+    RuleKey ruleKey1 = new RuleKey("00000000000000000000000000000001");
+    RuleKey ruleKey2 = new RuleKey("00000000000000000000000000000002");
+    argsBuilder.setFetchClient(
+        withMakeRequest(
+            (path, requestBuilder) ->
+                new OkHttpResponseWrapper(
+                    new Response.Builder()
+                        .request(requestBuilder.url(SERVER + path).build())
+                        .protocol(Protocol.HTTP_1_1)
+                        .code(HttpURLConnection.HTTP_INTERNAL_ERROR)
+                        .body(createDummyBody())
+                        .build())));
+    HttpArtifactCache cache = new HttpArtifactCache(argsBuilder.build());
+    ImmutableMap<RuleKey, CacheResult> results =
+        cache.multiFetch(createRequests(ruleKey1, ruleKey2));
+    assertEquals(CacheResultType.ERROR, results.get(ruleKey1).getType());
+    assertEquals(CacheResultType.ERROR, results.get(ruleKey2).getType());
+    cache.close();
+  }
+
+  @Test
+  public void testMultiFetchIOExceptionFailsEveryKey() throws Exception {
+    RuleKey ruleKey1 = new RuleKey("00000000000000000000000000000001");
+    RuleKey ruleKey2 = new RuleKey("00000000000000000000000000000002");
+    argsBuilder.setFetchClient(
+        withMakeRequest(
+            (path, requestBuilder) -> {
+              throw new IOException();
+            }));
+    HttpArtifactCache cache = new HttpArtifactCache(argsBuilder.build());
+    ImmutableMap<RuleKey, CacheResult> results =
+        cache.multiFetch(createRequests(ruleKey1, ruleKey2));
+    assertEquals(CacheResultType.ERROR, results.get(ruleKey1).getType());
+    assertEquals(CacheResultType.ERROR, results.get(ruleKey2).getType());
+    cache.close();
+  }
+
+  @Test
+  public void testMultiFetchFallsBackToSingleFetches() throws Exception {
+    FakeProjectFilesystem filesystem = new FakeProjectFilesystem();
+    RuleKey ruleKey1 = new RuleKey("00000000000000000000000000000001");
+    RuleKey ruleKey2 = new RuleKey("00000000000000000000000000000002");
+    List<String> requestedPaths = new ArrayList<>();
+    argsBuilder.setProjectFilesystem(filesystem);
+    argsBuilder.setFetchClient(
+        withMakeRequest(
+            (path, requestBuilder) -> {
+              requestedPaths.add(path);
+              Response.Builder response =
+                  new Response.Builder()
+                      .request(requestBuilder.url(SERVER + path).build())
+                      .protocol(Protocol.HTTP_1_1);
+              if (path.equals("/artifacts/key/" + ruleKey1)) {
+                response
+                    .code(HttpURLConnection.HTTP_OK)
+                    .body(
+                        createResponseBody(
+                            ImmutableSet.of(ruleKey1),
+                            ImmutableMap.of(),
+                            ByteSource.wrap("data1".getBytes(Charsets.UTF_8)),
+                            "data1"));
+              } else {
+                response.code(HttpURLConnection.HTTP_NOT_FOUND).body(createDummyBody());
+              }
+              return new OkHttpResponseWrapper(response.build());
+            }));
+    HttpArtifactCache cache = new HttpArtifactCache(argsBuilder.build());
+    ImmutableMap<RuleKey, LazyPath> requests = createRequests(ruleKey1, ruleKey2);
+    ImmutableMap<RuleKey, CacheResult> results = cache.multiFetch(requests);
+    assertEquals(CacheResultType.HIT, results.get(ruleKey1).getType());
+    assertEquals(CacheResultType.MISS, results.get(ruleKey2).getType());
+    assertEquals(Optional.of("data1"), filesystem.readFileIfItExists(getOutput(ruleKey1)));
+
+    // Servers without multi-fetch support are only asked once.
+    cache.multiFetch(requests);
+    assertEquals(
+        ImmutableList.of(
+            "/artifacts/multikey",
+            "/artifacts/key/" + ruleKey1,
+            "/artifacts/key/" + ruleKey2,
+            "/artifacts/key/" + ruleKey1,
+            "/artifacts/key/" + ruleKey2),
+        requestedPaths);
+    cache.close();
+  }
+
   @Test
   public void errorTextReplaced() throws InterruptedException {
     FakeProjectFilesystem filesystem = new FakeProjectFilesystem();
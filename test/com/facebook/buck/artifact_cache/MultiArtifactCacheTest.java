@@ -283,4 +283,40 @@ public class MultiArtifactCacheTest {
 
     multiArtifactCache.close();
   }
+
+  @Test
+  public void multiFetchAsksLaterCachesOnlyForMissingKeys() throws Exception {
+    RuleKey otherRuleKey = new RuleKey("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa");
+    InMemoryArtifactCache cache1 = new InMemoryArtifactCache();
+    InMemoryArtifactCache cache2 =
+        new InMemoryArtifactCache() {
+          @Override
+          public CacheResult fetch(RuleKey ruleKey, LazyPath output) {
+            assertEquals("Only keys missing from cache1 are fetched", otherRuleKey, ruleKey);
+            return super.fetch(ruleKey, output);
+          }
+        };
+    MultiArtifactCache multiArtifactCache =
+        new MultiArtifactCache(ImmutableList.of(cache1, cache2));
+
+    cache1.store(ArtifactInfo.builder().addRuleKeys(dummyRuleKey).build(), new byte[0]);
+    cache2.store(ArtifactInfo.builder().addRuleKeys(otherRuleKey).build(), new byte[0]);
+    ImmutableMap<RuleKey, CacheResult> results =
+        multiArtifactCache.multiFetch(
+            ImmutableMap.of(
+                dummyRuleKey,
+                LazyPath.ofInstance(tmp.newFile()),
+                otherRuleKey,
+                LazyPath.ofInstance(tmp.newFile())));
+
+    assertThat(results.keySet(), Matchers.contains(dummyRuleKey, otherRuleKey));
+    assertEquals(CacheResultType.HIT, results.get(dummyRuleKey).getType());
+    assertEquals(CacheResultType.HIT, results.get(otherRuleKey).getType());
+    assertThat(
+        "The hit from the second cache is propagated to the first",
+        cache1.hasArtifact(otherRuleKey),
+        Matchers.is(true));
+
+    multiArtifactCache.close();
+  }
 }
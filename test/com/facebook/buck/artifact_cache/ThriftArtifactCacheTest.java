@@ -0,0 +1,350 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.artifact_cache;
+
+import static org.junit.Assert.assertEquals;
+
+import com.facebook.buck.artifact_cache.thrift.ArtifactMetadata;
+import com.facebook.buck.artifact_cache.thrift.BuckCacheFetchResponse;
+import com.facebook.buck.artifact_cache.thrift.BuckCacheMultiFetchResponse;
+import com.facebook.buck.artifact_cache.thrift.BuckCacheRequest;
+import com.facebook.buck.artifact_cache.thrift.BuckCacheRequestType;
+import com.facebook.buck.artifact_cache.thrift.BuckCacheResponse;
+import com.facebook.buck.artifact_cache.thrift.PayloadInfo;
+import com.facebook.buck.event.BuckEventBus;
+import com.facebook.buck.event.DefaultBuckEventBus;
+import com.facebook.buck.io.LazyPath;
+import com.facebook.buck.model.BuildId;
+import com.facebook.buck.rules.RuleKey;
+import com.facebook.buck.slb.HttpResponse;
+import com.facebook.buck.slb.HttpService;
+import com.facebook.buck.slb.OkHttpResponseWrapper;
+import com.facebook.buck.slb.ThriftUtil;
+import com.facebook.buck.testutil.FakeProjectFilesystem;
+import com.facebook.buck.timing.IncrementingFakeClock;
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.ByteSource;
+import com.google.common.util.concurrent.MoreExecutors;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import okhttp3.MediaType;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ThriftArtifactCacheTest {
+
+  private static final String SERVER = "http://localhost";
+  private static final String ENDPOINT = "/hybrid_thrift";
+
+  private static final BuckEventBus BUCK_EVENT_BUS =
+      new DefaultBuckEventBus(new IncrementingFakeClock(), new BuildId());
+
+  private FakeProjectFilesystem filesystem;
+  private NetworkCacheArgs.Builder argsBuilder;
+
+  @Before
+  public void setUp() {
+    filesystem = new FakeProjectFilesystem();
+    argsBuilder =
+        NetworkCacheArgs.builder()
+            .setCacheName("thrift")
+            .setCacheMode(ArtifactCacheMode.thrift_over_http)
+            .setRepository("some_repository")
+            .setScheduleType("some_schedule")
+            .setThriftEndpointPath(ENDPOINT)
+            .setFetchClient(withResponse(HttpURLConnection.HTTP_OK, new byte[0], new ArrayList<>()))
+            .setStoreClient(withResponse(HttpURLConnection.HTTP_OK, new byte[0], new ArrayList<>()))
+            .setCacheReadMode(CacheReadMode.READWRITE)
+            .setProjectFilesystem(filesystem)
+            .setBuckEventBus(BUCK_EVENT_BUS)
+            .setHttpWriteExecutorService(MoreExecutors.newDirectExecutorService())
+            .setErrorTextTemplate("{cache_name} encountered an error: {error_message}")
+            .setDistributedBuildModeEnabled(false);
+  }
+
+  @Test
+  public void testMultiFetchPartialHits() throws Exception {
+    RuleKey ruleKey1 = new RuleKey("00000000000000000000000000000001");
+    RuleKey ruleKey2 = new RuleKey("00000000000000000000000000000002");
+    RuleKey ruleKey3 = new RuleKey("00000000000000000000000000000003");
+    List<BuckCacheRequest> requests = new ArrayList<>();
+    argsBuilder.setFetchClient(
+        withResponse(
+            HttpURLConnection.HTTP_OK,
+            createMultiFetchResponse(
+                ImmutableList.of(
+                    Optional.of(createHit(ruleKey1, "data1")),
+                    Optional.empty(),
+                    Optional.of(createHit(ruleKey3, "data3")))),
+            requests));
+    ThriftArtifactCache cache = new ThriftArtifactCache(argsBuilder.build());
+    ImmutableMap<RuleKey, CacheResult> results =
+        cache.multiFetch(createRequests(ruleKey1, ruleKey2, ruleKey3));
+
+    assertEquals(1, requests.size());
+    assertEquals(BuckCacheRequestType.MULTI_FETCH, requests.get(0).getType());
+    assertEquals(
+        ImmutableList.of(ruleKey1, ruleKey2, ruleKey3),
+        requests
+            .get(0)
+            .getMultiFetchRequest()
+            .getRuleKeys()
+            .stream()
+            .map(ruleKey -> new RuleKey(ruleKey.getHashString()))
+            .collect(Collectors.toList()));
+
+    assertEquals(CacheResultType.HIT, results.get(ruleKey1).getType());
+    assertEquals(ImmutableMap.of("rule", ruleKey1.toString()), results.get(ruleKey1).getMetadata());
+    assertEquals(CacheResultType.MISS, results.get(ruleKey2).getType());
+    assertEquals(CacheResultType.HIT, results.get(ruleKey3).getType());
+    assertEquals(ImmutableMap.of("rule", ruleKey3.toString()), results.get(ruleKey3).getMetadata());
+    assertEquals(Optional.of("data1"), filesystem.readFileIfItExists(getOutput(ruleKey1)));
+    assertEquals(Optional.empty(), filesystem.readFileIfItExists(getOutput(ruleKey2)));
+    assertEquals(Optional.of("data3"), filesystem.readFileIfItExists(getOutput(ruleKey3)));
+    cache.close();
+  }
+
+  @Test
+  public void testMultiFetchCorruptedArtifactOnlyFailsItsEntry() throws Exception {
+    RuleKey ruleKey1 = new RuleKey("00000000000000000000000000000001");
+    RuleKey ruleKey2 = new RuleKey("00000000000000000000000000000002");
+    Hit corruptedHit = createHit(ruleKey1, "data1");
+    corruptedHit.fetchResponse.getMetadata().setArtifactPayloadMd5("not the md5 of data1");
+    argsBuilder.setFetchClient(
+        withResponse(
+            HttpURLConnection.HTTP_OK,
+            createMultiFetchResponse(
+                ImmutableList.of(
+                    Optional.of(corruptedHit), Optional.of(createHit(ruleKey2, "data2")))),
+            new ArrayList<>()));
+    ThriftArtifactCache cache = new ThriftArtifactCache(argsBuilder.build());
+    ImmutableMap<RuleKey, CacheResult> results =
+        cache.multiFetch(createRequests(ruleKey1, ruleKey2));
+
+    assertEquals(CacheResultType.ERROR, results.get(ruleKey1).getType());
+    assertEquals(Optional.empty(), filesystem.readFileIfItExists(getOutput(ruleKey1)));
+    // The corrupted payload was still read past, so the next one is intact.
+    assertEquals(CacheResultType.HIT, results.get(ruleKey2).getType());
+    assertEquals(Optional.of("data2"), filesystem.readFileIfItExists(getOutput(ruleKey2)));
+    cache.close();
+  }
+
+  @Test
+  public void testMultiFetchWithMissingResultsFailsEveryKey() throws Exception {
+    RuleKey ruleKey1 = new RuleKey("00000000000000000000000000000001");
+    RuleKey ruleKey2 = new RuleKey("00000000000000000000000000000002");
+    argsBuilder.setFetchClient(
+        withResponse(
+            HttpURLConnection.HTTP_OK,
+            createMultiFetchResponse(ImmutableList.of(Optional.of(createHit(ruleKey1, "data1")))),
+            new ArrayList<>()));
+    ThriftArtifactCache cache = new ThriftArtifactCache(argsBuilder.build());
+    ImmutableMap<RuleKey, CacheResult> results =
+        cache.multiFetch(createRequests(ruleKey1, ruleKey2));
+
+    assertEquals(CacheResultType.ERROR, results.get(ruleKey1).getType());
+    assertEquals(CacheResultType.ERROR, results.get(ruleKey2).getType());
+    assertEquals(Optional.empty(), filesystem.readFileIfItExists(getOutput(ruleKey1)));
+    cache.close();
+  }
+
+  @Test
+  public void testMultiFetchUnsuccessfulResponseFailsEveryKey() throws Exception {
+    RuleKey ruleKey1 = new RuleKey("00000000000000000000000000000001");
+    RuleKey ruleKey2 = new RuleKey("00000000000000000000000000000002");
+    BuckCacheResponse cacheResponse = new BuckCacheResponse();
+    cacheResponse.setWasSuccessful(false);
+    cacheResponse.setErrorMessage("Server is overloaded.");
+    cacheResponse.setType(BuckCacheRequestType.MULTI_FETCH);
+    argsBuilder.setFetchClient(
+        withResponse(
+            HttpURLConnection.HTTP_OK,
+            serializeResponse(cacheResponse, ImmutableList.of()),
+            new ArrayList<>()));
+    ThriftArtifactCache cache = new ThriftArtifactCache(argsBuilder.build());
+    ImmutableMap<RuleKey, CacheResult> results =
+        cache.multiFetch(createRequests(ruleKey1, ruleKey2));
+
+    assertEquals(CacheResultType.ERROR, results.get(ruleKey1).getType());
+    assertEquals(Optional.of("Server is overloaded."), results.get(ruleKey1).cacheError());
+    assertEquals(CacheResultType.ERROR, results.get(ruleKey2).getType());
+    cache.close();
+  }
+
+  @Test
+  public void testMultiFetchHttpErrorFailsEveryKey() throws Exception {
+    RuleKey ruleKey1 = new RuleKey("00000000000000000000000000000001");
+    RuleKey ruleKey2 = new RuleKey("00000000000000000000000000000002");
+    argsBuilder.setFetchClient(
+        withResponse(HttpURLConnection.HTTP_INTERNAL_ERROR, new byte[0], new ArrayList<>()));
+    ThriftArtifactCache cache = new ThriftArtifactCache(argsBuilder.build());
+    ImmutableMap<RuleKey, CacheResult> results =
+        cache.multiFetch(createRequests(ruleKey1, ruleKey2));
+
+    assertEquals(CacheResultType.ERROR, results.get(ruleKey1).getType());
+    assertEquals(CacheResultType.ERROR, results.get(ruleKey2).getType());
+    cache.close();
+  }
+
+  @Test
+  public void testMultiFetchIOExceptionFailsEveryKey() throws Exception {
+    RuleKey ruleKey1 = new RuleKey("00000000000000000000000000000001");
+    RuleKey ruleKey2 = new RuleKey("00000000000000000000000000000002");
+    argsBuilder.setFetchClient(
+        new HttpService() {
+          @Override
+          public HttpResponse makeRequest(String path, Request.Builder request)
+              throws IOException {
+            throw new IOException("Connection reset.");
+          }
+
+          @Override
+          public void close() {}
+        });
+    ThriftArtifactCache cache = new ThriftArtifactCache(argsBuilder.build());
+    ImmutableMap<RuleKey, CacheResult> results =
+        cache.multiFetch(createRequests(ruleKey1, ruleKey2));
+
+    assertEquals(CacheResultType.ERROR, results.get(ruleKey1).getType());
+    assertEquals(CacheResultType.ERROR, results.get(ruleKey2).getType());
+    cache.close();
+  }
+
+  /** The fetch response of an artifact in the cache, along with its payload. */
+  private static class Hit {
+    private final BuckCacheFetchResponse fetchResponse;
+    private final byte[] payload;
+
+    private Hit(BuckCacheFetchResponse fetchResponse, byte[] payload) {
+      this.fetchResponse = fetchResponse;
+      this.payload = payload;
+    }
+  }
+
+  private static Hit createHit(RuleKey ruleKey, String data) throws IOException {
+    byte[] payload = data.getBytes(Charsets.UTF_8);
+    ArtifactMetadata metadata = new ArtifactMetadata();
+    metadata.addToRuleKeys(
+        new com.facebook.buck.artifact_cache.thrift.RuleKey().setHashString(ruleKey.toString()));
+    metadata.setMetadata(ImmutableMap.of("rule", ruleKey.toString()));
+    metadata.setArtifactPayloadMd5(
+        ThriftArtifactCacheProtocol.computeMd5Hash(ByteSource.wrap(payload)));
+    BuckCacheFetchResponse fetchResponse = new BuckCacheFetchResponse();
+    fetchResponse.setArtifactExists(true);
+    fetchResponse.setMetadata(metadata);
+    return new Hit(fetchResponse, payload);
+  }
+
+  private static byte[] createMultiFetchResponse(ImmutableList<Optional<Hit>> entries)
+      throws IOException {
+    BuckCacheMultiFetchResponse multiFetchResponse = new BuckCacheMultiFetchResponse();
+    ImmutableList.Builder<byte[]> payloads = ImmutableList.builder();
+    for (Optional<Hit> entry : entries) {
+      if (entry.isPresent()) {
+        multiFetchResponse.addToResults(entry.get().fetchResponse);
+        payloads.add(entry.get().payload);
+      } else {
+        multiFetchResponse.addToResults(new BuckCacheFetchResponse().setArtifactExists(false));
+      }
+    }
+    BuckCacheResponse cacheResponse = new BuckCacheResponse();
+    cacheResponse.setWasSuccessful(true);
+    cacheResponse.setType(BuckCacheRequestType.MULTI_FETCH);
+    cacheResponse.setMultiFetchResponse(multiFetchResponse);
+    return serializeResponse(cacheResponse, payloads.build());
+  }
+
+  private static byte[] serializeResponse(
+      BuckCacheResponse cacheResponse, ImmutableList<byte[]> payloads) throws IOException {
+    for (byte[] payload : payloads) {
+      cacheResponse.addToPayloads(new PayloadInfo().setSizeBytes(payload.length));
+    }
+    ByteArrayOutputStream rawResponse = new ByteArrayOutputStream();
+    try (DataOutputStream stream = new DataOutputStream(rawResponse)) {
+      byte[] header = ThriftUtil.serialize(ThriftArtifactCache.PROTOCOL, cacheResponse);
+      stream.writeInt(header.length);
+      stream.write(header);
+      for (byte[] payload : payloads) {
+        stream.write(payload);
+      }
+    }
+    return rawResponse.toByteArray();
+  }
+
+  /** Answers every request with {@code body}, recording the thrift requests it receives. */
+  private static HttpService withResponse(
+      int code, byte[] body, List<BuckCacheRequest> receivedRequests) {
+    return new HttpService() {
+      @Override
+      public HttpResponse makeRequest(String path, Request.Builder requestBuilder)
+          throws IOException {
+        Request request = requestBuilder.url(SERVER + path).build();
+        assertEquals(ENDPOINT, request.url().encodedPath());
+        receivedRequests.add(readRequest(request));
+        return new OkHttpResponseWrapper(
+            new Response.Builder()
+                .request(request)
+                .protocol(Protocol.HTTP_1_1)
+                .code(code)
+                .body(ResponseBody.create(MediaType.parse("application/octet-stream"), body))
+                .build());
+      }
+
+      @Override
+      public void close() {}
+    };
+  }
+
+  private static BuckCacheRequest readRequest(Request request) throws IOException {
+    Buffer buffer = new Buffer();
+    request.body().writeTo(buffer);
+    DataInputStream input = new DataInputStream(buffer.inputStream());
+    byte[] header = new byte[input.readInt()];
+    input.readFully(header);
+    BuckCacheRequest cacheRequest = new BuckCacheRequest();
+    ThriftUtil.deserialize(ThriftArtifactCache.PROTOCOL, header, cacheRequest);
+    return cacheRequest;
+  }
+
+  private static Path getOutput(RuleKey ruleKey) {
+    return Paths.get("output", ruleKey.toString());
+  }
+
+  private static ImmutableMap<RuleKey, LazyPath> createRequests(RuleKey... ruleKeys) {
+    ImmutableMap.Builder<RuleKey, LazyPath> requests = ImmutableMap.builder();
+    for (RuleKey ruleKey : ruleKeys) {
+      requests.put(ruleKey, LazyPath.ofInstance(getOutput(ruleKey)));
+    }
+    return requests.build();
+  }
+}
@@ -26,9 +26,14 @@ import com.facebook.buck.io.LazyPath;
 import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.rules.RuleKey;
 import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.io.ByteStreams;
 import java.io.IOException;
 import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 import org.hamcrest.Matchers;
 import org.junit.Rule;
@@ -78,6 +83,40 @@ public class TwoLevelArtifactCacheDecoratorTest {
     }
   }
 
+  @Test
+  public void testCacheFetchConsumesOnlyTheArtifact() throws InterruptedException, IOException {
+    try (InMemoryArtifactCache inMemoryArtifactCache = new InMemoryArtifactCache();
+        TwoLevelArtifactCacheDecorator twoLevelCache =
+            new TwoLevelArtifactCacheDecorator(
+                inMemoryArtifactCache,
+                new ProjectFilesystem(tmp.getRoot()),
+                BuckEventBusFactory.newInstance(),
+                /* performTwoLevelStores */ true,
+                /* minimumTwoLevelStoredArtifactSize */ 0L,
+                /* maximumTwoLevelStoredArtifactSize */ Optional.empty())) {
+      LazyPath dummyFile = LazyPath.ofInstance(tmp.newFile());
+      Files.write(dummyFile.get(), "artifact".getBytes(Charsets.UTF_8));
+      twoLevelCache.store(
+          ArtifactInfo.builder()
+              .addRuleKeys(dummyRuleKey)
+              .setMetadata(ImmutableMap.of("testMetaKey", "value"))
+              .build(),
+          BorrowablePath.notBorrowablePath(dummyFile.get()));
+
+      List<String> consumed = new ArrayList<>();
+      CacheResult result =
+          twoLevelCache.fetch(
+              dummyRuleKey,
+              LazyPath.ofInstance(tmp.newFile()),
+              (metadata, payload) -> {
+                assertEquals("value", metadata.get("testMetaKey"));
+                consumed.add(new String(ByteStreams.toByteArray(payload), Charsets.UTF_8));
+              });
+      assertThat(result.getType(), Matchers.equalTo(CacheResultType.HIT));
+      assertEquals(ImmutableList.of("artifact"), consumed);
+    }
+  }
+
   private void testStoreThresholds(int artifactSize, int expectedArtifactsInCache)
       throws InterruptedException, IOException {
     try (InMemoryArtifactCache inMemoryArtifactCache = new InMemoryArtifactCache();
@@ -26,6 +26,8 @@ import com.facebook.buck.model.BuildTarget;
 import com.facebook.buck.model.BuildTargetFactory;
 import com.facebook.buck.rules.BuildRuleParams;
 import com.facebook.buck.rules.BuildRuleResolver;
+import com.facebook.buck.rules.CommandTool;
+import com.facebook.buck.rules.ConstantToolProvider;
 import com.facebook.buck.rules.DefaultBuildTargetSourcePath;
 import com.facebook.buck.rules.DefaultTargetNodeToBuildRuleTransformer;
 import com.facebook.buck.rules.FakeBuildRule;
@@ -261,6 +263,43 @@ public class CxxDescriptionEnhancerTest {
   }
 
   /** Just a helper to make this shorter to write. */
+  @Test
+  public void configuredHeaderModeFallsBackToWhatThePreprocessorSupports() {
+    BuildRuleResolver resolver =
+        new BuildRuleResolver(TargetGraph.EMPTY, new DefaultTargetNodeToBuildRuleTransformer());
+    PreprocessorProvider clang =
+        new PreprocessorProvider(
+            new ConstantToolProvider(new CommandTool.Builder().build()),
+            CxxToolProvider.Type.CLANG);
+    CxxPlatform gccPlatform = CxxPlatformUtils.DEFAULT_PLATFORM;
+    CxxPlatform clangPlatform = gccPlatform.withCpp(clang).withCxxpp(clang);
+
+    assertThat(
+        CxxDescriptionEnhancer.getHeaderModeForPlatform(resolver, clangPlatform, true),
+        equalTo(CxxPreprocessables.HeaderMode.SYMLINK_TREE_WITH_HEADER_MAP));
+    assertThat(
+        CxxDescriptionEnhancer.getHeaderModeForPlatform(
+            resolver,
+            clangPlatform.withHeaderMode(CxxPreprocessables.HeaderMode.HEADER_MAP_ONLY),
+            true),
+        equalTo(CxxPreprocessables.HeaderMode.HEADER_MAP_ONLY));
+    assertThat(
+        CxxDescriptionEnhancer.getHeaderModeForPlatform(
+            resolver,
+            clangPlatform.withHeaderMode(CxxPreprocessables.HeaderMode.VFS_OVERLAY_ONLY),
+            true),
+        equalTo(CxxPreprocessables.HeaderMode.VFS_OVERLAY_ONLY));
+    assertThat(
+        CxxDescriptionEnhancer.getHeaderModeForPlatform(
+            resolver,
+            gccPlatform.withHeaderMode(CxxPreprocessables.HeaderMode.HEADER_MAP_ONLY),
+            false),
+        equalTo(CxxPreprocessables.HeaderMode.SYMLINK_TREE_ONLY));
+    assertThat(
+        CxxDescriptionEnhancer.getHeaderModeForPlatform(resolver, gccPlatform, false),
+        equalTo(CxxPreprocessables.HeaderMode.SYMLINK_TREE_ONLY));
+  }
+
   private static String soname(String declared, String extension, String versionedFormat) {
     return CxxDescriptionEnhancer.getNonDefaultSharedLibrarySoname(
         declared, extension, versionedFormat);
@@ -30,6 +30,7 @@ import com.facebook.buck.rules.ConstantToolProvider;
 import com.facebook.buck.rules.HashedFileTool;
 import com.facebook.buck.testutil.FakeProjectFilesystem;
 import com.facebook.buck.util.environment.Platform;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import java.nio.file.Paths;
@@ -231,4 +232,25 @@ public class CxxPlatformsTest {
     expectedException.expect(RuntimeException.class);
     ((LazyDelegatingArchiver) CxxPlatformUtils.build(buckConfig).getAr()).getDelegate();
   }
+
+  @Test
+  public void sharedLibraryInterfacesOnlyNeedToBeEnabledOnElfPlatforms() {
+    CxxBuckConfig buckConfig =
+        new CxxBuckConfig(
+            FakeBuckConfig.builder()
+                .setSections("[cxx]", "shared_library_interfaces = true")
+                .build());
+
+    for (Platform platform : ImmutableList.of(Platform.LINUX, Platform.FREEBSD)) {
+      assertThat(
+          DefaultCxxPlatforms.build(platform, new FakeProjectFilesystem(), buckConfig)
+              .getSharedLibraryInterfaceFactory()
+              .get(),
+          instanceOf(ElfSharedLibraryInterfaceFactory.class));
+    }
+    assertThat(
+        DefaultCxxPlatforms.build(Platform.MACOS, new FakeProjectFilesystem(), buckConfig)
+            .getSharedLibraryInterfaceFactory(),
+        equalTo(Optional.empty()));
+  }
 }
@@ -30,6 +30,7 @@ import com.facebook.buck.io.MorePaths;
 import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.model.BuildTarget;
 import com.facebook.buck.model.BuildTargetFactory;
+import com.facebook.buck.model.InternalFlavor;
 import com.facebook.buck.rules.BinaryBuildRuleToolProvider;
 import com.facebook.buck.rules.BuildRule;
 import com.facebook.buck.rules.BuildRuleParams;
@@ -52,9 +53,11 @@ import com.facebook.buck.testutil.FakeProjectFilesystem;
 import com.google.common.base.Joiner;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedSet;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
@@ -403,6 +406,143 @@ public class CxxSourceRuleFactoryTest {
       assertEquals(objcCompile.getBuildTarget(), objcCompile2.getBuildTarget());
     }
 
+    @Test
+    public void preprocessedRuleKeysCompileTheOutputOfASeparatePreprocessRule() {
+      BuildRuleResolver buildRuleResolver =
+          new BuildRuleResolver(TargetGraph.EMPTY, new DefaultTargetNodeToBuildRuleTransformer());
+      SourcePathRuleFinder ruleFinder = new SourcePathRuleFinder(buildRuleResolver);
+      SourcePathResolver pathResolver = new SourcePathResolver(ruleFinder);
+      BuildTarget target = BuildTargetFactory.newInstance("//:target");
+      BuildRuleParams params = new FakeBuildRuleParamsBuilder(target).build();
+      ProjectFilesystem filesystem = new AllExistingProjectFilesystem();
+      Path scratchDir = Paths.get("scratchDir");
+
+      BuckConfig buckConfig =
+          FakeBuckConfig.builder()
+              .setFilesystem(filesystem)
+              .setSections(
+                  ImmutableMap.of("cxx", ImmutableMap.of("preprocessed_rule_keys", "true")))
+              .build();
+      CxxBuckConfig cxxBuckConfig = new CxxBuckConfig(buckConfig);
+      CxxPlatform platform = CxxPlatformUtils.build(cxxBuckConfig);
+
+      CxxSourceRuleFactory cxxSourceRuleFactory =
+          CxxSourceRuleFactory.builder()
+              .setParams(params)
+              .setResolver(buildRuleResolver)
+              .setPathResolver(pathResolver)
+              .setRuleFinder(ruleFinder)
+              .setCxxBuckConfig(cxxBuckConfig)
+              .setCxxPlatform(platform)
+              .setPicType(CxxSourceRuleFactory.PicType.PDC)
+              .build();
+
+      String name = "foo/bar.cpp";
+      SourcePath input = new FakeSourcePath(filesystem, name);
+      CxxSource cxxSource = CxxSource.of(CxxSource.Type.CXX, input, ImmutableList.of());
+      CxxPreprocessAndCompile compile =
+          cxxSourceRuleFactory.requirePreprocessAndCompileBuildRule(name, cxxSource);
+
+      CxxPreprocessAndCompile preprocess =
+          buildRuleResolver.getRuleWithType(
+              cxxSourceRuleFactory.createPreprocessBuildTarget(name),
+              CxxPreprocessAndCompile.class);
+      assertEquals(input, preprocess.getInput());
+      assertThat(compile.getBuildDeps(), hasItems((BuildRule) preprocess));
+      assertEquals(preprocess.getSourcePathToOutput(), compile.getInput());
+      assertEquals(input, compile.getSourceInput());
+      assertFalse(compile.getPreprocessorDelegate().isPresent());
+
+      ImmutableList<String> preprocessCommand =
+          preprocess.makeMainStep(pathResolver, scratchDir, false).getCommand();
+      assertThat(preprocessCommand, hasItems("-E"));
+      assertFalse(preprocessCommand.contains("-c"));
+      assertThat(
+          compile.makeMainStep(pathResolver, scratchDir, false).getCommand(),
+          hasItems("-c", "c++-cpp-output"));
+
+      // The compilation database still lists the command which compiles the source itself.
+      assertThat(compile.getCommand(pathResolver), hasItems("-c", name));
+
+      // Requiring the rule again finds the existing one, despite its preprocessed input.
+      assertEquals(
+          compile, cxxSourceRuleFactory.requirePreprocessAndCompileBuildRule(name, cxxSource));
+    }
+
+    @Test
+    public void headerMapOnlyModePreprocessesWithOneMergedHeaderMap() {
+      BuildRuleResolver buildRuleResolver =
+          new BuildRuleResolver(TargetGraph.EMPTY, new DefaultTargetNodeToBuildRuleTransformer());
+      SourcePathRuleFinder ruleFinder = new SourcePathRuleFinder(buildRuleResolver);
+      SourcePathResolver pathResolver = new SourcePathResolver(ruleFinder);
+      BuildTarget target = BuildTargetFactory.newInstance("//:target");
+      BuildRuleParams params = new FakeBuildRuleParamsBuilder(target).build();
+      ProjectFilesystem filesystem = new FakeProjectFilesystem();
+      CxxPlatform platform =
+          CxxPlatformUtils.DEFAULT_PLATFORM.withHeaderMode(
+              CxxPreprocessables.HeaderMode.HEADER_MAP_ONLY);
+
+      CxxPreprocessorInput.Builder input = CxxPreprocessorInput.builder();
+      List<DirectHeaderMap> headerMaps = new ArrayList<>();
+      for (String library : ImmutableList.of("a", "b")) {
+        BuildTarget headersTarget = BuildTargetFactory.newInstance("//:" + library + "#headers");
+        DirectHeaderMap headerMap =
+            buildRuleResolver.addToIndex(
+                new DirectHeaderMap(
+                    headersTarget,
+                    filesystem,
+                    Paths.get("buck-out/gen/" + library),
+                    ImmutableMap.of(
+                        Paths.get(library + ".h"),
+                        new FakeSourcePath(filesystem, library + "/" + library + ".h"),
+                        Paths.get("common.h"),
+                        new FakeSourcePath(filesystem, "common.h")),
+                    ruleFinder));
+        headerMaps.add(headerMap);
+        input.addIncludes(
+            CxxSymlinkTreeHeaders.from(headerMap, CxxPreprocessables.IncludeType.LOCAL));
+      }
+
+      CxxSourceRuleFactory cxxSourceRuleFactory =
+          CxxSourceRuleFactory.builder()
+              .setParams(params)
+              .setResolver(buildRuleResolver)
+              .setPathResolver(pathResolver)
+              .setRuleFinder(ruleFinder)
+              .setCxxBuckConfig(CxxPlatformUtils.DEFAULT_CONFIG)
+              .setCxxPlatform(platform)
+              .addCxxPreprocessorInput(input.build())
+              .setPicType(CxxSourceRuleFactory.PicType.PDC)
+              .build();
+
+      String name = "foo/bar.cpp";
+      CxxPreprocessAndCompile compile =
+          cxxSourceRuleFactory.requirePreprocessAndCompileBuildRule(
+              name,
+              CxxSource.of(
+                  CxxSource.Type.CXX, new FakeSourcePath(filesystem, name), ImmutableList.of()));
+
+      DirectHeaderMap merged =
+          buildRuleResolver.getRuleWithType(
+              target.withAppendedFlavors(
+                  platform.getFlavor(), InternalFlavor.of("merged-header-map")),
+              DirectHeaderMap.class);
+      assertEquals(
+          ImmutableSet.of(Paths.get("a.h"), Paths.get("b.h"), Paths.get("common.h")),
+          merged.getLinks().keySet());
+      assertEquals(
+          new FakeSourcePath(filesystem, "common.h"), merged.getLinks().get(Paths.get("common.h")));
+
+      ImmutableList<String> command =
+          compile.makeMainStep(pathResolver, Paths.get("scratchDir"), false).getCommand();
+      assertThat(
+          command, hasItems(filesystem.relativize(merged.getHeaderMap().get()).toString()));
+      for (DirectHeaderMap headerMap : headerMaps) {
+        assertFalse(
+            command.contains(filesystem.relativize(headerMap.getHeaderMap().get()).toString()));
+      }
+    }
+
     @Test
     public void createPreprocessAndCompileBuildRulePropagatesToolDeps() throws Exception {
       BuildTarget target = BuildTargetFactory.newInstance("//foo:bar");
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import org.junit.Test;
+
+public class DepfilePathTableTest {
+
+  @Test
+  public void equalPathsFromDifferentBuffersAreInternedOnce() {
+    DepfilePathTable table = new DepfilePathTable(10);
+    ByteBuffer first = ByteBuffer.wrap("a.o: foo/bar.h".getBytes(StandardCharsets.UTF_8));
+    ByteBuffer second = ByteBuffer.wrap("foo/bar.h".getBytes(StandardCharsets.UTF_8));
+
+    String path = table.intern(first, 5, 9);
+    assertEquals("foo/bar.h", path);
+    assertSame(path, table.intern(second, 0, 9));
+    assertEquals(1, table.size());
+  }
+
+  @Test
+  public void tableStartsOverOnceFull() {
+    DepfilePathTable table = new DepfilePathTable(2);
+    ByteBuffer paths = ByteBuffer.wrap("abc".getBytes(StandardCharsets.UTF_8));
+    table.intern(paths, 0, 1);
+    table.intern(paths, 1, 1);
+    assertEquals(2, table.size());
+
+    assertEquals("c", table.intern(paths, 2, 1));
+    assertEquals(1, table.size());
+  }
+
+  @Test
+  public void depfilesShareInternedPrereqs() throws IOException {
+    String contents = "prefix\nfoo.o: foo.c foo\\ bar.h \\\n  common/ünïcode.h\n";
+    ByteBuffer buffer = ByteBuffer.wrap(contents.getBytes(StandardCharsets.UTF_8));
+    buffer.position("prefix\n".length());
+    Depfiles.Depfile first = Depfiles.parseDepfile(buffer);
+    Depfiles.Depfile second =
+        Depfiles.parseDepfile(
+            ByteBuffer.wrap("bar.o: bar.c common/ünïcode.h\n".getBytes(StandardCharsets.UTF_8)));
+
+    assertEquals(
+        ImmutableList.of("foo.c", "foo bar.h", "common/ünïcode.h"), first.getPrereqs());
+    assertSame(first.getPrereqs().get(2), second.getPrereqs().get(1));
+  }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.caliper.BeforeExperiment;
+import com.google.caliper.Benchmark;
+import com.google.caliper.Param;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Compares parsing a large dep file, like those of sources which include big framework headers,
+ * from its decoded characters with parsing it from its bytes.
+ */
+public class DepfilesBenchmark {
+
+  @Param({"1000", "5000"})
+  private int headerCount = 1000;
+
+  private byte[] depfileBytes;
+  private String depfileString;
+
+  @Before
+  public void setUpTest() {
+    setUpBenchmark();
+  }
+
+  @BeforeExperiment
+  public void setUpBenchmark() {
+    StringBuilder depfile = new StringBuilder("buck-out/gen/foo/bar.cpp.o: foo/bar.cpp");
+    for (int i = 0; i < headerCount; i++) {
+      depfile
+          .append(" \\\n  /usr/include/c++/v1/module")
+          .append(i % 50)
+          .append("/some\\ dir/header")
+          .append(i)
+          .append(".h");
+    }
+    depfile.append('\n');
+    depfileString = depfile.toString();
+    depfileBytes = depfileString.getBytes(UTF_8);
+  }
+
+  @Test
+  public void parseCharactersPerformance() throws IOException {
+    parseCharacters();
+  }
+
+  @Benchmark
+  public int parseCharacters() throws IOException {
+    return Depfiles.parseDepfile(new StringReader(depfileString)).getPrereqs().size();
+  }
+
+  @Test
+  public void parseBytesPerformance() throws IOException {
+    parseBytes();
+  }
+
+  @Benchmark
+  public int parseBytes() throws IOException {
+    return Depfiles.parseDepfile(ByteBuffer.wrap(depfileBytes)).getPrereqs().size();
+  }
+}
@@ -47,6 +47,7 @@ public class NativeLinkablesTest {
     private final NativeLinkable.Linkage preferredLinkage;
     private final NativeLinkableInput nativeLinkableInput;
     private final ImmutableMap<String, SourcePath> sharedLibraries;
+    private int depsRequests;
 
     public FakeNativeLinkable(
         String target,
@@ -72,6 +73,7 @@ public class NativeLinkablesTest {
 
     @Override
     public Iterable<NativeLinkable> getNativeLinkableDeps() {
+      depsRequests++;
       return deps;
     }
 
@@ -378,4 +380,67 @@ public class NativeLinkablesTest {
             a::equals),
         Matchers.equalTo(ImmutableMap.<BuildTarget, NativeLinkable>of(a.getBuildTarget(), a)));
   }
+
+  @Test
+  public void linksShareTheTraversalOfCommonDeps() {
+    FakeNativeLinkable c = createNativeLinkable("//:c", NativeLinkable.Linkage.ANY);
+    FakeNativeLinkable b = createNativeLinkable("//:b", NativeLinkable.Linkage.ANY, c);
+    FakeNativeLinkable first = createNativeLinkable("//:first", NativeLinkable.Linkage.ANY, b);
+    FakeNativeLinkable second = createNativeLinkable("//:second", NativeLinkable.Linkage.ANY, b);
+
+    assertThat(
+        NativeLinkables.getNativeLinkables(
+                CxxPlatformUtils.DEFAULT_PLATFORM,
+                ImmutableList.of(first),
+                Linker.LinkableDepType.STATIC)
+            .keySet(),
+        Matchers.contains(first.getBuildTarget(), b.getBuildTarget(), c.getBuildTarget()));
+    assertThat(
+        NativeLinkables.getNativeLinkables(
+                CxxPlatformUtils.DEFAULT_PLATFORM,
+                ImmutableList.of(second),
+                Linker.LinkableDepType.STATIC)
+            .keySet(),
+        Matchers.contains(second.getBuildTarget(), b.getBuildTarget(), c.getBuildTarget()));
+    assertThat(b.depsRequests, Matchers.equalTo(1));
+    assertThat(c.depsRequests, Matchers.equalTo(1));
+  }
+
+  @Test
+  public void sharedTraversalOrdersLinkablesLikeAFullTraversal() {
+    FakeNativeLinkable e = createNativeLinkable("//:e", NativeLinkable.Linkage.ANY);
+    FakeNativeLinkable d = createNativeLinkable("//:d", NativeLinkable.Linkage.STATIC, e);
+    FakeNativeLinkable c = createNativeLinkable("//:c", NativeLinkable.Linkage.SHARED, e);
+    FakeNativeLinkable b = createNativeLinkable("//:b", NativeLinkable.Linkage.ANY, c, d);
+    FakeNativeLinkable a = createNativeLinkable("//:a", NativeLinkable.Linkage.ANY, b, e);
+    FakeNativeLinkable f = createNativeLinkable("//:f", NativeLinkable.Linkage.ANY, d);
+
+    for (Linker.LinkableDepType linkStyle : Linker.LinkableDepType.values()) {
+      for (ImmutableList<NativeLinkable> inputs :
+          ImmutableList.<ImmutableList<NativeLinkable>>of(
+              ImmutableList.of(a), ImmutableList.of(f, c), ImmutableList.of(b, f, a))) {
+        assertThat(
+            ImmutableList.copyOf(
+                NativeLinkables.getNativeLinkables(
+                        CxxPlatformUtils.DEFAULT_PLATFORM, inputs, linkStyle)
+                    .entrySet()),
+            Matchers.equalTo(
+                ImmutableList.copyOf(
+                    NativeLinkables.getNativeLinkables(
+                            CxxPlatformUtils.DEFAULT_PLATFORM, inputs, linkStyle, x -> true)
+                        .entrySet())));
+      }
+    }
+  }
+
+  private static FakeNativeLinkable createNativeLinkable(
+      String target, NativeLinkable.Linkage preferredLinkage, NativeLinkable... deps) {
+    return new FakeNativeLinkable(
+        target,
+        ImmutableList.copyOf(deps),
+        ImmutableList.of(),
+        preferredLinkage,
+        NativeLinkableInput.builder().build(),
+        ImmutableMap.of());
+  }
 }
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.step.ExecutionContext;
+import com.facebook.buck.step.TestExecutionContext;
+import com.facebook.buck.util.ObjectMappers;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.collect.ImmutableMap;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class VfsOverlayStepTest {
+
+  @Rule public final TemporaryFolder tmpDir = new TemporaryFolder();
+
+  @Test
+  public void testVfsOverlay() throws InterruptedException, IOException {
+    ProjectFilesystem projectFilesystem = new ProjectFilesystem(tmpDir.getRoot().toPath());
+
+    ExecutionContext context = TestExecutionContext.newInstance();
+
+    Path output = Paths.get("headers.vfsoverlay.yaml");
+    ImmutableMap<Path, Path> entries =
+        ImmutableMap.of(
+            Paths.get("/tree/file1.h"), Paths.get("/some/absolute/path.h"),
+            Paths.get("/tree/prefix/file1.h"), Paths.get("/some/absolute/path.h"),
+            Paths.get("/tree/file2.h"), Paths.get("/other/absolute/path.h"));
+
+    VfsOverlayStep step = new VfsOverlayStep(projectFilesystem, output, entries);
+
+    step.execute(context);
+
+    JsonNode overlay =
+        ObjectMappers.READER.readTree(projectFilesystem.readFileIfItExists(output).get());
+    assertThat(
+        overlay,
+        equalTo(
+            ObjectMappers.READER.readTree(
+                "{\"version\": 0, \"roots\": ["
+                    + "{\"type\": \"directory\", \"name\": \"/tree\", \"contents\": ["
+                    + "{\"type\": \"file\", \"name\": \"file1.h\", "
+                    + "\"external-contents\": \"/some/absolute/path.h\"}, "
+                    + "{\"type\": \"file\", \"name\": \"file2.h\", "
+                    + "\"external-contents\": \"/other/absolute/path.h\"}]}, "
+                    + "{\"type\": \"directory\", \"name\": \"/tree/prefix\", \"contents\": ["
+                    + "{\"type\": \"file\", \"name\": \"file1.h\", "
+                    + "\"external-contents\": \"/some/absolute/path.h\"}]}]}")));
+  }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.dalvik;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import com.facebook.buck.jvm.java.classes.AbstractFileLike;
+import com.facebook.buck.jvm.java.classes.FileLike;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.BitSet;
+import org.junit.Test;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+public class DalvikStatsCacheTest {
+
+  @Test
+  public void identicalClassesAreAnalyzedOnce() {
+    DalvikStatsCache cache = new DalvikStatsCache();
+    byte[] contents = createClass("test/A", "foo");
+    DalvikStatsCache.ClassStats stats = cache.getStats(new ClassFile("a.jar", "A.class", contents));
+    assertSame(stats, cache.getStats(new ClassFile("b.jar", "A.class", contents)));
+  }
+
+  @Test
+  public void referencesSharedByClassesAreCountedOnce() {
+    DalvikStatsCache cache = new DalvikStatsCache();
+    DalvikStatsCache.ClassStats a =
+        cache.getStats(new ClassFile("a.jar", "A.class", createClass("test/A", "foo")));
+    DalvikStatsCache.ClassStats b =
+        cache.getStats(new ClassFile("a.jar", "B.class", createClass("test/B", "foo")));
+
+    // Both classes reference their own constructor, their own method and Object's constructor.
+    assertEquals(3, a.getMethodReferenceCount());
+    assertEquals(3, b.getMethodReferenceCount());
+    BitSet methods = new BitSet();
+    a.addMethodReferencesTo(methods);
+    assertEquals(0, a.countNewMethodReferences(methods));
+    assertEquals(2, b.countNewMethodReferences(methods));
+    assertEquals(1, b.countNewFieldReferences(new BitSet()));
+  }
+
+  @Test
+  public void nonClassFilesHaveNoStats() {
+    DalvikStatsCache cache = new DalvikStatsCache();
+    assertSame(
+        DalvikStatsCache.ClassStats.ZERO,
+        cache.getStats(new ClassFile("a.jar", "pom.properties", new byte[0])));
+  }
+
+  /** @return a class with a constructor, and a method which reads one of its fields. */
+  private static byte[] createClass(String name, String methodName) {
+    ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+    writer.visit(Opcodes.V1_7, Opcodes.ACC_PUBLIC, name, null, "java/lang/Object", null);
+    writer.visitField(Opcodes.ACC_PRIVATE, "field", "I", null, null).visitEnd();
+
+    MethodVisitor constructor = writer.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+    constructor.visitCode();
+    constructor.visitVarInsn(Opcodes.ALOAD, 0);
+    constructor.visitMethodInsn(
+        Opcodes.INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+    constructor.visitInsn(Opcodes.RETURN);
+    constructor.visitMaxs(0, 0);
+    constructor.visitEnd();
+
+    MethodVisitor method = writer.visitMethod(Opcodes.ACC_PUBLIC, methodName, "()I", null, null);
+    method.visitCode();
+    method.visitVarInsn(Opcodes.ALOAD, 0);
+    method.visitFieldInsn(Opcodes.GETFIELD, name, "field", "I");
+    method.visitInsn(Opcodes.IRETURN);
+    method.visitMaxs(0, 0);
+    method.visitEnd();
+
+    writer.visitEnd();
+    return writer.toByteArray();
+  }
+
+  private static class ClassFile extends AbstractFileLike {
+    private final Path container;
+    private final String relativePath;
+    private final byte[] contents;
+
+    private ClassFile(String container, String relativePath, byte[] contents) {
+      this.container = Paths.get(container);
+      this.relativePath = relativePath;
+      this.contents = contents;
+    }
+
+    @Override
+    public Path getContainer() {
+      return container;
+    }
+
+    @Override
+    public String getRelativePath() {
+      return relativePath;
+    }
+
+    @Override
+    public long getSize() {
+      return contents.length;
+    }
+
+    @Override
+    public InputStream getInput() {
+      return new ByteArrayInputStream(contents);
+    }
+  }
+}
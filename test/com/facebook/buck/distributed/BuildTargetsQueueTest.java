@@ -25,6 +25,8 @@ import com.facebook.buck.rules.BuildRuleResolver;
 import com.facebook.buck.rules.DefaultTargetNodeToBuildRuleTransformer;
 import com.facebook.buck.rules.TargetGraph;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedSet;
 import org.junit.Assert;
 import org.junit.Test;
@@ -98,6 +100,35 @@ public class BuildTargetsQueueTest {
     return resolver;
   }
 
+  @Test
+  public void testTargetsAreDequeuedByCriticalPathWeight() {
+    BuildTargetsQueue queue =
+        BuildTargetsQueue.newQueue(
+            ImmutableMap.of(
+                "//:leaf", ImmutableSet.of(),
+                "//:short", ImmutableSet.of("//:leaf"),
+                "//:long", ImmutableSet.of("//:leaf"),
+                "//:root", ImmutableSet.of("//:short", "//:long")),
+            target -> target.equals("//:long") ? 100 : 10);
+    Assert.assertEquals(120, queue.getCriticalPathWeight("//:leaf"));
+    Assert.assertEquals(110, queue.getCriticalPathWeight("//:long"));
+    Assert.assertEquals(20, queue.getCriticalPathWeight("//:short"));
+    Assert.assertEquals(10, queue.getCriticalPathWeight("//:root"));
+
+    ImmutableList<String> zeroDepTargets = queue.dequeueZeroDependencyNodes(ImmutableList.of());
+    Assert.assertEquals(ImmutableList.of("//:leaf"), zeroDepTargets);
+    Assert.assertEquals(
+        ImmutableList.of("//:long", "//:short"),
+        queue.dequeueZeroDependencyNodes(zeroDepTargets));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testCyclesAreRejected() {
+    BuildTargetsQueue.newQueue(
+        ImmutableMap.of("//:a", ImmutableSet.of("//:b"), "//:b", ImmutableSet.of("//:a")),
+        target -> 1);
+  }
+
   public static BuildTargetsQueue createDiamondDependencyQueue() throws NoSuchBuildTargetException {
     return BuildTargetsQueue.newQueue(
         createDiamondDependencyResolver(),
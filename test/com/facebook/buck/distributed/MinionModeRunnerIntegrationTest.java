@@ -70,5 +70,16 @@ public class MinionModeRunnerIntegrationTest {
       callArguments.add(ImmutableList.copyOf(targetsToBuild));
       return 0;
     }
+
+    @Override
+    public int buildLocallyAndReturnExitCode(
+        Iterable<String> targetsToBuild, TargetBuiltCallback callback)
+        throws IOException, InterruptedException {
+      int exitCode = buildLocallyAndReturnExitCode(targetsToBuild);
+      for (String target : targetsToBuild) {
+        callback.targetBuilt(target, exitCode);
+      }
+      return exitCode;
+    }
   }
 }
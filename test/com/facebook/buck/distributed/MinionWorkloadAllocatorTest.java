@@ -21,6 +21,8 @@ import com.facebook.buck.model.BuildTargetFactory;
 import com.facebook.buck.parser.NoSuchBuildTargetException;
 import com.facebook.buck.rules.BuildRuleResolver;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -28,6 +30,7 @@ import org.junit.Test;
 public class MinionWorkloadAllocatorTest {
 
   private static final String MINION_ONE = "Super minion 1";
+  private static final String MINION_TWO = "Super minion 2";
 
   private BuildTargetsQueue queue;
   private BuildTarget target;
@@ -64,4 +67,83 @@ public class MinionWorkloadAllocatorTest {
 
     Assert.assertEquals(0, allocator.getTargetsToBuild(MINION_ONE).size());
   }
+
+  @Test
+  public void testFinishingOneTargetReleasesItsDependents() {
+    MinionWorkloadAllocator allocator = new MinionWorkloadAllocator(queue, 2);
+    String leaf = BuildTargetsQueueTest.TARGET_NAME + "_leaf";
+    Assert.assertEquals(ImmutableList.of(leaf), allocator.getTargetsToBuild(MINION_ONE));
+    Assert.assertTrue(allocator.startedBuildingTarget(MINION_ONE, leaf));
+    allocator.finishedBuildingTarget(MINION_ONE, leaf);
+
+    ImmutableList<String> secondTargets = allocator.getTargetsToBuild(MINION_ONE);
+    Assert.assertEquals(2, secondTargets.size());
+    for (String secondTarget : secondTargets) {
+      Assert.assertTrue(allocator.startedBuildingTarget(MINION_ONE, secondTarget));
+    }
+    allocator.finishedBuildingTarget(MINION_ONE, secondTargets.get(0));
+    Assert.assertEquals(
+        ImmutableList.of(secondTargets.get(1)), allocator.getTargetsToBuild(MINION_ONE));
+
+    allocator.finishedBuildingTarget(MINION_ONE, secondTargets.get(1));
+    Assert.assertEquals(
+        ImmutableList.of(target.getFullyQualifiedName()), allocator.getTargetsToBuild(MINION_ONE));
+    allocator.finishedBuildingTarget(MINION_ONE, target.getFullyQualifiedName());
+    Assert.assertTrue(allocator.isBuildFinished());
+  }
+
+  @Test
+  public void testTargetsOnTheCriticalPathAreAllocatedFirst() {
+    BuildTargetsQueue queue =
+        BuildTargetsQueue.newQueue(
+            ImmutableMap.of(
+                "//:short", ImmutableSet.of(),
+                "//:long", ImmutableSet.of(),
+                "//:after_long", ImmutableSet.of("//:long")),
+            target -> target.equals("//:short") ? 10 : 100);
+    MinionWorkloadAllocator allocator = new MinionWorkloadAllocator(queue, 1);
+    Assert.assertEquals(ImmutableList.of("//:long"), allocator.getTargetsToBuild(MINION_ONE));
+    Assert.assertEquals(ImmutableList.of("//:short"), allocator.getTargetsToBuild(MINION_TWO));
+  }
+
+  @Test
+  public void testIdleMinionStealsTargetsNotStartedYet() {
+    BuildTargetsQueue queue =
+        BuildTargetsQueue.newQueue(
+            ImmutableMap.of(
+                "//:a", ImmutableSet.of(),
+                "//:b", ImmutableSet.of(),
+                "//:c", ImmutableSet.of(),
+                "//:d", ImmutableSet.of()),
+            target -> 1);
+    MinionWorkloadAllocator allocator = new MinionWorkloadAllocator(queue, 4);
+    ImmutableList<String> firstTargets = allocator.getTargetsToBuild(MINION_ONE);
+    Assert.assertEquals(4, firstTargets.size());
+    Assert.assertTrue(allocator.startedBuildingTarget(MINION_ONE, firstTargets.get(0)));
+
+    ImmutableList<String> stolenTargets = allocator.getTargetsToBuild(MINION_TWO);
+    Assert.assertEquals(
+        ImmutableList.of(firstTargets.get(1), firstTargets.get(2)), stolenTargets);
+    Assert.assertEquals(
+        ImmutableList.of(firstTargets.get(0), firstTargets.get(3)),
+        allocator.getTargetsToBuild(MINION_ONE));
+    Assert.assertFalse(allocator.startedBuildingTarget(MINION_ONE, firstTargets.get(1)));
+
+    for (String stolenTarget : stolenTargets) {
+      Assert.assertTrue(allocator.startedBuildingTarget(MINION_TWO, stolenTarget));
+      allocator.finishedBuildingTarget(MINION_TWO, stolenTarget);
+    }
+    allocator.finishedBuildingTargets(MINION_ONE);
+    Assert.assertTrue(allocator.isBuildFinished());
+  }
+
+  @Test
+  public void testMinionsThatOnlyReportWholeAllocationsAreNotStolenFrom() {
+    BuildTargetsQueue queue =
+        BuildTargetsQueue.newQueue(
+            ImmutableMap.of("//:a", ImmutableSet.of(), "//:b", ImmutableSet.of()), target -> 1);
+    MinionWorkloadAllocator allocator = new MinionWorkloadAllocator(queue, 2);
+    Assert.assertEquals(2, allocator.getTargetsToBuild(MINION_ONE).size());
+    Assert.assertEquals(0, allocator.getTargetsToBuild(MINION_TWO).size());
+  }
 }
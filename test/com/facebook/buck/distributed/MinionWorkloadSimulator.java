@@ -0,0 +1,202 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.distributed;
+
+import com.facebook.buck.util.ObjectMappers;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.function.ToLongFunction;
+
+/**
+ * Replays a distributed build of a target graph on simulated minions with synthetic durations, so
+ * that the makespan of different scheduling strategies can be compared without a build cluster.
+ *
+ * <p>Minions ask the {@link MinionWorkloadAllocator} for work whenever they have an idle build
+ * slot, and requests and reports take no time.
+ */
+class MinionWorkloadSimulator {
+
+  /** How minions report their progress to the coordinator. */
+  enum ProgressReporting {
+    /** A minion reports once it built all the targets it was handed, as minions do today. */
+    PER_ALLOCATION,
+    /** A minion reports every target it starts and finishes, which enables work stealing. */
+    PER_TARGET,
+  }
+
+  private final ImmutableMap<String, ImmutableSet<String>> depsByTarget;
+  private final ToLongFunction<String> durationsMillis;
+
+  /**
+   * @param depsByTarget the targets to build, and the targets each of them depends on.
+   * @param durationsMillis how long each target takes to build.
+   */
+  MinionWorkloadSimulator(
+      ImmutableMap<String, ImmutableSet<String>> depsByTarget,
+      ToLongFunction<String> durationsMillis) {
+    this.depsByTarget = depsByTarget;
+    this.durationsMillis = durationsMillis;
+  }
+
+  /**
+   * Loads a target graph recorded as a JSON object which maps each target to an object with its
+   * {@code deps} and its {@code duration_millis}.
+   */
+  static MinionWorkloadSimulator loadRecordedGraph(Path path) throws IOException {
+    Map<String, RecordedTarget> recordedTargets =
+        ObjectMappers.readValue(path.toFile(), new TypeReference<Map<String, RecordedTarget>>() {});
+    ImmutableMap.Builder<String, ImmutableSet<String>> depsByTarget = ImmutableMap.builder();
+    Map<String, Long> durationsMillis = new HashMap<>();
+    for (Map.Entry<String, RecordedTarget> entry : recordedTargets.entrySet()) {
+      depsByTarget.put(entry.getKey(), ImmutableSet.copyOf(entry.getValue().deps));
+      durationsMillis.put(entry.getKey(), entry.getValue().durationMillis);
+    }
+    return new MinionWorkloadSimulator(depsByTarget.build(), durationsMillis::get);
+  }
+
+  /**
+   * @param estimatedDurationsMillis the historical durations the coordinator schedules by.
+   * @return the simulated time, in milliseconds, from the start of the build until its last target
+   *     is built.
+   */
+  long simulateMakespanMillis(
+      int minionCount,
+      int buildSlotsPerMinion,
+      int maxTargetsPerMinion,
+      ProgressReporting progressReporting,
+      ToLongFunction<String> estimatedDurationsMillis) {
+    MinionWorkloadAllocator allocator =
+        new MinionWorkloadAllocator(
+            BuildTargetsQueue.newQueue(depsByTarget, estimatedDurationsMillis),
+            maxTargetsPerMinion);
+    List<Minion> minions = new ArrayList<>();
+    for (int i = 0; i < minionCount; i++) {
+      minions.add(new Minion("minion" + i, buildSlotsPerMinion));
+    }
+
+    PriorityQueue<FinishedTarget> runningTargets = new PriorityQueue<>();
+    long nowMillis = 0;
+    while (true) {
+      for (Minion minion : minions) {
+        minion.startTargets(allocator, progressReporting, runningTargets, nowMillis);
+      }
+      if (runningTargets.isEmpty()) {
+        Preconditions.checkState(
+            allocator.isBuildFinished(), "Nothing is being built but the build is not finished.");
+        return nowMillis;
+      }
+
+      nowMillis = runningTargets.peek().timeMillis;
+      while (!runningTargets.isEmpty() && runningTargets.peek().timeMillis == nowMillis) {
+        FinishedTarget finished = runningTargets.remove();
+        finished.minion.finishTarget(allocator, progressReporting, finished.target);
+      }
+    }
+  }
+
+  private class Minion {
+    private final String minionId;
+    private final int buildSlots;
+    private final Set<String> targetsBuilding = new HashSet<>();
+    private final Set<String> targetsBuilt = new HashSet<>();
+
+    private Minion(String minionId, int buildSlots) {
+      this.minionId = minionId;
+      this.buildSlots = buildSlots;
+    }
+
+    private void startTargets(
+        MinionWorkloadAllocator allocator,
+        ProgressReporting progressReporting,
+        PriorityQueue<FinishedTarget> runningTargets,
+        long nowMillis) {
+      if (targetsBuilding.size() == buildSlots) {
+        return;
+      }
+      if (progressReporting == ProgressReporting.PER_ALLOCATION && !targetsBuilding.isEmpty()) {
+        // Minions only ask for more work once they built everything they were handed.
+        return;
+      }
+      for (String target : allocator.getTargetsToBuild(minionId)) {
+        if (targetsBuilding.size() == buildSlots) {
+          return;
+        }
+        if (targetsBuilding.contains(target) || targetsBuilt.contains(target)) {
+          continue;
+        }
+        if (progressReporting == ProgressReporting.PER_TARGET
+            && !allocator.startedBuildingTarget(minionId, target)) {
+          continue;
+        }
+        targetsBuilding.add(target);
+        runningTargets.add(
+            new FinishedTarget(nowMillis + durationsMillis.applyAsLong(target), this, target));
+      }
+    }
+
+    private void finishTarget(
+        MinionWorkloadAllocator allocator, ProgressReporting progressReporting, String target) {
+      targetsBuilding.remove(target);
+      if (progressReporting == ProgressReporting.PER_TARGET) {
+        allocator.finishedBuildingTarget(minionId, target);
+        return;
+      }
+      targetsBuilt.add(target);
+      if (targetsBuilt.containsAll(allocator.getTargetsToBuild(minionId))) {
+        allocator.finishedBuildingTargets(minionId);
+        targetsBuilt.clear();
+      }
+    }
+  }
+
+  private static class FinishedTarget implements Comparable<FinishedTarget> {
+    private final long timeMillis;
+    private final Minion minion;
+    private final String target;
+
+    private FinishedTarget(long timeMillis, Minion minion, String target) {
+      this.timeMillis = timeMillis;
+      this.minion = minion;
+      this.target = target;
+    }
+
+    @Override
+    public int compareTo(FinishedTarget other) {
+      return Long.compare(timeMillis, other.timeMillis);
+    }
+  }
+
+  private static class RecordedTarget {
+    @JsonProperty("deps")
+    private List<String> deps = new ArrayList<>();
+
+    @JsonProperty("duration_millis")
+    private long durationMillis;
+  }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.distributed;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+import com.facebook.buck.distributed.MinionWorkloadSimulator.ProgressReporting;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.ToLongFunction;
+import org.hamcrest.Matchers;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MinionWorkloadSimulatorTest {
+
+  private static final int CHAIN_LENGTH = 5;
+  private static final int SHORT_TARGETS = 40;
+
+  @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+  /** A chain of slow targets next to many fast ones, all depended on by a single root. */
+  private static ImmutableMap<String, ImmutableSet<String>> createSkewedGraph() {
+    ImmutableMap.Builder<String, ImmutableSet<String>> depsByTarget = ImmutableMap.builder();
+    ImmutableSet.Builder<String> rootDeps = ImmutableSet.builder();
+    for (int i = 0; i < SHORT_TARGETS; i++) {
+      depsByTarget.put("//short:" + i, ImmutableSet.of());
+      rootDeps.add("//short:" + i);
+    }
+    for (int i = 0; i < CHAIN_LENGTH; i++) {
+      depsByTarget.put(
+          "//chain:" + i, i == 0 ? ImmutableSet.of() : ImmutableSet.of("//chain:" + (i - 1)));
+    }
+    rootDeps.add("//chain:" + (CHAIN_LENGTH - 1));
+    depsByTarget.put("//:root", rootDeps.build());
+    return depsByTarget.build();
+  }
+
+  private static long getDurationMillis(String target) {
+    return target.startsWith("//chain:") ? 100 : 10;
+  }
+
+  @Test
+  public void perTargetSchedulingFinishesNoLaterThanPerAllocationScheduling() {
+    MinionWorkloadSimulator simulator =
+        new MinionWorkloadSimulator(
+            createSkewedGraph(), MinionWorkloadSimulatorTest::getDurationMillis);
+    ToLongFunction<String> estimates = MinionWorkloadSimulatorTest::getDurationMillis;
+
+    long perAllocationMillis =
+        simulator.simulateMakespanMillis(3, 2, 4, ProgressReporting.PER_ALLOCATION, estimates);
+    long perTargetMillis =
+        simulator.simulateMakespanMillis(3, 2, 4, ProgressReporting.PER_TARGET, estimates);
+
+    // The critical path is the chain followed by the root.
+    assertEquals(CHAIN_LENGTH * 100 + 10, perTargetMillis);
+    assertThat(perTargetMillis, Matchers.lessThanOrEqualTo(perAllocationMillis));
+  }
+
+  @Test
+  public void recordedGraphCanBeReplayed() throws Exception {
+    Path recordedGraph = tmp.newFile("graph.json").toPath();
+    Files.write(
+        recordedGraph,
+        ("{"
+                + "\"//:leaf\": {\"deps\": [], \"duration_millis\": 30},"
+                + "\"//:left\": {\"deps\": [\"//:leaf\"], \"duration_millis\": 20},"
+                + "\"//:right\": {\"deps\": [\"//:leaf\"], \"duration_millis\": 50},"
+                + "\"//:root\": {\"deps\": [\"//:left\", \"//:right\"], \"duration_millis\": 10}"
+                + "}")
+            .getBytes(StandardCharsets.UTF_8));
+    MinionWorkloadSimulator simulator = MinionWorkloadSimulator.loadRecordedGraph(recordedGraph);
+
+    assertEquals(
+        90, simulator.simulateMakespanMillis(2, 1, 2, ProgressReporting.PER_TARGET, target -> 0));
+    assertEquals(
+        110, simulator.simulateMakespanMillis(1, 1, 2, ProgressReporting.PER_TARGET, target -> 0));
+  }
+}
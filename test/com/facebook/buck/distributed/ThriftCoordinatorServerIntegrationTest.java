@@ -23,6 +23,7 @@ import com.facebook.buck.distributed.thrift.StampedeId;
 import com.facebook.buck.parser.NoSuchBuildTargetException;
 import java.io.IOException;
 import java.net.ServerSocket;
+import java.util.List;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -72,6 +73,38 @@ public class ThriftCoordinatorServerIntegrationTest {
     }
   }
 
+  @Test
+  public void testIdleMinionTakesOverTargetsNotStartedByBusyOne()
+      throws IOException, NoSuchBuildTargetException {
+    int port = findRandomOpenPortOnAllLocalInterfaces();
+    BuildTargetsQueue diamondQueue = BuildTargetsQueueTest.createDiamondDependencyQueue();
+    String otherMinionId = "other cool minion";
+    try (ThriftCoordinatorServer server =
+            new ThriftCoordinatorServer(port, diamondQueue, STAMPEDE_ID);
+        ThriftCoordinatorClient client =
+            new ThriftCoordinatorClient("localhost", port, STAMPEDE_ID)) {
+      server.start();
+      client.start();
+
+      String leaf = client.getTargetsToBuild(MINION_ID).getBuildTargets().get(0);
+      Assert.assertTrue(client.startedBuildingTarget(MINION_ID, leaf).isShouldBuildTarget());
+      Assert.assertTrue(client.finishedBuildingTarget(MINION_ID, leaf, 0).isContinueBuilding());
+
+      List<String> targets = client.getTargetsToBuild(MINION_ID).getBuildTargets();
+      Assert.assertEquals(2, targets.size());
+      Assert.assertTrue(
+          client.startedBuildingTarget(MINION_ID, targets.get(0)).isShouldBuildTarget());
+
+      GetTargetsToBuildResponse otherResponse = client.getTargetsToBuild(otherMinionId);
+      Assert.assertEquals(GetTargetsToBuildAction.BUILD_TARGETS, otherResponse.getAction());
+      Assert.assertEquals(targets.subList(1, 2), otherResponse.getBuildTargets());
+      Assert.assertFalse(
+          client.startedBuildingTarget(MINION_ID, targets.get(1)).isShouldBuildTarget());
+      Assert.assertTrue(
+          client.startedBuildingTarget(otherMinionId, targets.get(1)).isShouldBuildTarget());
+    }
+  }
+
   public static int findRandomOpenPortOnAllLocalInterfaces() throws IOException {
     try (ServerSocket socket = new ServerSocket(0); ) {
       return socket.getLocalPort();
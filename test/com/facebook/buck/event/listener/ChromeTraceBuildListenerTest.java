@@ -363,6 +363,12 @@ public class ChromeTraceBuildListenerTest {
     assertNextResult(
         resultListCopy, "//fake:rule", ChromeTraceEvent.Phase.BEGIN, ImmutableMap.of());
 
+    assertNextResult(
+        resultListCopy,
+        "rules",
+        ChromeTraceEvent.Phase.COUNTER,
+        ImmutableMap.of("running_rules", "1"));
+
     assertNextResult(resultListCopy, "fakeStep", ChromeTraceEvent.Phase.BEGIN, emptyArgs);
 
     assertNextResult(
@@ -417,6 +423,12 @@ public class ChromeTraceBuildListenerTest {
             "cache_result", "miss",
             "success_type", "BUILT_LOCALLY"));
 
+    assertNextResult(
+        resultListCopy,
+        "rules",
+        ChromeTraceEvent.Phase.COUNTER,
+        ImmutableMap.of("running_rules", "0"));
+
     assertNextResult(
         resultListCopy,
         "planning",
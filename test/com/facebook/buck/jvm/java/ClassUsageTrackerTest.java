@@ -17,6 +17,7 @@
 package com.facebook.buck.jvm.java;
 
 import static javax.tools.StandardLocation.ANNOTATION_PROCESSOR_PATH;
+import static javax.tools.StandardLocation.PLATFORM_CLASS_PATH;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
@@ -164,6 +165,15 @@ public class ClassUsageTrackerTest {
     assertNoFilesRead();
   }
 
+  @Test
+  public void readingPlatformClassPathFilesFromListShouldNotBeTracked() throws IOException {
+    for (JavaFileObject javaFileObject : fileManager.list(PLATFORM_CLASS_PATH, null, null, false)) {
+      javaFileObject.openInputStream();
+    }
+
+    assertNoFilesRead();
+  }
+
   @Test
   public void readingAnnotationProcessorFileFromGetJavaFileForOutputShouldNotBeTracked()
       throws IOException {
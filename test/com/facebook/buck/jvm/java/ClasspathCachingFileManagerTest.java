@@ -0,0 +1,184 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.facebook.buck.zip.JarIndexCache;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.common.io.CharStreams;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class ClasspathCachingFileManagerTest {
+
+  @Rule public TemporaryPaths tmp = new TemporaryPaths();
+
+  private JavaCompiler compiler;
+  private Path libraryJar;
+
+  @Before
+  public void setUp() throws Exception {
+    compiler = ToolProvider.getSystemJavaCompiler();
+
+    Path librarySource = tmp.newFile("Library.java");
+    Files.write(librarySource, "package lib; public class Library {}".getBytes());
+    Path libraryClasses = tmp.newFolder("library-classes");
+    assertEquals(
+        0,
+        compiler.run(
+            null,
+            null,
+            null,
+            "-d",
+            libraryClasses.toString(),
+            librarySource.toString()));
+
+    libraryJar = tmp.getRoot().resolve("library.jar");
+    try (OutputStream output = Files.newOutputStream(libraryJar);
+        ZipOutputStream zip = new ZipOutputStream(output)) {
+      zip.putNextEntry(new ZipEntry("lib/Library.class"));
+      zip.write(Files.readAllBytes(libraryClasses.resolve("lib/Library.class")));
+      zip.closeEntry();
+    }
+  }
+
+  @Test
+  public void classesOnTheClasspathAreListedFromTheCache() throws Exception {
+    StandardJavaFileManager fileManager = createFileManager();
+    JavaFileObject library =
+        Iterables.getOnlyElement(
+            fileManager.list(
+                StandardLocation.CLASS_PATH,
+                "lib",
+                EnumSet.of(JavaFileObject.Kind.CLASS),
+                /* recurse */ false));
+
+    assertEquals("jar:" + libraryJar.toUri() + "!/lib/Library.class", library.toUri().toString());
+    assertEquals("lib.Library", fileManager.inferBinaryName(StandardLocation.CLASS_PATH, library));
+    assertTrue(library.isNameCompatible("Library", JavaFileObject.Kind.CLASS));
+  }
+
+  @Test
+  public void buildOutputsAreListedByJavacInClasspathOrder() throws Exception {
+    Path buildOutputJar = tmp.getRoot().resolve("buck-out/gen/output.jar");
+    Files.createDirectories(buildOutputJar.getParent());
+    Files.copy(libraryJar, buildOutputJar);
+
+    StandardJavaFileManager fileManager = createFileManager();
+    fileManager.setLocation(
+        StandardLocation.CLASS_PATH,
+        ImmutableList.of(buildOutputJar.toFile(), libraryJar.toFile()));
+    List<JavaFileObject> classes =
+        ImmutableList.copyOf(
+            fileManager.list(
+                StandardLocation.CLASS_PATH,
+                "lib",
+                EnumSet.of(JavaFileObject.Kind.CLASS),
+                /* recurse */ false));
+
+    assertEquals(2, classes.size());
+    assertThat(classes.get(0).toUri().toString(), containsString("output.jar"));
+    assertEquals(
+        "lib.Library", fileManager.inferBinaryName(StandardLocation.CLASS_PATH, classes.get(0)));
+    assertEquals(
+        "jar:" + libraryJar.toUri() + "!/lib/Library.class", classes.get(1).toUri().toString());
+  }
+
+  @Test
+  public void cachedClassesCanBeReadAsCharactersButNotWritten() throws Exception {
+    JavaFileObject library =
+        Iterables.getOnlyElement(
+            createFileManager()
+                .list(
+                    StandardLocation.CLASS_PATH,
+                    "lib",
+                    EnumSet.of(JavaFileObject.Kind.CLASS),
+                    /* recurse */ false));
+
+    String contents = library.getCharContent(true).toString();
+    assertTrue(contents.contains("lib/Library"));
+    try (Reader reader = library.openReader(true)) {
+      assertEquals(contents, CharStreams.toString(reader));
+    }
+    try {
+      library.openOutputStream();
+      fail("Classes read from a jar can't be written.");
+    } catch (IllegalStateException e) {
+      assertThat(e.getMessage(), containsString(library.toUri().toString()));
+    }
+  }
+
+  @Test
+  public void compilesAgainstTheCachedClassesAndTracksTheirUsage() throws Exception {
+    Path source = tmp.newFile("User.java");
+    Files.write(source, "public class User { lib.Library library; }".getBytes());
+    Path classes = tmp.newFolder("classes");
+
+    ClassUsageTracker tracker = new ClassUsageTracker();
+    StandardJavaFileManager fileManager = tracker.wrapFileManager(createFileManager());
+    fileManager.setLocation(StandardLocation.CLASS_OUTPUT, ImmutableList.of(classes.toFile()));
+    boolean success =
+        compiler
+            .getTask(
+                null,
+                fileManager,
+                null,
+                ImmutableList.of("-sourcepath", ""),
+                null,
+                fileManager.getJavaFileObjects(source.toFile()))
+            .call();
+
+    assertTrue(success);
+    assertTrue(Files.exists(classes.resolve("User.class")));
+    assertEquals(
+        ImmutableSet.of(Paths.get("lib/Library.class")),
+        tracker.getClassUsageMap().get(libraryJar));
+  }
+
+  private StandardJavaFileManager createFileManager() throws Exception {
+    StandardJavaFileManager fileManager =
+        new ClasspathCachingFileManager(
+            compiler.getStandardFileManager(null, null, null),
+            new JavacClasspathCache(JarIndexCache.getInstance(), Long.MAX_VALUE),
+            tmp.getRoot().resolve("buck-out"));
+    fileManager.setLocation(StandardLocation.CLASS_PATH, ImmutableList.of(libraryJar.toFile()));
+    return fileManager;
+  }
+}
@@ -16,14 +16,23 @@
 
 package com.facebook.buck.jvm.java;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 
 import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.rules.ArchiveMemberSourcePath;
+import com.facebook.buck.rules.FakeSourcePath;
+import com.facebook.buck.rules.SourcePath;
 import com.facebook.buck.testutil.FakeProjectFilesystem;
+import com.facebook.buck.util.MoreCollectors;
 import com.google.common.collect.FluentIterable;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
 import javax.tools.JavaFileObject;
 import javax.tools.StandardJavaFileManager;
 import org.junit.Test;
@@ -43,8 +52,8 @@ public class DefaultClassUsageFileWriterTest {
     Path testJarPath = filesystem.getPathForRelativePath("test.jar");
     Path testTwoJarPath = filesystem.getPathForRelativePath("test2.jar");
 
-    Path outputOne = filesystem.getPathForRelativePath("used-classes-one.json");
-    Path outputTwo = filesystem.getPathForRelativePath("used-classes-two.json");
+    Path outputOne = filesystem.getPathForRelativePath("used-classes-one.bin");
+    Path outputTwo = filesystem.getPathForRelativePath("used-classes-two.bin");
 
     FakeStandardJavaFileManager fakeFileManager = new FakeStandardJavaFileManager();
     fakeFileManager.addFile(testJarPath, OTHER_FILE_NAME, JavaFileObject.Kind.OTHER);
@@ -77,7 +86,41 @@ public class DefaultClassUsageFileWriterTest {
     }
     writerTwo.writeFile(filesystem);
 
+    assertArrayEquals(Files.readAllBytes(outputOne), Files.readAllBytes(outputTwo));
+  }
+
+  @Test
+  public void classesUsedFromDepsAreReadBack() throws IOException {
+    ProjectFilesystem filesystem = FakeProjectFilesystem.createRealTempFilesystem();
+    Path depJarPath = filesystem.getPathForRelativePath("dep.jar");
+    Path otherJarPath = filesystem.getPathForRelativePath("other.jar");
+    Path output = filesystem.getPathForRelativePath("used-classes.bin");
+
+    FakeStandardJavaFileManager fakeFileManager = new FakeStandardJavaFileManager();
+    for (String fileName : FILE_NAMES) {
+      fakeFileManager.addFile(depJarPath, "com/example/" + fileName, JavaFileObject.Kind.CLASS);
+      fakeFileManager.addFile(otherJarPath, fileName, JavaFileObject.Kind.CLASS);
+    }
+
+    DefaultClassUsageFileWriter writer = new DefaultClassUsageFileWriter(output);
+    for (JavaFileObject javaFileObject :
+        writer.wrapFileManager(fakeFileManager).list(null, null, null, false)) {
+      javaFileObject.openInputStream();
+    }
+    writer.writeFile(filesystem);
+
+    SourcePath depSourcePath = new FakeSourcePath(filesystem, "dep.jar");
+    ImmutableList<SourcePath> inputs =
+        DefaultClassUsageFileReader.loadFromFile(
+            filesystem, output, ImmutableMap.of(depJarPath, depSourcePath));
+
     assertEquals(
-        new String(Files.readAllBytes(outputOne)), new String(Files.readAllBytes(outputTwo)));
+        Arrays.stream(FILE_NAMES)
+            .map(
+                fileName ->
+                    ArchiveMemberSourcePath.of(
+                        depSourcePath, Paths.get("com/example/" + fileName)))
+            .collect(MoreCollectors.toImmutableList()),
+        inputs);
   }
 }
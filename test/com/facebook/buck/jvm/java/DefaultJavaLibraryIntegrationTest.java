@@ -34,23 +34,24 @@ import com.facebook.buck.artifact_cache.DirArtifactCacheTestUtil;
 import com.facebook.buck.artifact_cache.TestArtifactCaches;
 import com.facebook.buck.io.MorePaths;
 import com.facebook.buck.io.ProjectFilesystem;
-import com.facebook.buck.json.HasJsonField;
 import com.facebook.buck.jvm.java.testutil.AbiCompilationModeTest;
 import com.facebook.buck.model.BuildTarget;
 import com.facebook.buck.model.BuildTargetFactory;
 import com.facebook.buck.model.BuildTargets;
+import com.facebook.buck.rules.ArchiveMemberSourcePath;
+import com.facebook.buck.rules.FakeSourcePath;
+import com.facebook.buck.rules.SourcePath;
 import com.facebook.buck.testutil.Zip;
 import com.facebook.buck.testutil.integration.ProjectWorkspace;
 import com.facebook.buck.testutil.integration.ProjectWorkspace.ProcessResult;
 import com.facebook.buck.testutil.integration.TemporaryPaths;
 import com.facebook.buck.testutil.integration.TestDataHelper;
 import com.facebook.buck.testutil.integration.ZipInspector;
-import com.facebook.buck.util.ObjectMappers;
 import com.facebook.buck.util.environment.Platform;
-import com.fasterxml.jackson.databind.JsonNode;
 import com.google.common.base.Strings;
 import com.google.common.collect.FluentIterable;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Ordering;
 import java.io.File;
@@ -62,6 +63,7 @@ import java.nio.file.FileSystems;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.BasicFileAttributes;
@@ -600,11 +602,7 @@ public class DefaultJavaLibraryIntegrationTest extends AbiCompilationModeTest {
     buildResult.assertSuccess("Successful build should exit with 0.");
 
     Path bizClassUsageFilePath =
-        BuildTargets.getGenPath(filesystem, bizTarget, "lib__%s__output/used-classes.json");
-
-    final List<String> lines = Files.readAllLines(workspace.getPath(bizClassUsageFilePath), UTF_8);
-
-    assertEquals("Expected just one line of JSON", 1, lines.size());
+        BuildTargets.getGenPath(filesystem, bizTarget, "lib__%s__output/used-classes.bin");
 
     final String utilJarPath;
     if (compileAgainstAbis.equals(TRUE)) {
@@ -615,13 +613,13 @@ public class DefaultJavaLibraryIntegrationTest extends AbiCompilationModeTest {
     }
     final String utilClassPath = MorePaths.pathWithPlatformSeparators("com/example/Util.class");
 
-    JsonNode jsonNode = ObjectMappers.READER.readTree(lines.get(0));
-    assertThat(
-        jsonNode,
-        new HasJsonField(
-            utilJarPath,
-            Matchers.equalTo(
-                ObjectMappers.legacyCreate().valueToTree(new String[] {utilClassPath}))));
+    SourcePath utilJarSourcePath = new FakeSourcePath(filesystem, utilJarPath);
+    assertEquals(
+        ImmutableList.of(ArchiveMemberSourcePath.of(utilJarSourcePath, Paths.get(utilClassPath))),
+        DefaultClassUsageFileReader.loadFromFile(
+            filesystem,
+            workspace.getPath(bizClassUsageFilePath),
+            ImmutableMap.of(filesystem.resolve(utilJarPath), utilJarSourcePath)));
   }
 
   @Test
@@ -21,6 +21,7 @@ import static java.util.jar.Attributes.Name.IMPLEMENTATION_VERSION;
 import static java.util.jar.Attributes.Name.MANIFEST_VERSION;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.hasItem;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
@@ -44,6 +45,8 @@ import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.collect.Sets;
 import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
 import java.io.ByteArrayInputStream;
 import java.io.FileInputStream;
 import java.io.IOException;
@@ -55,6 +58,7 @@ import java.nio.file.Paths;
 import java.util.Date;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Executors;
 import java.util.jar.Attributes;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
@@ -62,6 +66,8 @@ import java.util.jar.JarInputStream;
 import java.util.jar.JarOutputStream;
 import java.util.jar.Manifest;
 import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
@@ -505,6 +511,103 @@ public class JarDirectoryStepTest {
     assertEquals("peas", readAttributes.getValue("From-Zip"));
   }
 
+  @Test
+  public void compressingEntriesInParallelWritesTheSameJar()
+      throws InterruptedException, IOException {
+    Path inputs = folder.newFolder("inputs");
+    Path inputJar = inputs.resolve("input.jar");
+    try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(inputJar))) {
+      for (int i = 0; i < 50; i++) {
+        out.putNextEntry(new JarEntry("com/example/Class" + i + ".class"));
+        out.write(createCompressibleContents(i * 100));
+        out.closeEntry();
+      }
+      JarEntry storedEntry = new JarEntry("stored.txt");
+      byte[] storedContents = "stored".getBytes(UTF_8);
+      storedEntry.setMethod(ZipEntry.STORED);
+      storedEntry.setSize(storedContents.length);
+      CRC32 crc = new CRC32();
+      crc.update(storedContents);
+      storedEntry.setCrc(crc.getValue());
+      out.putNextEntry(storedEntry);
+      out.write(storedContents);
+      out.closeEntry();
+    }
+    Path classes = inputs.resolve("classes");
+    for (int i = 0; i < 50; i++) {
+      Path file = classes.resolve("com/example/dir/Class" + i + ".class");
+      Files.createDirectories(file.getParent());
+      Files.write(file, createCompressibleContents(i * 1000));
+    }
+
+    ProjectFilesystem filesystem = new ProjectFilesystem(inputs);
+    ImmutableSortedSet<Path> entriesToJar =
+        ImmutableSortedSet.of(Paths.get("input.jar"), Paths.get("classes"));
+    Path serialJar = inputs.resolve("serial.jar");
+    new JarBuilder(filesystem).setEntriesToJar(entriesToJar).createJarFile(serialJar);
+    Path parallelJar = inputs.resolve("parallel.jar");
+    ListeningExecutorService executor =
+        MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(4));
+    try {
+      new JarBuilder(filesystem)
+          .setEntriesToJar(entriesToJar)
+          .setCompressionExecutor(executor)
+          .createJarFile(parallelJar);
+    } finally {
+      executor.shutdownNow();
+    }
+
+    assertEquals(102, getFileNames(parallelJar).size());
+    assertArrayEquals(Files.readAllBytes(serialJar), Files.readAllBytes(parallelJar));
+  }
+
+  @Test
+  public void deflatedEntriesOfUnknownLevelAreCompressedAgain()
+      throws InterruptedException, IOException {
+    Path inputs = folder.newFolder("inputs");
+    Path inputJar = inputs.resolve("input.jar");
+    byte[] contents = createCompressibleContents(10000);
+    try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(inputJar))) {
+      // Deflating without compression gives contents which compressing again would shrink, but
+      // java.util.zip flags the entry the same way whatever level it used.
+      out.setLevel(Deflater.NO_COMPRESSION);
+      out.putNextEntry(new JarEntry("Uncompressed.class"));
+      out.write(contents);
+      out.closeEntry();
+    }
+
+    Path outputJar = inputs.resolve("output.jar");
+    ListeningExecutorService executor =
+        MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(2));
+    try {
+      new JarBuilder(new ProjectFilesystem(inputs))
+          .setEntriesToJar(ImmutableSortedSet.of(Paths.get("input.jar")))
+          .setCompressionExecutor(executor)
+          .createJarFile(outputJar);
+    } finally {
+      executor.shutdownNow();
+    }
+
+    try (JarFile input = new JarFile(inputJar.toFile());
+        JarFile output = new JarFile(outputJar.toFile())) {
+      ZipEntry inputEntry = input.getEntry("Uncompressed.class");
+      ZipEntry outputEntry = output.getEntry("Uncompressed.class");
+      assertTrue(inputEntry.getCompressedSize() > contents.length);
+      assertTrue(outputEntry.getCompressedSize() < contents.length);
+      try (InputStream stream = output.getInputStream(outputEntry)) {
+        assertArrayEquals(contents, ByteStreams.toByteArray(stream));
+      }
+    }
+  }
+
+  private byte[] createCompressibleContents(int length) {
+    byte[] contents = new byte[length];
+    for (int i = 0; i < length; i++) {
+      contents[i] = (byte) (i % 7 + i / 100);
+    }
+    return contents;
+  }
+
   private Manifest createManifestWithExampleSection(Map<String, String> attributes) {
     Manifest manifest = new Manifest();
     Attributes attrs = new Attributes();
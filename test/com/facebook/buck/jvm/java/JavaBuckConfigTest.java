@@ -409,6 +409,17 @@ public class JavaBuckConfigTest {
         Matchers.equalTo(JavacCompilationMode.FULL_ENFORCING_REFERENCES));
   }
 
+  @Test
+  public void testSourceAbisArePipelinedOnlyWhenCompilingAgainstThem() throws IOException {
+    String content =
+        Joiner.on('\n')
+            .join("[java]", "    abi_generation_mode = source", "    pipeline_source_abis = true");
+    assertFalse(createWithDefaultFilesystem(new StringReader(content)).shouldPipelineSourceAbis());
+
+    content = Joiner.on('\n').join(content, "    compile_against_abis = true");
+    assertTrue(createWithDefaultFilesystem(new StringReader(content)).shouldPipelineSourceAbis());
+  }
+
   private void assertOptionKeyAbsent(JavacOptions options, String key) {
     OptionAccumulator optionsConsumer = visitOptions(options);
     assertThat(optionsConsumer.keyVals, not(hasKey(key)));
@@ -18,6 +18,7 @@ package com.facebook.buck.jvm.java;
 
 import static org.hamcrest.junit.MatcherAssert.assertThat;
 
+import com.facebook.buck.cli.FakeBuckConfig;
 import com.facebook.buck.jvm.java.testutil.AbiCompilationModeTest;
 import com.facebook.buck.model.BuildTarget;
 import com.facebook.buck.model.BuildTargetFactory;
@@ -28,6 +29,7 @@ import com.facebook.buck.rules.DefaultTargetNodeToBuildRuleTransformer;
 import com.facebook.buck.rules.TargetGraph;
 import com.facebook.buck.rules.TargetNode;
 import com.facebook.buck.testutil.TargetGraphFactory;
+import com.facebook.buck.util.MoreCollectors;
 import java.nio.file.Paths;
 import org.hamcrest.Matchers;
 import org.junit.Before;
@@ -95,4 +97,47 @@ public class JavaLibraryDescriptionTest extends AbiCompilationModeTest {
 
     assertThat(javaLibrary.getBuildDeps(), Matchers.<BuildRule>hasItem(exportedRule));
   }
+
+  @Test
+  public void dependentsCompileAgainstPipelinedSourceAbisAndWaitForTheirVerification()
+      throws Exception {
+    compileAgainstAbisOnly();
+    JavaBuckConfig pipeliningConfig =
+        JavaBuckConfig.of(
+            FakeBuckConfig.builder()
+                .setSections(
+                    "[" + JavaBuckConfig.SECTION + "]",
+                    JavaBuckConfig.PROPERTY_COMPILE_AGAINST_ABIS + " = " + compileAgainstAbis,
+                    "abi_generation_mode = source",
+                    "pipeline_source_abis = true")
+                .build());
+    TargetNode<?, ?> depNode =
+        JavaLibraryBuilder.createBuilder(BuildTargetFactory.newInstance("//:dep"), pipeliningConfig)
+            .addSrc(Paths.get("java/src/com/dep/foo.java"))
+            .build();
+    TargetNode<?, ?> libraryNode =
+        JavaLibraryBuilder.createBuilder(
+                BuildTargetFactory.newInstance("//:library"), pipeliningConfig)
+            .addSrc(Paths.get("java/src/com/library/bar.java"))
+            .addDep(depNode.getBuildTarget())
+            .build();
+    BuildRuleResolver resolver =
+        new BuildRuleResolver(
+            TargetGraphFactory.newInstance(depNode, libraryNode),
+            new DefaultTargetNodeToBuildRuleTransformer());
+
+    DefaultJavaLibrary library =
+        (DefaultJavaLibrary) resolver.requireRule(libraryNode.getBuildTarget());
+
+    BuildTarget depTarget = depNode.getBuildTarget();
+    assertThat(
+        library.getBuildDeps(),
+        Matchers.hasItem(resolver.getRule(HasJavaAbi.getSourceAbiJar(depTarget))));
+    assertThat(
+        library.getRuntimeDeps().collect(MoreCollectors.toImmutableList()),
+        Matchers.contains(HasJavaAbi.getVerifiedSourceAbiJar(depTarget)));
+    assertThat(
+        resolver.getRule(HasJavaAbi.getVerifiedSourceAbiJar(depTarget)),
+        Matchers.instanceOf(CompareAbis.class));
+  }
 }
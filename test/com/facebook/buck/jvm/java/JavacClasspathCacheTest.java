@@ -0,0 +1,145 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.facebook.buck.zip.IndexedJar;
+import com.facebook.buck.zip.JarIndex;
+import com.facebook.buck.zip.JarIndexCache;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.ByteStreams;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class JavacClasspathCacheTest {
+
+  @Rule public TemporaryPaths tmp = new TemporaryPaths();
+
+  @Test
+  public void jarRebuiltWithTheSameContentsIsServedFromTheCache() throws Exception {
+    JavacClasspathCache cache = createCache(Long.MAX_VALUE);
+    Path jar = writeJar("lib.jar", ImmutableMap.of("com/example/A.class", "a"));
+    JavacClasspathCache.JarClasses classes = getJarClasses(cache, jar);
+    assertSame(classes, getJarClasses(cache, jar));
+
+    Files.delete(jar);
+    writeJar("lib.jar", ImmutableMap.of("com/example/A.class", "a"));
+    assertSame(classes, getJarClasses(cache, jar));
+    assertSame(classes, getJarClasses(cache, writeJar("copy.jar", readEntries(jar))));
+  }
+
+  @Test
+  public void changedJarIsReadAgain() throws Exception {
+    JavacClasspathCache cache = createCache(Long.MAX_VALUE);
+    Path jar = writeJar("lib.jar", ImmutableMap.of("com/example/A.class", "a"));
+    JavacClasspathCache.JarClasses classes = getJarClasses(cache, jar);
+
+    writeJar("lib.jar", ImmutableMap.of("com/example/A.class", "changed"));
+    JavacClasspathCache.JarClasses changedClasses = getJarClasses(cache, jar);
+    assertNotSame(classes, changedClasses);
+    assertEquals("changed", readEntries(jar).get("com/example/A.class"));
+  }
+
+  @Test
+  public void classesAreListedByPackage() throws Exception {
+    JavacClasspathCache cache = createCache(Long.MAX_VALUE);
+    Path jar =
+        writeJar(
+            "lib.jar",
+            ImmutableMap.of(
+                "Top.class", "",
+                "com/example/A.class", "",
+                "com/example/A$Inner.class", "",
+                "com/example/sub/B.class", "",
+                "com/example/resource.txt", ""));
+    JavacClasspathCache.JarClasses classes = getJarClasses(cache, jar);
+
+    assertEquals(
+        "[com.example.A, com.example.A$Inner]",
+        getBinaryNames(classes.getClasses("com.example", false)).toString());
+    assertEquals(
+        "[com.example.A, com.example.A$Inner, com.example.sub.B]",
+        getBinaryNames(classes.getClasses("com.example", true)).toString());
+    assertEquals("[Top]", getBinaryNames(classes.getClasses("", false)).toString());
+    assertEquals(4, classes.getClasses("", true).size());
+    assertEquals(0, classes.getClasses("com.other", true).size());
+  }
+
+  @Test
+  public void jarsAreEvictedOnceTheyListMoreClassesThanTheLimit() throws Exception {
+    JavacClasspathCache cache = createCache(1);
+    getJarClasses(cache, writeJar("a.jar", ImmutableMap.of("A.class", "")));
+    getJarClasses(cache, writeJar("b.jar", ImmutableMap.of("B.class", "")));
+    assertEquals(1, cache.size());
+  }
+
+  private JavacClasspathCache createCache(long maxListedClasses) {
+    return new JavacClasspathCache(JarIndexCache.getInstance(), maxListedClasses);
+  }
+
+  private JavacClasspathCache.JarClasses getJarClasses(JavacClasspathCache cache, Path jar)
+      throws IOException {
+    return cache.getJarClasses(cache.getJar(jar));
+  }
+
+  private List<String> getBinaryNames(List<JarIndex.Entry> classes) {
+    return classes
+        .stream()
+        .map(JavacClasspathCache::getBinaryName)
+        .collect(Collectors.toList());
+  }
+
+  private Path writeJar(String name, Map<String, String> entries) throws IOException {
+    Path jar = tmp.getRoot().resolve(name);
+    try (OutputStream output = Files.newOutputStream(jar);
+        ZipOutputStream zip = new ZipOutputStream(output)) {
+      for (Map.Entry<String, String> entry : entries.entrySet()) {
+        ZipEntry zipEntry = new ZipEntry(entry.getKey());
+        zipEntry.setTime(0);
+        zip.putNextEntry(zipEntry);
+        zip.write(entry.getValue().getBytes());
+        zip.closeEntry();
+      }
+    }
+    return jar;
+  }
+
+  private Map<String, String> readEntries(Path jarPath) throws IOException {
+    IndexedJar jar = JarIndexCache.getInstance().get(jarPath);
+    ImmutableMap.Builder<String, String> entries = ImmutableMap.builder();
+    for (JarIndex.Entry entry : jar.getEntries()) {
+      try (InputStream stream = jar.openEntry(entry)) {
+        entries.put(entry.getName(), new String(ByteStreams.toByteArray(stream)));
+      }
+    }
+    return entries.build();
+  }
+}
@@ -90,7 +90,8 @@ public class JavacExecutionContextSerializerTest {
             environment,
             processExecutor,
             pathToInputs,
-            Optional.of(directToJarOutputSettings));
+            Optional.of(directToJarOutputSettings),
+            /* shouldCacheClasspathJars */ true);
     Map<String, Object> data = JavacExecutionContextSerializer.serialize(input);
     JavacExecutionContext output =
         JavacExecutionContextSerializer.deserialize(
@@ -136,6 +137,8 @@ public class JavacExecutionContextSerializerTest {
 
     assertThat(output.getAbsolutePathsForInputs(), Matchers.equalToObject(pathToInputs));
 
+    assertThat(output.shouldCacheClasspathJars(), Matchers.is(true));
+
     assertThat(
         output.getDirectToJarOutputSettings().get().getDirectToJarOutputPath(),
         Matchers.equalToObject(directToJarOutputSettings.getDirectToJarOutputPath()));
@@ -130,7 +130,8 @@ public class Jsr199JavacIntegrationTest {
             executionContext.getEnvironment(),
             executionContext.getProcessExecutor(),
             ImmutableList.of(),
-            Optional.empty());
+            Optional.empty(),
+            /* shouldCacheClasspathJars */ false);
 
     int exitCode =
         javac.buildWithClasspath(
@@ -179,7 +180,8 @@ public class Jsr199JavacIntegrationTest {
             executionContext.getEnvironment(),
             executionContext.getProcessExecutor(),
             ImmutableList.of(),
-            Optional.empty());
+            Optional.empty(),
+            /* shouldCacheClasspathJars */ false);
 
     int exitCode =
         javac.buildWithClasspath(
@@ -275,7 +277,8 @@ public class Jsr199JavacIntegrationTest {
             executionContext.getEnvironment(),
             executionContext.getProcessExecutor(),
             ImmutableList.of(fakeJavacJar),
-            Optional.empty());
+            Optional.empty(),
+            /* shouldCacheClasspathJars */ false);
 
     boolean caught = false;
 
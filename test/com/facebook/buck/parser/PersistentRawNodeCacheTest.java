@@ -0,0 +1,190 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.cli.FakeBuckConfig;
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.rules.Cell;
+import com.facebook.buck.rules.TestCellBuilder;
+import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class PersistentRawNodeCacheTest {
+
+  @Rule public TemporaryPaths tmp = new TemporaryPaths();
+
+  private ProjectFilesystem filesystem;
+  private Path buildFile;
+  private Path include;
+
+  @Before
+  public void setUp() throws Exception {
+    filesystem = new ProjectFilesystem(tmp.getRoot());
+    buildFile = writeOldFile("foo/BUCK", "java_library(name = 'foo')");
+    include = writeOldFile("DEFS", "def foo(): pass");
+    writeOldFile("foo/Foo.java", "class Foo {}");
+    writeOldFile("foo/bar/BUCK", "");
+  }
+
+  @Test
+  public void persistedNodesAreReturnedByANewDaemon() throws Exception {
+    Cell cell = createCell(ImmutableMap.of());
+    assertTrue(PersistentRawNodeCache.isEnabled(cell));
+    ImmutableSet<Map<String, Object>> rawNodes = parseAndStore(cell);
+
+    Optional<ImmutableSet<Map<String, Object>>> persistedNodes =
+        new PersistentRawNodeCache().lookup(cell, buildFile);
+    assertEquals(Optional.of(rawNodes), persistedNodes);
+  }
+
+  @Test
+  public void changedIncludeIsAMiss() throws Exception {
+    Cell cell = createCell(ImmutableMap.of());
+    parseAndStore(cell);
+
+    writeOldFile("DEFS", "def bar(): pass");
+    assertEquals(Optional.empty(), new PersistentRawNodeCache().lookup(cell, buildFile));
+  }
+
+  @Test
+  public void changedEnvironmentIsAMiss() throws Exception {
+    parseAndStore(createCell(ImmutableMap.of()));
+
+    Cell cell = createCell(ImmutableMap.of("FOO", "bar"));
+    assertEquals(Optional.empty(), new PersistentRawNodeCache().lookup(cell, buildFile));
+  }
+
+  @Test
+  public void fileAddedToThePackageIsAMiss() throws Exception {
+    Cell cell = createCell(ImmutableMap.of());
+    parseAndStore(cell);
+
+    writeOldFile("foo/baz/Baz.java", "class Baz {}");
+    assertEquals(Optional.empty(), new PersistentRawNodeCache().lookup(cell, buildFile));
+  }
+
+  @Test
+  public void fileAddedToASubpackageIsAHit() throws Exception {
+    Cell cell = createCell(ImmutableMap.of());
+    ImmutableSet<Map<String, Object>> rawNodes = parseAndStore(cell);
+
+    writeOldFile("foo/bar/Bar.java", "class Bar {}");
+    assertEquals(Optional.of(rawNodes), new PersistentRawNodeCache().lookup(cell, buildFile));
+  }
+
+  @Test
+  public void packageListingIsOnlyWalkedAgainOnceInvalidated() throws Exception {
+    Cell cell = createCell(ImmutableMap.of());
+    PersistentRawNodeCache cache = new PersistentRawNodeCache();
+    assertEquals(Optional.empty(), cache.lookup(cell, buildFile));
+    ImmutableSet<Map<String, Object>> rawNodes = createRawNodes();
+    cache.store(cell, buildFile, rawNodes);
+
+    writeOldFile("foo/baz/Baz.java", "class Baz {}");
+    assertEquals(Optional.of(rawNodes), cache.lookup(cell, buildFile));
+    cache.invalidatePackageListing(buildFile);
+    assertEquals(Optional.empty(), cache.lookup(cell, buildFile));
+  }
+
+  @Test
+  public void buildFilesModifiedJustBeforeTheParseAreNotPersisted() throws Exception {
+    Cell cell = createCell(ImmutableMap.of());
+    Files.write(buildFile, "java_library(name = 'bar')".getBytes());
+
+    PersistentRawNodeCache cache = new PersistentRawNodeCache();
+    assertEquals(Optional.empty(), cache.lookup(cell, buildFile));
+    cache.store(cell, buildFile, createRawNodes());
+    assertEquals(Optional.empty(), new PersistentRawNodeCache().lookup(cell, buildFile));
+  }
+
+  private ImmutableSet<Map<String, Object>> parseAndStore(Cell cell) {
+    PersistentRawNodeCache cache = new PersistentRawNodeCache();
+    assertEquals(Optional.empty(), cache.lookup(cell, buildFile));
+    ImmutableSet<Map<String, Object>> rawNodes = createRawNodes();
+    cache.store(cell, buildFile, rawNodes);
+    return rawNodes;
+  }
+
+  /** @return raw nodes of the types the build file parser's JSON decoding yields. */
+  private ImmutableSet<Map<String, Object>> createRawNodes() {
+    Map<String, Object> rule = new LinkedHashMap<>();
+    rule.put("buck.type", "java_library");
+    rule.put("buck.base_path", "foo");
+    rule.put("name", "foo");
+    rule.put("srcs", Arrays.asList("Foo.java"));
+    rule.put("source", null);
+    rule.put("exported", true);
+    rule.put("int", 1);
+    rule.put("long", 10000000000L);
+    rule.put("double", 1.5);
+    rule.put("map", ImmutableMap.of("key", -200));
+
+    Map<String, Object> env = new HashMap<>();
+    env.put("FOO", null);
+    Map<String, Object> config = new HashMap<>();
+    config.put("bar", null);
+
+    return ImmutableSet.of(
+        rule,
+        ImmutableMap.of(
+            DaemonicParserState.INCLUDES_META_RULE,
+            ImmutableList.of(buildFile.toString(), include.toString())),
+        ImmutableMap.of(DaemonicParserState.CONFIGS_META_RULE, ImmutableMap.of("foo", config)),
+        ImmutableMap.of(DaemonicParserState.ENV_META_RULE, env));
+  }
+
+  private Cell createCell(ImmutableMap<String, String> environment) throws Exception {
+    return new TestCellBuilder()
+        .setFilesystem(filesystem)
+        .setBuckConfig(
+            FakeBuckConfig.builder()
+                .setFilesystem(filesystem)
+                .setEnvironment(environment)
+                .setSections("[parser]", "persistent_cache = true")
+                .build())
+        .build();
+  }
+
+  /** Writes a file which was last modified long enough ago for its hash to be persisted. */
+  private Path writeOldFile(String path, String contents) throws Exception {
+    Path file = filesystem.resolve(path);
+    Files.createDirectories(file.getParent());
+    Files.write(file, contents.getBytes());
+    Files.setLastModifiedTime(
+        file,
+        FileTime.fromMillis(
+            System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(1) - contents.length()));
+    return file;
+  }
+}
@@ -21,6 +21,8 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 
+import com.facebook.buck.counters.Counter;
+import com.facebook.buck.counters.IntegerCounter;
 import com.facebook.buck.event.ActionGraphEvent;
 import com.facebook.buck.event.BuckEvent;
 import com.facebook.buck.event.BuckEventBus;
@@ -40,6 +42,7 @@ import com.google.common.collect.ImmutableSet;
 import com.google.common.eventbus.Subscribe;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.BlockingQueue;
@@ -243,6 +246,142 @@ public class ActionGraphCacheTest {
     assertEquals(countEventsOf(ActionGraphEvent.Cache.Miss.class), 4);
   }
 
+  @Test
+  public void incrementalActionGraphReusesRulesOfUnchangedTargets() {
+    ActionGraphCache cache = new ActionGraphCache(broadcastEventListener);
+    ActionGraphAndResolver resultRun1 = getIncrementalActionGraph(cache, targetGraph);
+    BuildRule ruleA = resultRun1.getResolver().getRule(nodeA.getBuildTarget());
+    BuildRule ruleB = resultRun1.getResolver().getRule(nodeB.getBuildTarget());
+
+    // Editing A only rebuilds the rule of A, while the one of B is carried over.
+    TargetNode<?, ?> newNodeA = createTargetNode("A", nodeB);
+    ActionGraphAndResolver resultRun2 =
+        getIncrementalActionGraph(cache, TargetGraphFactory.newInstance(newNodeA, nodeB));
+    assertEquals(2, countEventsOf(ActionGraphEvent.Cache.Miss.class));
+    assertThat(
+        resultRun2.getResolver().getRule(nodeA.getBuildTarget()),
+        Matchers.not(Matchers.sameInstance(ruleA)));
+    assertThat(
+        resultRun2.getResolver().getRule(nodeB.getBuildTarget()), Matchers.sameInstance(ruleB));
+    assertThat(resultRun2.getActionGraph().getNodes(), Matchers.iterableWithSize(2));
+    // The previous ActionGraph is left as it was.
+    assertThat(
+        resultRun1.getResolver().getRule(nodeA.getBuildTarget()), Matchers.sameInstance(ruleA));
+    assertEquals(1, getCounter(cache, "reused_target_nodes"));
+    assertEquals(3, getCounter(cache, "rebuilt_target_nodes"));
+  }
+
+  @Test
+  public void incrementalActionGraphRebuildsDependentsOfChangedTargets() {
+    ActionGraphCache cache = new ActionGraphCache(broadcastEventListener);
+    ActionGraphAndResolver resultRun1 = getIncrementalActionGraph(cache, targetGraph);
+    BuildRule ruleA = resultRun1.getResolver().getRule(nodeA.getBuildTarget());
+    BuildRule ruleB = resultRun1.getResolver().getRule(nodeB.getBuildTarget());
+
+    ActionGraphAndResolver resultRun2 =
+        getIncrementalActionGraph(
+            cache, TargetGraphFactory.newInstance(nodeA, createTargetNode("B")));
+    assertThat(
+        resultRun2.getResolver().getRule(nodeA.getBuildTarget()),
+        Matchers.not(Matchers.sameInstance(ruleA)));
+    assertThat(
+        resultRun2.getResolver().getRule(nodeB.getBuildTarget()),
+        Matchers.not(Matchers.sameInstance(ruleB)));
+    assertEquals(0, getCounter(cache, "reused_target_nodes"));
+  }
+
+  @Test
+  public void incrementalActionGraphSurvivesFileEventsOutsideOfPackages() {
+    ActionGraphCache cache = new ActionGraphCache(broadcastEventListener);
+    ActionGraphAndResolver resultRun1 = getIncrementalActionGraph(cache, targetGraph);
+    BuildRule ruleB = resultRun1.getResolver().getRule(nodeB.getBuildTarget());
+    Path cellPath = nodeB.getBuildTarget().getCellPath();
+
+    cache.invalidateBasedOn(
+        WatchmanPathEvent.of(cellPath, WatchmanPathEvent.Kind.CREATE, Paths.get("bar/new.txt")));
+    assertTrue(cache.isCacheEmpty());
+    ActionGraphAndResolver resultRun2 = getIncrementalActionGraph(cache, targetGraph);
+    assertThat(
+        resultRun2.getResolver().getRule(nodeB.getBuildTarget()), Matchers.sameInstance(ruleB));
+    assertEquals(2, getCounter(cache, "reused_target_nodes"));
+
+    // Removing a file from the package of the targets may change their rules.
+    cache.invalidateBasedOn(
+        WatchmanPathEvent.of(cellPath, WatchmanPathEvent.Kind.DELETE, Paths.get("foo/old.txt")));
+    ActionGraphAndResolver resultRun3 = getIncrementalActionGraph(cache, targetGraph);
+    assertThat(
+        resultRun3.getResolver().getRule(nodeB.getBuildTarget()),
+        Matchers.not(Matchers.sameInstance(ruleB)));
+    assertEquals(2, getCounter(cache, "reused_target_nodes"));
+    assertEquals(4, getCounter(cache, "rebuilt_target_nodes"));
+  }
+
+  @Test
+  public void incrementalActionGraphOnlyInvalidatesThePackageOwningAChangedFile() {
+    TargetNode<?, ?> nodeC =
+        JavaLibraryBuilder.createBuilder(BuildTargetFactory.newInstance("//foo/bar:C")).build();
+    TargetGraph targetGraph = TargetGraphFactory.newInstance(nodeA, nodeB, nodeC);
+    ActionGraphCache cache = new ActionGraphCache(broadcastEventListener);
+    ActionGraphAndResolver resultRun1 = getIncrementalActionGraph(cache, targetGraph);
+    BuildRule ruleB = resultRun1.getResolver().getRule(nodeB.getBuildTarget());
+    BuildRule ruleC = resultRun1.getResolver().getRule(nodeC.getBuildTarget());
+    Path cellPath = nodeB.getBuildTarget().getCellPath();
+
+    cache.invalidateBasedOn(
+        WatchmanPathEvent.of(
+            cellPath, WatchmanPathEvent.Kind.CREATE, Paths.get("foo/bar/baz/new.txt")));
+    ActionGraphAndResolver resultRun2 = getIncrementalActionGraph(cache, targetGraph);
+    assertThat(
+        resultRun2.getResolver().getRule(nodeB.getBuildTarget()), Matchers.sameInstance(ruleB));
+    assertThat(
+        resultRun2.getResolver().getRule(nodeC.getBuildTarget()),
+        Matchers.not(Matchers.sameInstance(ruleC)));
+    assertEquals(2, getCounter(cache, "reused_target_nodes"));
+  }
+
+  @Test
+  public void incrementalActionGraphIsCreatedFromScratchEveryFewGenerations() {
+    ActionGraphCache cache = new ActionGraphCache(broadcastEventListener);
+    ActionGraphAndResolver resultRun1 = getIncrementalActionGraph(cache, targetGraph);
+    BuildRule ruleB = resultRun1.getResolver().getRule(nodeB.getBuildTarget());
+
+    for (int i = 0; i < ActionGraphCache.MAX_INCREMENTAL_GENERATIONS; i++) {
+      TargetNode<?, ?> newNodeA = createTargetNode("A", nodeB);
+      ActionGraphAndResolver result =
+          getIncrementalActionGraph(cache, TargetGraphFactory.newInstance(newNodeA, nodeB));
+      assertThat(
+          result.getResolver().getRule(nodeB.getBuildTarget()), Matchers.sameInstance(ruleB));
+    }
+
+    // Rules reused this many times would keep too many previous resolvers alive.
+    TargetNode<?, ?> newNodeA = createTargetNode("A", nodeB);
+    ActionGraphAndResolver result =
+        getIncrementalActionGraph(cache, TargetGraphFactory.newInstance(newNodeA, nodeB));
+    assertThat(
+        result.getResolver().getRule(nodeB.getBuildTarget()),
+        Matchers.not(Matchers.sameInstance(ruleB)));
+  }
+
+  private ActionGraphAndResolver getIncrementalActionGraph(
+      ActionGraphCache cache, TargetGraph targetGraph) {
+    return cache.getActionGraph(
+        eventBus,
+        CHECK_GRAPHS,
+        /* skipActionGraphCache */ false,
+        /* incrementalActionGraph */ true,
+        targetGraph,
+        keySeed);
+  }
+
+  private long getCounter(ActionGraphCache cache, String name) {
+    for (Counter counter : cache.getCounters()) {
+      if (counter.getName().equals(name)) {
+        return ((IntegerCounter) counter).get();
+      }
+    }
+    throw new IllegalArgumentException(name);
+  }
+
   private TargetNode<?, ?> createTargetNode(String name, TargetNode<?, ?>... deps) {
     BuildTarget buildTarget = BuildTargetFactory.newInstance("//foo:" + name);
     JavaLibraryBuilder targetNodeBuilder = JavaLibraryBuilder.createBuilder(buildTarget);
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.rules;
+
+import com.facebook.buck.io.MoreFiles;
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.model.BuildTarget;
+import com.facebook.buck.model.BuildTargetFactory;
+import com.google.caliper.AfterExperiment;
+import com.google.caliper.BeforeExperiment;
+import com.google.caliper.Benchmark;
+import com.google.caliper.Param;
+import com.google.common.collect.ImmutableMap;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Measures how well metadata writes from many build threads scale for each metadata storage. */
+public class BuildInfoStoreBenchmark {
+  @Param({"FILESYSTEM", "MAPDB", "LOG_STRUCTURED"})
+  private CachingBuildEngine.MetadataStorage metadataStorage =
+      CachingBuildEngine.MetadataStorage.LOG_STRUCTURED;
+
+  @Param({"1", "8", "64"})
+  private int threadCount = 8;
+
+  private static final int TARGET_COUNT = 2000;
+
+  private Path root;
+  private BuildInfoStoreManager storeManager;
+  private BuildInfoStore store;
+  private ExecutorService executor;
+  private List<BuildTarget> targets;
+
+  @Before
+  public void setUpTest() throws Exception {
+    setUpBenchmark();
+  }
+
+  @After
+  public void tearDownTest() throws Exception {
+    tearDownBenchmark();
+  }
+
+  @BeforeExperiment
+  public void setUpBenchmark() throws Exception {
+    root = Files.createTempDirectory("build_info_store_benchmark");
+    ProjectFilesystem filesystem = new ProjectFilesystem(root);
+    filesystem.mkdirs(filesystem.getBuckPaths().getScratchDir());
+    storeManager = new BuildInfoStoreManager();
+    store = storeManager.get(filesystem, metadataStorage);
+    executor = Executors.newFixedThreadPool(threadCount);
+    targets = new ArrayList<>();
+    for (int i = 0; i < TARGET_COUNT; i++) {
+      targets.add(BuildTargetFactory.newInstance(root, "//package" + i % 100 + ":target" + i));
+    }
+  }
+
+  @AfterExperiment
+  public void tearDownBenchmark() throws Exception {
+    executor.shutdownNow();
+    storeManager.close();
+    MoreFiles.deleteRecursively(root);
+  }
+
+  @Test
+  public void updateMetadataConcurrentlyPerformance() throws Exception {
+    updateMetadataConcurrently();
+  }
+
+  /** Records the metadata of a build of {@link #TARGET_COUNT} rules, as the build engine does. */
+  @Benchmark
+  public void updateMetadataConcurrently() throws Exception {
+    List<Future<?>> futures = new ArrayList<>();
+    for (int i = 0; i < threadCount; i++) {
+      int thread = i;
+      futures.add(
+          executor.submit(
+              () -> {
+                for (int j = thread; j < targets.size(); j += threadCount) {
+                  BuildTarget target = targets.get(j);
+                  store.updateMetadata(
+                      target,
+                      ImmutableMap.of(
+                          BuildInfo.MetadataKey.RULE_KEY, "0123456789abcdef0123456789abcdef" + j,
+                          BuildInfo.MetadataKey.TARGET, target.getFullyQualifiedName(),
+                          BuildInfo.MetadataKey.RECORDED_PATHS, "[\"buck-out/gen/" + j + "\"]"));
+                  store.readMetadata(target, BuildInfo.MetadataKey.RULE_KEY);
+                }
+                return null;
+              }));
+    }
+    for (Future<?> future : futures) {
+      future.get();
+    }
+  }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.rules;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+public class BuildRuleCriticalPathEstimatorTest {
+
+  @Test
+  public void criticalPathIsLongestChainOfDependents() {
+    BuildRule leaf = new FakeBuildRule("//:leaf");
+    BuildRule cheap = new FakeBuildRule("//:cheap", leaf);
+    BuildRule expensive = new FakeBuildRule("//:expensive", leaf);
+    BuildRule top = new FakeBuildRule("//:top", cheap, expensive);
+    ImmutableMap<BuildRule, Long> durations =
+        ImmutableMap.of(leaf, 5L, cheap, 1L, expensive, 100L, top, 10L);
+    BuildRuleCriticalPathEstimator estimator =
+        new BuildRuleCriticalPathEstimator(rule -> durations.getOrDefault(rule, 0L));
+
+    estimator.registerTopLevelRule(top);
+    estimator.registerDeps(top, top.getBuildDeps());
+    estimator.registerDeps(cheap, cheap.getBuildDeps());
+    assertEquals(16, estimator.getCriticalPathMillis(leaf));
+
+    // Discovering the leaf through a more expensive dependent extends its critical path.
+    estimator.registerDeps(expensive, expensive.getBuildDeps());
+    assertEquals(10, estimator.getCriticalPathMillis(top));
+    assertEquals(11, estimator.getCriticalPathMillis(cheap));
+    assertEquals(110, estimator.getCriticalPathMillis(expensive));
+    assertEquals(115, estimator.getCriticalPathMillis(leaf));
+  }
+
+  @Test
+  public void unknownRulesFallBackToTheirOwnDuration() {
+    BuildRule rule = new FakeBuildRule("//:rule");
+    BuildRuleCriticalPathEstimator estimator = new BuildRuleCriticalPathEstimator(r -> 42L);
+    assertEquals(42, estimator.getCriticalPathMillis(rule));
+  }
+
+  @Test
+  public void rulesAreSortedByDescendingCriticalPath() {
+    BuildRule a = new FakeBuildRule("//:a");
+    BuildRule b = new FakeBuildRule("//:b");
+    BuildRule c = new FakeBuildRule("//:c");
+    ImmutableMap<BuildRule, Long> durations = ImmutableMap.of(a, 2L, b, 30L, c, 7L);
+    BuildRuleCriticalPathEstimator estimator =
+        new BuildRuleCriticalPathEstimator(durations::get);
+
+    List<BuildRule> rules = new ArrayList<>(ImmutableList.of(a, b, c));
+    estimator.sortByDescendingCriticalPath(rules);
+    assertEquals(ImmutableList.of(b, c, a), rules);
+  }
+}
@@ -21,15 +21,18 @@ import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.notNullValue;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.fail;
 
 import com.facebook.buck.jvm.java.JavaBinary;
 import com.facebook.buck.jvm.java.JavaLibraryBuilder;
 import com.facebook.buck.model.BuildTarget;
 import com.facebook.buck.model.BuildTargetFactory;
+import com.facebook.buck.model.InternalFlavor;
 import com.facebook.buck.testutil.TargetGraphFactory;
 import com.facebook.buck.util.HumanReadableException;
 import com.google.common.collect.ImmutableSortedSet;
+import java.util.Optional;
 import org.hamcrest.Matchers;
 import org.junit.Rule;
 import org.junit.Test;
@@ -138,4 +141,45 @@ public class BuildRuleResolverTest {
     expectedException.expectMessage(Matchers.containsString("not of expected type"));
     resolver.getRuleWithType(BuildTargetFactory.newInstance("//foo:bar"), JavaBinary.class);
   }
+
+  @Test
+  public void withRetainedRulesCarriesOverRulesAddedOnBehalfOfRetainedTargets() throws Exception {
+    BuildTarget foo = BuildTargetFactory.newInstance("//foo:foo");
+    BuildTarget bar = BuildTargetFactory.newInstance("//foo:bar");
+    TargetGraph targetGraph =
+        TargetGraphFactory.newInstance(
+            JavaLibraryBuilder.createBuilder(foo).build(),
+            JavaLibraryBuilder.createBuilder(bar).build());
+    TargetNodeToBuildRuleTransformer transformer =
+        new TargetNodeToBuildRuleTransformer() {
+          @Override
+          public <T, U extends Description<T>> BuildRule transform(
+              TargetGraph targetGraph, BuildRuleResolver ruleResolver, TargetNode<T, U> node) {
+            BuildTarget target = node.getBuildTarget();
+            BuildTarget helperTarget = target.withAppendedFlavors(InternalFlavor.of("helper"));
+            ruleResolver.addToIndex(new FakeBuildRule(helperTarget.toString()));
+            return new FakeBuildRule(target.toString());
+          }
+        };
+    BuildRuleResolver resolver = new BuildRuleResolver(targetGraph, transformer);
+    BuildRule fooRule = resolver.requireRule(foo);
+    BuildRule fooHelper = resolver.getRule(foo.withAppendedFlavors(InternalFlavor.of("helper")));
+    BuildRule barRule = resolver.requireRule(bar);
+    assertEquals(Optional.of(foo), resolver.getRuleCreator(fooHelper.getBuildTarget()));
+
+    BuildRuleResolver newResolver =
+        resolver.withRetainedRules(targetGraph, null, target -> target.equals(foo));
+    assertThat(newResolver.getRule(foo), Matchers.sameInstance(fooRule));
+    assertThat(
+        newResolver.getRule(foo.withAppendedFlavors(InternalFlavor.of("helper"))),
+        Matchers.sameInstance(fooHelper));
+    assertFalse(newResolver.getRuleOptional(bar).isPresent());
+    assertFalse(
+        newResolver
+            .getRuleOptional(bar.withAppendedFlavors(InternalFlavor.of("helper")))
+            .isPresent());
+
+    // The original resolver is left as it was.
+    assertThat(resolver.getRule(bar), Matchers.sameInstance(barRule));
+  }
 }
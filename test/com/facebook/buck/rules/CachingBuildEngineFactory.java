@@ -44,6 +44,10 @@ public class CachingBuildEngineFactory {
   private BuildRuleResolver buildRuleResolver;
   private ResourceAwareSchedulingInfo resourceAwareSchedulingInfo =
       ResourceAwareSchedulingInfo.NON_AWARE_SCHEDULING_INFO;
+  private CachingBuildEngine.SchedulingMode schedulingMode =
+      CachingBuildEngine.SchedulingMode.DEFAULT;
+  private boolean artifactCachePrefetchEnabled = false;
+  private boolean ruleKeyPrecomputeEnabled = false;
   private BuildInfoStoreManager buildInfoStoreManager;
 
   public CachingBuildEngineFactory(
@@ -92,6 +96,23 @@ public class CachingBuildEngineFactory {
     return this;
   }
 
+  public CachingBuildEngineFactory setSchedulingMode(
+      CachingBuildEngine.SchedulingMode schedulingMode) {
+    this.schedulingMode = schedulingMode;
+    return this;
+  }
+
+  public CachingBuildEngineFactory setArtifactCachePrefetchEnabled(
+      boolean artifactCachePrefetchEnabled) {
+    this.artifactCachePrefetchEnabled = artifactCachePrefetchEnabled;
+    return this;
+  }
+
+  public CachingBuildEngineFactory setRuleKeyPrecomputeEnabled(boolean ruleKeyPrecomputeEnabled) {
+    this.ruleKeyPrecomputeEnabled = ruleKeyPrecomputeEnabled;
+    return this;
+  }
+
   public CachingBuildEngineFactory setRuleKeyFactories(RuleKeyFactories ruleKeyFactories) {
     this.ruleKeyFactories = Optional.of(ruleKeyFactories);
     return this;
@@ -114,7 +135,10 @@ public class CachingBuildEngineFactory {
           ruleFinder,
           new SourcePathResolver(ruleFinder),
           ruleKeyFactories.get(),
-          resourceAwareSchedulingInfo);
+          resourceAwareSchedulingInfo,
+          schedulingMode,
+          artifactCachePrefetchEnabled,
+          ruleKeyPrecomputeEnabled);
     }
 
     return new CachingBuildEngine(
@@ -130,6 +154,9 @@ public class CachingBuildEngineFactory {
         buildRuleResolver,
         buildInfoStoreManager,
         resourceAwareSchedulingInfo,
+        schedulingMode,
+        artifactCachePrefetchEnabled,
+        ruleKeyPrecomputeEnabled,
         RuleKeyFactories.of(
             0,
             cachingBuildEngineDelegate.getFileHashCache(),
@@ -26,10 +26,12 @@ import static org.hamcrest.Matchers.hasItem;
 import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 
 import com.facebook.buck.artifact_cache.ArtifactCache;
+import com.facebook.buck.artifact_cache.ArtifactPayloadConsumer;
 import com.facebook.buck.artifact_cache.ArtifactCacheMode;
 import com.facebook.buck.artifact_cache.ArtifactInfo;
 import com.facebook.buck.artifact_cache.CacheReadMode;
@@ -95,7 +97,6 @@ import com.facebook.buck.zip.CustomZipEntry;
 import com.facebook.buck.zip.CustomZipOutputStream;
 import com.facebook.buck.zip.ZipConstants;
 import com.facebook.buck.zip.ZipOutputStreams;
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
 import com.google.common.collect.FluentIterable;
@@ -114,6 +115,8 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -130,6 +133,7 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Predicate;
 import java.util.stream.Stream;
@@ -456,7 +460,11 @@ public class CachingBuildEngineTest {
               ObjectMappers.WRITER.writeValueAsString(ImmutableList.of()),
               Paths.get("buck-out/gen/src/com/facebook/orca/orca.jar"),
               "Imagine this is the contents of a valid JAR file.");
-      expect(artifactCache.fetch(eq(defaultRuleKeyFactory.build(buildRule)), isA(LazyPath.class)))
+      expect(
+              artifactCache.fetch(
+                  eq(defaultRuleKeyFactory.build(buildRule)),
+                  isA(LazyPath.class),
+                  isA(ArtifactPayloadConsumer.class)))
           .andDelegateTo(new FakeArtifactCacheThatWritesAZipFile(desiredZipEntries, metadata));
 
       BuckEventBus buckEventBus = BuckEventBusFactory.newInstance();
@@ -499,6 +507,105 @@ public class CachingBuildEngineTest {
           filesystem.exists(Paths.get("buck-out/gen/src/com/facebook/orca/orca.jar")));
     }
 
+    @Test
+    public void testTruncatedArtifactFetchedFromCacheIsBuiltLocally()
+        throws InterruptedException, ExecutionException, IOException {
+      AtomicBoolean built = new AtomicBoolean();
+      Step step =
+          new AbstractExecutionStep("recording step") {
+            @Override
+            public StepExecutionResult execute(ExecutionContext context) {
+              built.set(true);
+              return StepExecutionResult.SUCCESS;
+            }
+          };
+      BuildRule buildRule =
+          createRule(
+              filesystem,
+              resolver,
+              pathResolver,
+              /* deps */ ImmutableSet.of(),
+              ImmutableList.of(step),
+              /* postBuildSteps */ ImmutableList.of(),
+              /* pathToOutputFile */ null);
+
+      // Simulate fetching an artifact whose zip ends in the middle of the output file.
+      ArtifactCache artifactCache = createMock(ArtifactCache.class);
+      ImmutableMap<String, String> metadata =
+          ImmutableMap.of(
+              BuildInfo.MetadataKey.RULE_KEY,
+              defaultRuleKeyFactory.build(buildRule).toString(),
+              BuildInfo.MetadataKey.BUILD_ID,
+              buildContext.getBuildId().toString(),
+              BuildInfo.MetadataKey.ORIGIN_BUILD_ID,
+              buildContext.getBuildId().toString());
+      ImmutableMap<Path, String> desiredZipEntries =
+          ImmutableMap.of(
+              BuildInfo.getPathToMetadataDirectory(buildRule.getBuildTarget(), filesystem)
+                  .resolve(BuildInfo.MetadataKey.RECORDED_PATHS),
+              ObjectMappers.WRITER.writeValueAsString(ImmutableList.of()),
+              Paths.get("buck-out/gen/src/com/facebook/orca/orca.jar"),
+              "Imagine this is the contents of a valid JAR file.");
+      expect(
+              artifactCache.fetch(
+                  eq(defaultRuleKeyFactory.build(buildRule)),
+                  isA(LazyPath.class),
+                  isA(ArtifactPayloadConsumer.class)))
+          .andDelegateTo(
+              new FakeArtifactCacheThatWritesAZipFile(desiredZipEntries, metadata) {
+                @Override
+                public CacheResult fetch(RuleKey ruleKey, LazyPath file) {
+                  CacheResult result = super.fetch(ruleKey, file);
+                  try {
+                    byte[] zip = Files.readAllBytes(file.get());
+                    // Cut the zip just before the data descriptor of its last entry ends.
+                    int centralDirectoryOffset =
+                        ByteBuffer.wrap(zip)
+                            .order(ByteOrder.LITTLE_ENDIAN)
+                            .getInt(zip.length - 22 + 16);
+                    Files.write(file.get(), Arrays.copyOf(zip, centralDirectoryOffset - 4));
+                  } catch (IOException e) {
+                    throw new RuntimeException(e);
+                  }
+                  return result;
+                }
+              });
+      // The locally built artifact isn't stored.
+      expect(artifactCache.getCacheReadMode()).andReturn(CacheReadMode.READONLY).anyTimes();
+
+      BuckEventBus buckEventBus = BuckEventBusFactory.newInstance();
+      BuildEngineBuildContext buildContext =
+          BuildEngineBuildContext.builder()
+              .setBuildContext(
+                  BuildContext.builder()
+                      .setActionGraph(new ActionGraph(ImmutableList.of(buildRule)))
+                      .setSourcePathResolver(pathResolver)
+                      .setJavaPackageFinder(createMock(JavaPackageFinder.class))
+                      .setEventBus(buckEventBus)
+                      .build())
+              .setClock(new DefaultClock())
+              .setBuildId(new BuildId())
+              .setArtifactCache(artifactCache)
+              .build();
+
+      replayAll();
+
+      CachingBuildEngine cachingBuildEngine = cachingBuildEngineFactory().build();
+      BuildResult result =
+          cachingBuildEngine
+              .build(buildContext, TestExecutionContext.newInstance(), buildRule)
+              .getResult()
+              .get();
+
+      verifyAll();
+      assertEquals(BuildRuleSuccessType.BUILT_LOCALLY, getSuccess(result));
+      assertEquals(CacheResultType.ERROR, result.getCacheResult().getType());
+      assertTrue(built.get());
+      assertFalse(
+          "What was unzipped from the truncated artifact should be cleaned up.",
+          filesystem.exists(Paths.get("buck-out/gen/src/com/facebook/orca/orca.jar")));
+    }
+
     @Test
     public void testArtifactFetchedFromCacheStillRunsPostBuildSteps()
         throws InterruptedException, ExecutionException, IOException {
@@ -540,7 +647,11 @@ public class CachingBuildEngineTest {
               ObjectMappers.WRITER.writeValueAsString(ImmutableList.of()),
               Paths.get("buck-out/gen/src/com/facebook/orca/orca.jar"),
               "Imagine this is the contents of a valid JAR file.");
-      expect(artifactCache.fetch(eq(defaultRuleKeyFactory.build(buildRule)), isA(LazyPath.class)))
+      expect(
+              artifactCache.fetch(
+                  eq(defaultRuleKeyFactory.build(buildRule)),
+                  isA(LazyPath.class),
+                  isA(ArtifactPayloadConsumer.class)))
           .andDelegateTo(new FakeArtifactCacheThatWritesAZipFile(desiredZipEntries, metadata));
 
       BuildEngineBuildContext buildContext =
@@ -1317,6 +1428,142 @@ public class CachingBuildEngineTest {
       // Verify that the cache hit caused the file hash cache to contain the path.
       assertTrue(fakeFileHashCache.contains(filesystem.resolve(output)));
     }
+
+    @Test
+    public void depArtifactsArePrefetchedInASingleBatch() throws Exception {
+      BuildRule dep1 =
+          new WriteFile(
+              new FakeBuildRuleParamsBuilder("//:dep1").setProjectFilesystem(filesystem).build(),
+              "dep1",
+              filesystem.getPath("output/dep1"),
+              /* executable */ false);
+      BuildRule dep2 =
+          new WriteFile(
+              new FakeBuildRuleParamsBuilder("//:dep2").setProjectFilesystem(filesystem).build(),
+              "dep2",
+              filesystem.getPath("output/dep2"),
+              /* executable */ false);
+      BuildRule rule =
+          new WriteFile(
+              new FakeBuildRuleParamsBuilder("//:rule")
+                  .setProjectFilesystem(filesystem)
+                  .setDeclaredDeps(ImmutableSortedSet.of(dep1, dep2))
+                  .build(),
+              "rule",
+              filesystem.getPath("output/rule"),
+              /* executable */ false);
+
+      List<ImmutableSet<RuleKey>> multiFetches = new ArrayList<>();
+      InMemoryArtifactCache countingCache =
+          new InMemoryArtifactCache() {
+            @Override
+            public ImmutableMap<RuleKey, CacheResult> multiFetch(
+                ImmutableMap<RuleKey, LazyPath> requests) {
+              synchronized (multiFetches) {
+                multiFetches.add(requests.keySet());
+              }
+              return super.multiFetch(requests);
+            }
+          };
+      BuildEngineBuildContext buildContext = this.buildContext.withArtifactCache(countingCache);
+
+      // Seed the cache with the deps only.
+      CachingBuildEngine cachingBuildEngine = cachingBuildEngineFactory().build();
+      for (BuildRule dep : ImmutableList.of(dep1, dep2)) {
+        assertEquals(
+            BuildRuleSuccessType.BUILT_LOCALLY,
+            cachingBuildEngine
+                .build(buildContext, TestExecutionContext.newInstance(), dep)
+                .getResult()
+                .get()
+                .getSuccess());
+      }
+      filesystem.clear();
+      buildInfoStore.deleteMetadata(dep1.getBuildTarget());
+      buildInfoStore.deleteMetadata(dep2.getBuildTarget());
+
+      try (CachingBuildEngine prefetchingBuildEngine =
+          cachingBuildEngineFactory().setArtifactCachePrefetchEnabled(true).build()) {
+        BuildEngineResult result =
+            prefetchingBuildEngine.build(buildContext, TestExecutionContext.newInstance(), rule);
+        assertEquals(BuildRuleSuccessType.BUILT_LOCALLY, result.getResult().get().getSuccess());
+        assertEquals(
+            BuildRuleSuccessType.FETCHED_FROM_CACHE,
+            prefetchingBuildEngine.getBuildRuleResult(dep1.getBuildTarget()).getSuccess());
+        assertEquals(
+            BuildRuleSuccessType.FETCHED_FROM_CACHE,
+            prefetchingBuildEngine.getBuildRuleResult(dep2.getBuildTarget()).getSuccess());
+      }
+      assertEquals(
+          ImmutableList.of(
+              ImmutableSet.of(
+                  defaultRuleKeyFactory.build(dep1), defaultRuleKeyFactory.build(dep2))),
+          multiFetches);
+      assertTrue(filesystem.exists(filesystem.getPath("output/dep1")));
+    }
+
+    @Test
+    public void precomputedRuleKeysMatchThoseComputedDuringTheBuild() throws Exception {
+      BuildRule dep =
+          new WriteFile(
+              new FakeBuildRuleParamsBuilder("//:dep").setProjectFilesystem(filesystem).build(),
+              "dep",
+              filesystem.getPath("output/dep"),
+              /* executable */ false);
+      BuildRule rule =
+          new WriteFile(
+              new FakeBuildRuleParamsBuilder("//:rule")
+                  .setProjectFilesystem(filesystem)
+                  .setDeclaredDeps(ImmutableSortedSet.of(dep))
+                  .build(),
+              "rule",
+              filesystem.getPath("output/rule"),
+              /* executable */ false);
+
+      try (CachingBuildEngine precomputingBuildEngine =
+          cachingBuildEngineFactory().setRuleKeyPrecomputeEnabled(true).build()) {
+        BuildEngineResult result =
+            precomputingBuildEngine.build(buildContext, TestExecutionContext.newInstance(), rule);
+        assertEquals(BuildRuleSuccessType.BUILT_LOCALLY, result.getResult().get().getSuccess());
+        assertEquals(
+            defaultRuleKeyFactory.build(rule),
+            precomputingBuildEngine.getRuleKey(rule.getBuildTarget()));
+        assertEquals(
+            defaultRuleKeyFactory.build(dep),
+            precomputingBuildEngine.getRuleKey(dep.getBuildTarget()));
+      }
+    }
+
+    @Test
+    public void unparseableBuildDurationsDoNotFailCriticalPathScheduling() throws Exception {
+      BuildRule dep =
+          new WriteFile(
+              new FakeBuildRuleParamsBuilder("//:dep").setProjectFilesystem(filesystem).build(),
+              "dep",
+              filesystem.getPath("output/dep"),
+              /* executable */ false);
+      BuildRule rule =
+          new WriteFile(
+              new FakeBuildRuleParamsBuilder("//:rule")
+                  .setProjectFilesystem(filesystem)
+                  .setDeclaredDeps(ImmutableSortedSet.of(dep))
+                  .build(),
+              "rule",
+              filesystem.getPath("output/rule"),
+              /* executable */ false);
+      buildInfoStore.updateMetadata(
+          dep.getBuildTarget(),
+          ImmutableMap.of(BuildInfo.MetadataKey.BUILD_DURATION_MILLIS, "not a number"));
+
+      try (CachingBuildEngine criticalPathBuildEngine =
+          cachingBuildEngineFactory()
+              .setSchedulingMode(CachingBuildEngine.SchedulingMode.CRITICAL_PATH)
+              .build()) {
+        BuildEngineResult result =
+            criticalPathBuildEngine.build(buildContext, TestExecutionContext.newInstance(), rule);
+        assertEquals(BuildRuleSuccessType.BUILT_LOCALLY, result.getResult().get().getSuccess());
+      }
+    }
   }
 
   public static class InputBasedRuleKeyTests extends CommonFixture {
@@ -3362,13 +3609,7 @@ public class CachingBuildEngineTest {
   }
 
   private static String fileToDepFileEntryString(Path file) {
-    DependencyFileEntry entry = DependencyFileEntry.of(file, Optional.empty());
-
-    try {
-      return ObjectMappers.WRITER.writeValueAsString(entry);
-    } catch (JsonProcessingException e) {
-      throw new AssertionError(e);
-    }
+    return DependencyFileEntry.of(file, Optional.empty()).toMetadataString();
   }
 
   private static class BuildableAbstractCachingBuildRule extends AbstractBuildRuleWithResolver
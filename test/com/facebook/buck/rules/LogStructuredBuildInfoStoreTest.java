@@ -0,0 +1,186 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.rules;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.model.BuildTarget;
+import com.facebook.buck.model.BuildTargetFactory;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.MoreExecutors;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.hamcrest.Matchers;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class LogStructuredBuildInfoStoreTest {
+
+  @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+  private Path logDir;
+
+  @Before
+  public void setUp() {
+    logDir = tmp.getRoot().toPath().resolve("metadata-log");
+  }
+
+  private LogStructuredBuildInfoStore newStore(long segmentSizeBytes) throws IOException {
+    return new LogStructuredBuildInfoStore(
+        logDir, segmentSizeBytes, Optional.of(MoreExecutors.directExecutor()));
+  }
+
+  @Test
+  public void updatesAreMergedAndDeletesRemoveAllKeys() throws IOException {
+    BuildTarget target = BuildTargetFactory.newInstance("//foo:bar");
+    try (LogStructuredBuildInfoStore store = newStore(1024 * 1024)) {
+      store.updateMetadata(target, ImmutableMap.of("a", "1", "b", "2"));
+      store.updateMetadata(target, ImmutableMap.of("b", "3"));
+      assertEquals(Optional.of("1"), store.readMetadata(target, "a"));
+      assertEquals(Optional.of("3"), store.readMetadata(target, "b"));
+      assertEquals(Optional.empty(), store.readMetadata(target, "c"));
+
+      store.deleteMetadata(target);
+      assertEquals(Optional.empty(), store.readMetadata(target, "a"));
+      assertEquals(Optional.empty(), store.readMetadata(target, "b"));
+    }
+  }
+
+  @Test
+  public void metadataIsPersistedAcrossInstances() throws IOException {
+    BuildTarget kept = BuildTargetFactory.newInstance("//foo:kept");
+    BuildTarget deleted = BuildTargetFactory.newInstance("//foo:deleted");
+    String largeValue = Strings.repeat("x", 100000);
+    try (LogStructuredBuildInfoStore store = newStore(1024 * 1024)) {
+      store.updateMetadata(kept, ImmutableMap.of("key", "old", "large", largeValue));
+      store.updateMetadata(deleted, ImmutableMap.of("key", "value"));
+      store.updateMetadata(kept, ImmutableMap.of("key", "new"));
+      store.deleteMetadata(deleted);
+    }
+
+    try (LogStructuredBuildInfoStore store = newStore(1024 * 1024)) {
+      assertEquals(Optional.of("new"), store.readMetadata(kept, "key"));
+      assertEquals(Optional.of(largeValue), store.readMetadata(kept, "large"));
+      assertEquals(Optional.empty(), store.readMetadata(deleted, "key"));
+    }
+  }
+
+  @Test
+  public void damagedTailOfTheLogIsIgnored() throws IOException {
+    BuildTarget first = BuildTargetFactory.newInstance("//foo:first");
+    BuildTarget second = BuildTargetFactory.newInstance("//foo:second");
+    try (LogStructuredBuildInfoStore store = newStore(1024 * 1024)) {
+      store.updateMetadata(first, ImmutableMap.of("key", "value"));
+      store.updateMetadata(second, ImmutableMap.of("key", "value"));
+    }
+
+    // Corrupt the last byte of the last record, as an interrupted write would.
+    Path segment = getSegments().get(0);
+    try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+      file.seek(file.length() - 1);
+      file.write('y');
+    }
+
+    try (LogStructuredBuildInfoStore store = newStore(1024 * 1024)) {
+      assertEquals(Optional.of("value"), store.readMetadata(first, "key"));
+      assertEquals(Optional.empty(), store.readMetadata(second, "key"));
+    }
+  }
+
+  @Test
+  public void supersededRecordsAreCompacted() throws IOException {
+    BuildTarget target = BuildTargetFactory.newInstance("//foo:bar");
+    BuildTarget other = BuildTargetFactory.newInstance("//foo:other");
+    try (LogStructuredBuildInfoStore store = newStore(256)) {
+      store.updateMetadata(other, ImmutableMap.of("key", "other"));
+      for (int i = 0; i < 1000; i++) {
+        store.updateMetadata(target, ImmutableMap.of("key", "value" + i));
+      }
+      assertThat(store.getSegmentCount(), Matchers.lessThanOrEqualTo(16));
+      assertEquals(Optional.of("value999"), store.readMetadata(target, "key"));
+    }
+    long logSize = 0;
+    for (Path segment : getSegments()) {
+      logSize += Files.size(segment);
+    }
+    assertThat(logSize, Matchers.lessThan(4096L));
+
+    try (LogStructuredBuildInfoStore store = newStore(256)) {
+      assertEquals(Optional.of("value999"), store.readMetadata(target, "key"));
+      assertEquals(Optional.of("other"), store.readMetadata(other, "key"));
+    }
+  }
+
+  @Test
+  public void concurrentUpdatesAreAllPersisted() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(16);
+    try (LogStructuredBuildInfoStore store = newStore(4096)) {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int i = 0; i < 16; i++) {
+        int thread = i;
+        futures.add(
+            executor.submit(
+                () -> {
+                  for (int j = 0; j < 100; j++) {
+                    store.updateMetadata(
+                        BuildTargetFactory.newInstance("//foo:bar" + j),
+                        ImmutableMap.of("key" + thread, "value" + j));
+                  }
+                  return null;
+                }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    try (LogStructuredBuildInfoStore store = newStore(4096)) {
+      for (int i = 0; i < 16; i++) {
+        for (int j = 0; j < 100; j++) {
+          assertEquals(
+              Optional.of("value" + j),
+              store.readMetadata(BuildTargetFactory.newInstance("//foo:bar" + j), "key" + i));
+        }
+      }
+    }
+  }
+
+  private List<Path> getSegments() throws IOException {
+    try (Stream<Path> paths = Files.list(logDir)) {
+      List<Path> segments = paths.sorted().collect(Collectors.toList());
+      assertTrue(!segments.isEmpty());
+      return segments;
+    }
+  }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.rules;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.rules.keys.DefaultRuleKeyFactory;
+import com.facebook.buck.testutil.FakeFileHashCache;
+import com.facebook.buck.util.concurrent.MoreFutures;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RuleKeyPrecomputerTest {
+
+  private BuildRuleResolver resolver;
+  private DefaultRuleKeyFactory ruleKeyFactory;
+
+  @Before
+  public void setUp() {
+    resolver =
+        new BuildRuleResolver(TargetGraph.EMPTY, new DefaultTargetNodeToBuildRuleTransformer());
+    SourcePathRuleFinder ruleFinder = new SourcePathRuleFinder(resolver);
+    ruleKeyFactory =
+        new DefaultRuleKeyFactory(
+            0,
+            new FakeFileHashCache(ImmutableMap.of()),
+            new SourcePathResolver(ruleFinder),
+            ruleFinder);
+  }
+
+  @Test
+  public void keysAreComputedOnceEachAfterTheirDeps() throws Exception {
+    BuildRule leaf = new FakeBuildRule("//:leaf");
+    BuildRule left = new FakeBuildRule("//:left", leaf);
+    BuildRule right = new FakeBuildRule("//:right", leaf);
+    BuildRule top = new FakeBuildRule("//:top", left, right);
+
+    Set<BuildRule> computed = ConcurrentHashMap.newKeySet();
+    AtomicInteger computations = new AtomicInteger();
+    try (RuleKeyPrecomputer precomputer = new RuleKeyPrecomputer(4, new RuleDepsCache(resolver))) {
+      precomputer.precompute(
+          ImmutableList.of(top, left),
+          rule -> {
+            assertTrue(computed.containsAll(rule.getBuildDeps()));
+            computed.add(rule);
+            computations.incrementAndGet();
+            return ruleKeyFactory.build(rule);
+          });
+      waitFor(precomputer, top, left);
+      precomputer.precompute(
+          ImmutableList.of(right),
+          rule -> {
+            computations.incrementAndGet();
+            return ruleKeyFactory.build(rule);
+          });
+      waitFor(precomputer, right);
+
+      assertEquals(4, computations.get());
+      for (BuildRule rule : ImmutableList.of(leaf, left, right, top)) {
+        assertEquals(ruleKeyFactory.build(rule), precomputer.getRuleKey(rule).get().get());
+      }
+    }
+  }
+
+  @Test
+  public void failedKeysAreLeftToTheBuildEngine() throws Exception {
+    BuildRule broken = new FakeBuildRule("//:broken");
+    BuildRule dependent = new FakeBuildRule("//:dependent", broken);
+    BuildRule overflowing = new FakeBuildRule("//:overflowing");
+    BuildRule other = new FakeBuildRule("//:other");
+
+    try (RuleKeyPrecomputer precomputer = new RuleKeyPrecomputer(2, new RuleDepsCache(resolver))) {
+      precomputer.precompute(
+          ImmutableList.of(dependent, overflowing, other),
+          rule -> {
+            if (rule == broken) {
+              throw new IllegalStateException("Missing input.");
+            }
+            if (rule == overflowing) {
+              throw new StackOverflowError();
+            }
+            return ruleKeyFactory.build(rule);
+          });
+      waitFor(precomputer, dependent, overflowing, other);
+
+      assertFalse(MoreFutures.isSuccess(precomputer.getRuleKey(broken).get()));
+      assertFalse(MoreFutures.isSuccess(precomputer.getRuleKey(dependent).get()));
+      assertFalse(MoreFutures.isSuccess(precomputer.getRuleKey(overflowing).get()));
+      assertEquals(ruleKeyFactory.build(other), precomputer.getRuleKey(other).get().get());
+    }
+  }
+
+  @Test
+  public void longChainsOfDepsDoNotNest() throws Exception {
+    BuildRule rule = new FakeBuildRule("//:rule0");
+    for (int i = 1; i < 20000; i++) {
+      rule = new FakeBuildRule("//:rule" + i, rule);
+    }
+
+    try (RuleKeyPrecomputer precomputer = new RuleKeyPrecomputer(2, new RuleDepsCache(resolver))) {
+      precomputer.precompute(
+          ImmutableList.of(rule),
+          dep -> new RuleKey(Hashing.sha1().hashUnencodedChars(dep.getFullyQualifiedName())));
+      waitFor(precomputer, rule);
+
+      assertTrue(MoreFutures.isSuccess(precomputer.getRuleKey(rule).get()));
+    }
+  }
+
+  @Test
+  public void rulesWhichWereNeverScheduledHaveNoKey() {
+    try (RuleKeyPrecomputer precomputer = new RuleKeyPrecomputer(2, new RuleDepsCache(resolver))) {
+      assertFalse(precomputer.getRuleKey(new FakeBuildRule("//:rule")).isPresent());
+    }
+  }
+
+  private static void waitFor(RuleKeyPrecomputer precomputer, BuildRule... rules)
+      throws Exception {
+    List<ListenableFuture<RuleKey>> ruleKeys = new ArrayList<>();
+    for (BuildRule rule : rules) {
+      ruleKeys.add(precomputer.getRuleKey(rule).get());
+    }
+    Futures.successfulAsList(ruleKeys).get();
+  }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.rules.keys;
+
+import static org.junit.Assert.assertEquals;
+
+import com.facebook.buck.util.ObjectMappers;
+import java.nio.file.Paths;
+import java.util.Optional;
+import org.junit.Test;
+
+public class DependencyFileEntryTest {
+
+  @Test
+  public void metadataStringsRoundTrip() {
+    DependencyFileEntry file = DependencyFileEntry.of(Paths.get("foo/bar.h"), Optional.empty());
+    DependencyFileEntry member =
+        DependencyFileEntry.of(Paths.get("lib/foo.jar"), Optional.of(Paths.get("com/Foo.class")));
+
+    assertEquals("foo/bar.h", file.toMetadataString());
+    assertEquals(file, DependencyFileEntry.fromMetadataString(file.toMetadataString()));
+    assertEquals(member, DependencyFileEntry.fromMetadataString(member.toMetadataString()));
+  }
+
+  @Test
+  public void jsonEntriesAreStillRead() throws Exception {
+    DependencyFileEntry member =
+        DependencyFileEntry.of(Paths.get("lib/foo.jar"), Optional.of(Paths.get("com/Foo.class")));
+
+    assertEquals(
+        member,
+        DependencyFileEntry.fromMetadataString(ObjectMappers.WRITER.writeValueAsString(member)));
+  }
+}
@@ -19,6 +19,7 @@ package com.facebook.buck.testutil;
 import com.facebook.buck.zip.CustomZipOutputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.zip.ZipEntry;
@@ -48,6 +49,11 @@ public class TestCustomZipOutputStream extends CustomZipOutputStream {
       currentEntryContent.write(b, off, len);
     }
 
+    @Override
+    public void actuallyWritePrecompressedEntry(ZipEntry entry, InputStream compressedContents) {
+      throw new UnsupportedOperationException();
+    }
+
     @Override
     public void actuallyClose() throws IOException {}
   }
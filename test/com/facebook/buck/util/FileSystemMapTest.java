@@ -23,6 +23,7 @@ import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
+import com.google.common.collect.ImmutableMap;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -192,4 +193,18 @@ public class FileSystemMapTest {
     assertNotNull(entry);
     assertTrue(entry);
   }
+
+  @Test
+  public void testAsMapOnlyListsPathsWithValues() throws IOException {
+    FileSystemMap<Boolean> fsMap = new FileSystemMap<>(loader);
+    fsMap.put(Paths.get("foo/bar/HelloWorld.java"), true);
+    fsMap.put(Paths.get("foo/Other.java"), false);
+    fsMap.get(Paths.get("usr"));
+    assertEquals(
+        ImmutableMap.of(
+            Paths.get("foo/bar/HelloWorld.java"), true,
+            Paths.get("foo/Other.java"), false,
+            Paths.get("usr"), true),
+        fsMap.asMap());
+  }
 }
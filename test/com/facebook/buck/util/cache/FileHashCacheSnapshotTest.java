@@ -0,0 +1,170 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.util.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.google.common.hash.HashCode;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class FileHashCacheSnapshotTest {
+
+  @Rule public TemporaryPaths tmp = new TemporaryPaths();
+
+  private ProjectFilesystem filesystem;
+  private Path snapshotFile;
+
+  @Before
+  public void setUp() throws InterruptedException {
+    filesystem = new ProjectFilesystem(tmp.getRoot());
+    snapshotFile = tmp.getRoot().resolve("buck-out/.file_hash_cache_snapshot");
+  }
+
+  private void writeOldFile(Path path, String contents) throws IOException {
+    filesystem.writeContentsToPath(contents, path);
+    // Keep the file out of the racy modification window of the snapshot writer.
+    filesystem.setLastModifiedTime(
+        path, FileTime.fromMillis(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(1)));
+  }
+
+  @Test
+  public void missingSnapshotIsEmpty() throws IOException {
+    assertFalse(FileHashCacheSnapshot.load(snapshotFile).isPresent());
+  }
+
+  @Test
+  public void unchangedFileIsServedFromSnapshot() throws IOException {
+    Path path = Paths.get("Foo.java");
+    writeOldFile(path, "class Foo {}");
+    DefaultFileHashCache cache = DefaultFileHashCache.createDefaultFileHashCache(filesystem);
+    cache.loadSnapshot(snapshotFile);
+    HashCode hash = cache.get(path);
+    assertEquals(1, cache.writeSnapshot(snapshotFile));
+
+    DefaultFileHashCache restarted = DefaultFileHashCache.createDefaultFileHashCache(filesystem);
+    FileHashCacheSnapshot snapshot = restarted.loadSnapshot(snapshotFile).get();
+    assertEquals(1, snapshot.getEntryCount());
+    assertEquals(hash, restarted.get(path));
+    assertEquals(1, snapshot.getHits());
+    assertEquals(0, snapshot.getStaleEntries());
+  }
+
+  @Test
+  public void modifiedFileIsRehashed() throws IOException {
+    Path path = Paths.get("Foo.java");
+    writeOldFile(path, "class Foo {}");
+    DefaultFileHashCache cache = DefaultFileHashCache.createDefaultFileHashCache(filesystem);
+    cache.loadSnapshot(snapshotFile);
+    cache.get(path);
+    cache.writeSnapshot(snapshotFile);
+
+    writeOldFile(path, "class Foo { int bar; }");
+    DefaultFileHashCache restarted = DefaultFileHashCache.createDefaultFileHashCache(filesystem);
+    FileHashCacheSnapshot snapshot = restarted.loadSnapshot(snapshotFile).get();
+    assertEquals(filesystem.computeSha1(path).asHashCode(), restarted.get(path));
+    assertEquals(0, snapshot.getHits());
+    assertEquals(1, snapshot.getStaleEntries());
+  }
+
+  @Test
+  public void recentlyModifiedFilesAreNotWritten() throws IOException {
+    Path recent = Paths.get("Recent.java");
+    filesystem.writeContentsToPath("class Recent {}", recent);
+    DefaultFileHashCache cache = DefaultFileHashCache.createDefaultFileHashCache(filesystem);
+    cache.loadSnapshot(snapshotFile);
+    cache.get(recent);
+    assertEquals(0, cache.writeSnapshot(snapshotFile));
+    Optional<FileHashCacheSnapshot> snapshot = FileHashCacheSnapshot.load(snapshotFile);
+    assertTrue(snapshot.isPresent());
+    assertEquals(0, snapshot.get().getEntryCount());
+  }
+
+  @Test
+  public void metadataIsRecordedWhenTheFileIsHashed() throws IOException {
+    Path path = Paths.get("Foo.java");
+    writeOldFile(path, "class Foo {}");
+    DefaultFileHashCache cache = DefaultFileHashCache.createDefaultFileHashCache(filesystem);
+    cache.loadSnapshot(snapshotFile);
+    HashCode hash = cache.get(path);
+
+    // Edit the file after it was hashed, without telling the cache. The stale hash must not be
+    // persisted with the new metadata.
+    writeOldFile(path, "class Foo { int bar; }");
+    assertEquals(1, cache.writeSnapshot(snapshotFile));
+
+    DefaultFileHashCache restarted = DefaultFileHashCache.createDefaultFileHashCache(filesystem);
+    FileHashCacheSnapshot snapshot = restarted.loadSnapshot(snapshotFile).get();
+    HashCode newHash = restarted.get(path);
+    assertNotEquals(hash, newHash);
+    assertEquals(filesystem.computeSha1(path).asHashCode(), newHash);
+    assertEquals(0, snapshot.getHits());
+    assertEquals(1, snapshot.getStaleEntries());
+  }
+
+  @Test
+  public void entriesOfTheNewCacheAreWritten() throws IOException {
+    Path path = Paths.get("Foo.java");
+    writeOldFile(path, "class Foo {}");
+    DefaultFileHashCache cache = DefaultFileHashCache.createDefaultFileHashCache(filesystem);
+    cache.loadSnapshot(snapshotFile);
+    cache.newLoadingCache.get(path);
+    assertEquals(1, cache.writeSnapshot(snapshotFile));
+  }
+
+  @Test
+  public void rewritingDoesNotReplaceTheLoadedSnapshot() throws IOException {
+    Path path = Paths.get("Foo.java");
+    writeOldFile(path, "class Foo {}");
+    DefaultFileHashCache cache = DefaultFileHashCache.createDefaultFileHashCache(filesystem);
+    cache.loadSnapshot(snapshotFile);
+    cache.get(path);
+    cache.writeSnapshot(snapshotFile);
+
+    DefaultFileHashCache restarted = DefaultFileHashCache.createDefaultFileHashCache(filesystem);
+    restarted.loadSnapshot(snapshotFile);
+    restarted.get(path);
+    assertEquals(1, restarted.writeSnapshot(snapshotFile));
+    assertEquals(1, FileHashCacheSnapshot.load(snapshotFile).get().getEntryCount());
+    try (Stream<Path> files = Files.list(snapshotFile.getParent())) {
+      assertEquals(1, files.count());
+    }
+  }
+
+  @Test
+  public void snapshotInUnknownFormatIsIgnored() throws IOException {
+    Files.createDirectories(snapshotFile.getParent());
+    Files.write(
+        snapshotFile.resolveSibling(snapshotFile.getFileName() + ".0"),
+        new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12});
+    assertFalse(FileHashCacheSnapshot.load(snapshotFile).isPresent());
+  }
+}
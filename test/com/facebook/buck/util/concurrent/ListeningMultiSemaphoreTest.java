@@ -202,6 +202,33 @@ public class ListeningMultiSemaphoreTest {
     assertThat(second.isDone(), Matchers.equalTo(true));
   }
 
+  @Test
+  public void testPendingRequestsAreGrantedInPriorityOrder() {
+    ListeningMultiSemaphore array = getFairListeningMultiSemaphore(amountsOfCpu(1));
+    array.acquire(amountsOfCpu(1));
+
+    ListenableFuture<Void> low = array.acquire(amountsOfCpu(1), 1);
+    ListenableFuture<Void> unprioritized = array.acquire(amountsOfCpu(1));
+    ListenableFuture<Void> high = array.acquire(amountsOfCpu(1), 10);
+    ListenableFuture<Void> alsoHigh = array.acquire(amountsOfCpu(1), 10);
+    assertThat(array.getQueueLength(), Matchers.equalTo(4));
+
+    array.release(amountsOfCpu(1));
+    assertThat(high.isDone(), Matchers.equalTo(true));
+    assertThat(alsoHigh.isDone(), Matchers.equalTo(false));
+
+    array.release(amountsOfCpu(1));
+    assertThat(alsoHigh.isDone(), Matchers.equalTo(true));
+    assertThat(low.isDone(), Matchers.equalTo(false));
+
+    array.release(amountsOfCpu(1));
+    assertThat(low.isDone(), Matchers.equalTo(true));
+    assertThat(unprioritized.isDone(), Matchers.equalTo(false));
+
+    array.release(amountsOfCpu(1));
+    assertThat(unprioritized.isDone(), Matchers.equalTo(true));
+  }
+
   private ListeningMultiSemaphore getFairListeningMultiSemaphore(ResourceAmounts values) {
     return new ListeningMultiSemaphore(values, ResourceAllocationFairness.FAIR);
   }
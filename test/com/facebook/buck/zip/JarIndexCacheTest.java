@@ -0,0 +1,172 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.zip;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Enumeration;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class JarIndexCacheTest {
+
+  private static final byte[] CONTENTS = "cheesy cheese cheddar cheese".getBytes(UTF_8);
+
+  @Rule public TemporaryPaths tmp = new TemporaryPaths();
+
+  @Test
+  public void entriesMatchWhatZipFileReads() throws IOException {
+    Path jarPath = tmp.getRoot().resolve("example.jar");
+    writeJar(jarPath, CONTENTS);
+
+    IndexedJar jar = new JarIndexCache(Long.MAX_VALUE, Long.MAX_VALUE).get(jarPath);
+
+    ImmutableList<JarIndex.Entry> entries = jar.getEntries();
+    try (ZipFile zipFile = new ZipFile(jarPath.toFile())) {
+      Enumeration<? extends ZipEntry> zipEntries = zipFile.entries();
+      for (JarIndex.Entry entry : entries) {
+        ZipEntry zipEntry = zipEntries.nextElement();
+        assertEquals(zipEntry.getName(), entry.getName());
+        assertEquals(zipEntry.isDirectory(), entry.isDirectory());
+        assertEquals(zipEntry.getSize(), entry.getSize());
+        assertEquals(zipEntry.getCrc(), entry.getCrc());
+        try (InputStream expected = zipFile.getInputStream(zipEntry);
+            InputStream actual = jar.openEntry(entry)) {
+          assertArrayEquals(ByteStreams.toByteArray(expected), ByteStreams.toByteArray(actual));
+        }
+      }
+      assertFalse(zipEntries.hasMoreElements());
+    }
+    assertArrayEquals(CONTENTS, read(jar, "stored.txt"));
+    assertArrayEquals(CONTENTS, read(jar, "com/example/deflated.txt"));
+    assertFalse(jar.getEntry("missing.txt").isPresent());
+  }
+
+  @Test
+  public void manifestIsReadFromTheIndex() throws IOException {
+    Path jarPath = tmp.getRoot().resolve("example.jar");
+    writeJar(jarPath, CONTENTS);
+    Path zipPath = tmp.getRoot().resolve("example.zip");
+    try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(zipPath))) {
+      out.putNextEntry(new ZipEntry("file.txt"));
+      out.write(CONTENTS);
+    }
+
+    JarIndexCache cache = new JarIndexCache(Long.MAX_VALUE, Long.MAX_VALUE);
+
+    Manifest manifest = cache.get(jarPath).getManifest();
+    assertEquals("Cheddar", manifest.getMainAttributes().getValue("Cheese"));
+    assertNull(cache.get(zipPath).getManifest());
+  }
+
+  @Test
+  public void jarsWithTheSameContentsShareAnIndex() throws IOException {
+    Path first = tmp.getRoot().resolve("first.jar");
+    Path second = tmp.getRoot().resolve("second.jar");
+    writeJar(first, CONTENTS);
+    Files.copy(first, second);
+
+    JarIndexCache cache = new JarIndexCache(Long.MAX_VALUE, Long.MAX_VALUE);
+    IndexedJar firstJar = cache.get(first);
+    IndexedJar secondJar = cache.get(second);
+
+    assertEquals(1, cache.size());
+    assertEquals(firstJar.getContentHash(), secondJar.getContentHash());
+    assertSame(firstJar.getEntries(), secondJar.getEntries());
+    assertSame(firstJar, cache.get(first));
+    assertArrayEquals(CONTENTS, read(secondJar, "stored.txt"));
+  }
+
+  @Test
+  public void changedJarsAreIndexedAgain() throws IOException {
+    Path jarPath = tmp.getRoot().resolve("example.jar");
+    writeJar(jarPath, CONTENTS);
+    JarIndexCache cache = new JarIndexCache(Long.MAX_VALUE, Long.MAX_VALUE);
+    IndexedJar before = cache.get(jarPath);
+
+    byte[] newContents = "camembert".getBytes(UTF_8);
+    Files.delete(jarPath);
+    writeJar(jarPath, newContents);
+    Files.setLastModifiedTime(jarPath, FileTime.fromMillis(0));
+    IndexedJar after = cache.get(jarPath);
+
+    assertEquals(2, cache.size());
+    assertEquals(Hashing.sha1().hashBytes(Files.readAllBytes(jarPath)), after.getContentHash());
+    assertArrayEquals(CONTENTS, read(before, "stored.txt"));
+    assertArrayEquals(newContents, read(after, "stored.txt"));
+  }
+
+  @Test
+  public void jarsCanBeRewrittenWhileTheirContentsAreCached() throws IOException {
+    Path jarPath = tmp.getRoot().resolve("example.jar");
+    writeJar(jarPath, CONTENTS);
+    JarIndexCache cache = new JarIndexCache(Long.MAX_VALUE, Long.MAX_VALUE);
+    IndexedJar before = cache.get(jarPath);
+
+    byte[] newContents = "a much longer and much less cheesy camembert".getBytes(UTF_8);
+    writeJar(jarPath, newContents);
+    Files.setLastModifiedTime(jarPath, FileTime.fromMillis(0));
+    IndexedJar after = cache.get(jarPath);
+
+    assertArrayEquals(CONTENTS, read(before, "com/example/deflated.txt"));
+    assertArrayEquals(newContents, read(after, "com/example/deflated.txt"));
+  }
+
+  private static byte[] read(IndexedJar jar, String name) throws IOException {
+    try (InputStream stream = jar.openEntry(jar.getEntry(name).get())) {
+      return ByteStreams.toByteArray(stream);
+    }
+  }
+
+  private static void writeJar(Path jarPath, byte[] contents) throws IOException {
+    Manifest manifest = new Manifest();
+    manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+    manifest.getMainAttributes().putValue("Cheese", "Cheddar");
+    try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jarPath), manifest)) {
+      out.putNextEntry(new ZipEntry("com/"));
+      out.putNextEntry(new ZipEntry("com/example/"));
+      out.putNextEntry(new ZipEntry("com/example/deflated.txt"));
+      out.write(contents);
+      ZipEntry storedEntry = new ZipEntry("stored.txt");
+      storedEntry.setMethod(ZipEntry.STORED);
+      storedEntry.setSize(contents.length);
+      storedEntry.setCrc(Hashing.crc32().hashBytes(contents).padToLong());
+      out.putNextEntry(storedEntry);
+      out.write(contents);
+    }
+  }
+}
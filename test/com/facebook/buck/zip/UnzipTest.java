@@ -16,24 +16,33 @@
 
 package com.facebook.buck.zip;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.junit.Assume.assumeThat;
 
 import com.facebook.buck.io.MoreFiles;
 import com.facebook.buck.io.MorePosixFilePermissions;
+import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.testutil.Zip;
 import com.facebook.buck.testutil.integration.TemporaryPaths;
 import com.facebook.buck.util.environment.Platform;
 import com.google.common.base.Charsets;
 import com.google.common.collect.ImmutableList;
+import com.google.common.primitives.Bytes;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.nio.file.attribute.PosixFilePermissions;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import org.apache.commons.compress.archivers.zip.Zip64Mode;
 import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
 import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
 import org.hamcrest.Matchers;
@@ -219,4 +228,131 @@ public class UnzipTest {
     assertTrue(Files.exists(extractFolder.toAbsolutePath().resolve("foo")));
     assertTrue(Files.exists(extractFolder.toAbsolutePath().resolve("foo/bar")));
   }
+
+  @Test
+  public void testExtractZipStreamOfArtifact() throws InterruptedException, IOException {
+    assumeThat(Platform.detect(), Matchers.is(Matchers.not(Platform.WINDOWS)));
+
+    // Zip the files as the build engine zips artifacts for the cache.
+    ProjectFilesystem sourceFilesystem = new ProjectFilesystem(tmpFolder.newFolder());
+    sourceFilesystem.mkdirs(Paths.get("out/subdir"));
+    sourceFilesystem.writeBytesToPath(DUMMY_FILE_CONTENTS, Paths.get("out/1.bin"));
+    sourceFilesystem.writeBytesToPath(DUMMY_FILE_CONTENTS, Paths.get("out/subdir/2.bin"));
+    sourceFilesystem.writeContentsToPath("#!/bin/sh", Paths.get("out/run.sh"));
+    MoreFiles.makeExecutable(sourceFilesystem.resolve("out/run.sh"));
+    sourceFilesystem.createZip(
+        ImmutableList.of(
+            Paths.get("out/subdir/2.bin"),
+            Paths.get("out/run.sh"),
+            Paths.get("out/1.bin"),
+            Paths.get("out/subdir")),
+        zipFile);
+
+    ProjectFilesystem filesystem = new ProjectFilesystem(tmpFolder.newFolder());
+    filesystem.mkdirs(Paths.get("out/subdir"));
+    filesystem.writeContentsToPath("stale", Paths.get("out/subdir/stale.bin"));
+    filesystem.mkdirs(Paths.get("out/1.bin/in_the_way"));
+    ImmutableList<Path> result;
+    try (InputStream input = Files.newInputStream(zipFile)) {
+      result =
+          Unzip.extractZipStream(
+              input, filesystem, Unzip.ExistingFileMode.OVERWRITE_AND_CLEAN_DIRECTORIES);
+    }
+
+    assertEquals(
+        ImmutableList.of(
+            Paths.get("out/1.bin"), Paths.get("out/run.sh"), Paths.get("out/subdir/2.bin")),
+        result);
+    assertArrayEquals(DUMMY_FILE_CONTENTS, Files.readAllBytes(filesystem.resolve("out/1.bin")));
+    assertArrayEquals(
+        DUMMY_FILE_CONTENTS, Files.readAllBytes(filesystem.resolve("out/subdir/2.bin")));
+    assertTrue(filesystem.isExecutable(Paths.get("out/run.sh")));
+    assertFalse(filesystem.exists(Paths.get("out/subdir/stale.bin")));
+  }
+
+  @Test
+  public void testExtractZipStreamOfSymlink() throws InterruptedException, IOException {
+    assumeThat(Platform.detect(), Matchers.is(Matchers.not(Platform.WINDOWS)));
+
+    try (ZipArchiveOutputStream zip = new ZipArchiveOutputStream(zipFile.toFile())) {
+      ZipArchiveEntry entry = new ZipArchiveEntry("link.txt");
+      entry.setUnixMode((int) MoreFiles.S_IFLNK);
+      String target = "target.txt";
+      entry.setSize(target.getBytes(Charsets.UTF_8).length);
+      entry.setMethod(ZipEntry.STORED);
+      zip.putArchiveEntry(entry);
+      zip.write(target.getBytes(Charsets.UTF_8));
+      zip.closeArchiveEntry();
+    }
+
+    ProjectFilesystem filesystem = new ProjectFilesystem(tmpFolder.newFolder());
+    try (InputStream input = Files.newInputStream(zipFile)) {
+      Unzip.extractZipStream(input, filesystem, Unzip.ExistingFileMode.OVERWRITE);
+    }
+    Path link = filesystem.resolve("link.txt");
+    assertTrue(Files.isSymbolicLink(link));
+    assertThat(Files.readSymbolicLink(link).toString(), Matchers.equalTo("target.txt"));
+  }
+
+  @Test
+  public void testExtractZipStreamVerifiesChecksums() throws InterruptedException, IOException {
+    try (ZipArchiveOutputStream zip = new ZipArchiveOutputStream(zipFile.toFile())) {
+      ZipArchiveEntry entry = new ZipArchiveEntry("1.bin");
+      entry.setSize(DUMMY_FILE_CONTENTS.length);
+      entry.setMethod(ZipEntry.STORED);
+      zip.putArchiveEntry(entry);
+      zip.write(DUMMY_FILE_CONTENTS);
+      zip.closeArchiveEntry();
+    }
+    byte[] zipContents = Files.readAllBytes(zipFile);
+    int contentsOffset = Bytes.indexOf(zipContents, DUMMY_FILE_CONTENTS);
+    zipContents[contentsOffset] ^= 1;
+
+    ProjectFilesystem filesystem = new ProjectFilesystem(tmpFolder.newFolder());
+    try {
+      Unzip.extractZipStream(
+          new ByteArrayInputStream(zipContents), filesystem, Unzip.ExistingFileMode.OVERWRITE);
+      fail("Extracting a corrupt zip should fail.");
+    } catch (ZipException e) {
+      assertFalse(filesystem.exists(Paths.get("1.bin")));
+    }
+  }
+
+  @Test
+  public void testExtractZipStreamOfTruncatedZipDeletesWhatWasWritten()
+      throws InterruptedException, IOException {
+    try (Zip zip = new Zip(zipFile, true)) {
+      zip.add("1.bin", DUMMY_FILE_CONTENTS);
+      zip.add("subdir/2.bin", DUMMY_FILE_CONTENTS);
+    }
+    byte[] zipContents = Files.readAllBytes(zipFile);
+    int secondEntryOffset = Bytes.indexOf(zipContents, "subdir/2.bin".getBytes(Charsets.UTF_8));
+
+    ProjectFilesystem filesystem = new ProjectFilesystem(tmpFolder.newFolder());
+    try {
+      Unzip.extractZipStream(
+          new ByteArrayInputStream(zipContents, 0, secondEntryOffset + 20),
+          filesystem,
+          Unzip.ExistingFileMode.OVERWRITE);
+      fail("Extracting a truncated zip should fail.");
+    } catch (ZipException e) {
+      assertFalse(filesystem.exists(Paths.get("1.bin")));
+      assertFalse(filesystem.exists(Paths.get("subdir/2.bin")));
+    }
+  }
+
+  @Test(expected = UnstreamableZipEntryException.class)
+  public void testExtractZipStreamRejectsZip64Entries() throws InterruptedException, IOException {
+    try (ZipArchiveOutputStream zip = new ZipArchiveOutputStream(zipFile.toFile())) {
+      zip.setUseZip64(Zip64Mode.Always);
+      zip.putArchiveEntry(new ZipArchiveEntry("1.bin"));
+      zip.write(DUMMY_FILE_CONTENTS);
+      zip.closeArchiveEntry();
+    }
+
+    ProjectFilesystem filesystem = new ProjectFilesystem(tmpFolder.newFolder());
+    try (InputStream input = Files.newInputStream(zipFile)) {
+      Unzip.extractZipStream(input, filesystem, Unzip.ExistingFileMode.OVERWRITE);
+    }
+  }
 }
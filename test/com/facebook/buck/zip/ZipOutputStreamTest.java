@@ -39,9 +39,11 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.hash.Hashing;
 import com.google.common.io.ByteStreams;
 import com.google.common.io.Resources;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URL;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -53,6 +55,7 @@ import java.util.Collection;
 import java.util.Date;
 import java.util.Enumeration;
 import java.util.List;
+import java.util.zip.Deflater;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipException;
 import java.util.zip.ZipInputStream;
@@ -100,6 +103,89 @@ public class ZipOutputStreamTest {
       }
     }
 
+    @Test
+    public void precompressedEntriesAreCopiedAsTheyAre() throws IOException {
+      byte[] contents = "cheesy cheese cheddar cheese".getBytes(UTF_8);
+      Path input = Files.createTempFile("input", ".zip");
+      try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(input))) {
+        out.putNextEntry(new ZipEntry("deflated.txt"));
+        out.write(contents);
+        out.closeEntry();
+        ZipEntry storedEntry = new ZipEntry("stored.txt");
+        storedEntry.setMethod(ZipEntry.STORED);
+        storedEntry.setSize(contents.length);
+        storedEntry.setCrc(Hashing.crc32().hashBytes(contents).padToLong());
+        out.putNextEntry(storedEntry);
+        out.write(contents);
+        out.closeEntry();
+      }
+
+      byte[] compressedContents;
+      try (PrecompressedEntryReader reader = new PrecompressedEntryReader(input)) {
+        assertFalse(reader.getEntry("stored.txt").isPresent());
+        PrecompressedEntryReader.Entry entry = reader.getEntry("deflated.txt").get();
+        // java.util.zip doesn't record which level it compressed the entry at.
+        assertFalse(entry.isCompressedAtLevel(Deflater.DEFAULT_COMPRESSION));
+        assertFalse(entry.isCompressedAtLevel(BEST_COMPRESSION));
+        compressedContents = entry.readCompressedContents();
+
+        try (CustomZipOutputStream out = ZipOutputStreams.newOutputStream(output, mode)) {
+          out.writeEntry("first.txt", new ByteArrayInputStream(contents));
+          CustomZipEntry copiedEntry = new CustomZipEntry("copied.txt");
+          copiedEntry.setCrc(entry.getCrc());
+          copiedEntry.setSize(entry.getSize());
+          copiedEntry.setCompressedSize(entry.getCompressedSize());
+          out.writePrecompressedEntry(copiedEntry, new ByteArrayInputStream(compressedContents));
+          out.writeEntry("last.txt", new ByteArrayInputStream(contents));
+        }
+      }
+
+      try (ZipFile zip = new ZipFile(output.toFile())) {
+        for (String name : ImmutableList.of("first.txt", "copied.txt", "last.txt")) {
+          try (InputStream stream = zip.getInputStream(zip.getEntry(name))) {
+            assertArrayEquals(contents, ByteStreams.toByteArray(stream));
+          }
+        }
+      }
+      try (PrecompressedEntryReader reader = new PrecompressedEntryReader(output)) {
+        assertArrayEquals(
+            compressedContents, reader.getEntry("copied.txt").get().readCompressedContents());
+      }
+    }
+
+    @Test
+    public void onlyTheFastestAndBestLevelsAreKnownFromTheFlagsOfAnEntry() throws IOException {
+      byte[] contents = "cheesy cheese cheddar cheese".getBytes(UTF_8);
+      try (CustomZipOutputStream out = ZipOutputStreams.newOutputStream(output, mode)) {
+        for (int level :
+            new int[] {Deflater.BEST_SPEED, 6, BEST_COMPRESSION}) {
+          CustomZipEntry entry = new CustomZipEntry("level" + level + ".txt");
+          entry.setCompressionLevel(level);
+          out.putNextEntry(entry);
+          out.write(contents);
+          out.closeEntry();
+        }
+      }
+
+      try (PrecompressedEntryReader reader = new PrecompressedEntryReader(output)) {
+        PrecompressedEntryReader.Entry fastest = reader.getEntry("level1.txt").get();
+        assertTrue(fastest.isCompressedAtLevel(Deflater.BEST_SPEED));
+        assertFalse(fastest.isCompressedAtLevel(Deflater.DEFAULT_COMPRESSION));
+        assertFalse(fastest.isCompressedAtLevel(BEST_COMPRESSION));
+
+        PrecompressedEntryReader.Entry normal = reader.getEntry("level6.txt").get();
+        assertFalse(normal.isCompressedAtLevel(Deflater.BEST_SPEED));
+        assertFalse(normal.isCompressedAtLevel(6));
+        assertFalse(normal.isCompressedAtLevel(Deflater.DEFAULT_COMPRESSION));
+        assertFalse(normal.isCompressedAtLevel(BEST_COMPRESSION));
+
+        PrecompressedEntryReader.Entry best = reader.getEntry("level9.txt").get();
+        assertFalse(best.isCompressedAtLevel(Deflater.BEST_SPEED));
+        assertFalse(best.isCompressedAtLevel(Deflater.DEFAULT_COMPRESSION));
+        assertTrue(best.isCompressedAtLevel(BEST_COMPRESSION));
+      }
+    }
+
     @Test(expected = ZipException.class)
     public void writeMustThrowAnExceptionIfNoZipEntryIsOpen() throws IOException {
       try (CustomZipOutputStream out = ZipOutputStreams.newOutputStream(output, mode)) {